@@ -22,6 +22,8 @@ import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 
 public interface CommitTable {
 
@@ -59,6 +61,15 @@ public interface CommitTable {
          */
         ListenableFuture<Optional<CommitTimestamp>> getCommitTimestamp(long startTimestamp);
 
+        /**
+         * Batched version of {@link #getCommitTimestamp(long)} that checks several transactions at once.
+         *
+         * @param startTimestamps the transaction start timestamps
+         * @return the valid or invalid commit timestamps of the transactions found in the commit table, by start
+         *         timestamp. The transactions not found are not in the map.
+         */
+        ListenableFuture<Map<Long, CommitTimestamp>> getCommitTimestamps(Collection<Long> startTimestamps);
+
         ListenableFuture<Long> readLowWatermark();
 
         ListenableFuture<Void> completeTransaction(long startTimestamp);
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.committable;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Concurrent map from long keys to long values that does not box its entries.
+ *
+ * The map is split in lock-striped segments. Each segment is an open addressing hash table with linear probing
+ * and backward shift deletion, so removals do not leave tombstones behind.
+ *
+ * {@link #NO_VALUE} is used to signal absent entries, so it can be used neither as a key nor as a value.
+ */
+public class ConcurrentLongLongMap {
+
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final int DEFAULT_SEGMENT_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    public ConcurrentLongLongMap() {
+        this(DEFAULT_CONCURRENCY_LEVEL, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    public ConcurrentLongLongMap(int concurrencyLevel, int initialSegmentCapacity) {
+        checkArgument(concurrencyLevel > 0, "Concurrency level must be positive");
+        checkArgument(initialSegmentCapacity > 0, "Segment capacity must be positive");
+        int numSegments = nextPowerOfTwo(concurrencyLevel);
+        this.segments = new Segment[numSegments];
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(numSegments);
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(nextPowerOfTwo(initialSegmentCapacity));
+        }
+    }
+
+    /**
+     * @return the value associated to the key or {@link #NO_VALUE} if there's none
+     */
+    public long get(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * Associates the value to the key only if the key is not already present. This is atomic.
+     * @return the value previously associated to the key or {@link #NO_VALUE} if there was none
+     */
+    public long putIfAbsent(long key, long value) {
+        checkArgument(key != NO_VALUE && value != NO_VALUE, "NO_VALUE can not be stored in the map");
+        long hash = hash(key);
+        return segmentFor(hash).putIfAbsent(key, value, hash);
+    }
+
+    /**
+     * @return the value that was associated to the key or {@link #NO_VALUE} if there was none
+     */
+    public long remove(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * Removes all the entries whose key is strictly lower than the watermark passed. Each segment is purged
+     * atomically, but the operation as a whole is not.
+     * @return the number of entries removed
+     */
+    public int removeKeysBelow(long watermark) {
+        int removed = 0;
+        for (Segment segment : segments) {
+            removed += segment.removeKeysBelow(watermark);
+        }
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+    // Helper methods & classes
+    // ----------------------------------------------------------------------------------------------------------------
+
+    private Segment segmentFor(long hash) {
+        // Segment is chosen with the high bits of the hash and slots with the low ones
+        return segments[(int) (hash >>> segmentShift) & (segments.length - 1)];
+    }
+
+    private static long hash(long key) {
+        // Finalizer of MurmurHash3. Timestamps are sequential, so they need to be spread
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private static final class Segment {
+
+        long[] keys;
+        long[] values;
+        int size;
+        int resizeThreshold;
+
+        Segment(int capacity) {
+            allocate(capacity);
+        }
+
+        synchronized long get(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int slot = (int) hash & mask; keys[slot] != NO_VALUE; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return NO_VALUE;
+        }
+
+        synchronized long putIfAbsent(long key, long value, long hash) {
+            int mask = keys.length - 1;
+            int slot = (int) hash & mask;
+            for (; keys[slot] != NO_VALUE; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size > resizeThreshold) {
+                rehash(keys.length << 1);
+            }
+            return NO_VALUE;
+        }
+
+        synchronized long remove(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int slot = (int) hash & mask; keys[slot] != NO_VALUE; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    long previous = values[slot];
+                    shiftBackFrom(slot);
+                    size--;
+                    return previous;
+                }
+            }
+            return NO_VALUE;
+        }
+
+        synchronized int removeKeysBelow(long watermark) {
+            int previousSize = size;
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            allocate(keys.length);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != NO_VALUE && oldKeys[i] >= watermark) {
+                    insertNew(oldKeys[i], oldValues[i]);
+                }
+            }
+            return previousSize - size;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            allocate(keys.length);
+        }
+
+        // Closes the gap left by a removed entry, moving back the entries of the same probe sequence
+        private void shiftBackFrom(int gap) {
+            int mask = keys.length - 1;
+            int slot = gap;
+            while (true) {
+                slot = (slot + 1) & mask;
+                long key = keys[slot];
+                if (key == NO_VALUE) {
+                    break;
+                }
+                int ideal = (int) hash(key) & mask;
+                // Move the entry only if its ideal slot is not in the cyclic range (gap, slot]
+                if ((slot > gap && (ideal <= gap || ideal > slot)) || (slot < gap && (ideal <= gap && ideal > slot))) {
+                    keys[gap] = key;
+                    values[gap] = values[slot];
+                    gap = slot;
+                }
+            }
+            keys[gap] = NO_VALUE;
+        }
+
+        private void rehash(int newCapacity) {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            allocate(newCapacity);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != NO_VALUE) {
+                    insertNew(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private void insertNew(long key, long value) {
+            int mask = keys.length - 1;
+            int slot = (int) hash(key) & mask;
+            while (keys[slot] != NO_VALUE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+            Arrays.fill(keys, NO_VALUE);
+            size = 0;
+            resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+    }
+
+}
@@ -23,13 +23,18 @@ import com.google.common.util.concurrent.SettableFuture;
 import org.apache.omid.committable.CommitTable.CommitTimestamp.Location;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.apache.omid.committable.ConcurrentLongLongMap.NO_VALUE;
 
 public class InMemoryCommitTable implements CommitTable {
 
-    final ConcurrentHashMap<Long, Long> table = new ConcurrentHashMap<>();
+    // Primitive map to avoid boxing start/commit timestamps on each operation
+    final ConcurrentLongLongMap table = new ConcurrentLongLongMap();
 
-    long lowWatermark;
+    volatile long lowWatermark;
 
     @Override
     public CommitTable.Writer getWriter() {
@@ -74,8 +79,8 @@ public class InMemoryCommitTable implements CommitTable {
         @Override
         public ListenableFuture<Optional<CommitTimestamp>> getCommitTimestamp(long startTimestamp) {
             SettableFuture<Optional<CommitTimestamp>> f = SettableFuture.create();
-            Long result = table.get(startTimestamp);
-            if (result == null) {
+            long result = table.get(startTimestamp);
+            if (result == NO_VALUE) {
                 f.set(Optional.<CommitTimestamp>absent());
             } else {
                 if (result == INVALID_TRANSACTION_MARKER) {
@@ -87,6 +92,23 @@ public class InMemoryCommitTable implements CommitTable {
             return f;
         }
 
+        @Override
+        public ListenableFuture<Map<Long, CommitTimestamp>> getCommitTimestamps(Collection<Long> startTimestamps) {
+            SettableFuture<Map<Long, CommitTimestamp>> f = SettableFuture.create();
+            Map<Long, CommitTimestamp> commitTimestamps = new HashMap<>();
+            for (long startTimestamp : startTimestamps) {
+                long result = table.get(startTimestamp);
+                if (result == INVALID_TRANSACTION_MARKER) {
+                    commitTimestamps.put(startTimestamp,
+                                         new CommitTimestamp(Location.COMMIT_TABLE, INVALID_TRANSACTION_MARKER, false));
+                } else if (result != NO_VALUE) {
+                    commitTimestamps.put(startTimestamp, new CommitTimestamp(Location.COMMIT_TABLE, result, true));
+                }
+            }
+            f.set(commitTimestamps);
+            return f;
+        }
+
         @Override
         public ListenableFuture<Long> readLowWatermark() {
             SettableFuture<Long> f = SettableFuture.create();
@@ -106,14 +128,14 @@ public class InMemoryCommitTable implements CommitTable {
         public ListenableFuture<Boolean> tryInvalidateTransaction(long startTimestamp) {
 
             SettableFuture<Boolean> f = SettableFuture.create();
-            Long old = table.get(startTimestamp);
+            long old = table.get(startTimestamp);
 
             // If the transaction represented by startTimestamp is not in the map
-            if (old == null) {
+            if (old == NO_VALUE) {
                 // Try to invalidate the transaction
                 old = table.putIfAbsent(startTimestamp, INVALID_TRANSACTION_MARKER);
                 // If we were able to invalidate or someone else invalidate before us
-                if (old == null || old == INVALID_TRANSACTION_MARKER) {
+                if (old == NO_VALUE || old == INVALID_TRANSACTION_MARKER) {
                     f.set(true);
                     return f;
                 }
@@ -140,4 +162,13 @@ public class InMemoryCommitTable implements CommitTable {
         return table.size();
     }
 
+    /**
+     * Removes all the entries (commits and invalidations) of transactions whose start timestamp is below the
+     * low watermark passed. Meant for long running in-memory setups where clients do not complete transactions.
+     * @return the number of entries removed
+     */
+    public int purgeBelowLowWatermark(long lowWatermark) {
+        return table.removeKeysBelow(lowWatermark);
+    }
+
 }
@@ -22,6 +22,8 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 
 public class NullCommitTable implements CommitTable {
     @Override
@@ -67,6 +69,11 @@ public class NullCommitTable implements CommitTable {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public ListenableFuture<Map<Long, CommitTimestamp>> getCommitTimestamps(Collection<Long> startTimestamps) {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public ListenableFuture<Long> readLowWatermark() {
             throw new UnsupportedOperationException();
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.committable;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.apache.omid.committable.ConcurrentLongLongMap.NO_VALUE;
+import static org.testng.Assert.assertEquals;
+
+public class ConcurrentLongLongMapTest {
+
+    @Test(timeOut = 10_000)
+    public void testBehavesLikeAMapUnderRandomOperations() {
+
+        // Small segments to force collisions, backward shifts and resizes
+        ConcurrentLongLongMap map = new ConcurrentLongLongMap(2, 2);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(0);
+
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextBoolean()) {
+                long value = random.nextInt(1_000_000);
+                Long previous = expected.get(key);
+                if (previous == null) {
+                    expected.put(key, value);
+                }
+                assertEquals(map.putIfAbsent(key, value), previous == null ? NO_VALUE : previous);
+            } else {
+                Long previous = expected.remove(key);
+                assertEquals(map.remove(key), previous == null ? NO_VALUE : previous);
+            }
+        }
+
+        assertEquals(map.size(), expected.size());
+        for (long key = 0; key < 2_000; key++) {
+            Long value = expected.get(key);
+            assertEquals(map.get(key), value == null ? NO_VALUE : value);
+        }
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testRemoveKeysBelowWatermark() {
+
+        ConcurrentLongLongMap map = new ConcurrentLongLongMap();
+        for (long key = 0; key < 10_000; key++) {
+            map.putIfAbsent(key, key + 1);
+        }
+
+        assertEquals(map.removeKeysBelow(5_000), 5_000);
+        assertEquals(map.size(), 5_000);
+        assertEquals(map.get(4_999), NO_VALUE);
+        assertEquals(map.get(5_000), 5_001);
+        assertEquals(map.get(9_999), 10_000);
+
+        map.clear();
+        assertEquals(map.size(), 0);
+        assertEquals(map.get(9_999), NO_VALUE);
+
+    }
+
+    @Test(timeOut = 30_000)
+    public void testOnlyOneConcurrentPutIfAbsentSucceedsPerKey() throws Exception {
+
+        final int NUM_THREADS = 8;
+        final int NUM_KEYS = 50_000;
+
+        final ConcurrentLongLongMap map = new ConcurrentLongLongMap();
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        List<Future<Integer>> winsPerThread = new ArrayList<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final long value = t;
+            winsPerThread.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int wins = 0;
+                    for (long key = 0; key < NUM_KEYS; key++) {
+                        if (map.putIfAbsent(key, value) == NO_VALUE) {
+                            wins++;
+                        }
+                    }
+                    return wins;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        int totalWins = 0;
+        for (Future<Integer> wins : winsPerThread) {
+            totalWins += wins.get();
+        }
+        assertEquals(totalWins, NUM_KEYS);
+        assertEquals(map.size(), NUM_KEYS);
+
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Encoding of the cell ids of a commit request for the clients and servers with the packedCellIds capability. The ids
+ * are sorted and each one is sent as the varint of its difference with the previous one, with no tags in between. The
+ * differences are taken as unsigned, so they are never negative even when they overflow
+ */
+public class PackedCellIds {
+
+    private PackedCellIds() {
+    }
+
+    /**
+     * Encodes the cell ids passed. They are sorted in place
+     *
+     * @param cellIds the cell ids to encode
+     * @return the encoded cell ids
+     */
+    public static ByteString encode(long[] cellIds) {
+
+        Arrays.sort(cellIds);
+        int size = 0;
+        long previous = 0;
+        for (long cellId : cellIds) {
+            size += CodedOutputStream.computeRawVarint64Size(cellId - previous);
+            previous = cellId;
+        }
+
+        byte[] packed = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(packed);
+        previous = 0;
+        try {
+            for (long cellId : cellIds) {
+                output.writeRawVarint64(cellId - previous);
+                previous = cellId;
+            }
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cell ids don't fit the size computed for them", e);
+        }
+        return ByteString.copyFrom(packed);
+
+    }
+
+    /**
+     * @param packedCellIds the encoded cell ids
+     * @param numCellIds    number of cell ids encoded
+     * @return the cell ids decoded, sorted
+     * @throws IOException when the encoded cell ids are malformed
+     */
+    public static long[] decode(ByteString packedCellIds, int numCellIds) throws IOException {
+
+        // Each cell id takes one byte at least. Checked before allocating, as the count comes from the client
+        if (numCellIds < 0 || numCellIds > packedCellIds.size()) {
+            throw new IOException("Can't decode " + numCellIds + " cell ids from " + packedCellIds.size() + " bytes");
+        }
+        long[] cellIds = new long[numCellIds];
+        CodedInputStream input = packedCellIds.newCodedInput();
+        long previous = 0;
+        for (int i = 0; i < numCellIds; i++) {
+            previous += input.readRawVarint64();
+            cellIds[i] = previous;
+        }
+        if (!input.isAtEnd()) {
+            throw new IOException("Found more than the " + numCellIds + " cell ids expected");
+        }
+        return cellIds;
+
+    }
+
+}
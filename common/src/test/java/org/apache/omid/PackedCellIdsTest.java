@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class PackedCellIdsTest {
+
+    @Test(timeOut = 10_000)
+    public void testCellIdsAreDecodedSorted() throws Exception {
+        long[] cellIds = {42L, Long.MAX_VALUE, -1L, Long.MIN_VALUE, 0L, 42L};
+        long[] expected = {Long.MIN_VALUE, -1L, 0L, 42L, 42L, Long.MAX_VALUE};
+        ByteString packed = PackedCellIds.encode(cellIds.clone());
+        Assert.assertEquals(PackedCellIds.decode(packed, cellIds.length), expected);
+        Assert.assertEquals(PackedCellIds.decode(PackedCellIds.encode(new long[0]), 0), new long[0]);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testPackedCellIdsAreSmallerThanTheRepeatedField() throws Exception {
+        final int NUM_CELL_IDS = 100_000;
+        Random random = new Random(0xfeedcafeL);
+        long[] cellIds = new long[NUM_CELL_IDS];
+        int repeatedFieldSize = 0;
+        for (int i = 0; i < NUM_CELL_IDS; i++) {
+            cellIds[i] = random.nextLong();
+            repeatedFieldSize += CodedOutputStream.computeInt64Size(3, cellIds[i]);
+        }
+        long[] sortedCellIds = cellIds.clone();
+        Arrays.sort(sortedCellIds);
+        ByteString packed = PackedCellIds.encode(cellIds);
+        Assert.assertTrue(packed.size() < repeatedFieldSize * 3 / 4,
+                          "Packed " + packed.size() + " bytes vs " + repeatedFieldSize);
+        Assert.assertEquals(PackedCellIds.decode(packed, NUM_CELL_IDS), sortedCellIds);
+    }
+
+    @Test(timeOut = 10_000, expectedExceptions = IOException.class)
+    public void testMoreCellIdsThanExpectedAreRejected() throws Exception {
+        PackedCellIds.decode(PackedCellIds.encode(new long[]{1L, 2L, 3L}), 2);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testImpossibleNumbersOfCellIdsAreRejected() throws Exception {
+        ByteString packed = PackedCellIds.encode(new long[]{1L, 2L, 3L});
+        for (int numCellIds : new int[]{-1, packed.size() + 1, Integer.MAX_VALUE}) {
+            try {
+                PackedCellIds.decode(packed, numCellIds);
+                Assert.fail("Decoding " + numCellIds + " cell ids should fail");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+}
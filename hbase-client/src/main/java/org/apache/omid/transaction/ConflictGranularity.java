@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+/**
+ * Granularity at which the TSO detects the write-write conflicts of the cells of a table or family. The coarser the
+ * granularity, the fewer the ids the commit requests carry and the fewer the entries they take in the conflict map,
+ * at the cost of aborting transactions that write different cells of the same row or family.
+ *
+ * All the clients writing to a table must agree on its granularity, as the conflicts between ids of different
+ * granularities are not detected
+ */
+public enum ConflictGranularity {
+
+    /** Conflicts between writes of the same cell. The default */
+    CELL,
+    /** Conflicts between writes of the same family of the same row */
+    FAMILY,
+    /** Conflicts between writes of the same row */
+    ROW,
+    /**
+     * No conflicts, for data whose keys are unique by construction, like event logs. The cells are still written and
+     * made visible transactionally, but they are not sent to the TSO
+     */
+    NONE
+
+}
@@ -17,12 +17,20 @@
  */
 package org.apache.omid.transaction;
 
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import org.apache.omid.tso.client.CellId;
 import org.apache.hadoop.hbase.client.HTableInterface;
 
+import java.util.Arrays;
+
 import static com.google.common.base.Charsets.UTF_8;
 
+/**
+ * A cell written by a transaction. Cell ids are equal when they refer to the same cell of the same table, whatever the
+ * timestamp, so the write set of a transaction holds each cell only once. The id sent to the TSO is computed once, at
+ * the {@link ConflictGranularity} of the cell, so cells of the same row or family may share it
+ */
 public class HBaseCellId implements CellId {
 
     private final HTableInterface table;
@@ -30,13 +38,26 @@ public class HBaseCellId implements CellId {
     private final byte[] family;
     private final byte[] qualifier;
     private long timestamp;
+    private final ConflictGranularity conflictGranularity;
+
+    // Hash of the cell, or of its row or family, sent to the TSO. Lazily computed
+    private long cellId;
+    private boolean cellIdComputed = false;
+    // Lazily computed
+    private int hashCode;
 
     public HBaseCellId(HTableInterface table, byte[] row, byte[] family, byte[] qualifier, long timestamp) {
+        this(table, row, family, qualifier, timestamp, ConflictGranularity.CELL);
+    }
+
+    public HBaseCellId(HTableInterface table, byte[] row, byte[] family, byte[] qualifier, long timestamp,
+                       ConflictGranularity conflictGranularity) {
         this.timestamp = timestamp;
         this.table = table;
         this.row = row;
         this.family = family;
         this.qualifier = qualifier;
+        this.conflictGranularity = conflictGranularity;
     }
 
     public HTableInterface getTable() {
@@ -59,6 +80,10 @@ public class HBaseCellId implements CellId {
         return timestamp;
     }
 
+    public ConflictGranularity getConflictGranularity() {
+        return conflictGranularity;
+    }
+
     public String toString() {
         return new String(table.getTableName(), UTF_8)
                 + ":" + new String(row, UTF_8)
@@ -69,12 +94,52 @@ public class HBaseCellId implements CellId {
 
     @Override
     public long getCellId() {
-        return Hashing.murmur3_128().newHasher()
-                .putBytes(table.getTableName())
-                .putBytes(row)
-                .putBytes(family)
-                .putBytes(qualifier)
-                .hash().asLong();
+        if (!cellIdComputed) {
+            Hasher hasher = Hashing.murmur3_128().newHasher().putBytes(table.getTableName()).putBytes(row);
+            switch (conflictGranularity) {
+                case CELL:
+                    hasher.putBytes(family).putBytes(qualifier);
+                    break;
+                case FAMILY:
+                    hasher.putBytes(family);
+                    break;
+                case ROW:
+                case NONE:
+                default:
+                    break;
+            }
+            cellId = hasher.hash().asLong();
+            cellIdComputed = true;
+        }
+        return cellId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HBaseCellId)) {
+            return false;
+        }
+        HBaseCellId other = (HBaseCellId) o;
+        return hashCode() == other.hashCode()
+                && Arrays.equals(row, other.row)
+                && Arrays.equals(qualifier, other.qualifier)
+                && Arrays.equals(family, other.family)
+                && (table == other.table || Arrays.equals(table.getTableName(), other.table.getTableName()));
+    }
+
+    @Override
+    public int hashCode() {
+        // Not derived from the cell id, which cells of the same row or family may share
+        if (hashCode == 0) {
+            int result = Arrays.hashCode(row);
+            result = 31 * result + Arrays.hashCode(family);
+            result = 31 * result + Arrays.hashCode(qualifier);
+            hashCode = result;
+        }
+        return hashCode;
     }
 
 }
@@ -28,6 +28,9 @@ import org.apache.omid.tso.client.OmidClientConfiguration;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Configuration for HBase's Omid client side
  */
@@ -40,6 +43,12 @@ public class HBaseOmidClientConfiguration extends SecureHBaseConfig {
     @Inject
     private OmidClientConfiguration omidClientConfiguration;
     private MetricsRegistry metrics;
+    private int shadowCellHealerQueueSize;
+    private boolean asyncCleanup;
+    private int lazyCommitReclaimQueueSize;
+    private long lazyCommitReclaimIntervalInMs;
+    private List<String> rowConflictGranularity = new ArrayList<>();
+    private List<String> familyConflictGranularity = new ArrayList<>();
 
     // ----------------------------------------------------------------------------------------------------------------
     // Instantiation
@@ -73,6 +82,30 @@ public class HBaseOmidClientConfiguration extends SecureHBaseConfig {
         omidClientConfiguration.setPostCommitMode(postCommitMode);
     }
 
+    public int getAsyncThreads() {
+        return omidClientConfiguration.getAsyncThreads();
+    }
+
+    public void setAsyncThreads(int asyncThreads) {
+        omidClientConfiguration.setAsyncThreads(asyncThreads);
+    }
+
+    public int getPostCommitThreads() {
+        return omidClientConfiguration.getPostCommitThreads();
+    }
+
+    public void setPostCommitThreads(int postCommitThreads) {
+        omidClientConfiguration.setPostCommitThreads(postCommitThreads);
+    }
+
+    public int getPostCommitQueueSize() {
+        return omidClientConfiguration.getPostCommitQueueSize();
+    }
+
+    public void setPostCommitQueueSize(int postCommitQueueSize) {
+        omidClientConfiguration.setPostCommitQueueSize(postCommitQueueSize);
+    }
+
     public String getCommitTableName() {
         return commitTableName;
     }
@@ -101,6 +134,62 @@ public class HBaseOmidClientConfiguration extends SecureHBaseConfig {
         this.metrics = metrics;
     }
 
+    public int getShadowCellHealerQueueSize() {
+        return shadowCellHealerQueueSize;
+    }
+
+    @Inject(optional = true)
+    @Named("omid.client.hbase.shadowCellHealerQueueSize")
+    public void setShadowCellHealerQueueSize(int shadowCellHealerQueueSize) {
+        this.shadowCellHealerQueueSize = shadowCellHealerQueueSize;
+    }
+
+    public boolean isAsyncCleanup() {
+        return asyncCleanup;
+    }
+
+    @Inject(optional = true)
+    @Named("omid.client.hbase.asyncCleanup")
+    public void setAsyncCleanup(boolean asyncCleanup) {
+        this.asyncCleanup = asyncCleanup;
+    }
+
+    public int getLazyCommitReclaimQueueSize() {
+        return lazyCommitReclaimQueueSize;
+    }
+
+    @Inject(optional = true)
+    @Named("omid.client.hbase.lazyCommitReclaimQueueSize")
+    public void setLazyCommitReclaimQueueSize(int lazyCommitReclaimQueueSize) {
+        this.lazyCommitReclaimQueueSize = lazyCommitReclaimQueueSize;
+    }
+
+    public long getLazyCommitReclaimIntervalInMs() {
+        return lazyCommitReclaimIntervalInMs;
+    }
+
+    @Inject(optional = true)
+    @Named("omid.client.hbase.lazyCommitReclaimIntervalInMs")
+    public void setLazyCommitReclaimIntervalInMs(long lazyCommitReclaimIntervalInMs) {
+        this.lazyCommitReclaimIntervalInMs = lazyCommitReclaimIntervalInMs;
+    }
+
+    public List<String> getRowConflictGranularity() {
+        return rowConflictGranularity;
+    }
+
+    public void setRowConflictGranularity(List<String> rowConflictGranularity) {
+        this.rowConflictGranularity = rowConflictGranularity;
+    }
+
+    public List<String> getFamilyConflictGranularity() {
+        return familyConflictGranularity;
+    }
+
+    public void setFamilyConflictGranularity(List<String> familyConflictGranularity) {
+        this.familyConflictGranularity = familyConflictGranularity;
+    }
+
     // Delegation to make end-user life better
 
     public OmidClientConfiguration.ConnType getConnectionType() {
@@ -23,12 +23,19 @@ import org.apache.omid.committable.CommitTable;
 import org.apache.omid.metrics.MetricsRegistry;
 import org.apache.omid.metrics.Timer;
 import org.apache.omid.tso.client.CellId;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutionException;
 
 import static org.apache.omid.metrics.MetricsUtils.name;
@@ -43,6 +50,11 @@ public class HBaseSyncPostCommitter implements PostCommitActions {
     private final Timer commitTableUpdateTimer;
     private final Timer shadowCellsUpdateTimer;
 
+    /**
+     * No shadow cell is written for the tables with the {@link CellUtils#OMID_LAZY_POST_COMMIT_FLAG} property. The
+     * commit table entries of the transactions writing to them are kept until their cells are materialized. See
+     * {@link LazyCommitReclaimer}
+     */
     public HBaseSyncPostCommitter(MetricsRegistry metrics, CommitTable.Client commitTableClient) {
         this.metrics = metrics;
         this.commitTableClient = commitTableClient;
@@ -62,19 +74,12 @@ public class HBaseSyncPostCommitter implements PostCommitActions {
         try {
 
             // Add shadow cells
-            for (HBaseCellId cell : tx.getWriteSet()) {
-                Put put = new Put(cell.getRow());
-                put.add(cell.getFamily(),
-                        CellUtils.addShadowCellSuffix(cell.getQualifier(), 0, cell.getQualifier().length),
-                        tx.getStartTimestamp(),
-                        Bytes.toBytes(tx.getCommitTimestamp()));
-                try {
-                    cell.getTable().put(put);
-                } catch (IOException e) {
-                    LOG.warn("{}: Error inserting shadow cell {}", tx, cell, e);
-                    updateSCFuture.setException(
-                            new TransactionManagerException(tx + ": Error inserting shadow cell " + cell, e));
-                }
+            try {
+                writeShadowCells(tx, createShadowCellPuts(tx));
+            } catch (IOException e) {
+                LOG.warn("{}: Error inserting shadow cells", tx, e);
+                updateSCFuture.setException(
+                        new TransactionManagerException(tx + ": Error inserting shadow cells", e));
             }
 
             // Flush affected tables before returning to avoid loss of shadow cells updates when autoflush is disabled
@@ -101,6 +106,22 @@ public class HBaseSyncPostCommitter implements PostCommitActions {
 
         HBaseTransaction tx = HBaseTransactionManager.enforceHBaseTransactionAsParam(transaction);
 
+        // The commit table is the only place where the commit of the lazy cells is found until they are materialized,
+        // so their entry is kept and removed afterwards, in the background
+        try {
+            List<HBaseCellId> lazyCells = getLazyCells(tx);
+            if (!lazyCells.isEmpty()) {
+                ((HBaseTransactionManager) tx.getTransactionManager()).getLazyCommitReclaimer().add(tx, lazyCells);
+                updateSCFuture.set(null);
+                return updateSCFuture;
+            }
+        } catch (IOException e) {
+            LOG.warn("{}: Can't read the descriptors of the tables written. Commit table entry kept", tx, e);
+            updateSCFuture.setException(
+                    new TransactionManagerException(tx + ": Can't read the descriptors of the tables written", e));
+            return updateSCFuture;
+        }
+
         commitTableUpdateTimer.start();
 
         try {
@@ -122,4 +143,74 @@ public class HBaseSyncPostCommitter implements PostCommitActions {
 
     }
 
+    /**
+     * @return the cells of the write set of the transaction passed written to lazy post-commit tables
+     * @throws IOException when the descriptor of a table can't be read
+     */
+    private static List<HBaseCellId> getLazyCells(HBaseTransaction tx) throws IOException {
+
+        HBaseTransactionManager tm = (HBaseTransactionManager) tx.getTransactionManager();
+        List<HBaseCellId> lazyCells = new ArrayList<>();
+        for (HBaseCellId cell : tx.getWriteSet()) {
+            if (tm.isLazyPostCommit(cell.getTable())) {
+                lazyCells.add(cell);
+            }
+        }
+        return lazyCells;
+
+    }
+
+    /**
+     * @return the puts adding the shadow cells of the write set of the transaction passed, but the ones of the lazy
+     *         post-commit tables, grouped by table, with a single put per row
+     * @throws IOException when the descriptor of a table can't be read
+     */
+    private static Map<HTableInterface, List<Put>> createShadowCellPuts(HBaseTransaction tx) throws IOException {
+
+        HBaseTransactionManager tm = (HBaseTransactionManager) tx.getTransactionManager();
+        Map<HTableInterface, NavigableMap<byte[], Put>> putsPerTable = new HashMap<>();
+        for (HBaseCellId cell : tx.getWriteSet()) {
+            if (tm.isLazyPostCommit(cell.getTable())) {
+                continue;
+            }
+            NavigableMap<byte[], Put> rowPuts = putsPerTable.get(cell.getTable());
+            if (rowPuts == null) {
+                rowPuts = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+                putsPerTable.put(cell.getTable(), rowPuts);
+            }
+            Put put = rowPuts.get(cell.getRow());
+            if (put == null) {
+                put = new Put(cell.getRow());
+                rowPuts.put(cell.getRow(), put);
+            }
+            put.add(cell.getFamily(),
+                    CellUtils.addShadowCellSuffix(cell.getQualifier(), 0, cell.getQualifier().length),
+                    tx.getStartTimestamp(),
+                    Bytes.toBytes(tx.getCommitTimestamp()));
+        }
+
+        Map<HTableInterface, List<Put>> shadowCellPuts = new HashMap<>(putsPerTable.size());
+        for (Map.Entry<HTableInterface, NavigableMap<byte[], Put>> entry : putsPerTable.entrySet()) {
+            shadowCellPuts.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        return shadowCellPuts;
+
+    }
+
+    /**
+     * Sends a batch of puts to each table. When there are several tables, they are written in parallel
+     */
+    private static void writeShadowCells(HBaseTransaction tx, Map<HTableInterface, List<Put>> shadowCellPuts)
+            throws IOException {
+
+        PerTableRunner.runPerTable(tx.getTransactionManager().getAsyncExecutor(), shadowCellPuts,
+                                   new PerTableRunner.TableAction<List<Put>>() {
+            @Override
+            public void run(HTableInterface table, List<Put> puts) throws IOException {
+                table.put(puts);
+            }
+        }, "writing shadow cells");
+
+    }
+
 }
@@ -18,56 +18,315 @@
 package org.apache.omid.transaction;
 
 import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.HConnection;
 import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.omid.metrics.Counter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
 
 public class HBaseTransaction extends AbstractTransaction<HBaseCellId> {
     private static final Logger LOG = LoggerFactory.getLogger(HBaseTransaction.class);
 
+    // Write-behind buffers of the tables written without auto flush
+    private final Map<HTableInterface, MutationBuffer> mutationBuffers = new HashMap<>();
+    // Cells of the write set discarded on rollback before reaching HBase, so they are not cleaned up. Lazily created
+    private Set<HBaseCellId> discardedCells;
+    // Whether the write set has cells of conflict-free tables or families
+    private boolean hasConflictFreeCells = false;
+    // Deltas written by the increments of the transaction to each counter. Lazily created
+    private Map<HBaseCellId, Long> counterDeltas;
+
     HBaseTransaction(long transactionId, long epoch, Set<HBaseCellId> writeSet, AbstractTransactionManager tm) {
         super(transactionId, epoch, writeSet, tm);
     }
 
+    /**
+     * Deletes the writes of the transaction, in a batch per table. In async cleanup mode the deletes are done in the
+     * background, so the rollback returns straight away. HTables are not thread-safe and the caller keeps using its
+     * own, so the background cleanup opens its own instances of the tables
+     */
     @Override
     public void cleanup() {
-        Set<HBaseCellId> writeSet = getWriteSet();
-        for (final HBaseCellId cell : writeSet) {
-            Delete delete = new Delete(cell.getRow());
-            delete.deleteColumn(cell.getFamily(), cell.getQualifier(), getStartTimestamp());
-            try {
-                cell.getTable().delete(delete);
-            } catch (IOException e) {
-                LOG.warn("Failed cleanup cell {} for Tx {}. This issue has been ignored", cell, getTransactionId(), e);
-            }
+        final HBaseTransactionManager tm = (HBaseTransactionManager) getTransactionManager();
+        if (!tm.isAsyncCleanup()) {
+            deleteWrites();
+            return;
         }
+        final Map<HTableInterface, List<Delete>> deletesPerTable = createCleanupDeletes();
         try {
-            flushTables();
-        } catch (IOException e) {
-            LOG.warn("Failed flushing tables for Tx {}", getTransactionId(), e);
+            tm.getAsyncExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    deleteWithOwnTables(tm, deletesPerTable);
+                }
+            });
+        } catch (RejectedExecutionException e) { // The transaction manager is closing
+            deleteWrites();
         }
     }
 
     /**
-     * Flushes pending operations for tables touched by transaction
+     * Flushes pending operations for tables touched by transaction. When there are several, they are flushed in
+     * parallel
      * @throws IOException in case of any I/O related issues
      */
     public void flushTables() throws IOException {
 
+        Map<HTableInterface, Void> writtenTables = new HashMap<>();
         for (HTableInterface writtenTable : getWrittenTables()) {
-            writtenTable.flushCommits();
+            writtenTables.put(writtenTable, null);
+        }
+        PerTableRunner.runPerTable(getTransactionManager().getAsyncExecutor(), writtenTables,
+                                   new PerTableRunner.TableAction<Void>() {
+            @Override
+            public void run(HTableInterface table, Void none) throws IOException {
+                flushTable(table);
+            }
+        }, "flushing tables");
+
+    }
+
+    /**
+     * @return the healer of the shadow cells that the reads of the transaction find missing
+     */
+    ShadowCellHealer getShadowCellHealer() {
+        return ((HBaseTransactionManager) getTransactionManager()).getShadowCellHealer();
+    }
+
+    /**
+     * @return the granularity at which the conflicts of the writes of the transaction to the table and family passed
+     *         are detected
+     */
+    ConflictGranularity getConflictGranularity(HTableInterface table, byte[] family) throws IOException {
+        return ((HBaseTransactionManager) getTransactionManager()).getConflictGranularity(table, family);
+    }
+
+    /**
+     * @return the families of the table passed
+     */
+    Set<byte[]> getFamilies(HTableInterface table) throws IOException {
+        return ((HBaseTransactionManager) getTransactionManager()).getFamilies(table);
+    }
+
+    /**
+     * A put or a delete over a counter incremented by the transaction overwrites its delta, so the cell is no longer
+     * only checked for conflicts
+     */
+    @Override
+    public void addWriteSetElement(HBaseCellId element) {
+        if (counterDeltas != null && counterDeltas.remove(element) != null) {
+            getWriteSet().remove(element);
+        }
+        super.addWriteSetElement(element);
+        if (element.getConflictGranularity() == ConflictGranularity.NONE) {
+            hasConflictFreeCells = true;
+        }
+    }
+
+    /**
+     * Adds to the write set a counter incremented by the transaction. Its deltas don't conflict with the ones of
+     * other transactions, but they do with the puts and deletes of the counter, so the counter is only checked for
+     * conflicts. See {@link #getConflictCheckSet()}
+     *
+     * @param cell  the counter
+     * @param delta the amount the counter is incremented by
+     * @return the delta of all the increments of the counter by the transaction so far
+     */
+    long addCounterDelta(HBaseCellId cell, long delta) {
+        if (counterDeltas == null) {
+            counterDeltas = new HashMap<>();
+        }
+        Long previousDelta = counterDeltas.get(cell);
+        long counterDelta = previousDelta == null ? delta : previousDelta + delta;
+        super.addWriteSetElement(cell);
+        hasConflictFreeCells = true;
+        counterDeltas.put(cell, counterDelta);
+        return counterDelta;
+    }
+
+    /**
+     * @return whether the transaction wrote the cell passed with a put or a delete
+     */
+    boolean isWrittenByPutOrDelete(HBaseCellId cell) {
+        return getWriteSet().contains(cell) && (counterDeltas == null || !counterDeltas.containsKey(cell));
+    }
+
+    /**
+     * The cells of conflict-free tables and families, and the counters incremented, are left out
+     */
+    @Override
+    public Set<HBaseCellId> getConflictWriteSet() {
+        if (!hasConflictFreeCells) {
+            return getWriteSet();
+        }
+        Set<HBaseCellId> conflictWriteSet = new HashSet<>();
+        for (HBaseCellId cell : getWriteSet()) {
+            if (cell.getConflictGranularity() != ConflictGranularity.NONE
+                    && (counterDeltas == null || !counterDeltas.containsKey(cell))) {
+                conflictWriteSet.add(cell);
+            }
+        }
+        return conflictWriteSet;
+    }
+
+    /**
+     * The counters incremented, but the ones of conflict-free tables and families. A delta written while a put or a
+     * delete of the counter committed after the transaction started would be hidden by it, so the transaction aborts
+     */
+    @Override
+    public Set<HBaseCellId> getConflictCheckSet() {
+        if (counterDeltas == null) {
+            return Collections.emptySet();
         }
+        Set<HBaseCellId> conflictCheckSet = new HashSet<>();
+        for (HBaseCellId cell : counterDeltas.keySet()) {
+            if (cell.getConflictGranularity() != ConflictGranularity.NONE) {
+                conflictCheckSet.add(cell);
+            }
+        }
+        return conflictCheckSet;
+    }
 
+    /**
+     * @return the write-behind buffer of the transaction for the table passed
+     */
+    MutationBuffer getMutationBuffer(HTableInterface table) {
+        MutationBuffer mutationBuffer = mutationBuffers.get(table);
+        if (mutationBuffer == null) {
+            mutationBuffer = new MutationBuffer(table);
+            mutationBuffers.put(table, mutationBuffer);
+        }
+        return mutationBuffer;
+    }
+
+    /**
+     * Discards the buffered mutations not sent to HBase yet. Used when rolling back, as the cells that never reached
+     * HBase don't need cleanup
+     */
+    void discardBufferedMutations() {
+        for (MutationBuffer mutationBuffer : mutationBuffers.values()) {
+            List<HBaseCellId> unflushedCells = mutationBuffer.discard();
+            if (!unflushedCells.isEmpty()) {
+                if (discardedCells == null) {
+                    discardedCells = new HashSet<>();
+                }
+                discardedCells.addAll(unflushedCells);
+            }
+        }
     }
 
     // ****************************************************************************************************************
     // Helper methods
     // ****************************************************************************************************************
 
+    private void deleteWrites() {
+
+        final Counter cleanupFailedCounter = ((HBaseTransactionManager) getTransactionManager()).getCleanupFailedCounter();
+        try {
+            PerTableRunner.runPerTable(getTransactionManager().getAsyncExecutor(), createCleanupDeletes(),
+                                       new PerTableRunner.TableAction<List<Delete>>() {
+                @Override
+                public void run(HTableInterface table, List<Delete> deletes) {
+                    deleteAll(table, deletes, cleanupFailedCounter);
+                }
+            }, "cleaning up Tx " + getTransactionId());
+        } catch (IOException e) {
+            LOG.warn("Failed cleanup for Tx {}", getTransactionId(), e);
+        }
+
+        try {
+            flushTables();
+        } catch (IOException e) {
+            LOG.warn("Failed flushing tables for Tx {}", getTransactionId(), e);
+        }
+
+    }
+
+    // Runs in the background, so it doesn't touch the tables of the caller. Each table opened is closed, flushing it
+    private void deleteWithOwnTables(HBaseTransactionManager tm, Map<HTableInterface, List<Delete>> deletesPerTable) {
+
+        final HConnection connection = tm.getConnection();
+        final Counter cleanupFailedCounter = tm.getCleanupFailedCounter();
+        try {
+            PerTableRunner.runPerTable(tm.getAsyncExecutor(), deletesPerTable,
+                                       new PerTableRunner.TableAction<List<Delete>>() {
+                @Override
+                public void run(HTableInterface table, List<Delete> deletes) throws IOException {
+                    try (HTableInterface cleanupTable = connection.getTable(table.getName())) {
+                        deleteAll(cleanupTable, deletes, cleanupFailedCounter);
+                    }
+                }
+            }, "cleaning up Tx " + getTransactionId());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed cleanup for Tx {}", getTransactionId(), e);
+        }
+
+    }
+
+    /**
+     * @return the deletes of the writes of the transaction that reached HBase, grouped by table, with a single delete
+     *         per row
+     */
+    private Map<HTableInterface, List<Delete>> createCleanupDeletes() {
+
+        Map<HTableInterface, NavigableMap<byte[], Delete>> deletesPerTable = new HashMap<>();
+        for (HBaseCellId cell : getWriteSet()) {
+            if (discardedCells != null && discardedCells.contains(cell)) {
+                continue;
+            }
+            NavigableMap<byte[], Delete> rowDeletes = deletesPerTable.get(cell.getTable());
+            if (rowDeletes == null) {
+                rowDeletes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+                deletesPerTable.put(cell.getTable(), rowDeletes);
+            }
+            Delete delete = rowDeletes.get(cell.getRow());
+            if (delete == null) {
+                delete = new Delete(cell.getRow());
+                rowDeletes.put(cell.getRow(), delete);
+            }
+            delete.deleteColumn(cell.getFamily(), cell.getQualifier(), getStartTimestamp());
+        }
+
+        Map<HTableInterface, List<Delete>> cleanupDeletes = new HashMap<>(deletesPerTable.size());
+        for (Map.Entry<HTableInterface, NavigableMap<byte[], Delete>> entry : deletesPerTable.entrySet()) {
+            cleanupDeletes.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        return cleanupDeletes;
+
+    }
+
+    private void deleteAll(HTableInterface table, List<Delete> deletes, Counter cleanupFailedCounter) {
+        int rows = deletes.size();
+        try {
+            table.delete(deletes);
+        } catch (IOException e) {
+            LOG.warn("Failed cleanup of {} rows of table {} for Tx {}. This issue has been ignored",
+                     rows, Bytes.toString(table.getTableName()), getTransactionId(), e);
+            cleanupFailedCounter.inc(rows);
+        }
+    }
+
+    private void flushTable(HTableInterface table) throws IOException {
+        MutationBuffer mutationBuffer = mutationBuffers.get(table);
+        if (mutationBuffer != null) {
+            mutationBuffer.flush();
+        }
+        table.flushCommits();
+    }
+
     private Set<HTableInterface> getWrittenTables() {
         HashSet<HBaseCellId> writeSet = (HashSet<HBaseCellId>) getWriteSet();
         Set<HTableInterface> tables = new HashSet<HTableInterface>();
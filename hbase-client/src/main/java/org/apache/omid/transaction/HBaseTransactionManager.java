@@ -27,10 +27,18 @@ import org.apache.omid.committable.CommitTable;
 import org.apache.omid.committable.CommitTable.CommitTimestamp;
 import org.apache.omid.committable.hbase.HBaseCommitTable;
 import org.apache.omid.committable.hbase.HBaseCommitTableConfig;
+import org.apache.omid.metrics.Counter;
+import org.apache.omid.metrics.Gauge;
 import org.apache.omid.tools.hbase.HBaseLogin;
 import org.apache.omid.tso.client.CellId;
 import org.apache.omid.tso.client.TSOClient;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
@@ -39,13 +47,37 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.apache.omid.metrics.MetricsUtils.name;
 
 public class HBaseTransactionManager extends AbstractTransactionManager implements HBaseTransactionClient {
 
     private static final Logger LOG = LoggerFactory.getLogger(HBaseTransactionManager.class);
 
+    private final ShadowCellHealer shadowCellHealer;
+    private final LazyCommitReclaimer lazyCommitReclaimer;
+    private final boolean asyncCleanup;
+    // Shared by the tables used in the background, as the ones of the transactions are not thread-safe. Closed with
+    // the transaction manager
+    private final HConnection connection;
+    private final Counter cleanupFailedCounter;
+    // Tables and table:family pairs with conflicts detected per row or per family
+    private final Set<String> rowConflictGranularity;
+    private final Set<String> familyConflictGranularity;
+    // Families of the tables written, read once per table from their schema
+    private final ConcurrentMap<TableName, TableFamilies> tableFamilies = new ConcurrentHashMap<>();
+
     private static class HBaseTransactionFactory implements TransactionFactory<HBaseCellId> {
 
         @Override
@@ -82,6 +114,7 @@ public class HBaseTransactionManager extends AbstractTransactionManager implemen
         private Optional<TSOClient> tsoClient = Optional.absent();
         private Optional<CommitTable.Client> commitTableClient = Optional.absent();
         private Optional<PostCommitActions> postCommitter = Optional.absent();
+        private Optional<HConnection> connection = Optional.absent();
 
         private Builder(HBaseOmidClientConfiguration hbaseOmidClientConf) {
             this.hbaseOmidClientConf = hbaseOmidClientConf;
@@ -102,16 +135,27 @@ public class HBaseTransactionManager extends AbstractTransactionManager implemen
             return this;
         }
 
+        Builder connection(HConnection connection) {
+            this.connection = Optional.of(connection);
+            return this;
+        }
+
         HBaseTransactionManager build() throws IOException, InterruptedException {
 
             CommitTable.Client commitTableClient = this.commitTableClient.or(buildCommitTableClient()).get();
             PostCommitActions postCommitter = this.postCommitter.or(buildPostCommitter(commitTableClient)).get();
             TSOClient tsoClient = this.tsoClient.or(buildTSOClient()).get();
 
+            ShadowCellHealer shadowCellHealer =
+                    new ShadowCellHealer(hbaseOmidClientConf.getShadowCellHealerQueueSize(),
+                                         hbaseOmidClientConf.getMetrics());
+
             return new HBaseTransactionManager(hbaseOmidClientConf,
                                                postCommitter,
                                                tsoClient,
                                                commitTableClient,
+                                               shadowCellHealer,
+                                               connection.isPresent() ? connection.get() : buildConnection(),
                                                new HBaseTransactionFactory());
         }
 
@@ -120,23 +164,43 @@ public class HBaseTransactionManager extends AbstractTransactionManager implemen
         }
 
 
+        // Only built when not passed, as it opens the connection to the cluster
+        private HConnection buildConnection() throws IOException {
+            return HConnectionManager.createConnection(hbaseOmidClientConf.getHBaseConfiguration());
+        }
+
         private Optional<CommitTable.Client> buildCommitTableClient() throws IOException {
             HBaseCommitTableConfig commitTableConf = new HBaseCommitTableConfig();
             commitTableConf.setTableName(hbaseOmidClientConf.getCommitTableName());
-            CommitTable commitTable = new HBaseCommitTable(hbaseOmidClientConf.getHBaseConfiguration(), commitTableConf);
+            CommitTable commitTable = new HBaseCommitTable(hbaseOmidClientConf.getHBaseConfiguration(),
+                                                           commitTableConf,
+                                                           hbaseOmidClientConf.getMetrics());
             return Optional.of(commitTable.getClient());
         }
 
         private Optional<PostCommitActions> buildPostCommitter(CommitTable.Client commitTableClient ) {
 
             PostCommitActions postCommitter;
-            PostCommitActions syncPostCommitter = new HBaseSyncPostCommitter(hbaseOmidClientConf.getMetrics(),
-                                                                             commitTableClient);
+            PostCommitActions syncPostCommitter =
+                    new HBaseSyncPostCommitter(hbaseOmidClientConf.getMetrics(), commitTableClient);
             switch(hbaseOmidClientConf.getPostCommitMode()) {
                 case ASYNC:
-                    ListeningExecutorService postCommitExecutor =
-                            MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor(
-                                    new ThreadFactoryBuilder().setNameFormat("postCommit-%d").build()));
+                    // When the queue is full, the committing thread runs the post-commit actions, which slows
+                    // down the client instead of piling up transactions. See PostCommitCallerRunsPolicy
+                    int threads = hbaseOmidClientConf.getPostCommitThreads();
+                    final BlockingQueue<Runnable> postCommitQueue =
+                            new ArrayBlockingQueue<>(hbaseOmidClientConf.getPostCommitQueueSize());
+                    ListeningExecutorService postCommitExecutor = MoreExecutors.listeningDecorator(
+                            new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, postCommitQueue,
+                                                   new ThreadFactoryBuilder().setNameFormat("postCommit-%d").build(),
+                                                   new PostCommitCallerRunsPolicy(hbaseOmidClientConf)));
+                    hbaseOmidClientConf.getMetrics().gauge(name("omid", "tm", "hbase", "postCommit", "queueSize"),
+                                                           new Gauge<Integer>() {
+                        @Override
+                        public Integer getValue() {
+                            return postCommitQueue.size();
+                        }
+                    });
                     postCommitter = new HBaseAsyncPostCommitter(syncPostCommitter, postCommitExecutor);
                     break;
                 case SYNC:
@@ -150,6 +214,34 @@ public class HBaseTransactionManager extends AbstractTransactionManager implemen
 
     }
 
+    /**
+     * Runs the post-commit actions rejected by a full queue in the committing thread, as {@link CallerRunsPolicy}.
+     * The commits then wait for their shadow cells as in SYNC mode. As this silently slows down the client, the first
+     * fallback is logged and all of them are counted in the omid.tm.hbase.postCommit.callerRuns metric
+     */
+    private static class PostCommitCallerRunsPolicy extends CallerRunsPolicy {
+
+        private final Counter callerRunsCounter;
+        private final AtomicBoolean logged = new AtomicBoolean(false);
+
+        PostCommitCallerRunsPolicy(HBaseOmidClientConfiguration hbaseOmidClientConf) {
+            this.callerRunsCounter = hbaseOmidClientConf.getMetrics()
+                    .counter(name("omid", "tm", "hbase", "postCommit", "callerRuns"));
+        }
+
+        @Override
+        public void rejectedExecution(Runnable action, ThreadPoolExecutor executor) {
+            callerRunsCounter.inc();
+            if (!executor.isShutdown() && logged.compareAndSet(false, true)) {
+                LOG.warn("Post-commit queue full ({} transactions). The committing threads run the post-commit "
+                         + "actions themselves until there's room again. Consider increasing postCommitThreads or "
+                         + "postCommitQueueSize", executor.getQueue().size());
+            }
+            super.rejectedExecution(action, executor);
+        }
+
+    }
+
     @VisibleForTesting
     static Builder builder(HBaseOmidClientConfiguration hbaseOmidClientConf) {
         return new Builder(hbaseOmidClientConf);
@@ -159,13 +251,30 @@ public class HBaseTransactionManager extends AbstractTransactionManager implemen
                                     PostCommitActions postCommitter,
                                     TSOClient tsoClient,
                                     CommitTable.Client commitTableClient,
+                                    ShadowCellHealer shadowCellHealer,
+                                    HConnection connection,
                                     HBaseTransactionFactory hBaseTransactionFactory) {
 
         super(hBaseOmidClientConfiguration.getMetrics(),
               postCommitter,
               tsoClient,
               commitTableClient,
-              hBaseTransactionFactory);
+              hBaseTransactionFactory,
+              hBaseOmidClientConfiguration.getAsyncThreads());
+
+        this.shadowCellHealer = shadowCellHealer;
+        this.asyncCleanup = hBaseOmidClientConfiguration.isAsyncCleanup();
+        this.connection = connection;
+        this.lazyCommitReclaimer = new LazyCommitReclaimer(connection,
+                                                           commitTableClient,
+                                                           getAsyncExecutor(),
+                                                           hBaseOmidClientConfiguration.getLazyCommitReclaimQueueSize(),
+                                                           hBaseOmidClientConfiguration.getLazyCommitReclaimIntervalInMs(),
+                                                           hBaseOmidClientConfiguration.getMetrics());
+        this.cleanupFailedCounter =
+                hBaseOmidClientConfiguration.getMetrics().counter(name("omid", "tm", "hbase", "cleanup", "failed"));
+        this.rowConflictGranularity = new HashSet<>(hBaseOmidClientConfiguration.getRowConflictGranularity());
+        this.familyConflictGranularity = new HashSet<>(hBaseOmidClientConfiguration.getFamilyConflictGranularity());
 
     }
 
@@ -187,14 +296,22 @@ public class HBaseTransactionManager extends AbstractTransactionManager implemen
     @Override
     public void preRollback(AbstractTransaction<? extends CellId> transaction) throws TransactionManagerException {
         try {
-            // Flush all pending writes
+            // Flush all pending writes. The buffered ones never reached HBase, so they are just discarded
             HBaseTransaction hBaseTx = enforceHBaseTransactionAsParam(transaction);
+            hBaseTx.discardBufferedMutations();
             hBaseTx.flushTables();
         } catch (IOException e) {
             throw new TransactionManagerException("Exception while flushing writes", e);
         }
     }
 
+    @Override
+    public void postClose() throws IOException {
+        shadowCellHealer.close();
+        lazyCommitReclaimer.close();
+        connection.close();
+    }
+
     // ----------------------------------------------------------------------------------------------------------------
     // HBaseTransactionClient method implementations
     // ----------------------------------------------------------------------------------------------------------------
@@ -242,6 +359,116 @@ public class HBaseTransactionManager extends AbstractTransactionManager implemen
     // Helper methods
     // ----------------------------------------------------------------------------------------------------------------
 
+    /**
+     * @return the healer of the shadow cells that readers find missing
+     */
+    ShadowCellHealer getShadowCellHealer() {
+        return shadowCellHealer;
+    }
+
+    /**
+     * @return the reclaimer of the commit table entries of the transactions writing to lazy post-commit tables
+     */
+    LazyCommitReclaimer getLazyCommitReclaimer() {
+        return lazyCommitReclaimer;
+    }
+
+    /**
+     * @return whether the writes of the rolled-back transactions are deleted in the background
+     */
+    boolean isAsyncCleanup() {
+        return asyncCleanup;
+    }
+
+    /**
+     * @return the connection the tables used in the background are taken from
+     */
+    HConnection getConnection() {
+        return connection;
+    }
+
+    Counter getCleanupFailedCounter() {
+        return cleanupFailedCounter;
+    }
+
+    /**
+     * @return the granularity at which the conflicts of the cells of the table and family passed are detected
+     * @throws IOException when the table descriptor can't be read
+     */
+    ConflictGranularity getConflictGranularity(HTableInterface table, byte[] family) throws IOException {
+
+        if (getTableFamilies(table).conflictFreeFamilies.contains(family)) {
+            return ConflictGranularity.NONE;
+        }
+        if (rowConflictGranularity.isEmpty() && familyConflictGranularity.isEmpty()) {
+            return ConflictGranularity.CELL;
+        }
+        String tableName = Bytes.toString(table.getTableName());
+        String familyName = tableName + ":" + Bytes.toString(family);
+        if (rowConflictGranularity.contains(tableName) || rowConflictGranularity.contains(familyName)) {
+            return ConflictGranularity.ROW;
+        }
+        if (familyConflictGranularity.contains(tableName) || familyConflictGranularity.contains(familyName)) {
+            return ConflictGranularity.FAMILY;
+        }
+        return ConflictGranularity.CELL;
+
+    }
+
+    /**
+     * @return whether the table passed has the {@link CellUtils#OMID_LAZY_POST_COMMIT_FLAG} property set
+     * @throws IOException when the table descriptor can't be read
+     */
+    boolean isLazyPostCommit(HTableInterface table) throws IOException {
+        return getTableFamilies(table).lazyPostCommit;
+    }
+
+    /**
+     * @return the families of the table passed
+     * @throws IOException when the table descriptor can't be read
+     */
+    Set<byte[]> getFamilies(HTableInterface table) throws IOException {
+        return getTableFamilies(table).families;
+    }
+
+    private TableFamilies getTableFamilies(HTableInterface table) throws IOException {
+
+        TableName tableName = table.getName();
+        TableFamilies families = tableName == null ? null : tableFamilies.get(tableName);
+        if (families == null) {
+            families = new TableFamilies();
+            HTableDescriptor tableDesc = table.getTableDescriptor();
+            if (tableDesc != null) {
+                families.lazyPostCommit = Boolean.valueOf(tableDesc.getValue(CellUtils.OMID_LAZY_POST_COMMIT_FLAG));
+                boolean conflictFreeTable = Boolean.valueOf(tableDesc.getValue(TTable.OMID_CONFLICT_FREE_FLAG));
+                for (HColumnDescriptor familyDesc : tableDesc.getColumnFamilies()) {
+                    families.families.add(familyDesc.getName());
+                    if (conflictFreeTable || Boolean.valueOf(familyDesc.getValue(TTable.OMID_CONFLICT_FREE_FLAG))) {
+                        families.conflictFreeFamilies.add(familyDesc.getName());
+                    }
+                }
+            }
+            if (tableName != null) {
+                tableFamilies.putIfAbsent(tableName, families);
+            }
+        }
+        return families;
+
+    }
+
+    /**
+     * The families of a table, and the ones with the {@link TTable#OMID_CONFLICT_FREE_FLAG} set, either in the family
+     * or in the table descriptor. Also whether the table has lazy post-commit
+     */
+    private static class TableFamilies {
+
+        boolean lazyPostCommit;
+
+        final Set<byte[]> families = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+        final Set<byte[]> conflictFreeFamilies = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+
+    }
+
     static HBaseTransaction enforceHBaseTransactionAsParam(AbstractTransaction<? extends CellId> tx) {
 
         if (tx instanceof HBaseTransaction) {
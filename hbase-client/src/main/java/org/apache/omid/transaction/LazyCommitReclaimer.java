@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.omid.committable.CommitTable;
+import org.apache.omid.metrics.Counter;
+import org.apache.omid.metrics.Gauge;
+import org.apache.omid.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.omid.metrics.MetricsUtils.name;
+
+/**
+ * Removes the commit table entries of the transactions that wrote to lazy post-commit tables. No shadow cell is
+ * written for their cells on commit, so the entry is the only place where their commit is found until the cells are
+ * materialized: by the compactions, which add the missing shadow cells, or by the readers, which heal them.
+ *
+ * The transactions are tracked once committed, and checked periodically by a task run by the asynchronous executor of
+ * the transaction manager. The entry of a transaction is only removed once its start timestamp is below the low
+ * watermark, so the compactions materialize its cells, and all its cells have their shadow cell or are gone. The
+ * transactions not tracked, because there are too many or the transaction manager was closed first, keep their entry,
+ * as the ones of the clients that crash after committing.
+ */
+class LazyCommitReclaimer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LazyCommitReclaimer.class);
+
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private final HConnection connection;
+    private final CommitTable.Client commitTableClient;
+    private final ExecutorService reclaimExecutor;
+    private final int maxTrackedCommits;
+    private final Queue<LazyCommit> newCommits = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger trackedCommits = new AtomicInteger(0);
+    // Only accessed from reclaim()
+    private final List<LazyCommit> pendingCommits = new LinkedList<>();
+    private final ScheduledExecutorService scheduler;
+
+    // Metrics
+    private final Counter reclaimedCounter;
+    private final Counter skippedCounter;
+    private final Counter failedCounter;
+
+    /**
+     * @param connection        connection the tables checked are taken from
+     * @param commitTableClient client removing the entries
+     * @param reclaimExecutor   executor running the checks, drained before the commit table client is closed
+     * @param maxTrackedCommits max number of transactions waiting for their entry to be removed
+     * @param intervalInMs      time between checks
+     * @param metrics           registry of the metrics
+     */
+    LazyCommitReclaimer(HConnection connection,
+                        CommitTable.Client commitTableClient,
+                        final ExecutorService reclaimExecutor,
+                        int maxTrackedCommits,
+                        long intervalInMs,
+                        MetricsRegistry metrics) {
+
+        this.connection = connection;
+        this.commitTableClient = commitTableClient;
+        this.reclaimExecutor = reclaimExecutor;
+        this.maxTrackedCommits = maxTrackedCommits;
+
+        this.reclaimedCounter = metrics.counter(name("omid", "tm", "hbase", "lazyCommitReclaimer", "reclaimed"));
+        this.skippedCounter = metrics.counter(name("omid", "tm", "hbase", "lazyCommitReclaimer", "skipped"));
+        this.failedCounter = metrics.counter(name("omid", "tm", "hbase", "lazyCommitReclaimer", "failed"));
+        metrics.gauge(name("omid", "tm", "hbase", "lazyCommitReclaimer", "tracked"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return trackedCommits.get();
+            }
+        });
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("omid-lazy-commit-reclaimer-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    reclaimExecutor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            reclaim();
+                        }
+                    }).get();
+                } catch (RejectedExecutionException e) {
+                    // The transaction manager is closing
+                } catch (ExecutionException e) {
+                    LOG.warn("Error reclaiming the commit table entries of lazy post-commit transactions",
+                             e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, intervalInMs, intervalInMs, MILLISECONDS);
+
+    }
+
+    /**
+     * Tracks the committed transaction passed, whose commit table entry is kept. It doesn't block
+     *
+     * @param tx        the committed transaction
+     * @param lazyCells the cells it wrote to lazy post-commit tables
+     */
+    void add(HBaseTransaction tx, List<HBaseCellId> lazyCells) {
+
+        if (trackedCommits.incrementAndGet() > maxTrackedCommits) {
+            trackedCommits.decrementAndGet();
+            skippedCounter.inc();
+            LOG.debug("{}: Too many lazy post-commit transactions tracked. Commit table entry left", tx);
+            return;
+        }
+        newCommits.add(new LazyCommit(tx.getStartTimestamp(), lazyCells));
+
+    }
+
+    /**
+     * Removes the commit table entries of the tracked transactions whose cells are materialized
+     */
+    @VisibleForTesting
+    synchronized void reclaim() {
+
+        LazyCommit newCommit;
+        while ((newCommit = newCommits.poll()) != null) {
+            pendingCommits.add(newCommit);
+        }
+        if (pendingCommits.isEmpty()) {
+            return;
+        }
+
+        long lowWatermark;
+        try {
+            lowWatermark = commitTableClient.readLowWatermark().get();
+        } catch (ExecutionException e) {
+            LOG.warn("Can't read the low watermark. The lazy post-commit entries are kept", e.getCause());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // Below the low watermark all the compactions materialize the cells, whatever the table
+        List<LazyCommit> belowLowWatermark = new ArrayList<>();
+        for (LazyCommit commit : pendingCommits) {
+            if (commit.startTimestamp < lowWatermark) {
+                belowLowWatermark.add(commit);
+            }
+        }
+
+        Set<LazyCommit> reclaimed = Collections.newSetFromMap(new IdentityHashMap<LazyCommit, Boolean>());
+        for (int from = 0; from < belowLowWatermark.size() && !Thread.currentThread().isInterrupted();
+             from += MAX_BATCH_SIZE) {
+            List<LazyCommit> batch =
+                    belowLowWatermark.subList(from, Math.min(from + MAX_BATCH_SIZE, belowLowWatermark.size()));
+            reclaimed.addAll(reclaimBatch(batch));
+        }
+
+        Iterator<LazyCommit> pendingIterator = pendingCommits.iterator();
+        while (pendingIterator.hasNext()) {
+            if (reclaimed.contains(pendingIterator.next())) {
+                pendingIterator.remove();
+                trackedCommits.decrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * @return the commits of the batch passed whose entries were removed
+     */
+    private List<LazyCommit> reclaimBatch(List<LazyCommit> batch) {
+
+        // The commits whose cells are all found materialized
+        Set<LazyCommit> materialized = Collections.newSetFromMap(new IdentityHashMap<LazyCommit, Boolean>());
+        materialized.addAll(batch);
+
+        // One get per cell, grouped by table along with the commit writing it
+        Map<TableName, List<Get>> getsPerTable = new HashMap<>();
+        Map<TableName, List<LazyCommit>> commitsPerTable = new HashMap<>();
+        for (LazyCommit commit : batch) {
+            for (HBaseCellId cell : commit.lazyCells) {
+                TableName tableName = cell.getTable().getName();
+                List<Get> tableGets = getsPerTable.get(tableName);
+                if (tableGets == null) {
+                    tableGets = new ArrayList<>();
+                    getsPerTable.put(tableName, tableGets);
+                    commitsPerTable.put(tableName, new ArrayList<LazyCommit>());
+                }
+                Get get = new Get(cell.getRow());
+                get.addColumn(cell.getFamily(), cell.getQualifier());
+                get.addColumn(cell.getFamily(), CellUtils.addShadowCellSuffix(cell.getQualifier()));
+                tableGets.add(get);
+                commitsPerTable.get(tableName).add(commit);
+            }
+        }
+
+        for (Map.Entry<TableName, List<Get>> entry : getsPerTable.entrySet()) {
+            List<Get> tableGets = entry.getValue();
+            List<LazyCommit> tableCommits = commitsPerTable.get(entry.getKey());
+            try (HTableInterface table = connection.getTable(entry.getKey())) {
+                for (int i = 0; i < tableGets.size(); i++) {
+                    tableGets.get(i).setTimeStamp(tableCommits.get(i).startTimestamp);
+                }
+                Result[] results = table.get(tableGets);
+                for (int i = 0; i < results.length; i++) {
+                    if (!isMaterialized(results[i])) {
+                        materialized.remove(tableCommits.get(i));
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warn("Can't check the lazy post-commit cells of table {}. The commit table entries of their "
+                         + "transactions are kept", entry.getKey(), e);
+                materialized.removeAll(tableCommits);
+            }
+        }
+
+        List<LazyCommit> removing = new ArrayList<>(materialized);
+        List<ListenableFuture<Void>> entryRemovals = new ArrayList<>(removing.size());
+        for (LazyCommit commit : removing) {
+            entryRemovals.add(commitTableClient.completeTransaction(commit.startTimestamp));
+        }
+        List<LazyCommit> removed = new ArrayList<>(removing.size());
+        for (int i = 0; i < entryRemovals.size(); i++) {
+            try {
+                entryRemovals.get(i).get();
+                removed.add(removing.get(i));
+                reclaimedCounter.inc();
+            } catch (ExecutionException e) {
+                LOG.warn("Can't remove the commit table entry of a lazy post-commit transaction", e.getCause());
+                failedCounter.inc();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return removed;
+
+    }
+
+    /**
+     * A cell is materialized when it has its shadow cell, or when it's gone, e.g. removed by a major compaction
+     */
+    private static boolean isMaterialized(Result result) {
+
+        for (Cell cell : result.rawCells()) {
+            if (CellUtils.isShadowCell(cell)) {
+                return true;
+            }
+        }
+        return result.isEmpty();
+
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(10, SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A committed transaction whose commit table entry is kept for its cells of lazy post-commit tables
+     */
+    private static class LazyCommit {
+
+        private final long startTimestamp;
+        private final List<HBaseCellId> lazyCells;
+
+        LazyCommit(long startTimestamp, List<HBaseCellId> lazyCells) {
+            this.startTimestamp = startTimestamp;
+            this.lazyCells = lazyCells;
+        }
+
+    }
+
+}
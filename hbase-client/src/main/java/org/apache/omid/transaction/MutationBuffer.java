@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Write-behind buffer of the mutations of a transaction on a table. All the cells written by a transaction have its
+ * start timestamp, so writing a cell again replaces the previous version in the buffer instead of sending both to
+ * HBase. The buffered mutations are sent in a single batch, one put per row, when flushed.
+ */
+class MutationBuffer {
+
+    private final HTableInterface table;
+
+    // row -> family -> qualifier -> cell
+    private final NavigableMap<byte[], NavigableMap<byte[], NavigableMap<byte[], Cell>>> rows =
+            new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    private long heapSize = 0;
+    // Cells sent to HBase by previous flushes: row -> family -> qualifiers. When the transaction rolls back, the
+    // buffered cells not in here never reached HBase, so they don't need to be cleaned up
+    private final NavigableMap<byte[], NavigableMap<byte[], NavigableSet<byte[]>>> flushedCells =
+            new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+    MutationBuffer(HTableInterface table) {
+        this.table = table;
+    }
+
+    void add(Put put) {
+
+        NavigableMap<byte[], NavigableMap<byte[], Cell>> families = rows.get(put.getRow());
+        if (families == null) {
+            families = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+            rows.put(put.getRow(), families);
+        }
+        for (Map.Entry<byte[], List<Cell>> entry : put.getFamilyCellMap().entrySet()) {
+            NavigableMap<byte[], Cell> qualifiers = families.get(entry.getKey());
+            if (qualifiers == null) {
+                qualifiers = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+                families.put(entry.getKey(), qualifiers);
+            }
+            for (Cell cell : entry.getValue()) {
+                Cell previous = qualifiers.put(CellUtil.cloneQualifier(cell), cell);
+                if (previous != null) {
+                    heapSize -= KeyValueUtil.ensureKeyValue(previous).heapSize();
+                }
+                heapSize += KeyValueUtil.ensureKeyValue(cell).heapSize();
+            }
+        }
+
+    }
+
+    boolean isEmpty() {
+        return rows.isEmpty();
+    }
+
+    long getHeapSize() {
+        return heapSize;
+    }
+
+    /**
+     * Sends the buffered mutations to HBase and empties the buffer
+     *
+     * @throws IOException if a remote or network exception occurs
+     */
+    void flush() throws IOException {
+
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Put> puts = new ArrayList<>(rows.size());
+        for (Map.Entry<byte[], NavigableMap<byte[], NavigableMap<byte[], Cell>>> row : rows.entrySet()) {
+            Put put = new Put(row.getKey());
+            for (NavigableMap<byte[], Cell> qualifiers : row.getValue().values()) {
+                for (Cell cell : qualifiers.values()) {
+                    put.add(cell);
+                }
+            }
+            puts.add(put);
+        }
+        table.put(puts);
+        table.flushCommits();
+        addFlushedCells();
+        clear();
+
+    }
+
+    /**
+     * Discards the buffered mutations
+     *
+     * @return the cells discarded that no previous flush sent to HBase
+     */
+    List<HBaseCellId> discard() {
+
+        List<HBaseCellId> unflushedCells = new ArrayList<>();
+        for (Map.Entry<byte[], NavigableMap<byte[], NavigableMap<byte[], Cell>>> row : rows.entrySet()) {
+            NavigableMap<byte[], NavigableSet<byte[]>> flushedFamilies = flushedCells.get(row.getKey());
+            for (Map.Entry<byte[], NavigableMap<byte[], Cell>> family : row.getValue().entrySet()) {
+                NavigableSet<byte[]> flushedQualifiers =
+                        flushedFamilies == null ? null : flushedFamilies.get(family.getKey());
+                for (Map.Entry<byte[], Cell> qualifier : family.getValue().entrySet()) {
+                    if (flushedQualifiers == null || !flushedQualifiers.contains(qualifier.getKey())) {
+                        unflushedCells.add(new HBaseCellId(table, row.getKey(), family.getKey(), qualifier.getKey(),
+                                                           qualifier.getValue().getTimestamp()));
+                    }
+                }
+            }
+        }
+        clear();
+        return unflushedCells;
+
+    }
+
+    private void clear() {
+        rows.clear();
+        heapSize = 0;
+    }
+
+    private void addFlushedCells() {
+
+        for (Map.Entry<byte[], NavigableMap<byte[], NavigableMap<byte[], Cell>>> row : rows.entrySet()) {
+            NavigableMap<byte[], NavigableSet<byte[]>> flushedFamilies = flushedCells.get(row.getKey());
+            if (flushedFamilies == null) {
+                flushedFamilies = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+                flushedCells.put(row.getKey(), flushedFamilies);
+            }
+            for (Map.Entry<byte[], NavigableMap<byte[], Cell>> family : row.getValue().entrySet()) {
+                NavigableSet<byte[]> flushedQualifiers = flushedFamilies.get(family.getKey());
+                if (flushedQualifiers == null) {
+                    flushedQualifiers = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+                    flushedFamilies.put(family.getKey(), flushedQualifiers);
+                }
+                flushedQualifiers.addAll(family.getValue().keySet());
+            }
+        }
+
+    }
+
+}
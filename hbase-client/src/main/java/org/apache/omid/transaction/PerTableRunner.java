@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import org.apache.hadoop.hbase.client.HTableInterface;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs an action on each of the tables written by a transaction, in parallel when there are several.
+ *
+ * The calling thread takes part: it runs the actions that no executor thread has started yet itself. So the actions
+ * complete even when all the executor threads are busy, e.g. waiting in turn for their own per-table actions.
+ *
+ * HTables are not thread-safe. Each table is only used by the thread running its action, while the caller waits.
+ */
+final class PerTableRunner {
+
+    interface TableAction<T> {
+
+        void run(HTableInterface table, T argument) throws IOException;
+
+    }
+
+    private PerTableRunner() {
+    }
+
+    /**
+     * @param executor          runs the actions of all the tables but the first one
+     * @param argumentsPerTable the argument of the action for each table
+     * @param action            the action to run on each table
+     * @param description       what the action does, for the error messages
+     * @throws IOException the first error of the actions, once all of them have finished
+     */
+    static <T> void runPerTable(Executor executor,
+                                Map<HTableInterface, T> argumentsPerTable,
+                                final TableAction<T> action,
+                                String description) throws IOException {
+
+        if (argumentsPerTable.size() <= 1) {
+            for (Map.Entry<HTableInterface, T> entry : argumentsPerTable.entrySet()) {
+                action.run(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        List<ListenableFutureTask<Void>> tasks = new ArrayList<>(argumentsPerTable.size());
+        for (final Map.Entry<HTableInterface, T> entry : argumentsPerTable.entrySet()) {
+            ListenableFutureTask<Void> task = ListenableFutureTask.create(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    action.run(entry.getKey(), entry.getValue());
+                    return null;
+                }
+            });
+            if (!tasks.isEmpty()) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // The transaction manager is closing. Run below by the calling thread
+                }
+            }
+            tasks.add(task);
+        }
+        // Running a task already started or done by an executor thread has no effect
+        for (ListenableFutureTask<Void> task : tasks) {
+            task.run();
+        }
+
+        try {
+            // Waits for all of them, so no table is still in use by an executor thread when returning
+            Futures.successfulAsList(tasks).get();
+            Futures.allAsList(tasks).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while " + description, e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw new IOException("Problem " + description, e.getCause());
+        }
+
+    }
+
+}
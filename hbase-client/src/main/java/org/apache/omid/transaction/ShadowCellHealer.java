@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.omid.metrics.Counter;
+import org.apache.omid.metrics.Gauge;
+import org.apache.omid.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.omid.metrics.MetricsUtils.name;
+
+/**
+ * Writes in the background the shadow cells that readers found missing, once they located the commit timestamp of
+ * the cells in the commit table. Readers just enqueue the heal, so they don't pay for the write.
+ *
+ * A shadow cell is only queued once while its heal is pending, so concurrent readers of the same cells don't heal them
+ * again. The heals are sent in batches, one put per row and table. When the queue is full the heal is skipped; it's
+ * just an optimization for later reads, which will find the shadow cell missing and heal it again.
+ */
+class ShadowCellHealer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShadowCellHealer.class);
+
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private final BlockingQueue<Heal> healQueue;
+    // Heals queued or being written
+    private final Set<Heal> pendingHeals = Collections.newSetFromMap(new ConcurrentHashMap<Heal, Boolean>());
+    // Only accessed from the healer thread
+    private final Map<TableName, HTableInterface> healerTables = new HashMap<>();
+    private final ExecutorService healerExecutor;
+
+    // Metrics
+    private final Counter healsIssuedCounter;
+    private final Counter healsSkippedCounter;
+    private final Counter healsFailedCounter;
+
+    ShadowCellHealer(int queueSize, MetricsRegistry metrics) {
+        this(queueSize, metrics, Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("omid-shadow-cell-healer-%d").setDaemon(true).build()));
+    }
+
+    @VisibleForTesting
+    ShadowCellHealer(int queueSize, MetricsRegistry metrics, ExecutorService healerExecutor) {
+
+        this.healQueue = new ArrayBlockingQueue<>(queueSize);
+        this.healerExecutor = healerExecutor;
+
+        this.healsIssuedCounter = metrics.counter(name("omid", "tm", "hbase", "shadowCellHealer", "issued"));
+        this.healsSkippedCounter = metrics.counter(name("omid", "tm", "hbase", "shadowCellHealer", "skipped"));
+        this.healsFailedCounter = metrics.counter(name("omid", "tm", "hbase", "shadowCellHealer", "failed"));
+        metrics.gauge(name("omid", "tm", "hbase", "shadowCellHealer", "queueSize"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return healQueue.size();
+            }
+        });
+
+        healerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                healLoop();
+            }
+        });
+
+    }
+
+    /**
+     * Queues the heal of the shadow cell of the cell passed. It doesn't block
+     *
+     * @param table           table the cell was read from
+     * @param cell            cell whose shadow cell is missing
+     * @param commitTimestamp commit timestamp of the transaction that wrote the cell
+     */
+    void heal(HTableInterface table, Cell cell, long commitTimestamp) {
+
+        Heal heal = new Heal(table, cell, commitTimestamp);
+        if (!pendingHeals.add(heal)) { // Already being healed
+            healsSkippedCounter.inc();
+            return;
+        }
+        if (!healQueue.offer(heal)) {
+            pendingHeals.remove(heal);
+            healsSkippedCounter.inc();
+        }
+
+    }
+
+    /**
+     * Waits until the heals queued so far are written, or failed
+     */
+    @VisibleForTesting
+    void awaitPendingHeals() throws InterruptedException {
+        while (!pendingHeals.isEmpty()) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        healerExecutor.shutdownNow();
+        try {
+            healerExecutor.awaitTermination(3, SECONDS);
+        } catch (InterruptedException e) {
+            LOG.error("Interrupted whilst finishing the shadow cell healer");
+            Thread.currentThread().interrupt();
+        }
+        for (HTableInterface healerTable : healerTables.values()) {
+            healerTable.close();
+        }
+
+    }
+
+    private void healLoop() {
+
+        List<Heal> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(healQueue.take());
+                healQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                healBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                LOG.error("Error healing shadow cells", t);
+                healsFailedCounter.inc(batch.size());
+                pendingHeals.removeAll(batch);
+            }
+            batch.clear();
+        }
+
+    }
+
+    private void healBatch(List<Heal> batch) {
+
+        Map<TableName, List<Heal>> healsPerTable = new HashMap<>();
+        for (Heal heal : batch) {
+            List<Heal> tableHeals = healsPerTable.get(heal.tableName);
+            if (tableHeals == null) {
+                tableHeals = new ArrayList<>();
+                healsPerTable.put(heal.tableName, tableHeals);
+            }
+            tableHeals.add(heal);
+        }
+
+        for (List<Heal> tableHeals : healsPerTable.values()) {
+            try {
+                getHealerTable(tableHeals.get(0)).put(createPuts(tableHeals));
+                healsIssuedCounter.inc(tableHeals.size());
+            } catch (IOException e) {
+                LOG.warn("Failed healing {} shadow cells of table {}",
+                         tableHeals.size(), tableHeals.get(0).tableName, e);
+                healsFailedCounter.inc(tableHeals.size());
+            } finally {
+                pendingHeals.removeAll(tableHeals);
+            }
+        }
+
+    }
+
+    private HTableInterface getHealerTable(Heal heal) throws IOException {
+        HTableInterface healerTable = healerTables.get(heal.tableName);
+        if (healerTable == null) {
+            healerTable = new HTable(heal.configuration, heal.tableName);
+            healerTables.put(heal.tableName, healerTable);
+        }
+        return healerTable;
+    }
+
+    private static List<Put> createPuts(List<Heal> heals) {
+
+        NavigableMap<byte[], Put> puts = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        for (Heal heal : heals) {
+            Put put = puts.get(heal.row);
+            if (put == null) {
+                put = new Put(heal.row);
+                puts.put(heal.row, put);
+            }
+            put.add(heal.family, heal.shadowCellQualifier, heal.timestamp, Bytes.toBytes(heal.commitTimestamp));
+        }
+        return new ArrayList<>(puts.values());
+
+    }
+
+    /**
+     * A shadow cell to write. Heals are equal when they are for the same shadow cell
+     */
+    private static class Heal {
+
+        private final Configuration configuration;
+        private final TableName tableName;
+        private final byte[] row;
+        private final byte[] family;
+        private final byte[] shadowCellQualifier;
+        private final long timestamp;
+        private final long commitTimestamp;
+
+        Heal(HTableInterface table, Cell cell, long commitTimestamp) {
+            this.configuration = table.getConfiguration();
+            this.tableName = table.getName();
+            this.row = CellUtil.cloneRow(cell);
+            this.family = CellUtil.cloneFamily(cell);
+            this.shadowCellQualifier = CellUtils.addShadowCellSuffix(cell.getQualifierArray(),
+                                                                     cell.getQualifierOffset(),
+                                                                     cell.getQualifierLength());
+            this.timestamp = cell.getTimestamp();
+            this.commitTimestamp = commitTimestamp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Heal)) {
+                return false;
+            }
+            Heal other = (Heal) o;
+            return timestamp == other.timestamp
+                    && tableName.equals(other.tableName)
+                    && Arrays.equals(row, other.row)
+                    && Arrays.equals(family, other.family)
+                    && Arrays.equals(shadowCellQualifier, other.shadowCellQualifier);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = tableName.hashCode();
+            result = 31 * result + Arrays.hashCode(row);
+            result = 31 * result + Arrays.hashCode(family);
+            result = 31 * result + Arrays.hashCode(shadowCellQualifier);
+            result = 31 * result + (int) (timestamp ^ (timestamp >>> 32));
+            return result;
+        }
+
+    }
+
+}
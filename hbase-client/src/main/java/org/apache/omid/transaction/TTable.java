@@ -26,6 +26,7 @@ import com.google.common.collect.Multimaps;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HConstants;
@@ -36,6 +37,7 @@ import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
@@ -51,6 +53,7 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -60,6 +63,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
+import java.util.TreeMap;
+
+import static org.apache.omid.committable.CommitTable.CommitTimestamp.Location.NOT_PRESENT;
+import static org.apache.omid.transaction.SnapshotFilterAttributes.setSnapshot;
 
 /**
  * Provides transactional methods for accessing and modifying a given snapshot of data identified by an opaque {@link
@@ -69,7 +76,12 @@ public class TTable implements Closeable {
 
     private static Logger LOG = LoggerFactory.getLogger(TTable.class);
 
-    private final HTableInterface healerTable;
+    /**
+     * Table or column family property marking its data as conflict-free, e.g. because its keys are unique by
+     * construction. The writes to it are not sent to the TSO for conflict detection. The property is read once per
+     * table by each transaction manager
+     */
+    public static final String OMID_CONFLICT_FREE_FLAG = "OMID_CONFLICT_FREE";
 
     private HTableInterface table;
 
@@ -91,12 +103,15 @@ public class TTable implements Closeable {
 
     public TTable(HTableInterface hTable) throws IOException {
         table = hTable;
-        healerTable = new HTable(table.getConfiguration(), table.getTableName());
     }
 
+    /**
+     * @deprecated The shadow cells are healed in the background by the transaction manager, so the healer table
+     *             passed is not used any more. Use {@link #TTable(HTableInterface)} instead
+     */
+    @Deprecated
     public TTable(HTableInterface hTable, HTableInterface healerTable) throws IOException {
-        table = hTable;
-        this.healerTable = healerTable;
+        this(hTable);
     }
 
     // ----------------------------------------------------------------------------------------------------------------
@@ -111,7 +126,6 @@ public class TTable implements Closeable {
     @Override
     public void close() throws IOException {
         table.close();
-        healerTable.close();
     }
 
     // ----------------------------------------------------------------------------------------------------------------
@@ -131,26 +145,9 @@ public class TTable implements Closeable {
         throwExceptionIfOpSetsTimerange(get);
 
         HBaseTransaction transaction = enforceHBaseTransactionAsParam(tx);
+        flushBufferedMutations(transaction);
 
-        final long readTimestamp = transaction.getStartTimestamp();
-        final Get tsget = new Get(get.getRow()).setFilter(get.getFilter());
-        TimeRange timeRange = get.getTimeRange();
-        long startTime = timeRange.getMin();
-        long endTime = Math.min(timeRange.getMax(), readTimestamp + 1);
-        tsget.setTimeRange(startTime, endTime).setMaxVersions(1);
-        Map<byte[], NavigableSet<byte[]>> kvs = get.getFamilyMap();
-        for (Map.Entry<byte[], NavigableSet<byte[]>> entry : kvs.entrySet()) {
-            byte[] family = entry.getKey();
-            NavigableSet<byte[]> qualifiers = entry.getValue();
-            if (qualifiers == null || qualifiers.isEmpty()) {
-                tsget.addFamily(family);
-            } else {
-                for (byte[] qualifier : qualifiers) {
-                    tsget.addColumn(family, qualifier);
-                    tsget.addColumn(family, CellUtils.addShadowCellSuffix(qualifier));
-                }
-            }
-        }
+        final Get tsget = createSnapshotGet(get, transaction);
         LOG.trace("Initial Get = {}", tsget);
 
         // Return the KVs that belong to the transaction snapshot, ask for more
@@ -184,7 +181,9 @@ public class TTable implements Closeable {
         final Get deleteG = new Get(delete.getRow());
         Map<byte[], List<Cell>> fmap = delete.getFamilyCellMap();
         if (fmap.isEmpty()) {
-            issueGet = true;
+            for (byte[] family : transaction.getFamilies(table)) {
+                issueGet |= deleteFamily(transaction, delete.getRow(), family, deleteP, deleteG);
+            }
         }
         for (List<Cell> cells : fmap.values()) {
             for (Cell cell : cells) {
@@ -196,15 +195,15 @@ public class TTable implements Closeable {
                                     startTimestamp,
                                     CellUtils.DELETE_TOMBSTONE);
                         transaction.addWriteSetElement(
-                            new HBaseCellId(table,
-                                            delete.getRow(),
-                                            CellUtil.cloneFamily(cell),
-                                            CellUtil.cloneQualifier(cell),
-                                            cell.getTimestamp()));
+                            newCellId(transaction,
+                                      delete.getRow(),
+                                      CellUtil.cloneFamily(cell),
+                                      CellUtil.cloneQualifier(cell),
+                                      cell.getTimestamp()));
                         break;
                     case DeleteFamily:
-                        deleteG.addFamily(CellUtil.cloneFamily(cell));
-                        issueGet = true;
+                        issueGet |= deleteFamily(transaction, delete.getRow(), CellUtil.cloneFamily(cell), deleteP,
+                                                 deleteG);
                         break;
                     case Delete:
                         if (cell.getTimestamp() == HConstants.LATEST_TIMESTAMP) {
@@ -213,11 +212,11 @@ public class TTable implements Closeable {
                                         startTimestamp,
                                         CellUtils.DELETE_TOMBSTONE);
                             transaction.addWriteSetElement(
-                                new HBaseCellId(table,
-                                                delete.getRow(),
-                                                CellUtil.cloneFamily(cell),
-                                                CellUtil.cloneQualifier(cell),
-                                                cell.getTimestamp()));
+                                newCellId(transaction,
+                                          delete.getRow(),
+                                          CellUtil.cloneFamily(cell),
+                                          CellUtil.cloneQualifier(cell),
+                                          cell.getTimestamp()));
                             break;
                         } else {
                             throw new UnsupportedOperationException(
@@ -236,20 +235,65 @@ public class TTable implements Closeable {
                 for (Entry<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> entryF : result.getMap()
                     .entrySet()) {
                     byte[] family = entryF.getKey();
+                    ConflictGranularity conflictGranularity = transaction.getConflictGranularity(table, family);
                     for (Entry<byte[], NavigableMap<Long, byte[]>> entryQ : entryF.getValue().entrySet()) {
                         byte[] qualifier = entryQ.getKey();
                         deleteP.add(family, qualifier, CellUtils.DELETE_TOMBSTONE);
                         transaction.addWriteSetElement(new HBaseCellId(table, delete.getRow(), family, qualifier,
-                                                                       transaction.getStartTimestamp()));
+                                                                       transaction.getStartTimestamp(),
+                                                                       conflictGranularity));
                     }
                 }
             }
         }
 
         if (!deleteP.isEmpty()) {
-            table.put(deleteP);
+            writeMutation(transaction, deleteP);
+        }
+
+    }
+
+    /**
+     * Deletes a whole family of a row. When the conflicts of the family are detected per family, per row or not at
+     * all, a family delete marker is added to the put passed. It hides the versions of the cells of the family older
+     * than the transaction, so they don't have to be read, and it's a single cell for conflict detection. Otherwise
+     * the family is added to the get passed, to read the cells of the family and delete them one by one, as a key of
+     * the whole family wouldn't conflict with the concurrent writes to single cells of the family.
+     *
+     * @return whether the family has to be read
+     */
+    private boolean deleteFamily(HBaseTransaction transaction, byte[] row, byte[] family, Put deleteP, Get deleteG)
+        throws IOException {
+
+        ConflictGranularity conflictGranularity = transaction.getConflictGranularity(table, family);
+        if (conflictGranularity == ConflictGranularity.CELL) {
+            deleteG.addFamily(family);
+            return true;
         }
 
+        // The cells of the family written by the transaction itself have the same timestamp as the marker, so they
+        // are deleted one by one
+        final long startTimestamp = transaction.getStartTimestamp();
+        deleteP.add(family, CellUtils.FAMILY_DELETE_QUALIFIER, startTimestamp, CellUtils.DELETE_TOMBSTONE);
+        transaction.addWriteSetElement(new HBaseCellId(table, row, family, CellUtils.FAMILY_DELETE_QUALIFIER,
+                                                       startTimestamp, conflictGranularity));
+
+        List<byte[]> writtenQualifiers = new ArrayList<>();
+        for (HBaseCellId cell : transaction.getWriteSet()) {
+            if (Arrays.equals(cell.getRow(), row)
+                    && Arrays.equals(cell.getFamily(), family)
+                    && !Arrays.equals(cell.getQualifier(), CellUtils.FAMILY_DELETE_QUALIFIER)
+                    && Arrays.equals(cell.getTable().getTableName(), table.getTableName())) {
+                writtenQualifiers.add(cell.getQualifier());
+            }
+        }
+        for (byte[] qualifier : writtenQualifiers) {
+            deleteP.add(family, qualifier, startTimestamp, CellUtils.DELETE_TOMBSTONE);
+            transaction.addWriteSetElement(new HBaseCellId(table, row, family, qualifier, startTimestamp,
+                                                           conflictGranularity));
+        }
+        return false;
+
     }
 
     /**
@@ -268,9 +312,13 @@ public class TTable implements Closeable {
         final long startTimestamp = transaction.getStartTimestamp();
         // create put with correct ts
         final Put tsput = new Put(put.getRow(), startTimestamp);
+        // The row and the family of each group of cells are shared by their cell ids
+        final byte[] row = put.getRow();
         Map<byte[], List<Cell>> kvs = put.getFamilyCellMap();
-        for (List<Cell> kvl : kvs.values()) {
-            for (Cell c : kvl) {
+        for (Map.Entry<byte[], List<Cell>> familyCells : kvs.entrySet()) {
+            final byte[] family = Bytes.copy(familyCells.getKey());
+            final ConflictGranularity conflictGranularity = transaction.getConflictGranularity(table, family);
+            for (Cell c : familyCells.getValue()) {
                 CellUtils.validateCell(c, startTimestamp);
                 // Reach into keyvalue to update timestamp.
                 // It's not nice to reach into keyvalue internals,
@@ -280,15 +328,62 @@ public class TTable implements Closeable {
                 tsput.add(kv);
 
                 transaction.addWriteSetElement(
-                    new HBaseCellId(table,
-                                    CellUtil.cloneRow(kv),
-                                    CellUtil.cloneFamily(kv),
-                                    CellUtil.cloneQualifier(kv),
-                                    kv.getTimestamp()));
+                    new HBaseCellId(table, row, family, CellUtil.cloneQualifier(kv), kv.getTimestamp(),
+                                    conflictGranularity));
             }
         }
 
-        table.put(tsput);
+        writeMutation(transaction, tsput);
+    }
+
+    /**
+     * Transactional version of {@link HTableInterface#increment(Increment increment)} for counters. Each increment is
+     * written as a delta record, which readers add to the older versions of the counter, so concurrent increments of
+     * the same counter don't conflict. They still conflict with the puts and deletes of the counter committed after
+     * the transaction started, which would hide the delta. The counters a transaction put or deleted are incremented in
+     * place. The values incremented are not returned, as that would need reading them.
+     *
+     * As the deltas are versions of the counter, its family has to keep enough versions to hold the deltas written
+     * between compactions.
+     *
+     * @param increment an instance of Increment
+     * @param tx        an instance of transaction to be used
+     * @throws IOException if a remote or network exception occurs.
+     */
+    public void increment(Transaction tx, Increment increment) throws IOException {
+
+        throwExceptionIfOpSetsTimerange(increment);
+        checkTimerangeIsSetToDefaultValuesOrThrowException(increment.getTimeRange());
+
+        HBaseTransaction transaction = enforceHBaseTransactionAsParam(tx);
+
+        final long startTimestamp = transaction.getStartTimestamp();
+        final byte[] row = increment.getRow();
+        final Put deltaPut = new Put(row, startTimestamp);
+        for (Map.Entry<byte[], NavigableMap<byte[], Long>> familyDeltas
+                : increment.getFamilyMapOfLongs().entrySet()) {
+            final byte[] family = familyDeltas.getKey();
+            for (Map.Entry<byte[], Long> qualifierDelta : familyDeltas.getValue().entrySet()) {
+                byte[] qualifier = qualifierDelta.getKey();
+                HBaseCellId cellId = new HBaseCellId(table, row, family, qualifier, startTimestamp,
+                                                     transaction.getConflictGranularity(table, family));
+                if (transaction.isWrittenByPutOrDelete(cellId)) {
+                    long value = readCounter(transaction, row, family, qualifier);
+                    Put put = new Put(row);
+                    put.add(family, qualifier, Bytes.toBytes(value + qualifierDelta.getValue()));
+                    put(transaction, put);
+                    continue;
+                }
+                CellUtils.validateCell(new KeyValue(row, family, qualifier), startTimestamp);
+                long counterDelta = transaction.addCounterDelta(cellId, qualifierDelta.getValue());
+                deltaPut.add(family, qualifier, startTimestamp, CellUtils.buildCounterDelta(counterDelta));
+            }
+        }
+
+        if (!deltaPut.isEmpty()) {
+            writeMutation(transaction, deltaPut);
+        }
+
     }
 
     /**
@@ -304,10 +399,12 @@ public class TTable implements Closeable {
         throwExceptionIfOpSetsTimerange(scan);
 
         HBaseTransaction transaction = enforceHBaseTransactionAsParam(tx);
+        flushBufferedMutations(transaction);
 
         Scan tsscan = new Scan(scan);
         tsscan.setMaxVersions(1);
         tsscan.setTimeRange(0, transaction.getStartTimestamp() + 1);
+        setSnapshot(tsscan, transaction.getStartTimestamp(), transaction.isReadOnly());
         Map<byte[], NavigableSet<byte[]>> kvs = scan.getFamilyMap();
         for (Map.Entry<byte[], NavigableSet<byte[]>> entry : kvs.entrySet()) {
             byte[] family = entry.getKey();
@@ -318,6 +415,8 @@ public class TTable implements Closeable {
             for (byte[] qualifier : qualifiers) {
                 tsscan.addColumn(family, CellUtils.addShadowCellSuffix(qualifier));
             }
+            tsscan.addColumn(family, CellUtils.FAMILY_DELETE_QUALIFIER);
+            tsscan.addColumn(family, CellUtils.addShadowCellSuffix(CellUtils.FAMILY_DELETE_QUALIFIER));
         }
         return new TransactionalClientScanner(transaction, tsscan, 1);
     }
@@ -337,55 +436,299 @@ public class TTable implements Closeable {
 
         assert (rawCells != null && transaction != null && versionsToRequest >= 1);
 
-        List<Cell> keyValuesInSnapshot = new ArrayList<>();
+        return filterRowsForSnapshot(Collections.singletonList(rawCells), transaction, versionsToRequest).get(0);
+    }
+
+    /**
+     * Batched version of {@link #filterCellsForSnapshot(List, HBaseTransaction, int)} for the raw cells of several
+     * rows. The commit timestamps found in the shadow cells of any row are shared by all of them, and the pending gets
+     * of all the rows are sent to HBase in a single batch on each round.
+     *
+     * @param rawCellsPerRow    Raw cells of each row that we are going to filter
+     * @param transaction       Defines the current snapshot
+     * @param versionsToRequest Number of versions requested from hbase
+     * @return Filtered KVs belonging to the transaction snapshot, in the same order as the rows passed
+     */
+    List<List<Cell>> filterRowsForSnapshot(List<List<Cell>> rawCellsPerRow, HBaseTransaction transaction,
+                                           int versionsToRequest) throws IOException {
+
+        assert (rawCellsPerRow != null && transaction != null && versionsToRequest >= 1);
+
+        Map<Long, Long> commitCache = new HashMap<>();
+        boolean familyDeletesFound = false;
+        for (List<Cell> rawCells : rawCellsPerRow) {
+            addShadowCellsToCommitCache(rawCells, commitCache);
+            familyDeletesFound |= containsFamilyDeleteMarkers(rawCells);
+        }
+        Map<Long, CommitTimestamp> commitTimestamps = new HashMap<>();
+        List<Map<byte[], Long>> noFamilyDeletes =
+            Collections.nCopies(rawCellsPerRow.size(), Collections.<byte[], Long>emptyMap());
+        if (!familyDeletesFound) {
+            return filterRowsForSnapshot(rawCellsPerRow, transaction, versionsToRequest, commitCache,
+                                         commitTimestamps, noFamilyDeletes);
+        }
+
+        // The family delete markers in the snapshot are found first, so the older versions of the cells they hide
+        // are not looked at
+        List<List<Cell>> markersPerRow = new ArrayList<>(rawCellsPerRow.size());
+        List<List<Cell>> cellsPerRow = new ArrayList<>(rawCellsPerRow.size());
+        for (List<Cell> rawCells : rawCellsPerRow) {
+            List<Cell> markers = new ArrayList<>();
+            List<Cell> cells = new ArrayList<>(rawCells.size());
+            for (Cell cell : rawCells) {
+                if (CellUtils.isFamilyDeleteMarker(cell)) {
+                    markers.add(cell);
+                } else {
+                    cells.add(cell);
+                }
+            }
+            markersPerRow.add(markers);
+            cellsPerRow.add(cells);
+        }
+        List<List<Cell>> markersInSnapshotPerRow = filterRowsForSnapshot(markersPerRow, transaction, versionsToRequest,
+                                                                         commitCache, commitTimestamps,
+                                                                         noFamilyDeletes);
+        List<Map<byte[], Long>> familyDeletesPerRow = new ArrayList<>(rawCellsPerRow.size());
+        for (List<Cell> markersInSnapshot : markersInSnapshotPerRow) {
+            Map<byte[], Long> familyDeletes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+            for (Cell marker : markersInSnapshot) {
+                familyDeletes.put(CellUtil.cloneFamily(marker), marker.getTimestamp());
+            }
+            familyDeletesPerRow.add(familyDeletes);
+        }
+        return filterRowsForSnapshot(cellsPerRow, transaction, versionsToRequest, commitCache, commitTimestamps,
+                                     familyDeletesPerRow);
+    }
+
+    /**
+     * @param familyDeletesPerRow timestamp of the family delete marker in the snapshot of each family of each row, if
+     *                            any. The older versions of the cells of the family are not in the snapshot
+     */
+    private List<List<Cell>> filterRowsForSnapshot(List<List<Cell>> rawCellsPerRow, HBaseTransaction transaction,
+                                                   int versionsToRequest, Map<Long, Long> commitCache,
+                                                   Map<Long, CommitTimestamp> commitTimestamps,
+                                                   List<Map<byte[], Long>> familyDeletesPerRow)
+        throws IOException {
+
+        prefetchCommitTimestamps(rawCellsPerRow, transaction, commitCache, commitTimestamps);
+
+        List<List<Cell>> keyValuesInSnapshotPerRow = new ArrayList<>(rawCellsPerRow.size());
         List<Get> pendingGetsList = new ArrayList<>();
+        List<Integer> pendingGetsRows = new ArrayList<>();
 
         int numberOfVersionsToFetch = versionsToRequest * 2;
         if (numberOfVersionsToFetch < 1) {
             numberOfVersionsToFetch = versionsToRequest;
         }
 
-        Map<Long, Long> commitCache = buildCommitCache(rawCells);
-
-        for (Collection<Cell> columnCells : groupCellsByColumnFilteringShadowCells(rawCells)) {
-            boolean snapshotValueFound = false;
-            Cell oldestCell = null;
-            for (Cell cell : columnCells) {
-                if (isCellInSnapshot(cell, transaction, commitCache)) {
-                    if (!CellUtil.matchingValue(cell, CellUtils.DELETE_TOMBSTONE)) {
-                        keyValuesInSnapshot.add(cell);
+        for (int row = 0; row < rawCellsPerRow.size(); row++) {
+            List<Cell> keyValuesInSnapshot = new ArrayList<>();
+            Map<byte[], Long> familyDeletes = familyDeletesPerRow.get(row);
+            for (Collection<Cell> columnCells : groupCellsByColumnFilteringShadowCells(rawCellsPerRow.get(row))) {
+                boolean snapshotValueFound = false;
+                Cell oldestCell = null;
+                Long familyDeleteTimestamp = familyDeletes.isEmpty()
+                                             ? null
+                                             : familyDeletes.get(CellUtil.cloneFamily(columnCells.iterator().next()));
+                for (Cell cell : columnCells) {
+                    oldestCell = cell;
+                    if (familyDeleteTimestamp != null && cell.getTimestamp() < familyDeleteTimestamp) {
+                        // Deleted with its family, as the older versions
+                        snapshotValueFound = true;
+                        break;
+                    }
+                    if (isCellInSnapshot(cell, transaction, commitCache, commitTimestamps)) {
+                        if (CellUtils.isCounterDelta(cell)) {
+                            // Added to the older versions of the counter
+                            keyValuesInSnapshot.add(cell);
+                            continue;
+                        }
+                        if (!CellUtil.matchingValue(cell, CellUtils.DELETE_TOMBSTONE)
+                                || CellUtils.isFamilyDeleteMarker(cell)) {
+                            keyValuesInSnapshot.add(cell);
+                        }
+                        snapshotValueFound = true;
+                        break;
                     }
-                    snapshotValueFound = true;
-                    break;
                 }
-                oldestCell = cell;
-            }
-            if (!snapshotValueFound) {
-                assert (oldestCell != null);
-                Get pendingGet = createPendingGet(oldestCell, numberOfVersionsToFetch);
-                pendingGetsList.add(pendingGet);
+                if (!snapshotValueFound) {
+                    assert (oldestCell != null);
+                    Get pendingGet = createPendingGet(oldestCell, transaction, numberOfVersionsToFetch);
+                    pendingGetsList.add(pendingGet);
+                    pendingGetsRows.add(row);
+                }
             }
+            keyValuesInSnapshotPerRow.add(keyValuesInSnapshot);
         }
 
         if (!pendingGetsList.isEmpty()) {
             Result[] pendingGetsResults = table.get(pendingGetsList);
-            for (Result pendingGetResult : pendingGetsResults) {
-                if (!pendingGetResult.isEmpty()) {
-                    keyValuesInSnapshot.addAll(
-                        filterCellsForSnapshot(pendingGetResult.listCells(), transaction, numberOfVersionsToFetch));
+            List<List<Cell>> pendingRawCellsPerRow = new ArrayList<>(pendingGetsResults.length);
+            List<Map<byte[], Long>> pendingFamilyDeletesPerRow = new ArrayList<>(pendingGetsResults.length);
+            List<Integer> pendingRows = new ArrayList<>(pendingGetsResults.length);
+            for (int i = 0; i < pendingGetsResults.length; i++) {
+                if (!pendingGetsResults[i].isEmpty()) {
+                    List<Cell> pendingRawCells = pendingGetsResults[i].listCells();
+                    addShadowCellsToCommitCache(pendingRawCells, commitCache);
+                    pendingRawCellsPerRow.add(pendingRawCells);
+                    pendingFamilyDeletesPerRow.add(familyDeletesPerRow.get(pendingGetsRows.get(i)));
+                    pendingRows.add(pendingGetsRows.get(i));
                 }
             }
+            List<List<Cell>> pendingKeyValuesInSnapshot =
+                filterRowsForSnapshot(pendingRawCellsPerRow, transaction, numberOfVersionsToFetch, commitCache,
+                                      commitTimestamps, pendingFamilyDeletesPerRow);
+            for (int i = 0; i < pendingKeyValuesInSnapshot.size(); i++) {
+                keyValuesInSnapshotPerRow.get(pendingRows.get(i)).addAll(pendingKeyValuesInSnapshot.get(i));
+            }
         }
 
+        for (int row = 0; row < rawCellsPerRow.size(); row++) {
+            List<Cell> keyValuesInSnapshot = sumCounterDeltas(keyValuesInSnapshotPerRow.get(row));
+            keyValuesInSnapshotPerRow.set(row, keyValuesInSnapshot);
+            assert (keyValuesInSnapshot.size() <= rawCellsPerRow.get(row).size());
+        }
+        return keyValuesInSnapshotPerRow;
+    }
+
+    private static boolean containsFamilyDeleteMarkers(List<Cell> rawCells) {
+        for (Cell cell : rawCells) {
+            if (CellUtils.isFamilyDeleteMarker(cell)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sorts the cells in the snapshot of a row, replacing the delta records of each counter and the version below them
+     * with a single cell holding the value of the counter, at the timestamp of the newest delta
+     */
+    private static List<Cell> sumCounterDeltas(List<Cell> keyValuesInSnapshot) throws IOException {
+
         Collections.sort(keyValuesInSnapshot, KeyValue.COMPARATOR);
+        List<Cell> summedKeyValues = null;
+        for (int i = 0; i < keyValuesInSnapshot.size(); i++) {
+            Cell cell = keyValuesInSnapshot.get(i);
+            if (!CellUtils.isCounterDelta(cell)) {
+                if (summedKeyValues != null) {
+                    summedKeyValues.add(cell);
+                }
+                continue;
+            }
+            if (summedKeyValues == null) {
+                summedKeyValues = new ArrayList<>(keyValuesInSnapshot.subList(0, i));
+            }
+            long counter = CellUtils.getCounterDelta(cell);
+            while (i + 1 < keyValuesInSnapshot.size() && CellUtil.matchingColumn(cell, keyValuesInSnapshot.get(i + 1))) {
+                Cell olderCell = keyValuesInSnapshot.get(++i);
+                counter += CellUtils.isCounterDelta(olderCell)
+                           ? CellUtils.getCounterDelta(olderCell)
+                           : toCounterValue(olderCell);
+            }
+            summedKeyValues.add(new KeyValue(CellUtil.cloneRow(cell), CellUtil.cloneFamily(cell),
+                                             CellUtil.cloneQualifier(cell), cell.getTimestamp(),
+                                             Bytes.toBytes(counter)));
+        }
+        return summedKeyValues == null ? keyValuesInSnapshot : summedKeyValues;
 
-        assert (keyValuesInSnapshot.size() <= rawCells.size());
-        return keyValuesInSnapshot;
     }
 
-    private Map<Long, Long> buildCommitCache(List<Cell> rawCells) {
+    private static long toCounterValue(Cell cell) throws IOException {
+        if (cell.getValueLength() != Bytes.SIZEOF_LONG) {
+            throw new DoNotRetryIOException("Attempted to increment field that isn't 64 bits wide");
+        }
+        return Bytes.toLong(cell.getValueArray(), cell.getValueOffset());
+    }
 
-        Map<Long, Long> commitCache = new HashMap<>();
+    /**
+     * @return the value of a counter in the snapshot of the transaction, or zero if it's not there
+     */
+    private long readCounter(HBaseTransaction transaction, byte[] row, byte[] family, byte[] qualifier)
+        throws IOException {
+        Result result = get(transaction, new Get(row).addColumn(family, qualifier));
+        Cell cell = result.getColumnLatestCell(family, qualifier);
+        return cell == null ? 0L : toCounterValue(cell);
+    }
+
+    /**
+     * Resolves in batch the commit timestamps of the cells whose shadow cells are missing in the raw cells passed, so
+     * they don't have to be located one by one. All the start timestamps are first looked up in the commit table with
+     * a single multi-get, and the ones not found there are looked up in their shadow cells with another one. The
+     * commit timestamps found in the commit table are added to {@code commitTimestamps}, and the ones found in the
+     * shadow cells to {@code commitCache}.
+     *
+     * A transaction started in the current epoch found neither in the commit table nor in its shadow cells is not
+     * visible to the snapshot, as it either didn't commit before the snapshot was taken or was aborted. Transactions
+     * from previous epochs are left to {@link #tryToLocateCellCommitTimestamp}, which tries to invalidate them.
+     */
+    private void prefetchCommitTimestamps(List<List<Cell>> rawCellsPerRow, HBaseTransaction transaction,
+                                          Map<Long, Long> commitCache, Map<Long, CommitTimestamp> commitTimestamps)
+        throws IOException {
+
+        long startTimestamp = transaction.getStartTimestamp();
+
+        // start timestamp -> one of the cells written with it, to look up its shadow cell
+        Map<Long, Cell> unresolvedCells = new HashMap<>();
+        for (List<Cell> rawCells : rawCellsPerRow) {
+            for (Collection<Cell> columnCells : groupCellsByColumnFilteringShadowCells(rawCells)) {
+                for (Cell cell : columnCells) {
+                    long cellTimestamp = cell.getTimestamp();
+                    if (cellTimestamp == startTimestamp && !transaction.isReadOnly()) {
+                        break;
+                    }
+                    Long commitTimestamp = commitCache.get(cellTimestamp);
+                    if (commitTimestamp != null) {
+                        if (commitTimestamp < startTimestamp) {
+                            break; // Older versions of the column are not needed
+                        }
+                    } else if (!commitTimestamps.containsKey(cellTimestamp)
+                            && !unresolvedCells.containsKey(cellTimestamp)) {
+                        unresolvedCells.put(cellTimestamp, cell);
+                    }
+                }
+            }
+        }
+        // A single commit timestamp is located as usual, there's nothing to batch
+        if (unresolvedCells.size() < 2) {
+            return;
+        }
+
+        // 1) Commit table
+        commitTimestamps.putAll(
+            transaction.getTransactionManager().readCommitTimestampsFromCommitTable(unresolvedCells.keySet()));
+        unresolvedCells.keySet().removeAll(commitTimestamps.keySet());
+        if (unresolvedCells.isEmpty()) {
+            return;
+        }
+
+        // 2) Shadow cells
+        List<Get> shadowCellGets = new ArrayList<>(unresolvedCells.size());
+        for (Cell cell : unresolvedCells.values()) {
+            Get get = new Get(CellUtil.cloneRow(cell));
+            get.addColumn(CellUtil.cloneFamily(cell), CellUtils.addShadowCellSuffix(cell.getQualifierArray(),
+                                                                                    cell.getQualifierOffset(),
+                                                                                    cell.getQualifierLength()));
+            get.setMaxVersions(1);
+            get.setTimeStamp(cell.getTimestamp());
+            shadowCellGets.add(get);
+        }
+        for (Result result : table.get(shadowCellGets)) {
+            if (!result.isEmpty()) {
+                addShadowCellsToCommitCache(result.listCells(), commitCache);
+            }
+        }
+
+        // 3) Not committed before the snapshot
+        for (long cellTimestamp : unresolvedCells.keySet()) {
+            if (!commitCache.containsKey(cellTimestamp) && cellTimestamp >= transaction.getEpoch()) {
+                commitTimestamps.put(cellTimestamp, new CommitTimestamp(NOT_PRESENT, -1L, true));
+            }
+        }
+
+    }
+
+    private void addShadowCellsToCommitCache(List<Cell> rawCells, Map<Long, Long> commitCache) {
 
         for (Cell cell : rawCells) {
             if (CellUtils.isShadowCell(cell)) {
@@ -393,28 +736,57 @@ public class TTable implements Closeable {
             }
         }
 
-        return commitCache;
     }
 
-    private boolean isCellInSnapshot(Cell kv, HBaseTransaction transaction, Map<Long, Long> commitCache)
+    private boolean isCellInSnapshot(Cell kv, HBaseTransaction transaction, Map<Long, Long> commitCache,
+                                     Map<Long, CommitTimestamp> commitTimestamps)
         throws IOException {
 
         long startTimestamp = transaction.getStartTimestamp();
 
-        if (kv.getTimestamp() == startTimestamp) {
+        // Read-only transactions may share the start timestamp of a writing one. Its cells aren't theirs
+        if (kv.getTimestamp() == startTimestamp && !transaction.isReadOnly()) {
             return true;
         }
 
         Optional<Long> commitTimestamp =
-            tryToLocateCellCommitTimestamp(transaction.getTransactionManager(), transaction.getEpoch(), kv,
-                                           commitCache);
+            tryToLocateCellCommitTimestamp(transaction, kv, commitCache, commitTimestamps);
 
         return commitTimestamp.isPresent() && commitTimestamp.get() < startTimestamp;
     }
 
-    private Get createPendingGet(Cell cell, int versionCount) throws IOException {
+    private Get createSnapshotGet(Get get, HBaseTransaction transaction) throws IOException {
+
+        long readTimestamp = transaction.getStartTimestamp();
+        Get tsget = new Get(get.getRow()).setFilter(get.getFilter());
+        setSnapshot(tsget, readTimestamp, transaction.isReadOnly());
+        TimeRange timeRange = get.getTimeRange();
+        long startTime = timeRange.getMin();
+        long endTime = Math.min(timeRange.getMax(), readTimestamp + 1);
+        tsget.setTimeRange(startTime, endTime).setMaxVersions(1);
+        Map<byte[], NavigableSet<byte[]>> kvs = get.getFamilyMap();
+        for (Map.Entry<byte[], NavigableSet<byte[]>> entry : kvs.entrySet()) {
+            byte[] family = entry.getKey();
+            NavigableSet<byte[]> qualifiers = entry.getValue();
+            if (qualifiers == null || qualifiers.isEmpty()) {
+                tsget.addFamily(family);
+            } else {
+                for (byte[] qualifier : qualifiers) {
+                    tsget.addColumn(family, qualifier);
+                    tsget.addColumn(family, CellUtils.addShadowCellSuffix(qualifier));
+                }
+                tsget.addColumn(family, CellUtils.FAMILY_DELETE_QUALIFIER);
+                tsget.addColumn(family, CellUtils.addShadowCellSuffix(CellUtils.FAMILY_DELETE_QUALIFIER));
+            }
+        }
+
+        return tsget;
+    }
+
+    private Get createPendingGet(Cell cell, HBaseTransaction transaction, int versionCount) throws IOException {
 
         Get pendingGet = new Get(CellUtil.cloneRow(cell));
+        setSnapshot(pendingGet, transaction.getStartTimestamp(), transaction.isReadOnly());
         pendingGet.addColumn(CellUtil.cloneFamily(cell), CellUtil.cloneQualifier(cell));
         pendingGet.addColumn(CellUtil.cloneFamily(cell), CellUtils.addShadowCellSuffix(cell.getQualifierArray(),
                                                                                        cell.getQualifierOffset(),
@@ -425,23 +797,19 @@ public class TTable implements Closeable {
         return pendingGet;
     }
 
-    private Optional<Long> tryToLocateCellCommitTimestamp(AbstractTransactionManager transactionManager,
-                                                          long epoch,
+    private Optional<Long> tryToLocateCellCommitTimestamp(HBaseTransaction transaction,
                                                           Cell cell,
-                                                          Map<Long, Long> commitCache)
+                                                          Map<Long, Long> commitCache,
+                                                          Map<Long, CommitTimestamp> commitTimestamps)
         throws IOException {
 
-        CommitTimestamp tentativeCommitTimestamp =
-            transactionManager.locateCellCommitTimestamp(
-                cell.getTimestamp(),
-                epoch,
-                new CommitTimestampLocatorImpl(
-                    new HBaseCellId(table,
-                                    CellUtil.cloneRow(cell),
-                                    CellUtil.cloneFamily(cell),
-                                    CellUtil.cloneQualifier(cell),
-                                    cell.getTimestamp()),
-                    commitCache));
+        CommitTimestamp tentativeCommitTimestamp = commitTimestamps.get(cell.getTimestamp());
+        if (tentativeCommitTimestamp == null) { // Not resolved in batch
+            tentativeCommitTimestamp = locateCellCommitTimestamp(transaction.getTransactionManager(),
+                                                                 transaction.getEpoch(),
+                                                                 cell,
+                                                                 commitCache);
+        }
 
         // If transaction that added the cell was invalidated
         if (!tentativeCommitTimestamp.isValid()) {
@@ -455,7 +823,7 @@ public class TTable implements Closeable {
                 // commit phase of the client probably failed, so we heal the shadow
                 // cell with the right commit timestamp for avoiding further reads to
                 // hit the storage
-                healShadowCell(cell, tentativeCommitTimestamp.getValue());
+                transaction.getShadowCellHealer().heal(table, cell, tentativeCommitTimestamp.getValue());
                 return Optional.of(tentativeCommitTimestamp.getValue());
             case CACHE:
             case SHADOW_CELL:
@@ -468,18 +836,28 @@ public class TTable implements Closeable {
         }
     }
 
-    void healShadowCell(Cell cell, long commitTimestamp) {
-        Put put = new Put(CellUtil.cloneRow(cell));
-        byte[] family = CellUtil.cloneFamily(cell);
-        byte[] shadowCellQualifier = CellUtils.addShadowCellSuffix(cell.getQualifierArray(),
-                                                                   cell.getQualifierOffset(),
-                                                                   cell.getQualifierLength());
-        put.add(family, shadowCellQualifier, cell.getTimestamp(), Bytes.toBytes(commitTimestamp));
-        try {
-            healerTable.put(put);
-        } catch (IOException e) {
-            LOG.warn("Failed healing shadow cell for kv {}", cell, e);
-        }
+    private HBaseCellId newCellId(HBaseTransaction transaction, byte[] row, byte[] family, byte[] qualifier,
+                                  long timestamp) throws IOException {
+        return new HBaseCellId(table, row, family, qualifier, timestamp,
+                               transaction.getConflictGranularity(table, family));
+    }
+
+    private CommitTimestamp locateCellCommitTimestamp(AbstractTransactionManager transactionManager,
+                                                      long epoch,
+                                                      Cell cell,
+                                                      Map<Long, Long> commitCache)
+        throws IOException {
+
+        return transactionManager.locateCellCommitTimestamp(
+                cell.getTimestamp(),
+                epoch,
+                new CommitTimestampLocatorImpl(
+                    new HBaseCellId(table,
+                                    CellUtil.cloneRow(cell),
+                                    CellUtil.cloneFamily(cell),
+                                    CellUtil.cloneQualifier(cell),
+                                    cell.getTimestamp()),
+                    commitCache));
     }
 
     protected class TransactionalClientScanner implements ResultScanner {
@@ -647,12 +1025,36 @@ public class TTable implements Closeable {
      * @throws IOException if a remote or network exception occurs
      */
     public Result[] get(Transaction transaction, List<Get> gets) throws IOException {
-        Result[] results = new Result[gets.size()];
-        int i = 0;
+
+        HBaseTransaction tx = enforceHBaseTransactionAsParam(transaction);
+        flushBufferedMutations(tx);
+
+        List<Get> tsgets = new ArrayList<>(gets.size());
         for (Get get : gets) {
-            results[i++] = get(transaction, get);
+            throwExceptionIfOpSetsTimerange(get);
+            tsgets.add(createSnapshotGet(get, tx));
+        }
+
+        // All the rows are read in a single batch. Then the follow-up reads needed to find the snapshot values are
+        // batched across rows too
+        Result[] rawResults = table.get(tsgets);
+        List<List<Cell>> rawCellsPerRow = new ArrayList<>(rawResults.length);
+        List<Integer> rowIndexes = new ArrayList<>(rawResults.length);
+        for (int i = 0; i < rawResults.length; i++) {
+            if (!rawResults[i].isEmpty()) {
+                rawCellsPerRow.add(rawResults[i].listCells());
+                rowIndexes.add(i);
+            }
+        }
+        List<List<Cell>> filteredCellsPerRow = filterRowsForSnapshot(rawCellsPerRow, tx, 1);
+
+        Result[] results = new Result[gets.size()];
+        Arrays.fill(results, Result.create(Collections.<Cell>emptyList()));
+        for (int i = 0; i < filteredCellsPerRow.size(); i++) {
+            results[rowIndexes.get(i)] = Result.create(filteredCellsPerRow.get(i));
         }
         return results;
+
     }
 
     /**
@@ -760,6 +1162,31 @@ public class TTable implements Closeable {
     // Helper methods
     // ----------------------------------------------------------------------------------------------------------------
 
+    /**
+     * With auto flush disabled, the mutations are buffered in the transaction, coalescing the writes to the same cell,
+     * and sent to HBase when the buffer grows over the write buffer size or the transaction commits
+     */
+    private void writeMutation(HBaseTransaction transaction, Put put) throws IOException {
+        if (table.isAutoFlush()) {
+            table.put(put);
+            return;
+        }
+        MutationBuffer mutationBuffer = transaction.getMutationBuffer(table);
+        mutationBuffer.add(put);
+        if (mutationBuffer.getHeapSize() >= table.getWriteBufferSize()) {
+            mutationBuffer.flush();
+        }
+    }
+
+    /**
+     * Transactions read their own writes, so the buffered ones have to reach HBase before reading
+     */
+    private void flushBufferedMutations(HBaseTransaction transaction) throws IOException {
+        if (!table.isAutoFlush()) {
+            transaction.getMutationBuffer(table).flush();
+        }
+    }
+
     private void throwExceptionIfOpSetsTimerange(Get getOperation) {
         TimeRange tr = getOperation.getTimeRange();
         checkTimerangeIsSetToDefaultValuesOrThrowException(tr);
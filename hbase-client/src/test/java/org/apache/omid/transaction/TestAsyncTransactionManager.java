@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.testng.ITestContext;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.apache.omid.transaction.CellUtils.hasShadowCell;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test(groups = "sharedHBase")
+public class TestAsyncTransactionManager extends OmidTestBase {
+
+    private static final int NUM_TXS = 50;
+
+    private static final byte[] family = Bytes.toBytes(TEST_FAMILY);
+    private static final byte[] qualifier = Bytes.toBytes("col");
+
+    @Test(timeOut = 60_000)
+    public void testConcurrentTransactionsCommitAsynchronously(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+
+        List<ListenableFuture<Transaction>> begins = new ArrayList<>();
+        for (int i = 0; i < NUM_TXS; i++) {
+            begins.add(tm.beginAsync());
+        }
+        List<Transaction> txs = Futures.allAsList(begins).get();
+
+        // HTables are not thread safe, so each transaction writes through its own one
+        List<TTable> tables = new ArrayList<>();
+        List<ListenableFuture<Void>> commits = new ArrayList<>();
+        for (int i = 0; i < NUM_TXS; i++) {
+            TTable tt = new TTable(hbaseConf, TEST_TABLE);
+            tables.add(tt);
+            byte[] row = Bytes.toBytes("row-" + i);
+            tt.put(txs.get(i), new Put(row).add(family, qualifier, row));
+            commits.add(tm.commitAsync(txs.get(i)));
+        }
+        Futures.allAsList(commits).get();
+
+        for (int i = 0; i < NUM_TXS; i++) {
+            Transaction tx = txs.get(i);
+            TTable tt = tables.get(i);
+            byte[] row = Bytes.toBytes("row-" + i);
+            assertEquals(tx.getStatus(), Transaction.Status.COMMITTED);
+            assertTrue(hasShadowCell(row, family, qualifier, tx.getTransactionId(), new TTableCellGetterAdapter(tt)),
+                       "Shadow cell should be written once the commit is done");
+            Transaction readTx = tm.begin();
+            assertEquals(tt.get(readTx, new Get(row)).getValue(family, qualifier), row);
+            tm.commit(readTx);
+            tt.close();
+        }
+
+    }
+
+    @Test(timeOut = 60_000)
+    public void testCommitsWritingSeveralTablesCompleteWithASingleAsyncThread(ITestContext context) throws Exception {
+
+        HBaseOmidClientConfiguration clientConf = new HBaseOmidClientConfiguration();
+        clientConf.setConnectionString("localhost:1234");
+        clientConf.setHBaseConfiguration(hbaseConf);
+        clientConf.setAsyncThreads(1);
+        TransactionManager tm = HBaseTransactionManager.builder(clientConf)
+                .commitTableClient(getCommitTable(context).getClient())
+                .tsoClient(getClient(context)).build();
+
+        // The thread flushing the two tables of each transaction in preCommit is the only one of the executor
+        List<TTable> tables = new ArrayList<>();
+        List<Transaction> txs = new ArrayList<>();
+        List<ListenableFuture<Void>> commits = new ArrayList<>();
+        for (int i = 0; i < NUM_TXS; i++) {
+            Transaction tx = tm.begin();
+            for (int j = 0; j < 2; j++) {
+                TTable tt = new TTable(hbaseConf, TEST_TABLE);
+                tt.setAutoFlush(false);
+                tables.add(tt);
+                byte[] row = Bytes.toBytes("single-thread-row-" + i + "-" + j);
+                tt.put(tx, new Put(row).add(family, qualifier, row));
+            }
+            txs.add(tx);
+            commits.add(tm.commitAsync(tx));
+        }
+        Futures.allAsList(commits).get();
+
+        for (Transaction tx : txs) {
+            assertEquals(tx.getStatus(), Transaction.Status.COMMITTED);
+        }
+        for (TTable tt : tables) {
+            tt.close();
+        }
+
+    }
+
+    @Test(timeOut = 30_000)
+    public void testConflictingTransactionsAreRolledBackAsynchronously(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+        TTable tt = new TTable(hbaseConf, TEST_TABLE);
+        byte[] row = Bytes.toBytes("row");
+
+        Transaction tx1 = tm.beginAsync().get();
+        Transaction tx2 = tm.beginAsync().get();
+        tt.put(tx1, new Put(row).add(family, qualifier, Bytes.toBytes("tx1")));
+        tt.put(tx2, new Put(row).add(family, qualifier, Bytes.toBytes("tx2")));
+
+        tm.commitAsync(tx1).get();
+        try {
+            tm.commitAsync(tx2).get();
+            fail("tx2 conflicts with tx1");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RollbackException);
+        }
+        assertEquals(tx2.getStatus(), Transaction.Status.ROLLEDBACK);
+
+        Transaction readTx = tm.begin();
+        assertEquals(tt.get(readTx, new Get(row)).getValue(family, qualifier), Bytes.toBytes("tx1"));
+        tt.close();
+
+    }
+
+    @Test(timeOut = 30_000)
+    public void testRollbackAsyncCleansUpTheWrites(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+        TTable tt = new TTable(hbaseConf, TEST_TABLE);
+        byte[] row = Bytes.toBytes("row");
+
+        Transaction tx = tm.beginAsync().get();
+        tt.put(tx, new Put(row).add(family, qualifier, Bytes.toBytes("value")));
+        tm.rollbackAsync(tx).get();
+        assertEquals(tx.getStatus(), Transaction.Status.ROLLEDBACK);
+
+        Result result = tt.getHTable().get(new Get(row));
+        assertFalse(result.containsColumn(family, qualifier), "Writes should be removed");
+        tt.close();
+
+    }
+
+}
@@ -17,18 +17,45 @@
  */
 package org.apache.omid.transaction;
 
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.ITestContext;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 @Test(groups = "sharedHBase")
 public class TestAutoFlush extends OmidTestBase {
 
+    @Captor
+    private ArgumentCaptor<List<Put>> putsCaptor;
+
+    @BeforeMethod(alwaysRun = true)
+    public void initCaptors() {
+        MockitoAnnotations.initMocks(this);
+    }
+
     @Test(timeOut = 10_000)
     public void testReadWithSeveralUncommitted(ITestContext context) throws Exception {
 
@@ -60,4 +87,122 @@ public class TestAutoFlush extends OmidTestBase {
         assertEquals(result.size(), 2, "Writes were not flushed to DB");
     }
 
+    @Test(timeOut = 10_000)
+    public void testBufferedWritesToTheSameCellAreCoalesced(ITestContext context) throws Exception {
+
+        byte[] family = Bytes.toBytes(TEST_FAMILY);
+        byte[] row1 = Bytes.toBytes("row1");
+        byte[] row2 = Bytes.toBytes("row2");
+        byte[] col = Bytes.toBytes("col1");
+        TransactionManager tm = newTransactionManager(context);
+        HTable htable = spy(new HTable(hbaseConf, TEST_TABLE));
+        TTable table = new TTable(htable);
+        table.setAutoFlush(false);
+
+        Transaction t = tm.begin();
+        table.put(t, new Put(row1).add(family, col, Bytes.toBytes("v1")));
+        table.put(t, new Put(row1).add(family, col, Bytes.toBytes("v2")));
+        table.put(t, new Put(row2).add(family, col, Bytes.toBytes("v1")));
+        tm.commit(t);
+
+        // A single batch with one put per row and only the last value of each cell. The second batch holds the
+        // shadow cells
+        verify(htable, times(2)).put(putsCaptor.capture());
+        List<Put> puts = putsCaptor.getAllValues().get(0);
+        assertEquals(puts.size(), 2);
+        assertEquals(puts.get(0).size(), 1);
+        assertEquals(CellUtil.cloneValue(puts.get(0).get(family, col).get(0)), Bytes.toBytes("v2"));
+
+        t = tm.begin();
+        assertEquals(table.get(t, new Get(row1)).getValue(family, col), Bytes.toBytes("v2"));
+        assertEquals(table.get(t, new Get(row2)).getValue(family, col), Bytes.toBytes("v1"));
+        tm.commit(t);
+        table.close();
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testTransactionsReadTheirBufferedWrites(ITestContext context) throws Exception {
+
+        byte[] family = Bytes.toBytes(TEST_FAMILY);
+        byte[] row = Bytes.toBytes("row-read-own-writes");
+        byte[] col = Bytes.toBytes("col1");
+        byte[] data = Bytes.toBytes("data");
+        TransactionManager tm = newTransactionManager(context);
+        TTable table = new TTable(hbaseConf, TEST_TABLE);
+        table.setAutoFlush(false);
+
+        Transaction t = tm.begin();
+        table.put(t, new Put(row).add(family, col, data));
+        assertEquals(table.get(t, new Get(row)).getValue(family, col), data);
+        tm.commit(t);
+        table.close();
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testBufferedWritesAreDiscardedOnRollback(ITestContext context) throws Exception {
+
+        byte[] family = Bytes.toBytes(TEST_FAMILY);
+        byte[] row = Bytes.toBytes("row-rolled-back");
+        byte[] col = Bytes.toBytes("col1");
+        TransactionManager tm = newTransactionManager(context);
+        HTable htable = spy(new HTable(hbaseConf, TEST_TABLE));
+        TTable table = new TTable(htable);
+        table.setAutoFlush(false);
+
+        Transaction t = tm.begin();
+        table.put(t, new Put(row).add(family, col, Bytes.toBytes("data")));
+        tm.rollback(t);
+
+        verify(htable, never()).put(anyListOf(Put.class));
+        assertTrue(table.getHTable().get(new Get(row)).isEmpty(), "Buffered writes reached the DB");
+        table.close();
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testOnlyTheFlushedWritesAreCleanedUpOnRollback(ITestContext context) throws Exception {
+
+        byte[] family = Bytes.toBytes(TEST_FAMILY);
+        byte[] flushedRow = Bytes.toBytes("row-flushed-rolled-back");
+        byte[] bufferedRow = Bytes.toBytes("row-buffered-rolled-back");
+        byte[] col1 = Bytes.toBytes("col1");
+        byte[] col2 = Bytes.toBytes("col2");
+        TransactionManager tm = newTransactionManager(context);
+        HTable htable = spy(new HTable(hbaseConf, TEST_TABLE));
+        // HTable removes the deletes sent from the list passed, so they are copied before
+        final List<Delete> deletes = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                for (Object delete : (List<?>) invocation.getArguments()[0]) {
+                    deletes.add((Delete) delete);
+                }
+                invocation.callRealMethod();
+                return null;
+            }
+        }).when(htable).delete(anyListOf(Delete.class));
+        TTable table = new TTable(htable);
+        table.setAutoFlush(false);
+
+        Transaction t = tm.begin();
+        table.put(t, new Put(flushedRow).add(family, col1, Bytes.toBytes("v1")));
+        table.get(t, new Get(flushedRow)); // Flushes the buffer
+        // Buffered again after being flushed, so it needs cleanup too
+        table.put(t, new Put(flushedRow).add(family, col1, Bytes.toBytes("v2")));
+        table.put(t, new Put(flushedRow).add(family, col2, Bytes.toBytes("v2")));
+        table.put(t, new Put(bufferedRow).add(family, col1, Bytes.toBytes("v2")));
+        tm.rollback(t);
+
+        verify(htable, times(1)).delete(anyListOf(Delete.class));
+        assertEquals(deletes.size(), 1, "Only the row flushed should be cleaned up");
+        assertEquals(deletes.get(0).getRow(), flushedRow);
+        assertEquals(deletes.get(0).size(), 1, "Only the cell flushed should be cleaned up");
+        assertEquals(CellUtil.cloneQualifier(deletes.get(0).getFamilyCellMap().get(family).get(0)), col1);
+        assertTrue(table.getHTable().get(new Get(flushedRow)).isEmpty(), "Flushed writes should be cleaned up");
+        table.close();
+
+    }
+
 }
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.testng.ITestContext;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test(groups = "sharedHBase")
+public class TestCounters extends OmidTestBase {
+
+    private static final byte[] family = Bytes.toBytes(TEST_FAMILY);
+    private static final byte[] qualifier = Bytes.toBytes("counter");
+
+    @Test(timeOut = 10_000)
+    public void testConcurrentIncrementsDoNotConflict(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+        TTable tt = new TTable(hbaseConf, TEST_TABLE);
+        byte[] row = Bytes.toBytes("test-concurrent-increments");
+
+        Transaction t0 = tm.begin();
+        tt.put(t0, new Put(row).add(family, qualifier, Bytes.toBytes(10L)));
+        tm.commit(t0);
+
+        Transaction t1 = tm.begin();
+        Transaction t2 = tm.begin();
+        tt.increment(t1, new Increment(row).addColumn(family, qualifier, 1L));
+        tt.increment(t2, new Increment(row).addColumn(family, qualifier, 5L));
+        // The increments of a transaction add up
+        tt.increment(t1, new Increment(row).addColumn(family, qualifier, 2L));
+        assertEquals(readCounter(tt, t1, row), 13L, "Transaction should read its own increments");
+        Transaction concurrent = tm.begin();
+        tm.commit(t1);
+        tm.commit(t2);
+
+        assertEquals(readCounter(tt, concurrent, row), 10L, "Concurrent transaction should not see the increments");
+        Transaction t3 = tm.begin();
+        assertEquals(readCounter(tt, t3, row), 18L, "All the increments should be added up");
+        try (ResultScanner scanner = tt.getScanner(t3, new Scan(row, Bytes.add(row, new byte[]{0})))) {
+            Result result = scanner.next();
+            assertNotNull(result);
+            assertEquals(Bytes.toLong(result.getValue(family, qualifier)), 18L, "Scans should add up the increments");
+        }
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testIncrementsAfterPutsAndDeletes(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+        TTable tt = new TTable(hbaseConf, TEST_TABLE);
+        byte[] row = Bytes.toBytes("test-increments-after-puts");
+
+        // Incremented in place when put by the same transaction
+        Transaction t1 = tm.begin();
+        tt.put(t1, new Put(row).add(family, qualifier, Bytes.toBytes(7L)));
+        tt.increment(t1, new Increment(row).addColumn(family, qualifier, 3L));
+        tm.commit(t1);
+
+        Transaction t2 = tm.begin();
+        assertEquals(readCounter(tt, t2, row), 10L);
+        tt.delete(t2, new Delete(row).deleteColumns(family, qualifier));
+        tm.commit(t2);
+
+        // A deleted counter starts from zero
+        Transaction t3 = tm.begin();
+        tt.increment(t3, new Increment(row).addColumn(family, qualifier, 4L));
+        tm.commit(t3);
+
+        // A put over an increment of the same transaction overwrites it, and conflicts again
+        Transaction t4 = tm.begin();
+        Transaction t5 = tm.begin();
+        assertEquals(readCounter(tt, t4, row), 4L, "Deleted counter should start from zero");
+        tt.increment(t4, new Increment(row).addColumn(family, qualifier, 1L));
+        tt.put(t4, new Put(row).add(family, qualifier, Bytes.toBytes(20L)));
+        tt.put(t5, new Put(row).add(family, qualifier, Bytes.toBytes(30L)));
+        tm.commit(t5);
+        try {
+            tm.commit(t4);
+            fail("Transaction should not commit successfully");
+        } catch (RollbackException e) {
+            // Expected
+        }
+
+        Transaction t6 = tm.begin();
+        assertEquals(readCounter(tt, t6, row), 30L);
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testIncrementConflictsWithAConcurrentPut(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+        TTable tt = new TTable(hbaseConf, TEST_TABLE);
+        byte[] row = Bytes.toBytes("test-increment-racing-put");
+
+        Transaction t0 = tm.begin();
+        tt.put(t0, new Put(row).add(family, qualifier, Bytes.toBytes(10L)));
+        tm.commit(t0);
+
+        // The put committed after the increment started would hide its delta
+        Transaction t1 = tm.begin();
+        tt.increment(t1, new Increment(row).addColumn(family, qualifier, 1L));
+        Transaction t2 = tm.begin();
+        tt.put(t2, new Put(row).add(family, qualifier, Bytes.toBytes(50L)));
+        tm.commit(t2);
+        try {
+            tm.commit(t1);
+            fail("Transaction should not commit successfully");
+        } catch (RollbackException e) {
+            // Expected
+        }
+
+        Transaction t3 = tm.begin();
+        assertEquals(readCounter(tt, t3, row), 50L, "The aborted increment should not be added up");
+
+        // A put started before the increment and committed after it doesn't hide the delta, which is newer
+        Transaction t4 = tm.begin();
+        tt.put(t4, new Put(row).add(family, qualifier, Bytes.toBytes(100L)));
+        Transaction t5 = tm.begin();
+        tt.increment(t5, new Increment(row).addColumn(family, qualifier, 1L));
+        tm.commit(t5);
+        tm.commit(t4);
+
+        Transaction t6 = tm.begin();
+        assertEquals(readCounter(tt, t6, row), 101L, "The increment should be added up to the put");
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testIncrementConflictsWithAConcurrentDelete(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+        TTable tt = new TTable(hbaseConf, TEST_TABLE);
+        byte[] row = Bytes.toBytes("test-increment-racing-delete");
+
+        Transaction t0 = tm.begin();
+        tt.put(t0, new Put(row).add(family, qualifier, Bytes.toBytes(10L)));
+        tm.commit(t0);
+
+        Transaction t1 = tm.begin();
+        Transaction t2 = tm.begin();
+        tt.increment(t1, new Increment(row).addColumn(family, qualifier, 1L));
+        tt.delete(t2, new Delete(row).deleteColumns(family, qualifier));
+        tm.commit(t2);
+        try {
+            tm.commit(t1);
+            fail("Transaction should not commit successfully");
+        } catch (RollbackException e) {
+            // Expected
+        }
+
+        Transaction t3 = tm.begin();
+        Result result = tt.get(t3, new Get(row).addColumn(family, qualifier));
+        assertTrue(result.isEmpty(), "The aborted increment should not resurrect the counter");
+
+    }
+
+    private static long readCounter(TTable tt, Transaction tx, byte[] row) throws Exception {
+        Result result = tt.get(tx, new Get(row).addColumn(family, qualifier));
+        return Bytes.toLong(result.getValue(family, qualifier));
+    }
+
+}
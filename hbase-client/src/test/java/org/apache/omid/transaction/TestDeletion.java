@@ -31,11 +31,13 @@ import org.testng.ITestContext;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 @Test(groups = "sharedHBase")
 public class TestDeletion extends OmidTestBase {
@@ -250,6 +252,69 @@ public class TestDeletion extends OmidTestBase {
 
     }
 
+    @Test(timeOut = 10_000)
+    public void testFamilyDeleteWritesASingleMarker(ITestContext context) throws Exception {
+
+        // Conflicts of famA detected per family, so its deletes are a single marker
+        HBaseOmidClientConfiguration clientConf = new HBaseOmidClientConfiguration();
+        clientConf.setConnectionString("localhost:1234");
+        clientConf.setHBaseConfiguration(hbaseConf);
+        clientConf.setFamilyConflictGranularity(Arrays.asList(TEST_TABLE + ":" + TEST_FAMILY));
+        TransactionManager tm = HBaseTransactionManager.builder(clientConf)
+                .commitTableClient(getCommitTable(context).getClient())
+                .tsoClient(getClient(context)).build();
+        TTable tt = new TTable(hbaseConf, TEST_TABLE);
+        byte[] row = Bytes.toBytes("test-family-delete");
+
+        Transaction t1 = tm.begin();
+        Put p = new Put(row);
+        for (int i = 0; i < 10; i++) {
+            p.add(famA, Bytes.toBytes("col-" + i), data1);
+        }
+        p.add(famB, colB, data1);
+        tt.put(t1, p);
+        tm.commit(t1);
+
+        Transaction t2 = tm.begin();
+        tt.delete(t2, new Delete(row).deleteFamily(famA));
+        assertEquals(((HBaseTransaction) t2).getWriteSet().size(), 1, "Family delete should be a single cell");
+        Transaction concurrent = tm.begin();
+        tm.commit(t2);
+
+        assertEquals(tt.get(concurrent, new Get(row).addFamily(famA)).size(), 10,
+                     "Concurrent transaction should see the family");
+        Transaction t3 = tm.begin();
+        assertTrue(tt.get(t3, new Get(row).addFamily(famA)).isEmpty(), "Family should be deleted");
+        assertTrue(tt.get(t3, new Get(row).addColumn(famA, Bytes.toBytes("col-0"))).isEmpty(),
+                   "Column should be deleted with its family");
+        assertEquals(tt.get(t3, new Get(row)).size(), 1, "Other families should be there");
+
+        // The writes of the transaction to the family before deleting it are deleted too, and not the ones after
+        tt.put(t3, new Put(row).add(famA, colA, data1));
+        tt.delete(t3, new Delete(row).deleteFamily(famA));
+        assertTrue(tt.get(t3, new Get(row).addFamily(famA)).isEmpty(), "Family should be deleted");
+        tt.put(t3, new Put(row).add(famA, colB, data1));
+        tm.commit(t3);
+
+        Transaction t4 = tm.begin();
+        Result result = tt.get(t4, new Get(row).addFamily(famA));
+        assertEquals(result.size(), 1);
+        assertTrue(result.containsColumn(famA, colB));
+
+        // Family deletes conflict with the concurrent writes to the family
+        Transaction t5 = tm.begin();
+        tt.delete(t4, new Delete(row).deleteFamily(famA));
+        tt.put(t5, new Put(row).add(famA, colA, data1));
+        tm.commit(t5);
+        try {
+            tm.commit(t4);
+            fail("Transaction should not commit successfully");
+        } catch (RollbackException e) {
+            // Expected
+        }
+
+    }
+
     private int countRows(ResultScanner rs) throws IOException {
         int count;
         Result r = rs.next();
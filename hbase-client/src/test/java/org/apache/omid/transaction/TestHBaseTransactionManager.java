@@ -18,13 +18,22 @@
 package org.apache.omid.transaction;
 
 import org.apache.omid.tso.client.TSOClient;
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
 import org.testng.ITestContext;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anySetOf;
 import static org.mockito.Mockito.doReturn;
@@ -34,6 +43,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 // TODO These tests should be adapted to a future test for AbstractTransactionManager as they should be DB independent
 @Test(groups = "sharedHBase")
@@ -46,6 +56,14 @@ public class TestHBaseTransactionManager extends OmidTestBase {
     private final byte[] qualifier = Bytes.toBytes("TEST_Q");
     private final byte[] data1 = Bytes.toBytes("test_data1");
 
+    @Captor
+    private ArgumentCaptor<Set<HBaseCellId>> cellsCaptor;
+
+    @BeforeMethod(alwaysRun = true)
+    public void initCaptors() {
+        MockitoAnnotations.initMocks(this);
+    }
+
 
     @Test(timeOut = 20_000)
     public void testTxManagerGetsTimestampsInTheRightEpoch(ITestContext context) throws Exception {
@@ -99,4 +117,78 @@ public class TestHBaseTransactionManager extends OmidTestBase {
 
     }
 
+    @Test(timeOut = 20_000)
+    public void testRepeatedWritesToACellAreSentOnceToTheTSO(ITestContext context) throws Exception {
+
+        TSOClient tsoClient = spy(getClient(context));
+        TransactionManager tm = newTransactionManager(context, tsoClient);
+
+        try (TTable txTable = new TTable(hbaseConf, TEST_TABLE)) {
+
+            HBaseTransaction tx = (HBaseTransaction) tm.begin();
+            for (int i = 0; i < 3; i++) {
+                txTable.put(tx, new Put(row1).add(testFamily, qualifier, Bytes.toBytes("value-" + i)));
+            }
+            // The delete of the same cell doesn't add another element to the write set either
+            txTable.delete(tx, new Delete(row1).deleteColumn(testFamily, qualifier));
+            assertEquals(tx.getWriteSet().size(), 1);
+            tm.commit(tx);
+
+            verify(tsoClient, times(1)).commit(anyLong(), cellsCaptor.capture());
+            assertEquals(cellsCaptor.getValue().size(), 1);
+        }
+
+    }
+
+    @Test(timeOut = 20_000)
+    public void testRowConflictGranularitySendsOneIdPerRowAndDetectsConflictsPerRow(ITestContext context)
+            throws Exception {
+
+        TSOClient tsoClient = spy(getClient(context));
+
+        HBaseOmidClientConfiguration clientConf = new HBaseOmidClientConfiguration();
+        clientConf.setConnectionString("localhost:1234");
+        clientConf.setHBaseConfiguration(hbaseConf);
+        clientConf.setRowConflictGranularity(Arrays.asList(TEST_TABLE));
+        TransactionManager tm = HBaseTransactionManager.builder(clientConf)
+                .commitTableClient(getCommitTable(context).getClient())
+                .tsoClient(tsoClient).build();
+
+        byte[] wideRow = Bytes.toBytes("test-wide-row");
+        try (TTable txTable = new TTable(hbaseConf, TEST_TABLE)) {
+
+            HBaseTransaction tx1 = (HBaseTransaction) tm.begin();
+            Put put = new Put(wideRow);
+            for (int i = 0; i < 100; i++) {
+                put.add(testFamily, Bytes.toBytes("col-" + i), data1);
+            }
+            txTable.put(tx1, put);
+            // The write set keeps every cell for the shadow cells...
+            assertEquals(tx1.getWriteSet().size(), 100);
+            tm.commit(tx1);
+
+            // ...but they all share the id sent to the TSO
+            verify(tsoClient, times(1)).commit(anyLong(), cellsCaptor.capture());
+            Set<Long> cellIds = new HashSet<>();
+            for (HBaseCellId cell : cellsCaptor.getValue()) {
+                cellIds.add(cell.getCellId());
+            }
+            assertEquals(cellIds.size(), 1);
+
+            // Concurrent writes to different cells of the row conflict
+            Transaction tx2 = tm.begin();
+            Transaction tx3 = tm.begin();
+            txTable.put(tx2, new Put(wideRow).add(testFamily, Bytes.toBytes("col-0"), data1));
+            txTable.put(tx3, new Put(wideRow).add(testFamily, Bytes.toBytes("col-1"), data1));
+            tm.commit(tx2);
+            try {
+                tm.commit(tx3);
+                fail("Transaction writing to the same row should have been rolled back");
+            } catch (RollbackException e) {
+                // Expected
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.testng.ITestContext;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+@Test(groups = "sharedHBase")
+public class TestReadOnlyTransactions extends OmidTestBase {
+
+    private static final byte[] row = Bytes.toBytes("row");
+    private static final byte[] family = Bytes.toBytes(TEST_FAMILY);
+    private static final byte[] qualifier = Bytes.toBytes("col");
+
+    @Test(timeOut = 30_000)
+    public void testReadOnlyTransactionsReadTheSafeSnapshotPublishedByTheTSO(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+        try (TTable tt = new TTable(hbaseConf, TEST_TABLE)) {
+
+            HBaseTransaction tx1 = (HBaseTransaction) tm.begin();
+            tt.put(tx1, new Put(row).add(family, qualifier, Bytes.toBytes("value1")));
+            tm.commit(tx1);
+
+            // Wait for the TSO to publish a safe read timestamp including tx1
+            HBaseTransaction readOnlyTx = (HBaseTransaction) tm.beginReadOnly();
+            while (readOnlyTx.getStartTimestamp() < tx1.getCommitTimestamp()) {
+                Thread.sleep(10);
+                readOnlyTx = (HBaseTransaction) tm.beginReadOnly();
+            }
+            Result result = tt.get(readOnlyTx, new Get(row).addColumn(family, qualifier));
+            assertEquals(result.getValue(family, qualifier), Bytes.toBytes("value1"));
+
+            try {
+                tt.put(readOnlyTx, new Put(row).add(family, qualifier, Bytes.toBytes("value2")));
+                fail("Read-only transactions can't write");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            tm.commit(readOnlyTx);
+            assertEquals(readOnlyTx.getStatus(), Transaction.Status.COMMITTED_RO);
+
+        }
+
+    }
+
+    @Test(timeOut = 30_000)
+    public void testTransactionsStartedAtAPastTimestampReadThatSnapshot(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+        try (TTable tt = new TTable(hbaseConf, TEST_TABLE)) {
+
+            HBaseTransaction tx1 = (HBaseTransaction) tm.begin();
+            tt.put(tx1, new Put(row).add(family, qualifier, Bytes.toBytes("value1")));
+            tm.commit(tx1);
+
+            // tx2 writes but doesn't commit. Read-only transactions sharing its start timestamp don't see its writes
+            HBaseTransaction tx2 = (HBaseTransaction) tm.begin();
+            tt.put(tx2, new Put(row).add(family, qualifier, Bytes.toBytes("value2")));
+            Transaction readOnlyTx = tm.beginAt(tx2.getStartTimestamp());
+            Result result = tt.get(readOnlyTx, new Get(row).addColumn(family, qualifier));
+            assertEquals(result.getValue(family, qualifier), Bytes.toBytes("value1"));
+
+            // Before tx1 committed
+            readOnlyTx = tm.beginAt(tx1.getStartTimestamp());
+            result = tt.get(readOnlyTx, new Get(row).addColumn(family, qualifier));
+            assertFalse(result.containsColumn(family, qualifier));
+
+            tm.commit(tx2);
+            readOnlyTx = tm.beginAt(tx2.getCommitTimestamp());
+            result = tt.get(readOnlyTx, new Get(row).addColumn(family, qualifier));
+            assertEquals(result.getValue(family, qualifier), Bytes.toBytes("value1"));
+
+        }
+
+    }
+
+    @Test(timeOut = 30_000)
+    public void testTransactionsCantStartAtTimestampsNotHandedOutYet(ITestContext context) throws Exception {
+
+        TransactionManager tm = newTransactionManager(context);
+        Transaction tx = tm.begin();
+        try {
+            tm.beginAt(tx.getTransactionId() + 1_000_000);
+            fail("The snapshot of future timestamps could change");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("newer than the last one handed out"));
+        }
+
+    }
+
+}
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
@@ -102,4 +103,40 @@ public class TestReadPath extends OmidTestBase {
 
     }
 
+    @Test(timeOut = 10_000)
+    public void testMultiGetReturnsTheSnapshotOfEachRow(ITestContext context) throws Exception {
+        TransactionManager tm = newTransactionManager(context);
+        TTable table = new TTable(hbaseConf, TEST_TABLE);
+
+        byte[][] rows = { Bytes.toBytes("row-a"), Bytes.toBytes("row-b"), Bytes.toBytes("row-c") };
+
+        // Commit data on the first two rows only
+        Transaction t = tm.begin();
+        table.put(t, new Put(rows[0]).add(family, col, data));
+        table.put(t, new Put(rows[1]).add(family, col, data));
+        tm.commit(t);
+
+        // Shade the second row with uncommitted data, so it needs a pending get
+        Transaction uncommittedTx = tm.begin();
+        table.put(uncommittedTx, new Put(rows[1]).add(family, col, uncommitted));
+
+        t = tm.begin();
+        List<Get> gets = new ArrayList<>();
+        for (byte[] row : rows) {
+            gets.add(new Get(row).addColumn(family, col));
+        }
+        gets.add(new Get(rows[0]).addColumn(family, col)); // Repeated rows get their own result
+        Result[] results = table.get(t, gets);
+
+        assertEquals(results.length, gets.size());
+        assertEquals(results[0].getValue(family, col), data);
+        assertEquals(results[1].getValue(family, col), data);
+        assertTrue(results[2].isEmpty(), "Row without data should be empty");
+        assertEquals(results[3].getValue(family, col), data);
+        tm.commit(t);
+
+        tm.rollback(uncommittedTx);
+        table.close();
+    }
+
 }
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.omid.metrics.Counter;
+import org.apache.omid.metrics.MetricsRegistry;
+import org.apache.omid.metrics.NullMetricsProvider;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.apache.omid.metrics.MetricsUtils.name;
+import static org.apache.omid.transaction.CellUtils.hasShadowCell;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@Test(groups = "sharedHBase")
+public class TestShadowCellHealer extends OmidTestBase {
+
+    private static final byte[] family = Bytes.toBytes(TEST_FAMILY);
+    private static final byte[] qualifier = Bytes.toBytes("healed-col");
+
+    @Test(timeOut = 60_000)
+    public void testHealsAreDeduplicatedAndBatched() throws Exception {
+
+        final int QUEUE_SIZE = 3;
+        final long COMMIT_TS = 100L;
+
+        MetricsRegistry metrics = spy(new NullMetricsProvider());
+        Counter issuedCounter = mock(Counter.class);
+        Counter skippedCounter = mock(Counter.class);
+        doReturn(issuedCounter).when(metrics).counter(name("omid", "tm", "hbase", "shadowCellHealer", "issued"));
+        doReturn(skippedCounter).when(metrics).counter(name("omid", "tm", "hbase", "shadowCellHealer", "skipped"));
+
+        // Holds the healer thread until the heals are queued
+        final CountDownLatch healerStarted = new CountDownLatch(1);
+        ExecutorService healerExecutor = Executors.newSingleThreadExecutor();
+        healerExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                healerStarted.await();
+                return null;
+            }
+        });
+        ShadowCellHealer healer = new ShadowCellHealer(QUEUE_SIZE, metrics, healerExecutor);
+
+        try (HTable table = new HTable(hbaseConf, TEST_TABLE)) {
+            Cell[] cells = new Cell[QUEUE_SIZE + 1];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = new KeyValue(Bytes.toBytes("healed-row-" + i), family, qualifier, i + 1, Bytes.toBytes(i));
+            }
+
+            for (int i = 0; i < QUEUE_SIZE; i++) {
+                healer.heal(table, cells[i], COMMIT_TS);
+            }
+            // Concurrent readers of the same cell heal it only once...
+            healer.heal(table, cells[0], COMMIT_TS);
+            // ...and heals that don't fit in the queue are skipped
+            healer.heal(table, cells[QUEUE_SIZE], COMMIT_TS);
+            verify(skippedCounter, times(2)).inc();
+
+            healerStarted.countDown();
+            healer.awaitPendingHeals();
+
+            verify(issuedCounter, times(1)).inc(QUEUE_SIZE);
+            for (int i = 0; i < QUEUE_SIZE; i++) {
+                assertTrue(hasShadowCell(Bytes.toBytes("healed-row-" + i), family, qualifier, i + 1,
+                                         new TTableCellGetterAdapter(new TTable(table))),
+                           "Shadow cell should be there after being healed");
+            }
+            assertFalse(hasShadowCell(Bytes.toBytes("healed-row-" + QUEUE_SIZE), family, qualifier, QUEUE_SIZE + 1,
+                                      new TTableCellGetterAdapter(new TTable(table))),
+                        "Skipped shadow cell should not be there");
+        } finally {
+            healer.close();
+        }
+
+    }
+
+}
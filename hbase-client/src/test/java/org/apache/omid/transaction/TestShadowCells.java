@@ -19,6 +19,7 @@ package org.apache.omid.transaction;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.omid.committable.CommitTable;
 
@@ -26,28 +27,38 @@ import org.apache.omid.metrics.NullMetricsProvider;
 
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Matchers;
+import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.ITestContext;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.omid.transaction.CellUtils.hasCell;
 import static org.apache.omid.transaction.CellUtils.hasShadowCell;
@@ -60,6 +71,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
@@ -83,6 +95,14 @@ public class TestShadowCells extends OmidTestBase {
     private static final byte[] qualifier = Bytes.toBytes("testdata");
     private static final byte[] data1 = Bytes.toBytes("testWrite-1");
 
+    @Captor
+    private ArgumentCaptor<List<Put>> putsCaptor;
+
+    @BeforeMethod(alwaysRun = true)
+    public void initCaptors() {
+        MockitoAnnotations.initMocks(this);
+    }
+
 
     @Test(timeOut = 60_000)
     public void testShadowCellsBasics(ITestContext context) throws Exception {
@@ -131,6 +151,129 @@ public class TestShadowCells extends OmidTestBase {
         verify(commitTableClient, never()).getCommitTimestamp(anyLong());
     }
 
+    @Test(timeOut = 60_000)
+    public void testShadowCellsAreWrittenInABatchWithAPutPerRow(ITestContext context) throws Exception {
+
+        final int ROWS = 3;
+        final int COLUMNS = 4;
+
+        TransactionManager tm = newTransactionManager(context);
+        HTable htable = spy(new HTable(hbaseConf, TEST_TABLE));
+        TTable table = new TTable(htable);
+
+        HBaseTransaction tx = (HBaseTransaction) tm.begin();
+        for (int i = 0; i < ROWS; i++) {
+            Put put = new Put(Bytes.toBytes("batched-row-" + i));
+            for (int j = 0; j < COLUMNS; j++) {
+                put.add(family, Bytes.toBytes("col-" + j), data1);
+            }
+            table.put(tx, put);
+        }
+        tm.commit(tx);
+
+        verify(htable, times(1)).put(putsCaptor.capture());
+        List<Put> shadowCellPuts = putsCaptor.getValue();
+        assertEquals(shadowCellPuts.size(), ROWS);
+        for (Put put : shadowCellPuts) {
+            assertEquals(put.size(), COLUMNS);
+        }
+        for (int i = 0; i < ROWS; i++) {
+            for (int j = 0; j < COLUMNS; j++) {
+                assertTrue(hasShadowCell(Bytes.toBytes("batched-row-" + i), family, Bytes.toBytes("col-" + j),
+                                         tx.getStartTimestamp(), new TTableCellGetterAdapter(table)),
+                           "Shadow cell should be there");
+            }
+        }
+        table.close();
+
+    }
+
+    @Test(timeOut = 60_000)
+    public void testLazyPostCommitEntriesAreOnlyReclaimedOnceTheCellsAreMaterializedBelowTheLWM(ITestContext context)
+            throws Exception {
+
+        String lazyTableName = createLazyPostCommitTable();
+        AtomicLong lowWatermark = new AtomicLong(0L);
+        CommitTable.Client commitTableClient = lowWatermarkClient(context, lowWatermark);
+        HBaseTransactionManager tm = lazyPostCommitTransactionManager(commitTableClient, 10);
+
+        TTable table = new TTable(hbaseConf, lazyTableName);
+        byte[] lazyRow = Bytes.toBytes("test-sc-lazy");
+
+        HBaseTransaction tx = (HBaseTransaction) tm.begin();
+        table.put(tx, new Put(lazyRow).add(family, qualifier, data1));
+        tm.commit(tx);
+
+        // No shadow cell is written on commit, so the commit table entry is kept...
+        assertFalse(hasShadowCell(lazyRow, family, qualifier, tx.getStartTimestamp(), new TTableCellGetterAdapter(table)),
+                    "Shadow cell shouldn't be there");
+        verify(commitTableClient, never()).completeTransaction(anyLong());
+        assertTrue(commitTableClient.getCommitTimestamp(tx.getStartTimestamp()).get().isPresent(),
+                   "Commit table entry should be there");
+
+        // ...above the low watermark...
+        tm.getLazyCommitReclaimer().reclaim();
+        verify(commitTableClient, never()).completeTransaction(anyLong());
+
+        // ...and below it while the cell isn't materialized
+        lowWatermark.set(tx.getCommitTimestamp() + 1);
+        tm.getLazyCommitReclaimer().reclaim();
+        verify(commitTableClient, never()).completeTransaction(anyLong());
+
+        // Readers find the commit in the commit table and heal the shadow cell...
+        Transaction readTx = tm.begin();
+        Result result = table.get(readTx, new Get(lazyRow).addColumn(family, qualifier));
+        assertTrue(Arrays.equals(data1, result.getValue(family, qualifier)), "Values should be the same");
+        tm.getShadowCellHealer().awaitPendingHeals();
+        assertTrue(hasShadowCell(lazyRow, family, qualifier, tx.getStartTimestamp(), new TTableCellGetterAdapter(table)),
+                   "Shadow cell should be there after being healed");
+
+        // ...so then the entry is reclaimed
+        tm.getLazyCommitReclaimer().reclaim();
+        verify(commitTableClient).completeTransaction(tx.getStartTimestamp());
+        assertFalse(commitTableClient.getCommitTimestamp(tx.getStartTimestamp()).get().isPresent(),
+                    "Commit table entry should be removed");
+        table.close();
+
+    }
+
+    @Test(timeOut = 60_000)
+    public void testLazyPostCommitEntriesAreKeptWhenTooManyTransactionsAreTracked(ITestContext context)
+            throws Exception {
+
+        String lazyTableName = createLazyPostCommitTable();
+        AtomicLong lowWatermark = new AtomicLong(0L);
+        CommitTable.Client commitTableClient = lowWatermarkClient(context, lowWatermark);
+        HBaseTransactionManager tm = lazyPostCommitTransactionManager(commitTableClient, 1);
+
+        TTable table = new TTable(hbaseConf, lazyTableName);
+        byte[] row1 = Bytes.toBytes("test-sc-lazy-tracked");
+        byte[] row2 = Bytes.toBytes("test-sc-lazy-not-tracked");
+
+        HBaseTransaction tx1 = (HBaseTransaction) tm.begin();
+        table.put(tx1, new Put(row1).add(family, qualifier, data1));
+        tm.commit(tx1);
+        HBaseTransaction tx2 = (HBaseTransaction) tm.begin();
+        table.put(tx2, new Put(row2).add(family, qualifier, data1));
+        tm.commit(tx2);
+
+        // Both cells are materialized below the low watermark...
+        Transaction readTx = tm.begin();
+        table.get(readTx, new Get(row1).addColumn(family, qualifier));
+        table.get(readTx, new Get(row2).addColumn(family, qualifier));
+        tm.getShadowCellHealer().awaitPendingHeals();
+        lowWatermark.set(Long.MAX_VALUE);
+
+        // ...but only the entry of the transaction tracked is reclaimed
+        tm.getLazyCommitReclaimer().reclaim();
+        verify(commitTableClient).completeTransaction(tx1.getStartTimestamp());
+        verify(commitTableClient, never()).completeTransaction(tx2.getStartTimestamp());
+        assertTrue(commitTableClient.getCommitTimestamp(tx2.getStartTimestamp()).get().isPresent(),
+                   "Commit table entry should be there");
+        table.close();
+
+    }
+
     @Test(timeOut = 60_000)
     public void testCrashingAfterCommitDoesNotWriteShadowCells(ITestContext context) throws Exception {
 
@@ -223,6 +366,8 @@ public class TestShadowCells extends OmidTestBase {
         Result getResult = table.get(t2, get);
         assertTrue(Arrays.equals(data1, getResult.getValue(family, qualifier)), "Values should be the same");
         verify(commitTableClient, times(1)).getCommitTimestamp(anyLong());
+        // The shadow cell is healed in the background
+        ((HBaseTransactionManager) tm).getShadowCellHealer().awaitPendingHeals();
 
         assertTrue(hasCell(row, family, qualifier, t1.getStartTimestamp(), new TTableCellGetterAdapter(table)),
                 "Cell should be there");
@@ -237,6 +382,67 @@ public class TestShadowCells extends OmidTestBase {
         verify(commitTableClient, times(1)).getCommitTimestamp(anyLong());
     }
 
+    @Test(timeOut = 60_000)
+    public void testCommitTimestampsOfARowAreLocatedInBatch(ITestContext context) throws Exception {
+
+        CommitTable.Client commitTableClient = spy(getCommitTable(context).getClient());
+
+        HBaseOmidClientConfiguration hbaseOmidClientConf = new HBaseOmidClientConfiguration();
+        hbaseOmidClientConf.setConnectionString(TSO_SERVER_HOST + ":" + TSO_SERVER_PORT);
+        hbaseOmidClientConf.setHBaseConfiguration(hbaseConf);
+        PostCommitActions syncPostCommitter = spy(
+                new HBaseSyncPostCommitter(new NullMetricsProvider(), commitTableClient));
+        AbstractTransactionManager tm = spy((AbstractTransactionManager) HBaseTransactionManager.builder(hbaseOmidClientConf)
+                .postCommitter(syncPostCommitter)
+                .commitTableClient(commitTableClient)
+                .build());
+
+        // The following line emulates a crash after commit, so the commit timestamps are only in the commit table
+        doThrow(new RuntimeException()).when(syncPostCommitter).updateShadowCells(any(HBaseTransaction.class));
+
+        TTable table = new TTable(hbaseConf, TEST_TABLE);
+
+        final int COMMITTED_TXS = 3;
+        byte[] batchRow = Bytes.toBytes("test-sc-batch");
+        long[] startTimestamps = new long[COMMITTED_TXS];
+        for (int i = 0; i < COMMITTED_TXS; i++) {
+            HBaseTransaction tx = (HBaseTransaction) tm.begin();
+            startTimestamps[i] = tx.getStartTimestamp();
+            table.put(tx, new Put(batchRow).add(family, Bytes.toBytes("committed-" + i), data1));
+            try {
+                tm.commit(tx);
+            } catch (Exception e) { // Crash
+                // Do nothing
+            }
+        }
+        // A transaction in progress, neither in the commit table nor in the shadow cells
+        HBaseTransaction inProgressTx = (HBaseTransaction) tm.begin();
+        byte[] inProgressQualifier = Bytes.toBytes("in-progress");
+        table.put(inProgressTx, new Put(batchRow).add(family, inProgressQualifier, data1));
+
+        Transaction readTx = tm.begin();
+        Result getResult = table.get(readTx, new Get(batchRow));
+        for (int i = 0; i < COMMITTED_TXS; i++) {
+            assertTrue(Arrays.equals(data1, getResult.getValue(family, Bytes.toBytes("committed-" + i))),
+                       "Values should be the same");
+        }
+        assertFalse(getResult.containsColumn(family, inProgressQualifier), "Cell should not be in the snapshot");
+
+        // All the commit timestamps are located with a single commit table lookup
+        verify(commitTableClient, times(1)).getCommitTimestamps(Matchers.anyCollectionOf(Long.class));
+        verify(commitTableClient, never()).getCommitTimestamp(anyLong());
+        verify(commitTableClient, never()).tryInvalidateTransaction(anyLong());
+
+        // The shadow cells of the transactions found in the commit table are healed
+        ((HBaseTransactionManager) tm).getShadowCellHealer().awaitPendingHeals();
+        for (int i = 0; i < COMMITTED_TXS; i++) {
+            assertTrue(hasShadowCell(batchRow, family, Bytes.toBytes("committed-" + i), startTimestamps[i],
+                                     new TTableCellGetterAdapter(table)),
+                       "Shadow cell should be there after being healed");
+        }
+        tm.rollback(inProgressTx);
+    }
+
     @Test(timeOut = 60_000)
     public void testTransactionNeverCompletesWhenAnExceptionIsThrownUpdatingShadowCells(ITestContext context)
             throws Exception {
@@ -505,4 +711,50 @@ public class TestShadowCells extends OmidTestBase {
         return com.google.common.primitives.Bytes.concat(qualifier, LEGACY_SHADOW_CELL_SUFFIX);
     }
 
+    private static String createLazyPostCommitTable() throws Exception {
+        String lazyTableName = TEST_TABLE + "-lazy-post-commit";
+        HBaseAdmin admin = new HBaseAdmin(hbaseConf);
+        if (!admin.tableExists(lazyTableName)) {
+            HTableDescriptor desc = new HTableDescriptor(TableName.valueOf(lazyTableName));
+            desc.setValue(CellUtils.OMID_LAZY_POST_COMMIT_FLAG, Boolean.TRUE.toString());
+            HColumnDescriptor datafam = new HColumnDescriptor(TEST_FAMILY);
+            datafam.setMaxVersions(Integer.MAX_VALUE);
+            desc.addFamily(datafam);
+            admin.createTable(desc);
+        }
+        admin.close();
+        return lazyTableName;
+    }
+
+    /**
+     * @return a client of the commit table of the test that reads the low watermark passed
+     */
+    private CommitTable.Client lowWatermarkClient(ITestContext context, final AtomicLong lowWatermark)
+            throws Exception {
+        CommitTable.Client commitTableClient = spy(getCommitTable(context).getClient());
+        doAnswer(new Answer<ListenableFuture<Long>>() {
+            @Override
+            public ListenableFuture<Long> answer(InvocationOnMock invocation) {
+                return Futures.immediateFuture(lowWatermark.get());
+            }
+        }).when(commitTableClient).readLowWatermark();
+        return commitTableClient;
+    }
+
+    /**
+     * @return a transaction manager whose lazy post-commit entries are only reclaimed when the test asks for it
+     */
+    private static HBaseTransactionManager lazyPostCommitTransactionManager(CommitTable.Client commitTableClient,
+                                                                            int reclaimQueueSize)
+            throws Exception {
+        HBaseOmidClientConfiguration hbaseOmidClientConf = new HBaseOmidClientConfiguration();
+        hbaseOmidClientConf.setConnectionString(TSO_SERVER_HOST + ":" + TSO_SERVER_PORT);
+        hbaseOmidClientConf.setHBaseConfiguration(hbaseConf);
+        hbaseOmidClientConf.setLazyCommitReclaimQueueSize(reclaimQueueSize);
+        hbaseOmidClientConf.setLazyCommitReclaimIntervalInMs(TimeUnit.HOURS.toMillis(1));
+        return HBaseTransactionManager.builder(hbaseOmidClientConf)
+                                      .commitTableClient(commitTableClient)
+                                      .build();
+    }
+
 }
@@ -41,7 +41,7 @@ public class TestTTableBehaviour {
     public void testUserOperationsDontAllowTimestampSpecification() throws Exception {
 
         // Component under test
-        TTable tt = new TTable(Mockito.mock(HTableInterface.class), Mockito.mock(HTableInterface.class));
+        TTable tt = new TTable(Mockito.mock(HTableInterface.class));
 
         long randomTimestampValue = Bytes.toLong("deadbeef".getBytes());
 
@@ -116,7 +116,9 @@ public class TestTTableBehaviour {
         byte[] nonValidQualifier1 = "blahblah\u0080".getBytes(Charsets.UTF_8);
         byte[] validQualifierIncludingOldShadowCellSuffix = "blahblah:OMID_CTS".getBytes(Charsets.UTF_8);
 
-        TTable table = new TTable(Mockito.mock(HTableInterface.class), Mockito.mock(HTableInterface.class));
+        HTableInterface hTable = Mockito.mock(HTableInterface.class);
+        Mockito.when(hTable.isAutoFlush()).thenReturn(true);
+        TTable table = new TTable(hTable);
 
         HBaseTransaction t1 = Mockito.mock(HBaseTransaction.class);
         Put put = new Put(row);
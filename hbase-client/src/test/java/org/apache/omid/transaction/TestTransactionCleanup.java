@@ -19,6 +19,11 @@ package org.apache.omid.transaction;
 
 import com.google.common.util.concurrent.SettableFuture;
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
@@ -27,16 +32,30 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.omid.tso.client.AbortException;
 import org.apache.omid.tso.client.ForwardingTSOFuture;
 import org.apache.omid.tso.client.TSOClient;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.ITestContext;
 import org.testng.annotations.Test;
 
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anySetOf;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 @Test(groups = "sharedHBase")
 public class TestTransactionCleanup extends OmidTestBase {
@@ -115,4 +134,81 @@ public class TestTransactionCleanup extends OmidTestBase {
         }
     }
 
+    @Test(timeOut = 60_000)
+    public void testCleanupDeletesAreBatchedWithADeletePerRow(ITestContext context) throws Exception {
+
+        final int ROWS = 3;
+        final int COLUMNS = 2;
+
+        TransactionManager tm = newTransactionManager(context);
+        HTable htable = spy(new HTable(hbaseConf, TEST_TABLE));
+        try (TTable txTable = new TTable(htable)) {
+
+            Transaction tx = tm.begin();
+            for (int i = 0; i < ROWS; i++) {
+                Put put = new Put(Bytes.toBytes("cleaned-row-" + i));
+                for (int j = 0; j < COLUMNS; j++) {
+                    put.add(family, Bytes.toBytes("qual-" + j), data);
+                }
+                txTable.put(tx, put);
+            }
+            tm.rollback(tx);
+
+            verify(htable, times(1)).delete(anyListOf(Delete.class));
+            verify(htable, never()).delete(any(Delete.class));
+            for (int i = 0; i < ROWS; i++) {
+                assertTrue(htable.get(new Get(Bytes.toBytes("cleaned-row-" + i))).isEmpty(),
+                           "Writes of the rolled-back transaction should be deleted");
+            }
+        }
+
+    }
+
+    @Test(timeOut = 60_000)
+    public void testAsyncCleanupDoesNotBlockTheRollback(ITestContext context) throws Exception {
+
+        final byte[] asyncRow = Bytes.toBytes("async-cleaned-row");
+
+        HBaseOmidClientConfiguration clientConf = new HBaseOmidClientConfiguration();
+        clientConf.setConnectionString("localhost:1234");
+        clientConf.setHBaseConfiguration(hbaseConf);
+        clientConf.setAsyncCleanup(true);
+
+        // The cleanup uses its own table, held until the rollback has returned
+        final CountDownLatch rollbackReturned = new CountDownLatch(1);
+        final HTable cleanupTable = spy(new HTable(hbaseConf, TEST_TABLE));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                rollbackReturned.await();
+                invocation.callRealMethod();
+                return null;
+            }
+        }).when(cleanupTable).delete(anyListOf(Delete.class));
+        HConnection connection = mock(HConnection.class);
+        doReturn(cleanupTable).when(connection).getTable(TableName.valueOf(TEST_TABLE));
+
+        TransactionManager tm = HBaseTransactionManager.builder(clientConf)
+                .commitTableClient(getCommitTable(context).getClient())
+                .tsoClient(getClient(context))
+                .connection(connection).build();
+
+        HTable htable = spy(new HTable(hbaseConf, TEST_TABLE));
+        try (TTable txTable = new TTable(htable)) {
+            Transaction tx = tm.begin();
+            txTable.put(tx, new Put(asyncRow).add(family, qual, data));
+            tm.rollback(tx);
+            assertFalse(htable.get(new Get(asyncRow)).isEmpty(), "The cleanup should be running in the background");
+            rollbackReturned.countDown();
+
+            while (!htable.get(new Get(asyncRow)).isEmpty()) {
+                Thread.sleep(10);
+            }
+            verify(htable, never()).delete(anyListOf(Delete.class));
+            verify(cleanupTable, timeout(10_000)).close();
+        }
+        cleanupTable.close();
+
+    }
+
 }
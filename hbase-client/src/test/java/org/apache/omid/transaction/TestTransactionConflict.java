@@ -76,6 +76,48 @@ public class TestTransactionConflict extends OmidTestBase {
         }
     }
 
+    @Test(timeOut = 10_000)
+    public void testWritesToConflictFreeFamiliesDoNotConflict(ITestContext context) throws Exception {
+        TransactionManager tm = newTransactionManager(context);
+        String conflictFreeTable = TEST_TABLE + "-conflict-free";
+
+        HBaseAdmin admin = new HBaseAdmin(hbaseConf);
+        if (!admin.tableExists(conflictFreeTable)) {
+            HTableDescriptor desc = new HTableDescriptor(TableName.valueOf(conflictFreeTable));
+            HColumnDescriptor datafam = new HColumnDescriptor(TEST_FAMILY);
+            datafam.setMaxVersions(Integer.MAX_VALUE);
+            datafam.setValue(TTable.OMID_CONFLICT_FREE_FLAG, Boolean.TRUE.toString());
+            desc.addFamily(datafam);
+            admin.createTable(desc);
+        }
+        admin.close();
+
+        TTable tt = new TTable(hbaseConf, conflictFreeTable);
+
+        byte[] row = Bytes.toBytes("test-conflict-free");
+        byte[] fam = Bytes.toBytes(TEST_FAMILY);
+        byte[] col = Bytes.toBytes("testdata");
+        byte[] data1 = Bytes.toBytes("testWrite-1");
+        byte[] data2 = Bytes.toBytes("testWrite-2");
+
+        HBaseTransaction t1 = (HBaseTransaction) tm.begin();
+        Transaction t2 = tm.begin();
+        tt.put(t1, new Put(row).add(fam, col, data1));
+        tt.put(t2, new Put(row).add(fam, col, data2));
+        assertTrue(t1.getConflictWriteSet().isEmpty(), "Conflict-free cells should not be sent to the TSO");
+
+        // Both commit...
+        tm.commit(t2);
+        tm.commit(t1);
+
+        // ...and their writes are visible transactionally
+        Transaction t3 = tm.begin();
+        Result r = tt.get(t3, new Get(row).addColumn(fam, col));
+        assertEquals(r.getValue(fam, col), data2, "Should read the value of the latest snapshot");
+        tm.commit(t3);
+        tt.close();
+    }
+
     @Test(timeOut = 10_000)
     public void runTestMultiTableConflict(ITestContext context) throws Exception {
         TransactionManager tm = newTransactionManager(context);
@@ -26,10 +26,16 @@ import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import org.apache.omid.committable.CommitTable;
 import org.apache.omid.committable.CommitTable.CommitTimestamp.Location;
+import org.apache.omid.metrics.MetricsRegistry;
+import org.apache.omid.metrics.NullMetricsProvider;
+import org.apache.omid.metrics.Timer;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
 import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -39,8 +45,11 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
@@ -51,6 +60,7 @@ import static org.apache.omid.committable.hbase.HBaseCommitTableConfig.COMMIT_TA
 import static org.apache.omid.committable.hbase.HBaseCommitTableConfig.INVALID_TX_QUALIFIER;
 import static org.apache.omid.committable.hbase.HBaseCommitTableConfig.LOW_WATERMARK_QUALIFIER;
 import static org.apache.omid.committable.hbase.HBaseCommitTableConfig.LOW_WATERMARK_ROW;
+import static org.apache.omid.metrics.MetricsUtils.name;
 
 public class HBaseCommitTable implements CommitTable {
 
@@ -61,23 +71,36 @@ public class HBaseCommitTable implements CommitTable {
     private final byte[] commitTableFamily;
     private final byte[] lowWatermarkFamily;
     private final KeyGenerator keygen;
+    private final MetricsRegistry metrics;
 
     /**
      * Create a hbase commit table.
      * Note that we do not take ownership of the passed htable, it is just used to construct the writer and client.
      */
-    @Inject
     public HBaseCommitTable(Configuration hbaseConfig, HBaseCommitTableConfig config) {
         this(hbaseConfig, config, KeyGeneratorImplementations.defaultKeyGenerator());
     }
 
     public HBaseCommitTable(Configuration hbaseConfig, HBaseCommitTableConfig config, KeyGenerator keygen) {
+        this(hbaseConfig, config, keygen, new NullMetricsProvider());
+    }
+
+    @Inject
+    public HBaseCommitTable(Configuration hbaseConfig, HBaseCommitTableConfig config, MetricsRegistry metrics) {
+        this(hbaseConfig, config, KeyGeneratorImplementations.defaultKeyGenerator(), metrics);
+    }
+
+    public HBaseCommitTable(Configuration hbaseConfig,
+                            HBaseCommitTableConfig config,
+                            KeyGenerator keygen,
+                            MetricsRegistry metrics) {
 
         this.hbaseConfig = hbaseConfig;
         this.tableName = config.getTableName();
         this.commitTableFamily = config.getCommitTableFamily();
         this.lowWatermarkFamily = config.getLowWatermarkFamily();
         this.keygen = keygen;
+        this.metrics = metrics;
 
     }
 
@@ -145,21 +168,38 @@ public class HBaseCommitTable implements CommitTable {
 
     }
 
+    /**
+     * Client that can be shared among many threads. HTable instances are not thread-safe, so instead of holding
+     * a single one, a table handle is taken from a connection shared by all the callers on each operation.
+     * Handles obtained this way are lightweight as they reuse the connection and its thread pool.
+     */
     class HBaseClient implements Client, Runnable {
 
-        final HTable table;
-        final HTable deleteTable;
+        final HConnection connection;
+        final HTableInterface deleteTable; // Only used by the delete batching thread
         final ExecutorService deleteBatchExecutor;
         final BlockingQueue<DeleteRequest> deleteQueue;
         boolean isClosed = false; // @GuardedBy("this")
         final static int DELETE_BATCH_SIZE = 1024;
 
+        // Metrics
+        final Timer getCommitTimestampTimer;
+        final Timer getCommitTimestampsTimer;
+        final Timer readLowWatermarkTimer;
+        final Timer invalidateTxTimer;
+        final Timer deleteBatchTimer;
+
         HBaseClient() throws IOException {
-            table = new HTable(hbaseConfig, tableName);
-            table.setAutoFlush(false, true);
-            deleteTable = new HTable(hbaseConfig, tableName);
+            connection = HConnectionManager.createConnection(hbaseConfig);
+            deleteTable = connection.getTable(tableName);
             deleteQueue = new ArrayBlockingQueue<>(DELETE_BATCH_SIZE);
 
+            getCommitTimestampTimer = metrics.timer(name("omid", "committable", "hbase", "getCommitTimestamp", "latency"));
+            getCommitTimestampsTimer = metrics.timer(name("omid", "committable", "hbase", "getCommitTimestamps", "latency"));
+            readLowWatermarkTimer = metrics.timer(name("omid", "committable", "hbase", "readLowWatermark", "latency"));
+            invalidateTxTimer = metrics.timer(name("omid", "committable", "hbase", "invalidateTx", "latency"));
+            deleteBatchTimer = metrics.timer(name("omid", "committable", "hbase", "deleteBatch", "latency"));
+
             deleteBatchExecutor = Executors.newSingleThreadExecutor(
                     new ThreadFactoryBuilder().setNameFormat("omid-completor-%d").build());
             deleteBatchExecutor.submit(this);
@@ -170,39 +210,57 @@ public class HBaseCommitTable implements CommitTable {
         public ListenableFuture<Optional<CommitTimestamp>> getCommitTimestamp(long startTimestamp) {
 
             SettableFuture<Optional<CommitTimestamp>> f = SettableFuture.create();
-            try {
-                Get get = new Get(startTimestampToKey(startTimestamp));
-                get.addColumn(commitTableFamily, COMMIT_TABLE_QUALIFIER);
-                get.addColumn(commitTableFamily, INVALID_TX_QUALIFIER);
-
-                Result result = table.get(get);
+            long startTimeInNs = System.nanoTime();
+            try (HTableInterface table = connection.getTable(tableName)) {
+                Result result = table.get(createCommitTimestampGet(startTimestamp));
+                f.set(parseCommitTimestamp(startTimestamp, result));
+            } catch (IOException e) {
+                LOG.error("Error getting commit timestamp for TX {}", startTimestamp, e);
+                f.setException(e);
+            } finally {
+                getCommitTimestampTimer.update(System.nanoTime() - startTimeInNs);
+            }
+            return f;
+        }
 
-                if (containsInvalidTransaction(result)) {
-                    CommitTimestamp invalidCT =
-                            new CommitTimestamp(Location.COMMIT_TABLE, INVALID_TRANSACTION_MARKER, false);
-                    f.set(Optional.of(invalidCT));
-                    return f;
+        @Override
+        public ListenableFuture<Map<Long, CommitTimestamp>> getCommitTimestamps(Collection<Long> startTimestamps) {
+
+            SettableFuture<Map<Long, CommitTimestamp>> f = SettableFuture.create();
+            long startTimeInNs = System.nanoTime();
+            try (HTableInterface table = connection.getTable(tableName)) {
+                List<Long> startTimestampList = new ArrayList<>(startTimestamps);
+                List<Get> gets = new ArrayList<>(startTimestampList.size());
+                for (long startTimestamp : startTimestampList) {
+                    gets.add(createCommitTimestampGet(startTimestamp));
                 }
 
-                if (containsATimestamp(result)) {
-                    long commitTSValue =
-                            decodeCommitTimestamp(startTimestamp, result.getValue(commitTableFamily, COMMIT_TABLE_QUALIFIER));
-                    CommitTimestamp validCT = new CommitTimestamp(Location.COMMIT_TABLE, commitTSValue, true);
-                    f.set(Optional.of(validCT));
-                } else {
-                    f.set(Optional.<CommitTimestamp>absent());
+                Result[] results = table.get(gets);
+
+                Map<Long, CommitTimestamp> commitTimestamps = new HashMap<>();
+                for (int i = 0; i < results.length; i++) {
+                    long startTimestamp = startTimestampList.get(i);
+                    Optional<CommitTimestamp> commitTimestamp = parseCommitTimestamp(startTimestamp, results[i]);
+                    if (commitTimestamp.isPresent()) {
+                        commitTimestamps.put(startTimestamp, commitTimestamp.get());
+                    }
                 }
+                f.set(commitTimestamps);
             } catch (IOException e) {
-                LOG.error("Error getting commit timestamp for TX {}", startTimestamp, e);
+                LOG.error("Error getting commit timestamps for TXs {}", startTimestamps, e);
                 f.setException(e);
+            } finally {
+                getCommitTimestampsTimer.update(System.nanoTime() - startTimeInNs);
             }
             return f;
+
         }
 
         @Override
         public ListenableFuture<Long> readLowWatermark() {
             SettableFuture<Long> f = SettableFuture.create();
-            try {
+            long startTimeInNs = System.nanoTime();
+            try (HTableInterface table = connection.getTable(tableName)) {
                 Get get = new Get(LOW_WATERMARK_ROW);
                 get.addColumn(lowWatermarkFamily, LOW_WATERMARK_QUALIFIER);
                 Result result = table.get(get);
@@ -215,6 +273,8 @@ public class HBaseCommitTable implements CommitTable {
             } catch (IOException e) {
                 LOG.error("Error getting low watermark", e);
                 f.setException(e);
+            } finally {
+                readLowWatermarkTimer.update(System.nanoTime() - startTimeInNs);
             }
             return f;
         }
@@ -251,7 +311,8 @@ public class HBaseCommitTable implements CommitTable {
         @Override
         public ListenableFuture<Boolean> tryInvalidateTransaction(long startTimestamp) {
             SettableFuture<Boolean> f = SettableFuture.create();
-            try {
+            long startTimeInNs = System.nanoTime();
+            try (HTableInterface table = connection.getTable(tableName)) {
                 byte[] row = startTimestampToKey(startTimestamp);
                 Put invalidationPut = new Put(row, startTimestamp);
                 invalidationPut.add(commitTableFamily, INVALID_TX_QUALIFIER, null);
@@ -266,6 +327,8 @@ public class HBaseCommitTable implements CommitTable {
                 f.set(result);
             } catch (IOException ioe) {
                 f.setException(ioe);
+            } finally {
+                invalidateTxTimer.update(System.nanoTime() - startTimeInNs);
             }
             return f;
         }
@@ -290,6 +353,7 @@ public class HBaseCommitTable implements CommitTable {
                         for (DeleteRequest dr : reqbatch) {
                             deletes.add(dr.getDelete());
                         }
+                        long startTimeInNs = System.nanoTime();
                         try {
                             deleteTable.delete(deletes);
                             for (DeleteRequest dr : reqbatch) {
@@ -301,6 +365,7 @@ public class HBaseCommitTable implements CommitTable {
                                 dr.error(ioe);
                             }
                         } finally {
+                            deleteBatchTimer.update(System.nanoTime() - startTimeInNs);
                             reqbatch.clear();
                         }
                     }
@@ -344,7 +409,30 @@ public class HBaseCommitTable implements CommitTable {
             }
 
             deleteTable.close();
-            table.close();
+            connection.close();
+        }
+
+        private Get createCommitTimestampGet(long startTimestamp) throws IOException {
+            Get get = new Get(startTimestampToKey(startTimestamp));
+            get.addColumn(commitTableFamily, COMMIT_TABLE_QUALIFIER);
+            get.addColumn(commitTableFamily, INVALID_TX_QUALIFIER);
+            return get;
+        }
+
+        private Optional<CommitTimestamp> parseCommitTimestamp(long startTimestamp, Result result) throws IOException {
+
+            if (containsInvalidTransaction(result)) {
+                return Optional.of(new CommitTimestamp(Location.COMMIT_TABLE, INVALID_TRANSACTION_MARKER, false));
+            }
+
+            if (containsATimestamp(result)) {
+                long commitTSValue =
+                        decodeCommitTimestamp(startTimestamp, result.getValue(commitTableFamily, COMMIT_TABLE_QUALIFIER));
+                return Optional.of(new CommitTimestamp(Location.COMMIT_TABLE, commitTSValue, true));
+            }
+
+            return Optional.absent();
+
         }
 
         private boolean containsATimestamp(Result result) {
@@ -44,7 +44,15 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import static org.testng.Assert.assertEquals;
@@ -258,6 +266,41 @@ public class TestHBaseCommitTable {
 
     }
 
+    @Test(timeOut = 30_000)
+    public void testBatchedCommitTimestampsLookup() throws Throwable {
+
+        // Prepare test
+        final int TX1_ST = 1;
+        final int TX1_CT = 2;
+        final int TX2_ST = 11;
+        final int TX3_ST = 21;
+
+        HBaseCommitTableConfig config = new HBaseCommitTableConfig();
+        config.setTableName(TEST_TABLE);
+        HBaseCommitTable commitTable = new HBaseCommitTable(hbaseConf, config);
+
+        // Components under test
+        Writer writer = commitTable.getWriter();
+        Client client = commitTable.getClient();
+
+        writer.addCommittedTransaction(TX1_ST, TX1_CT);
+        writer.flush();
+        assertTrue(client.tryInvalidateTransaction(TX2_ST).get(), "Transaction should be invalidated");
+
+        Map<Long, CommitTimestamp> commitTimestamps =
+                client.getCommitTimestamps(Arrays.asList((long) TX1_ST, (long) TX2_ST, (long) TX3_ST)).get();
+
+        // Committed and invalidated transactions are returned, and the ones not found are missing
+        assertEquals(commitTimestamps.size(), 2);
+        assertTrue(commitTimestamps.get((long) TX1_ST).isValid());
+        assertEquals(commitTimestamps.get((long) TX1_ST).getValue(), TX1_CT, "Commit timestamp should be " + TX1_CT);
+        assertFalse(commitTimestamps.get((long) TX2_ST).isValid());
+        assertEquals(commitTimestamps.get((long) TX2_ST).getValue(), CommitTable.INVALID_TRANSACTION_MARKER,
+                     "Commit timestamp should be " + CommitTable.INVALID_TRANSACTION_MARKER);
+        assertFalse(commitTimestamps.containsKey((long) TX3_ST));
+
+    }
+
     @Test(timeOut = 30_000)
     public void testClosingClientEmptyQueuesProperly() throws Throwable {
         HBaseCommitTableConfig config = new HBaseCommitTableConfig();
@@ -289,6 +332,66 @@ public class TestHBaseCommitTable {
 
     }
 
+    @Test(timeOut = 60_000)
+    public void testConcurrentReadsFromASharedClient() throws Throwable {
+        final int NUM_TXS = 1000;
+        final int NUM_READERS = 16;
+        final int READS_PER_READER = 500;
+
+        HBaseCommitTableConfig config = new HBaseCommitTableConfig();
+        config.setTableName(TEST_TABLE);
+        HBaseCommitTable commitTable = new HBaseCommitTable(hbaseConf, config);
+
+        Writer writer = commitTable.getWriter();
+        final Client client = commitTable.getClient();
+
+        // Even start timestamps are committed, odd ones are left to be invalidated by the readers
+        for (int i = 0; i < NUM_TXS; i += 2) {
+            writer.addCommittedTransaction(i, i + 1);
+        }
+        writer.updateLowWatermark(NUM_TXS);
+        writer.flush();
+
+        ExecutorService readers = Executors.newFixedThreadPool(NUM_READERS);
+        List<Future<Void>> results = new ArrayList<>(NUM_READERS);
+        for (int r = 0; r < NUM_READERS; r++) {
+            final long seed = r;
+            results.add(readers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < READS_PER_READER; i++) {
+                        long startTimestamp = random.nextInt(NUM_TXS);
+                        if (startTimestamp % 2 == 0) {
+                            Optional<CommitTimestamp> ct = client.getCommitTimestamp(startTimestamp).get();
+                            assertTrue(ct.isPresent(), "Commit timestamp should be present for " + startTimestamp);
+                            assertTrue(ct.get().isValid());
+                            assertEquals(ct.get().getValue(), startTimestamp + 1);
+                            assertFalse(client.tryInvalidateTransaction(startTimestamp).get(),
+                                        "Committed transaction " + startTimestamp + " should not be invalidated");
+                        } else {
+                            assertTrue(client.tryInvalidateTransaction(startTimestamp).get());
+                            Optional<CommitTimestamp> ct = client.getCommitTimestamp(startTimestamp).get();
+                            assertTrue(ct.isPresent(), "Invalidation marker should be present for " + startTimestamp);
+                            assertFalse(ct.get().isValid());
+                        }
+                        assertEquals(client.readLowWatermark().get(), Long.valueOf(NUM_TXS));
+                    }
+                    return null;
+                }
+            }));
+        }
+        readers.shutdown();
+
+        // Any assertion failure in the readers is rethrown here
+        for (Future<Void> result : results) {
+            result.get();
+        }
+        client.close();
+        writer.close();
+
+    }
+
     private static long rowCount(TableName table, byte[] family) throws Throwable {
         Scan scan = new Scan();
         scan.addFamily(family);
@@ -49,6 +49,15 @@ public final class CellUtils {
     private static final Logger LOG = LoggerFactory.getLogger(CellUtils.class);
     static final byte[] SHADOW_CELL_SUFFIX = "\u0080".getBytes(Charsets.UTF_8); // Non printable char (128 ASCII)
     static byte[] DELETE_TOMBSTONE = Bytes.toBytes("__OMID_TOMBSTONE__");
+    static final byte[] COUNTER_DELTA_PREFIX = Bytes.toBytes("__OMID_DELTA__");
+    static final byte[] FAMILY_DELETE_QUALIFIER = Bytes.toBytes("__OMID_FAMILY_DELETE__");
+
+    /**
+     * Table property marking it for lazy post-commit. No shadow cell is written on commit for the cells written to it,
+     * and the commit table entry of the transaction is kept. The readers heal the shadow cells and the compactions
+     * materialize them. The entry is removed once the cells are materialized below the low watermark
+     */
+    public static final String OMID_LAZY_POST_COMMIT_FLAG = "OMID_LAZY_POST_COMMIT";
 
     /**
      * Utility interface to get rid of the dependency on HBase server package
@@ -191,7 +200,7 @@ public final class CellUtils {
                     "Timestamp not allowed in transactional user operations");
         }
         // Throw exception if using a non-allowed qualifier
-        if (isShadowCell(cell)) {
+        if (isShadowCell(cell) || isFamilyDeleteMarker(cell)) {
             throw new IllegalArgumentException(
                     "Reserved string used in column qualifier");
         }
@@ -231,6 +240,46 @@ public final class CellUtils {
         return CellUtil.matchingValue(cell, DELETE_TOMBSTONE);
     }
 
+    /**
+     * Returns if a cell is the marker of a transactional delete of its whole family in its row. The marker is a
+     * tombstone that hides the versions of the cells of the family older than it.
+     * @param cell the cell to check
+     * @return whether the cell is a family delete marker or not
+     */
+    public static boolean isFamilyDeleteMarker(Cell cell) {
+        return CellUtil.matchingQualifier(cell, FAMILY_DELETE_QUALIFIER);
+    }
+
+    /**
+     * Returns the value of a delta record of a counter, which adds the delta passed to the older versions of the cell
+     * when read.
+     * @param delta the amount the counter is incremented by
+     * @return the value of the delta record
+     */
+    public static byte[] buildCounterDelta(long delta) {
+        return Bytes.add(COUNTER_DELTA_PREFIX, Bytes.toBytes(delta));
+    }
+
+    /**
+     * Returns if a cell is a delta record of a counter.
+     * @param cell the cell to check
+     * @return whether the cell is a delta record of a counter or not
+     */
+    public static boolean isCounterDelta(Cell cell) {
+        return cell.getValueLength() == COUNTER_DELTA_PREFIX.length + Bytes.SIZEOF_LONG
+                && Bytes.compareTo(cell.getValueArray(), cell.getValueOffset(), COUNTER_DELTA_PREFIX.length,
+                                   COUNTER_DELTA_PREFIX, 0, COUNTER_DELTA_PREFIX.length) == 0;
+    }
+
+    /**
+     * Returns the delta of a delta record of a counter.
+     * @param cell the delta record
+     * @return the amount the counter is incremented by
+     */
+    public static long getCounterDelta(Cell cell) {
+        return Bytes.toLong(cell.getValueArray(), cell.getValueOffset() + COUNTER_DELTA_PREFIX.length);
+    }
+
     /**
      * Returns a new shadow cell created from a particular cell.
      * @param cell
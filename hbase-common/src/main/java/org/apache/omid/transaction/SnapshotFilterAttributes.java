@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import org.apache.hadoop.hbase.client.OperationWithAttributes;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Attributes set by the transactional client on its gets and scans to describe the snapshot of the transaction. The
+ * snapshot filter coprocessor, when deployed on the table, uses them to do the visibility checks next to the data.
+ * Otherwise they are just ignored.
+ */
+public final class SnapshotFilterAttributes {
+
+    static final String START_TIMESTAMP_ATTRIBUTE = "omid.snapshot.startTimestamp";
+    static final String READ_ONLY_ATTRIBUTE = "omid.snapshot.readOnly";
+
+    private SnapshotFilterAttributes() {
+    }
+
+    public static void setSnapshot(OperationWithAttributes operation, long startTimestamp, boolean readOnly) {
+        operation.setAttribute(START_TIMESTAMP_ATTRIBUTE, Bytes.toBytes(startTimestamp));
+        operation.setAttribute(READ_ONLY_ATTRIBUTE, Bytes.toBytes(readOnly));
+    }
+
+    /**
+     * @return whether the operation passed carries the snapshot of a transaction
+     */
+    public static boolean hasSnapshot(OperationWithAttributes operation) {
+        return operation.getAttribute(START_TIMESTAMP_ATTRIBUTE) != null;
+    }
+
+    public static long getStartTimestamp(OperationWithAttributes operation) {
+        return Bytes.toLong(operation.getAttribute(START_TIMESTAMP_ATTRIBUTE));
+    }
+
+    /**
+     * @return whether the transaction is read-only. Read-only transactions may share the start timestamp of a
+     *         writing one, so the cells with their start timestamp are not their own writes
+     */
+    public static boolean isReadOnly(OperationWithAttributes operation) {
+        byte[] readOnly = operation.getAttribute(READ_ONLY_ATTRIBUTE);
+        return readOnly != null && Bytes.toBoolean(readOnly);
+    }
+
+}
@@ -57,6 +57,8 @@ public class CompactorScanner implements InternalScanner {
     private final Queue<CommitTable.Client> commitTableClientQueue;
     private final boolean isMajorCompaction;
     private final boolean retainNonTransactionallyDeletedCells;
+    // Whether the cells above the low watermark may lack their shadow cells, as in the lazy post-commit tables
+    private final boolean materializeShadowCells;
     private final long lowWatermark;
 
     private final Region hRegion;
@@ -69,12 +71,14 @@ public class CompactorScanner implements InternalScanner {
                             Client commitTableClient,
                             Queue<CommitTable.Client> commitTableClientQueue,
                             boolean isMajorCompaction,
-                            boolean preserveNonTransactionallyDeletedCells) throws IOException {
+                            boolean preserveNonTransactionallyDeletedCells,
+                            boolean materializeShadowCells) throws IOException {
         this.internalScanner = internalScanner;
         this.commitTableClient = commitTableClient;
         this.commitTableClientQueue = commitTableClientQueue;
         this.isMajorCompaction = isMajorCompaction;
         this.retainNonTransactionallyDeletedCells = preserveNonTransactionallyDeletedCells;
+        this.materializeShadowCells = materializeShadowCells;
         this.lowWatermark = getLowWatermarkFromCommitTable();
         // Obtain the table in which the scanner is going to operate
         this.hRegion = HBaseShims.getRegionCoprocessorRegion(e.getEnvironment());
@@ -107,6 +111,7 @@ public class CompactorScanner implements InternalScanner {
 
             // 3) traverse the list of row key values isolated before and
             // check which ones should be discarded
+            Map<String, Long> familyDeletesInRow = findCommittedFamilyDeletes(cellToSc);
             Map<String, CellInfo> lastTimestampedCellsInRow = new HashMap<>();
             PeekingIterator<Map.Entry<Cell, Optional<Cell>>> iter
                     = Iterators.peekingIterator(cellToSc.entrySet().iterator());
@@ -116,6 +121,9 @@ public class CompactorScanner implements InternalScanner {
                 Optional<Cell> shadowCellOp = entry.getValue();
 
                 if (cell.getTimestamp() > lowWatermark) {
+                    if (materializeShadowCells && !shadowCellOp.isPresent()) {
+                        shadowCellOp = materializeShadowCell(cell);
+                    }
                     retain(currentRowWorthValues, cell, shadowCellOp);
                     continue;
                 }
@@ -125,6 +133,24 @@ public class CompactorScanner implements InternalScanner {
                     continue;
                 }
 
+                Long familyDeleteTimestamp = familyDeletesInRow.get(getFamilyKey(cell));
+                if (familyDeleteTimestamp != null) {
+                    if (cell.getTimestamp() < familyDeleteTimestamp) {
+                        LOG.trace("Discarding cell {} deleted with its family", cell);
+                        continue;
+                    }
+                    // As the tombstones, the marker is removed only in major compactions
+                    if (isMajorCompaction && CellUtils.isFamilyDeleteMarker(cell)) {
+                        LOG.trace("Discarding family delete marker {}", cell);
+                        continue;
+                    }
+                }
+
+                if (CellUtils.isCounterDelta(cell)) {
+                    retainCounterDeltas(currentRowWorthValues, lastTimestampedCellsInRow, entry, iter);
+                    continue;
+                }
+
                 // During a minor compaction the coprocessor may only see a
                 // subset of store files and may not have the all the versions
                 // of a cell available for consideration. Therefore, if it
@@ -196,10 +222,44 @@ public class CompactorScanner implements InternalScanner {
                 retainNonTransactionallyDeletedCells;
     }
 
-    private void saveLastTimestampedCell(Map<String, CellInfo> lastCells, Cell cell, Cell shadowCell) {
-        String cellKey = Bytes.toString(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength())
+    private static String getFamilyKey(Cell cell) {
+        return Bytes.toString(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength());
+    }
+
+    /**
+     * @return the timestamp of the newest committed family delete marker below the low watermark of each family of
+     *         the row, if any. The versions of the cells of the family older than it are not visible anymore
+     */
+    private Map<String, Long> findCommittedFamilyDeletes(SortedMap<Cell, Optional<Cell>> cellToSc)
+            throws IOException {
+
+        Map<String, Long> familyDeletes = new HashMap<>();
+        for (Map.Entry<Cell, Optional<Cell>> entry : cellToSc.entrySet()) {
+            Cell cell = entry.getKey();
+            if (cell.getTimestamp() > lowWatermark || !CellUtils.isFamilyDeleteMarker(cell)) {
+                continue;
+            }
+            String familyKey = getFamilyKey(cell);
+            Long familyDeleteTimestamp = familyDeletes.get(familyKey);
+            if (familyDeleteTimestamp != null && familyDeleteTimestamp > cell.getTimestamp()) {
+                continue;
+            }
+            if (entry.getValue().isPresent() || materializeShadowCell(cell).isPresent()) {
+                familyDeletes.put(familyKey, cell.getTimestamp());
+            }
+        }
+        return familyDeletes;
+
+    }
+
+    private static String getCellKey(Cell cell) {
+        return Bytes.toString(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength())
                 + ":"
                 + Bytes.toString(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+    }
+
+    private void saveLastTimestampedCell(Map<String, CellInfo> lastCells, Cell cell, Cell shadowCell) {
+        String cellKey = getCellKey(cell);
         LOG.trace("Cell Key: {}", cellKey);
 
         if (!lastCells.containsKey(cellKey)) {
@@ -256,6 +316,80 @@ public class CompactorScanner implements InternalScanner {
         return Optional.absent();
     }
 
+    /**
+     * Builds the shadow cell of a committed cell that doesn't have it yet, so it's materialized by the compaction. It
+     * looks up the commit table, so above the low watermark it's only done for the lazy post-commit tables, whose
+     * commits don't wait for the shadow cells
+     */
+    private Optional<Cell> materializeShadowCell(Cell cell) throws IOException {
+        if (CellUtil.isDelete(cell)) {
+            return Optional.absent();
+        }
+        Optional<CommitTimestamp> commitTimestamp = queryCommitTimestamp(cell);
+        if (commitTimestamp.isPresent() && commitTimestamp.get().isValid()) {
+            byte[] shadowCellValue = Bytes.toBytes(commitTimestamp.get().getValue());
+            return Optional.of(CellUtils.buildShadowCellFromCell(cell, shadowCellValue));
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Replaces the committed delta records of a counter below the low watermark, starting at the entry passed, with a
+     * single delta holding their sum. Unlike the other cells, the older deltas can't be dropped, as readers add them
+     * up. The version below the deltas, if any, is left to the caller. The deltas hidden by a newer version of the
+     * cell are dropped, and the uncommitted ones discarded
+     */
+    private void retainCounterDeltas(List<Cell> result,
+                                     Map<String, CellInfo> lastTimestampedCellsInRow,
+                                     Map.Entry<Cell, Optional<Cell>> firstEntry,
+                                     PeekingIterator<Map.Entry<Cell, Optional<Cell>>> iter) throws IOException {
+
+        boolean hidden = lastTimestampedCellsInRow.containsKey(getCellKey(firstEntry.getKey()));
+        Cell newestDelta = null;
+        Cell newestShadowCell = null;
+        long counterDelta = 0L;
+        long commitTimestamp = 0L;
+        int numDeltas = 0;
+
+        Map.Entry<Cell, Optional<Cell>> entry = firstEntry;
+        while (true) {
+            Cell cell = entry.getKey();
+            Optional<Cell> shadowCellOp = hidden ? Optional.<Cell>absent()
+                    : entry.getValue().isPresent() ? entry.getValue() : materializeShadowCell(cell);
+            if (shadowCellOp.isPresent()) {
+                if (newestDelta == null) {
+                    newestDelta = cell;
+                    newestShadowCell = shadowCellOp.get();
+                }
+                counterDelta += CellUtils.getCounterDelta(cell);
+                commitTimestamp = Math.max(commitTimestamp, Bytes.toLong(CellUtil.cloneValue(shadowCellOp.get())));
+                numDeltas++;
+            } else {
+                LOG.trace("Discarding cell {}", cell);
+            }
+            if (!iter.hasNext()
+                    || !CellUtil.matchingColumn(iter.peek().getKey(), cell)
+                    || !CellUtils.isCounterDelta(iter.peek().getKey())) {
+                break;
+            }
+            entry = iter.next();
+        }
+
+        if (numDeltas == 1) {
+            retain(result, newestDelta, Optional.of(newestShadowCell));
+        } else if (numDeltas > 1) {
+            // Visible once all the deltas added up are
+            Cell summedDelta = new KeyValue(CellUtil.cloneRow(newestDelta),
+                                            CellUtil.cloneFamily(newestDelta),
+                                            CellUtil.cloneQualifier(newestDelta),
+                                            newestDelta.getTimestamp(),
+                                            CellUtils.buildCounterDelta(counterDelta));
+            retain(result, summedDelta,
+                   Optional.of(CellUtils.buildShadowCellFromCell(summedDelta, Bytes.toBytes(commitTimestamp))));
+        }
+
+    }
+
     private void retain(List<Cell> result, Cell cell, Optional<Cell> shadowCell) {
         LOG.trace("Retaining cell {}", cell);
         result.add(cell);
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.omid.transaction.CellUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Does the snapshot visibility checks of a transaction on the raw cells of a row, next to the data. For each column,
+ * it returns the version in the snapshot together with its shadow cell, so the client resolves it straight away.
+ * Older versions are read from the region when the ones passed are committed after the snapshot. When it finds a
+ * version without shadow cell, whose commit timestamp is only in the commit table, it stops and returns that version
+ * for the client to resolve it.
+ *
+ * The delta records of a counter in the snapshot are returned together with the versions below them, down to the
+ * first one that is not a delta, so the client adds them up.
+ *
+ * The shadow cells are looked up by timestamp only. All the shadow cells written by a transaction hold the same commit
+ * timestamp, so any of them in the row resolves the cells with that timestamp, as the client commit cache does.
+ */
+public class SnapshotFilter {
+
+    static final int VERSIONS_TO_FETCH = 16;
+
+    private final Region region;
+    private final long startTimestamp;
+    private final boolean readOnly;
+
+    public SnapshotFilter(Region region, long startTimestamp, boolean readOnly) {
+        this.region = region;
+        this.startTimestamp = startTimestamp;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * @param rawCells cells of a single row, sorted as HBase returns them
+     * @return the cells to send to the client
+     */
+    public List<Cell> filter(List<Cell> rawCells) throws IOException {
+
+        Map<Long, Cell> shadowCells = new HashMap<>();
+        addShadowCells(rawCells, shadowCells);
+
+        SortedSet<Cell> filteredCells = new TreeSet<>(KeyValue.COMPARATOR);
+        List<Cell> columnCells = new ArrayList<>();
+        for (Cell cell : rawCells) {
+            if (CellUtils.isShadowCell(cell)) {
+                continue;
+            }
+            if (!columnCells.isEmpty() && !CellUtil.matchingColumn(columnCells.get(0), cell)) {
+                filterColumn(columnCells, shadowCells, filteredCells);
+                columnCells.clear();
+            }
+            columnCells.add(cell);
+        }
+        if (!columnCells.isEmpty()) {
+            filterColumn(columnCells, shadowCells, filteredCells);
+        }
+        return new ArrayList<>(filteredCells);
+
+    }
+
+    private void filterColumn(List<Cell> columnCells, Map<Long, Cell> shadowCells, SortedSet<Cell> filteredCells)
+            throws IOException {
+
+        List<Cell> versions = columnCells;
+        while (!versions.isEmpty()) {
+            for (Cell cell : versions) {
+                // Read-only transactions may share the start timestamp of a writing one. Its cells aren't theirs
+                if (cell.getTimestamp() == startTimestamp && !readOnly) {
+                    filteredCells.add(cell);
+                    if (CellUtils.isCounterDelta(cell)) {
+                        continue;
+                    }
+                    return;
+                }
+                Cell shadowCell = shadowCells.get(cell.getTimestamp());
+                if (shadowCell == null) {
+                    // Maybe committed, but only the commit table knows. Left to the client
+                    filteredCells.add(cell);
+                    return;
+                }
+                if (Bytes.toLong(CellUtil.cloneValue(shadowCell)) < startTimestamp) {
+                    filteredCells.add(cell);
+                    filteredCells.add(shadowCell);
+                    if (CellUtils.isCounterDelta(cell)) {
+                        continue;
+                    }
+                    return;
+                }
+            }
+            versions = readOlderVersions(versions.get(versions.size() - 1), shadowCells);
+        }
+
+    }
+
+    private List<Cell> readOlderVersions(Cell oldestCell, Map<Long, Cell> shadowCells) throws IOException {
+
+        byte[] family = CellUtil.cloneFamily(oldestCell);
+        Get get = new Get(CellUtil.cloneRow(oldestCell));
+        get.addColumn(family, CellUtil.cloneQualifier(oldestCell));
+        get.addColumn(family, CellUtils.addShadowCellSuffix(oldestCell.getQualifierArray(),
+                                                            oldestCell.getQualifierOffset(),
+                                                            oldestCell.getQualifierLength()));
+        get.setMaxVersions(VERSIONS_TO_FETCH);
+        get.setTimeRange(0, oldestCell.getTimestamp());
+
+        Result result = region.get(get);
+        if (result.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Cell> versions = new ArrayList<>();
+        for (Cell cell : result.listCells()) {
+            if (CellUtils.isShadowCell(cell)) {
+                shadowCells.put(cell.getTimestamp(), cell);
+            } else {
+                versions.add(cell);
+            }
+        }
+        return versions;
+
+    }
+
+    private static void addShadowCells(List<Cell> rawCells, Map<Long, Cell> shadowCells) {
+        for (Cell cell : rawCells) {
+            if (CellUtils.isShadowCell(cell)) {
+                shadowCells.put(cell.getTimestamp(), cell);
+            }
+        }
+    }
+
+}
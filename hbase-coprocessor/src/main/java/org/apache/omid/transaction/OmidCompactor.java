@@ -125,7 +125,8 @@ public class OmidCompactor extends BaseRegionObserver {
                     commitTableClient,
                     commitTableClientQueue,
                     isMajorCompaction,
-                    retainNonTransactionallyDeletedCells);
+                    retainNonTransactionallyDeletedCells,
+                    Boolean.valueOf(desc.getValue(CellUtils.OMID_LAZY_POST_COMMIT_FLAG)));
         }
     }
 
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CoprocessorEnvironment;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.coprocessor.BaseRegionObserver;
+import org.apache.hadoop.hbase.coprocessor.ObserverContext;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.regionserver.InternalScanner;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.regionserver.SnapshotFilter;
+import org.apache.omid.HBaseShims;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.omid.transaction.SnapshotFilterAttributes.getStartTimestamp;
+import static org.apache.omid.transaction.SnapshotFilterAttributes.hasSnapshot;
+import static org.apache.omid.transaction.SnapshotFilterAttributes.isReadOnly;
+
+/**
+ * Filters the gets and scans of transactions to their snapshot in the region server, so only the visible versions,
+ * and the versions the region server can't resolve, are sent to the client. The client still does the visibility
+ * checks on what it receives, which is immediate for the visible versions as they come with their shadow cells.
+ * Operations that don't carry the snapshot of a transaction (see {@link SnapshotFilterAttributes}) are not filtered.
+ */
+public class OmidSnapshotFilter extends BaseRegionObserver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OmidSnapshotFilter.class);
+
+    private final Map<InternalScanner, SnapshotFilter> snapshotFilters = new ConcurrentHashMap<>();
+
+    public OmidSnapshotFilter() {
+        LOG.info("Snapshot filter coprocessor initialized via empty constructor");
+    }
+
+    @Override
+    public void start(CoprocessorEnvironment env) throws IOException {
+        LOG.info("Snapshot filter coprocessor started");
+    }
+
+    @Override
+    public void stop(CoprocessorEnvironment e) throws IOException {
+        snapshotFilters.clear();
+        LOG.info("Snapshot filter coprocessor stopped");
+    }
+
+    @Override
+    public void postGetOp(ObserverContext<RegionCoprocessorEnvironment> e, Get get, List<Cell> results)
+            throws IOException {
+
+        if (!hasSnapshot(get) || results.isEmpty()) {
+            return;
+        }
+        List<Cell> filteredCells = newSnapshotFilter(e, getStartTimestamp(get), isReadOnly(get)).filter(results);
+        results.clear();
+        results.addAll(filteredCells);
+
+    }
+
+    @Override
+    public RegionScanner postScannerOpen(ObserverContext<RegionCoprocessorEnvironment> e,
+                                         Scan scan,
+                                         RegionScanner s) throws IOException {
+
+        if (hasSnapshot(scan)) {
+            snapshotFilters.put(s, newSnapshotFilter(e, getStartTimestamp(scan), isReadOnly(scan)));
+        }
+        return s;
+
+    }
+
+    @Override
+    public boolean postScannerNext(ObserverContext<RegionCoprocessorEnvironment> e,
+                                   InternalScanner s,
+                                   List<Result> results,
+                                   int limit,
+                                   boolean hasMore) throws IOException {
+
+        SnapshotFilter snapshotFilter = snapshotFilters.get(s);
+        if (snapshotFilter == null) {
+            return hasMore;
+        }
+        ListIterator<Result> it = results.listIterator();
+        while (it.hasNext()) {
+            Result result = it.next();
+            if (!result.isEmpty()) {
+                it.set(Result.create(snapshotFilter.filter(result.listCells())));
+            }
+        }
+        return hasMore;
+
+    }
+
+    @Override
+    public void postScannerClose(ObserverContext<RegionCoprocessorEnvironment> e, InternalScanner s)
+            throws IOException {
+        snapshotFilters.remove(s);
+    }
+
+    private static SnapshotFilter newSnapshotFilter(ObserverContext<RegionCoprocessorEnvironment> e,
+                                                    long startTimestamp,
+                                                    boolean readOnly) {
+        return new SnapshotFilter(HBaseShims.getRegionCoprocessorRegion(e.getEnvironment()), startTimestamp, readOnly);
+    }
+
+}
@@ -33,6 +33,7 @@ import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
@@ -61,6 +62,7 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -68,10 +70,13 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
@@ -149,9 +154,17 @@ public class TestCompaction {
     }
 
     private void createTableIfNotExists(String tableName, byte[]... families) throws IOException {
+        createTableIfNotExists(tableName, false, families);
+    }
+
+    private void createTableIfNotExists(String tableName, boolean lazyPostCommit, byte[]... families)
+            throws IOException {
         if (!admin.tableExists(tableName)) {
             LOG.info("Creating {} table...", tableName);
             HTableDescriptor desc = new HTableDescriptor(TableName.valueOf(tableName));
+            if (lazyPostCommit) {
+                desc.setValue(CellUtils.OMID_LAZY_POST_COMMIT_FLAG, Boolean.TRUE.toString());
+            }
 
             for (byte[] family : families) {
                 HColumnDescriptor datafam = new HColumnDescriptor(family);
@@ -310,6 +323,97 @@ public class TestCompaction {
                    "Shadow cell should not be there");
     }
 
+    @Test(timeOut = 60_000)
+    public void testLazyPostCommitCellsWithSTAboveLWMGetShadowCellMaterializedAfterCompaction() throws Exception {
+        String LAZY_TABLE = "testLazyPostCommitCellsWithSTAboveLWMGetShadowCellMaterializedAfterCompaction";
+        String EAGER_TABLE = "testCellsWithSTAboveLWMAreNotMaterializedAfterCompactionWithoutLazyPostCommit";
+        createTableIfNotExists(LAZY_TABLE, true, Bytes.toBytes(TEST_FAMILY));
+        createTableIfNotExists(EAGER_TABLE, false, Bytes.toBytes(TEST_FAMILY));
+        TTable lazyTable = new TTable(hbaseConf, LAZY_TABLE);
+        TTable eagerTable = new TTable(hbaseConf, EAGER_TABLE);
+
+        // The following line emulates a crash after commit, before the shadow cells of the eager table are written
+        doThrow(new RuntimeException()).when(syncPostCommitter).updateShadowCells(any(HBaseTransaction.class));
+
+        HBaseTransaction tx = (HBaseTransaction) tm.begin();
+        long row = randomGenerator.nextLong();
+        lazyTable.put(tx, new Put(Bytes.toBytes(row)).add(fam, qual, data));
+        eagerTable.put(tx, new Put(Bytes.toBytes(row)).add(fam, qual, data));
+        try {
+            tm.commit(tx);
+        } catch (Exception e) { // Crash
+            // Do nothing
+        }
+
+        assertFalse(CellUtils.hasShadowCell(Bytes.toBytes(row), fam, qual, tx.getStartTimestamp(),
+                                            new TTableCellGetterAdapter(lazyTable)),
+                    "Shadow cell should not be there");
+
+        compactWithLWM(0L, LAZY_TABLE);
+        compactWithLWM(0L, EAGER_TABLE);
+
+        assertTrue(CellUtils.hasCell(Bytes.toBytes(row), fam, qual, tx.getStartTimestamp(),
+                                     new TTableCellGetterAdapter(lazyTable)),
+                   "Cell should be there");
+        assertTrue(CellUtils.hasShadowCell(Bytes.toBytes(row), fam, qual, tx.getStartTimestamp(),
+                                           new TTableCellGetterAdapter(lazyTable)),
+                   "Shadow cell should be there after compacting");
+        // The commit table is only looked up above the low watermark for the lazy post-commit tables
+        assertTrue(CellUtils.hasCell(Bytes.toBytes(row), fam, qual, tx.getStartTimestamp(),
+                                     new TTableCellGetterAdapter(eagerTable)),
+                   "Cell should be there");
+        assertFalse(CellUtils.hasShadowCell(Bytes.toBytes(row), fam, qual, tx.getStartTimestamp(),
+                                            new TTableCellGetterAdapter(eagerTable)),
+                    "Shadow cell should not be materialized");
+    }
+
+    @Test(timeOut = 60_000)
+    public void testLazyPostCommitEntriesAreReclaimedOnceTheCellsAreMaterializedByACompaction() throws Exception {
+        String TEST_TABLE = "testLazyPostCommitEntriesAreReclaimedOnceTheCellsAreMaterializedByACompaction";
+        createTableIfNotExists(TEST_TABLE, true, Bytes.toBytes(TEST_FAMILY));
+        TTable txTable = new TTable(hbaseConf, TEST_TABLE);
+
+        // The reclaims are run by the test, with every transaction below the low watermark
+        CommitTable.Client commitTableClient = spy(commitTable.getClient());
+        SettableFuture<Long> f = SettableFuture.create();
+        f.set(Long.MAX_VALUE);
+        doReturn(f).when(commitTableClient).readLowWatermark();
+        HBaseOmidClientConfiguration hbaseOmidClientConf = new HBaseOmidClientConfiguration();
+        hbaseOmidClientConf.setConnectionString("localhost:1234");
+        hbaseOmidClientConf.setHBaseConfiguration(hbaseConf);
+        hbaseOmidClientConf.setLazyCommitReclaimIntervalInMs(TimeUnit.HOURS.toMillis(1));
+        HBaseTransactionManager lazyTm = HBaseTransactionManager.builder(hbaseOmidClientConf)
+                .commitTableClient(commitTableClient)
+                .build();
+
+        HBaseTransaction tx = (HBaseTransaction) lazyTm.begin();
+        long row = randomGenerator.nextLong();
+        txTable.put(tx, new Put(Bytes.toBytes(row)).add(fam, qual, data));
+        lazyTm.commit(tx);
+
+        assertFalse(CellUtils.hasShadowCell(Bytes.toBytes(row), fam, qual, tx.getStartTimestamp(),
+                                            new TTableCellGetterAdapter(txTable)),
+                    "Shadow cell should not be there");
+        lazyTm.getLazyCommitReclaimer().reclaim();
+        verify(commitTableClient, never()).completeTransaction(anyLong());
+        assertTrue(commitTableClient.getCommitTimestamp(tx.getStartTimestamp()).get().isPresent(),
+                   "Commit table entry should be there while the cell is not materialized");
+
+        compactEverything(TEST_TABLE);
+
+        assertTrue(CellUtils.hasShadowCell(Bytes.toBytes(row), fam, qual, tx.getStartTimestamp(),
+                                           new TTableCellGetterAdapter(txTable)),
+                   "Shadow cell should be there after compacting");
+        lazyTm.getLazyCommitReclaimer().reclaim();
+        verify(commitTableClient).completeTransaction(tx.getStartTimestamp());
+        assertFalse(commitTableClient.getCommitTimestamp(tx.getStartTimestamp()).get().isPresent(),
+                    "Commit table entry should be removed");
+
+        Transaction readTx = lazyTm.begin();
+        Result result = txTable.get(readTx, new Get(Bytes.toBytes(row)).addColumn(fam, qual));
+        assertEquals(result.getValue(fam, qual), data, "Value should be read from the materialized cell");
+    }
+
     @Test(timeOut = 60_000)
     public void testNeverendingTXsWithSTBelowAndAboveLWMAreDiscardedAndPreservedRespectivelyAfterCompaction()
             throws Throwable {
@@ -1157,6 +1261,107 @@ public class TestCompaction {
                    "Put shadow cell shouldn't be there");
     }
 
+    /**
+     * Test that when compaction runs, the deltas of a counter below the lwm are added up in the newest one, and the
+     * value below them is kept
+     */
+    @Test(timeOut = 60_000)
+    public void testCounterDeltasAreAddedUpAfterCompaction() throws Exception {
+        String TEST_TABLE = "testCounterDeltasAreAddedUpAfterCompaction";
+        createTableIfNotExists(TEST_TABLE, Bytes.toBytes(TEST_FAMILY));
+        TTable txTable = new TTable(hbaseConf, TEST_TABLE);
+        byte[] rowId = Bytes.toBytes("counter");
+
+        HBaseTransaction tx0 = (HBaseTransaction) tm.begin();
+        Put p = new Put(rowId);
+        p.add(fam, qual, Bytes.toBytes(10L));
+        txTable.put(tx0, p);
+        tm.commit(tx0);
+
+        // The deltas are versions of the counter, so they are kept within the max versions of the family
+        HBaseTransaction[] incrementTxs = new HBaseTransaction[MAX_VERSIONS - 1];
+        for (int i = 0; i < incrementTxs.length; i++) {
+            incrementTxs[i] = (HBaseTransaction) tm.begin();
+            txTable.increment(incrementTxs[i], new Increment(rowId).addColumn(fam, qual, i + 1));
+            tm.commit(incrementTxs[i]);
+        }
+
+        HBaseTransaction lwmTx = (HBaseTransaction) tm.begin();
+        compactWithLWM(lwmTx.getStartTimestamp(), TEST_TABLE);
+
+        TTableCellGetterAdapter getter = new TTableCellGetterAdapter(txTable);
+        assertTrue(CellUtils.hasCell(rowId, fam, qual, tx0.getStartTimestamp(), getter),
+                   "Value below the deltas should be there");
+        assertFalse(CellUtils.hasCell(rowId, fam, qual, incrementTxs[0].getStartTimestamp(), getter),
+                    "Older delta shouldn't be there");
+        HBaseTransaction newestIncrementTx = incrementTxs[incrementTxs.length - 1];
+        assertTrue(CellUtils.hasCell(rowId, fam, qual, newestIncrementTx.getStartTimestamp(), getter),
+                   "Newest delta should be there");
+        assertTrue(CellUtils.hasShadowCell(rowId, fam, qual, newestIncrementTx.getStartTimestamp(), getter),
+                   "Newest delta shadow cell should be there");
+
+        HBaseTransaction tx = (HBaseTransaction) tm.begin();
+        Result result = txTable.get(tx, new Get(rowId).addColumn(fam, qual));
+        assertEquals(Bytes.toLong(result.getValue(fam, qual)), 13L, "Counter should keep its value");
+    }
+
+    /**
+     * Test that when a major compaction runs, the family delete markers below the lwm are removed together with the
+     * older versions of the cells of their family
+     */
+    @Test(timeOut = 60_000)
+    public void testFamilyDeletesAreCleanedUpAfterCompaction() throws Exception {
+        String TEST_TABLE = "testFamilyDeletesAreCleanedUpAfterCompaction";
+        createTableIfNotExists(TEST_TABLE, Bytes.toBytes(TEST_FAMILY));
+        TTable txTable = new TTable(hbaseConf, TEST_TABLE);
+        byte[] rowId = Bytes.toBytes("familyDelete");
+        byte[] otherQual = Bytes.toBytes("otherQual");
+
+        HBaseTransaction tx1 = (HBaseTransaction) tm.begin();
+        Put p = new Put(rowId);
+        p.add(fam, qual, data);
+        p.add(fam, otherQual, data);
+        txTable.put(tx1, p);
+        tm.commit(tx1);
+
+        // Family delete markers are written for the families with conflicts detected per family
+        HBaseOmidClientConfiguration clientConf = new HBaseOmidClientConfiguration();
+        clientConf.setConnectionString("localhost:1234");
+        clientConf.setHBaseConfiguration(hbaseConf);
+        clientConf.setFamilyConflictGranularity(Collections.singletonList(TEST_TABLE));
+        TransactionManager familyTm = HBaseTransactionManager.builder(clientConf)
+                .commitTableClient(commitTable.getClient())
+                .build();
+        HBaseTransaction tx2 = (HBaseTransaction) familyTm.begin();
+        txTable.delete(tx2, new Delete(rowId).deleteFamily(fam));
+        familyTm.commit(tx2);
+        familyTm.close();
+
+        HBaseTransaction tx3 = (HBaseTransaction) tm.begin();
+        txTable.put(tx3, new Put(rowId).add(fam, otherQual, data));
+        tm.commit(tx3);
+
+        HBaseTransaction lwmTx = (HBaseTransaction) tm.begin();
+        compactWithLWM(lwmTx.getStartTimestamp(), TEST_TABLE);
+
+        TTableCellGetterAdapter getter = new TTableCellGetterAdapter(txTable);
+        assertFalse(CellUtils.hasCell(rowId, fam, qual, tx1.getStartTimestamp(), getter),
+                    "Cell deleted with its family shouldn't be there");
+        assertFalse(CellUtils.hasCell(rowId, fam, otherQual, tx1.getStartTimestamp(), getter),
+                    "Cell deleted with its family shouldn't be there");
+        assertTrue(CellUtils.hasCell(rowId, fam, otherQual, tx3.getStartTimestamp(), getter),
+                   "Cell put after the family delete should be there");
+        Result rawResult = txTable.getHTable().get(new Get(rowId).setMaxVersions());
+        for (Cell cell : rawResult.rawCells()) {
+            assertFalse(CellUtils.isFamilyDeleteMarker(cell), "Family delete marker shouldn't be there");
+        }
+
+        HBaseTransaction tx = (HBaseTransaction) tm.begin();
+        Result result = txTable.get(tx, new Get(rowId));
+        assertEquals(result.size(), 1);
+        assertTrue(result.containsColumn(fam, otherQual));
+    }
+
     private void setCompactorLWM(long lwm, String tableName) throws Exception {
         OmidCompactor omidCompactor = (OmidCompactor) hbaseCluster.getRegions(Bytes.toBytes(tableName)).get(0)
                 .getCoprocessorHost().findCoprocessor(OmidCompactor.class.getName());
@@ -84,7 +84,8 @@ public class TestCompactorScanner {
                 ctClient,
                 queue,
                 false,
-                retainOption))) {
+                retainOption,
+                false))) {
 
             // Different cell types to test
             KeyValue regularKV = new KeyValue(Bytes.toBytes("test-row"), TEST_TS, Type.Put);
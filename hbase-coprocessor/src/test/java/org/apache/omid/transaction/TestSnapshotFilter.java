@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.transaction;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.MiniHBaseCluster;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.omid.TestUtils;
+import org.apache.omid.committable.CommitTable;
+import org.apache.omid.committable.hbase.HBaseCommitTableConfig;
+import org.apache.omid.metrics.NullMetricsProvider;
+import org.apache.omid.timestamp.storage.HBaseTimestampStorageConfig;
+import org.apache.omid.tso.TSOServer;
+import org.apache.omid.tso.TSOServerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+public class TestSnapshotFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestSnapshotFilter.class);
+
+    private static final String TEST_FAMILY = "test-fam";
+    private static final int MAX_VERSIONS = 10;
+
+    private final byte[] fam = Bytes.toBytes(TEST_FAMILY);
+    private final byte[] qual = Bytes.toBytes("test-qual");
+
+    private Injector injector;
+
+    private HBaseAdmin admin;
+    private Configuration hbaseConf;
+    private MiniHBaseCluster hbaseCluster;
+
+    private TSOServer tso;
+
+    private CommitTable commitTable;
+    private PostCommitActions syncPostCommitter;
+    private TransactionManager tm;
+
+    @BeforeClass
+    public void setupTestSnapshotFilter() throws Exception {
+        TSOServerConfig tsoConfig = new TSOServerConfig();
+        tsoConfig.setPort(1234);
+        tsoConfig.setConflictMapSize(1);
+        injector = Guice.createInjector(new TSOForHBaseCompactorTestModule(tsoConfig));
+        hbaseConf = injector.getInstance(Configuration.class);
+        hbaseConf.set("hbase.coprocessor.region.classes", OmidSnapshotFilter.class.getName());
+        HBaseCommitTableConfig hBaseCommitTableConfig = injector.getInstance(HBaseCommitTableConfig.class);
+        HBaseTimestampStorageConfig hBaseTimestampStorageConfig = injector.getInstance(HBaseTimestampStorageConfig.class);
+
+        hbaseCluster = new HBaseTestingUtility(hbaseConf).startMiniCluster(1);
+        admin = new HBaseAdmin(hbaseConf);
+        createTableIfNotExists(hBaseTimestampStorageConfig.getTableName(),
+                               hBaseTimestampStorageConfig.getFamilyName().getBytes());
+        createTableIfNotExists(hBaseCommitTableConfig.getTableName(),
+                               hBaseCommitTableConfig.getCommitTableFamily(),
+                               hBaseCommitTableConfig.getLowWatermarkFamily());
+
+        tso = injector.getInstance(TSOServer.class);
+        tso.startAndWait();
+        TestUtils.waitForSocketListening("localhost", 1234, 100);
+
+        commitTable = injector.getInstance(CommitTable.class);
+    }
+
+    @AfterClass
+    public void cleanupTestSnapshotFilter() throws Exception {
+        tso.stopAndWait();
+        TestUtils.waitForSocketNotListening("localhost", 1234, 1000);
+        hbaseCluster.shutdown();
+    }
+
+    @BeforeMethod
+    public void setupTestSnapshotFilterIndividualTest() throws Exception {
+        HBaseOmidClientConfiguration hbaseOmidClientConf = new HBaseOmidClientConfiguration();
+        hbaseOmidClientConf.setConnectionString("localhost:1234");
+        hbaseOmidClientConf.setHBaseConfiguration(hbaseConf);
+        CommitTable.Client commitTableClient = commitTable.getClient();
+        syncPostCommitter = spy(new HBaseSyncPostCommitter(new NullMetricsProvider(), commitTableClient));
+        tm = HBaseTransactionManager.builder(hbaseOmidClientConf)
+                .postCommitter(syncPostCommitter)
+                .commitTableClient(commitTableClient)
+                .build();
+    }
+
+    private void createTableIfNotExists(String tableName, byte[]... families) throws IOException {
+        if (!admin.tableExists(tableName)) {
+            LOG.info("Creating {} table...", tableName);
+            HTableDescriptor desc = new HTableDescriptor(TableName.valueOf(tableName));
+            for (byte[] family : families) {
+                HColumnDescriptor datafam = new HColumnDescriptor(family);
+                datafam.setMaxVersions(MAX_VERSIONS);
+                desc.addFamily(datafam);
+            }
+            admin.createTable(desc);
+        }
+    }
+
+    private void commitWrite(TTable txTable, byte[] row, String value) throws Exception {
+        Transaction tx = tm.begin();
+        txTable.put(tx, new Put(row).add(fam, qual, Bytes.toBytes(value)));
+        tm.commit(tx);
+    }
+
+    @Test(timeOut = 60_000)
+    public void testGetReturnsTheSnapshotVersionWithoutFurtherReads() throws Exception {
+        String TEST_TABLE = "testGetReturnsTheSnapshotVersionWithoutFurtherReads";
+        createTableIfNotExists(TEST_TABLE, fam);
+        HTable hTable = spy(new HTable(hbaseConf, TEST_TABLE));
+        TTable txTable = new TTable(hTable);
+        byte[] row = Bytes.toBytes("row");
+
+        commitWrite(txTable, row, "v0");
+        Transaction readTx = tm.begin();
+        for (int i = 1; i <= 3; i++) {
+            commitWrite(txTable, row, "v" + i);
+        }
+
+        Result result = txTable.get(readTx, new Get(row).addColumn(fam, qual));
+        assertEquals(Bytes.toString(result.getValue(fam, qual)), "v0");
+        // The newer versions are skipped in the region server, so no pending gets are needed
+        verify(hTable, never()).get(anyListOf(Get.class));
+        tm.commit(readTx);
+
+        // Columns with no version in the snapshot are not returned
+        Transaction oldTx = tm.begin();
+        byte[] newRow = Bytes.toBytes("new-row");
+        commitWrite(txTable, newRow, "v0");
+        assertFalse(txTable.get(oldTx, new Get(newRow).addColumn(fam, qual)).containsColumn(fam, qual));
+        txTable.close();
+    }
+
+    @Test(timeOut = 60_000)
+    public void testVersionsWithoutShadowCellsAreResolvedByTheClient() throws Exception {
+        String TEST_TABLE = "testVersionsWithoutShadowCellsAreResolvedByTheClient";
+        createTableIfNotExists(TEST_TABLE, fam);
+        TTable txTable = new TTable(hbaseConf, TEST_TABLE);
+        byte[] row = Bytes.toBytes("row");
+
+        commitWrite(txTable, row, "v0");
+        Transaction readTx = tm.begin();
+
+        // Emulates a crash after commit, so the commit timestamp is only in the commit table
+        doThrow(new RuntimeException()).when(syncPostCommitter).updateShadowCells(any(HBaseTransaction.class));
+        try {
+            commitWrite(txTable, row, "v1");
+            fail("The post commit actions should fail");
+        } catch (RuntimeException e) {
+            // Expected
+        }
+
+        Result result = txTable.get(readTx, new Get(row).addColumn(fam, qual));
+        assertEquals(Bytes.toString(result.getValue(fam, qual)), "v0");
+
+        Transaction newReadTx = tm.begin();
+        result = txTable.get(newReadTx, new Get(row).addColumn(fam, qual));
+        assertEquals(Bytes.toString(result.getValue(fam, qual)), "v1");
+        txTable.close();
+    }
+
+    @Test(timeOut = 60_000)
+    public void testScansReturnTheSnapshotOfEachRow() throws Exception {
+        String TEST_TABLE = "testScansReturnTheSnapshotOfEachRow";
+        createTableIfNotExists(TEST_TABLE, fam);
+        HTable hTable = spy(new HTable(hbaseConf, TEST_TABLE));
+        TTable txTable = new TTable(hTable);
+
+        final int ROWS = 5;
+        for (int i = 0; i < ROWS; i++) {
+            commitWrite(txTable, Bytes.toBytes("row-" + i), "v0");
+        }
+        Transaction readTx = tm.begin();
+        for (int i = 0; i < ROWS; i++) {
+            commitWrite(txTable, Bytes.toBytes("row-" + i), "v1");
+        }
+
+        ResultScanner scanner = txTable.getScanner(readTx, new Scan().addColumn(fam, qual));
+        for (int i = 0; i < ROWS; i++) {
+            Result result = scanner.next();
+            assertEquals(Bytes.toString(result.getRow()), "row-" + i);
+            assertEquals(Bytes.toString(result.getValue(fam, qual)), "v0");
+        }
+        assertNull(scanner.next());
+        scanner.close();
+        verify(hTable, never()).get(anyListOf(Get.class));
+        txTable.close();
+    }
+
+}
@@ -21,6 +21,7 @@ import com.google.common.base.Optional;
 import org.apache.omid.tso.client.CellId;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +44,7 @@ public abstract class AbstractTransaction<T extends CellId> implements Transacti
     private final long epoch;
     private long commitTimestamp;
     private boolean isRollbackOnly;
+    private boolean isReadOnly;
     private final Set<T> writeSet;
     private Status status = Status.RUNNING;
 
@@ -117,6 +119,22 @@ public abstract class AbstractTransaction<T extends CellId> implements Transacti
         return isRollbackOnly;
     }
 
+    /**
+     * Marks this transaction as read-only. Its start timestamp may be shared with other transactions, so it can't
+     * write
+     */
+    public void setReadOnly() {
+        isReadOnly = true;
+    }
+
+    /**
+     * Returns whether this transaction was started as read-only.
+     * @return read-only flag
+     */
+    public boolean isReadOnly() {
+        return isReadOnly;
+    }
+
     /**
      * Returns transaction manager associated to this transaction.
      * @return transaction manager
@@ -167,12 +185,32 @@ public abstract class AbstractTransaction<T extends CellId> implements Transacti
         return writeSet;
     }
 
+    /**
+     * Returns the elements of the write-set whose conflicts the TSO has to check. The whole write-set by default.
+     * @return the elements of the write set checked for conflicts
+     */
+    public Set<? extends CellId> getConflictWriteSet() {
+        return writeSet;
+    }
+
+    /**
+     * Returns the cells whose conflicts the TSO has to check without adding them to the conflict map, so they don't
+     * conflict with the other transactions checking them the same way. None by default.
+     * @return the cells only checked for conflicts
+     */
+    public Set<? extends CellId> getConflictCheckSet() {
+        return Collections.emptySet();
+    }
+
     /**
      * Adds an element to the transaction write-set.
      * @param element
      *            the element to add
      */
     public void addWriteSetElement(T element) {
+        if (isReadOnly) {
+            throw new IllegalStateException(this + ": Read-only transactions can't write");
+        }
         writeSet.add(element);
     }
 
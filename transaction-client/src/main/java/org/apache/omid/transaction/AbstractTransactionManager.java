@@ -19,7 +19,13 @@ package org.apache.omid.transaction;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureFallback;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.omid.committable.CommitTable;
 import org.apache.omid.committable.CommitTable.CommitTimestamp;
 import org.apache.omid.metrics.Counter;
@@ -31,12 +37,19 @@ import org.apache.omid.tso.client.CellId;
 import org.apache.omid.tso.client.ConnectionException;
 import org.apache.omid.tso.client.ServiceUnavailableException;
 import org.apache.omid.tso.client.TSOClient;
+import org.apache.omid.tso.client.TSOFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.omid.committable.CommitTable.CommitTimestamp.Location.CACHE;
 import static org.apache.omid.committable.CommitTable.CommitTimestamp.Location.COMMIT_TABLE;
 import static org.apache.omid.committable.CommitTable.CommitTimestamp.Location.NOT_PRESENT;
@@ -66,6 +79,8 @@ public abstract class AbstractTransactionManager implements TransactionManager {
     protected final TSOClient tsoClient;
     protected final CommitTable.Client commitTableClient;
     private final TransactionFactory<? extends CellId> transactionFactory;
+    // Runs the steps of the asynchronous API, as some of them block on the storage (e.g. flushing the writes)
+    private final ListeningExecutorService asyncExecutor;
 
     // Metrics
     private final Timer startTimestampTimer;
@@ -74,6 +89,7 @@ public abstract class AbstractTransactionManager implements TransactionManager {
     private final Counter rolledbackTxsCounter;
     private final Counter errorTxsCounter;
     private final Counter invalidatedTxsCounter;
+    private final Counter tsoFreeBeginsCounter;
 
     /**
      * Base constructor
@@ -89,17 +105,23 @@ public abstract class AbstractTransactionManager implements TransactionManager {
      * @param transactionFactory
      *            a transaction factory to create the specific transaction
      *            objects required by the transaction manager being implemented.
+     * @param asyncThreads
+     *            number of threads running the blocking steps of the
+     *            asynchronous API
      */
     public AbstractTransactionManager(MetricsRegistry metrics,
                                       PostCommitActions postCommitter,
                                       TSOClient tsoClient,
                                       CommitTable.Client commitTableClient,
-                                      TransactionFactory<? extends CellId> transactionFactory) {
+                                      TransactionFactory<? extends CellId> transactionFactory,
+                                      int asyncThreads) {
 
         this.tsoClient = tsoClient;
         this.postCommitter = postCommitter;
         this.commitTableClient = commitTableClient;
         this.transactionFactory = transactionFactory;
+        this.asyncExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(
+                asyncThreads, new ThreadFactoryBuilder().setNameFormat("omid-tm-async-%d").setDaemon(true).build()));
 
         // Metrics configuration
         this.startTimestampTimer = metrics.timer(name("omid", "tm", "hbase", "startTimestamp", "latency"));
@@ -108,6 +130,7 @@ public abstract class AbstractTransactionManager implements TransactionManager {
         this.rolledbackTxsCounter = metrics.counter(name("omid", "tm", "hbase", "rolledbackTxs"));
         this.errorTxsCounter = metrics.counter(name("omid", "tm", "hbase", "erroredTxs"));
         this.invalidatedTxsCounter = metrics.counter(name("omid", "tm", "hbase", "invalidatedTxs"));
+        this.tsoFreeBeginsCounter = metrics.counter(name("omid", "tm", "hbase", "tsoFreeBegins"));
 
     }
 
@@ -144,11 +167,36 @@ public abstract class AbstractTransactionManager implements TransactionManager {
                 startTimestampTimer.stop();
             }
 
-            AbstractTransaction<? extends CellId> tx = transactionFactory.createTransaction(startTimestamp, epoch, this);
+            return startTransaction(startTimestamp, epoch, false);
+        } catch (TransactionManagerException e) {
+            throw new TransactionException("An error has occured during PreBegin/PostBegin", e);
+        } catch (ExecutionException e) {
+            throw new TransactionException("Could not get new timestamp", e);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException("Interrupted getting timestamp", ie);
+        }
+    }
 
-            postBegin(tx);
+    /**
+     * @see org.apache.omid.transaction.TransactionManager#beginReadOnly()
+     */
+    @Override
+    public final Transaction beginReadOnly() throws TransactionException {
 
-            return tx;
+        try {
+            preBegin();
+
+            // Read-only transactions don't need a start timestamp of their own. Any timestamp with all the commits
+            // below it durable is a valid snapshot
+            long snapshotTimestamp = tsoClient.getSafeReadTimestamp();
+            if (snapshotTimestamp == TSOClient.NO_SAFE_READ_TIMESTAMP) {
+                snapshotTimestamp = requestStartTimestamp();
+            } else {
+                tsoFreeBeginsCounter.inc();
+            }
+
+            return startTransaction(snapshotTimestamp, tsoClient.getEpoch(), true);
         } catch (TransactionManagerException e) {
             throw new TransactionException("An error has occured during PreBegin/PostBegin", e);
         } catch (ExecutionException e) {
@@ -157,6 +205,68 @@ public abstract class AbstractTransactionManager implements TransactionManager {
             Thread.currentThread().interrupt();
             throw new TransactionException("Interrupted getting timestamp", ie);
         }
+
+    }
+
+    /**
+     * @see org.apache.omid.transaction.TransactionManager#beginAt(long)
+     */
+    @Override
+    public final Transaction beginAt(long timestamp) throws TransactionException {
+
+        if (timestamp < 0) {
+            throw new IllegalArgumentException("Invalid snapshot timestamp " + timestamp);
+        }
+        try {
+            preBegin();
+
+            // Commits below the snapshot may not be durable yet otherwise, so the snapshot could change
+            if (timestamp > tsoClient.getSafeReadTimestamp()) {
+                long lastTimestamp = requestStartTimestamp();
+                if (timestamp > lastTimestamp) {
+                    throw new IllegalArgumentException("Snapshot timestamp " + timestamp
+                                                               + " newer than the last one handed out by the TSO "
+                                                               + lastTimestamp);
+                }
+            } else {
+                tsoFreeBeginsCounter.inc();
+            }
+
+            return startTransaction(timestamp, tsoClient.getEpoch(), true);
+        } catch (TransactionManagerException e) {
+            throw new TransactionException("An error has occured during PreBegin/PostBegin", e);
+        } catch (ExecutionException e) {
+            throw new TransactionException("Could not get new timestamp", e);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException("Interrupted getting timestamp", ie);
+        }
+
+    }
+
+    private long requestStartTimestamp() throws ExecutionException, InterruptedException {
+
+        startTimestampTimer.start();
+        try {
+            return tsoClient.getNewStartTimestamp().get();
+        } finally {
+            startTimestampTimer.stop();
+        }
+
+    }
+
+    private AbstractTransaction<? extends CellId> startTransaction(long startTimestamp, long epoch, boolean readOnly)
+            throws TransactionManagerException {
+
+        AbstractTransaction<? extends CellId> tx = transactionFactory.createTransaction(startTimestamp, epoch, this);
+        if (readOnly) {
+            tx.setReadOnly();
+        }
+
+        postBegin(tx);
+
+        return tx;
+
     }
 
     /**
@@ -263,6 +373,105 @@ public abstract class AbstractTransactionManager implements TransactionManager {
      */
     public void postRollback(AbstractTransaction<? extends CellId> transaction) throws TransactionManagerException {}
 
+    // ----------------------------------------------------------------------------------------------------------------
+    // Asynchronous API. Same steps as the blocking methods, chained on the futures instead of waiting on them
+    // ----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * @see org.apache.omid.transaction.TransactionManager#beginAsync()
+     */
+    @Override
+    public final ListenableFuture<Transaction> beginAsync() {
+
+        final long startTimeInNs = System.nanoTime();
+        ListenableFuture<Void> preBegin = asyncExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws TransactionException {
+                try {
+                    preBegin();
+                } catch (TransactionManagerException e) {
+                    throw new TransactionException("An error has occured during PreBegin/PostBegin", e);
+                }
+                return null;
+            }
+        });
+        return Futures.transform(preBegin, new AsyncFunction<Void, Transaction>() {
+            @Override
+            public ListenableFuture<Transaction> apply(Void preBegin) {
+                return startTransactionAsync(startTimeInNs);
+            }
+        }, asyncExecutor);
+
+    }
+
+    /**
+     * @see org.apache.omid.transaction.TransactionManager#commitAsync(Transaction)
+     */
+    @Override
+    public final ListenableFuture<Void> commitAsync(Transaction transaction) {
+
+        final AbstractTransaction<? extends CellId> tx = enforceAbstractTransactionAsParam(transaction);
+        enforceTransactionIsInRunningState(tx);
+
+        final long startTimeInNs = System.nanoTime();
+        ListenableFuture<Boolean> preCommit = asyncExecutor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws RollbackException, TransactionException {
+                if (tx.isRollbackOnly()) { // Manage explicit user rollback
+                    rollback(tx);
+                    throw new RollbackException(tx + ": Tx was set to rollback explicitly");
+                }
+                try {
+                    preCommit(tx);
+                } catch (TransactionManagerException e) {
+                    throw new TransactionException(e.getMessage(), e);
+                }
+                return tx.getWriteSet().isEmpty();
+            }
+        });
+        ListenableFuture<Void> commit = Futures.transform(preCommit, new AsyncFunction<Boolean, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Boolean isReadOnly) {
+                if (isReadOnly) {
+                    markReadOnlyTransaction(tx); // No need for read-only transactions to contact the TSO Server
+                    return Futures.immediateFuture(null);
+                }
+                return commitRegularTransactionAsync(tx);
+            }
+        }, asyncExecutor);
+        return Futures.transform(commit, new AsyncFunction<Void, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Void commit) throws TransactionException {
+                committedTxsCounter.inc();
+                commitTimer.update(System.nanoTime() - startTimeInNs);
+                try {
+                    postCommit(tx);
+                } catch (TransactionManagerException e) {
+                    throw new TransactionException(e.getMessage(), e);
+                }
+                return Futures.immediateFuture(null);
+            }
+        }, asyncExecutor);
+
+    }
+
+    /**
+     * @see org.apache.omid.transaction.TransactionManager#rollbackAsync(Transaction)
+     */
+    @Override
+    public final ListenableFuture<Void> rollbackAsync(final Transaction transaction) {
+
+        enforceTransactionIsInRunningState(enforceAbstractTransactionAsParam(transaction));
+        return asyncExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws TransactionException {
+                rollback(transaction); // Clean-up writes to the storage
+                return null;
+            }
+        });
+
+    }
+
     /**
      * Check if the transaction commit data is in the shadow cell
      * @param cellStartTimestamp
@@ -355,17 +564,65 @@ public abstract class AbstractTransactionManager implements TransactionManager {
 
     }
 
+    /**
+     * Reads the commit timestamps of several transactions from the commit table in a single round-trip. Unlike
+     * {@link #locateCellCommitTimestamp(long, long, CommitTimestampLocator)} it doesn't look anywhere else nor tries
+     * to invalidate the transactions missing in the commit table.
+     * @param startTimestamps
+     *          start timestamps of the transactions to read the commit timestamps for.
+     * @return the commit timestamps found, keyed by start timestamp
+     * @throws IOException  in case of any I/O issues
+     */
+    public Map<Long, CommitTimestamp> readCommitTimestampsFromCommitTable(Collection<Long> startTimestamps)
+            throws IOException {
+
+        try {
+            return commitTableClient.getCommitTimestamps(startTimestamps).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finding commit timestamps", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Problem finding commit timestamps", e);
+        }
+
+    }
+
+    /**
+     * @return the executor running the blocking steps of the asynchronous API. Implementations can use it to
+     *         parallelize their own blocking work (e.g. flushing the writes to several tables)
+     */
+    protected ListeningExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
     /**
      * @see java.io.Closeable#close()
      */
     @Override
     public final void close() throws IOException {
 
+        // The steps still running may need the TSO and the commit table
+        asyncExecutor.shutdown();
+        try {
+            if (!asyncExecutor.awaitTermination(10, SECONDS)) {
+                LOG.warn("Asynchronous steps still running after 10 seconds. Closing anyway");
+            }
+        } catch (InterruptedException e) {
+            LOG.error("Interrupted whilst finishing the asynchronous steps");
+            Thread.currentThread().interrupt();
+        }
         tsoClient.close();
         commitTableClient.close();
+        postClose();
 
     }
 
+    /**
+     * Allows transaction manager developers to release their own resources when closing the transaction manager.
+     * @throws IOException in case of any I/O issues
+     */
+    public void postClose() throws IOException {}
+
     // ----------------------------------------------------------------------------------------------------------------
     // Helper methods
     // ----------------------------------------------------------------------------------------------------------------
@@ -403,7 +660,19 @@ public abstract class AbstractTransactionManager implements TransactionManager {
 
         try {
 
-            long commitTs = tsoClient.commit(tx.getStartTimestamp(), tx.getWriteSet()).get();
+            long commitTs = commitToTSO(tx).get();
+            if (tx.getEpoch() < tsoClient.getEpoch()) {
+                // Started under a previous TSO and committed by its warm standby. Readers may have invalidated it
+                // in the meantime, in which case the invalidation prevails
+                Optional<CommitTimestamp> commitTimestamp =
+                        commitTableClient.getCommitTimestamp(tx.getStartTimestamp()).get();
+                if (commitTimestamp.isPresent() && !commitTimestamp.get().isValid()) {
+                    LOG.warn("{}: Invalidated by other Tx whilst the TSO was failing over. Rolling-back...", tx);
+                    invalidatedTxsCounter.inc();
+                    rollback(tx);
+                    throw new RollbackException(tx + " invalidated by other Tx started");
+                }
+            }
             certifyCommitForTx(tx, commitTs);
             updateShadowCellsAndRemoveCommitTableEntry(tx, postCommitter);
 
@@ -418,46 +687,14 @@ public abstract class AbstractTransactionManager implements TransactionManager {
             if (e.getCause() instanceof ServiceUnavailableException || e.getCause() instanceof ConnectionException) {
 
                 errorTxsCounter.inc();
+                LOG.warn("Can't contact the TSO for receiving outcome for Tx {}. Checking Commit Table...", tx);
                 try {
-                    LOG.warn("Can't contact the TSO for receiving outcome for Tx {}. Checking Commit Table...", tx);
-                    // Check the commit table to find if the target TSO woke up in the meantime and added the commit
-                    // TODO: Decide what we should we do if we can not contact the commit table
-                    Optional<CommitTimestamp> commitTimestamp =
-                            commitTableClient.getCommitTimestamp(tx.getStartTimestamp()).get();
-                    if (commitTimestamp.isPresent()) {
-                        if (commitTimestamp.get().isValid()) {
-                            LOG.warn("{}: Valid commit TS found in Commit Table. Committing Tx...", tx);
-                            certifyCommitForTx(tx, commitTimestamp.get().getValue());
-                            postCommitter.updateShadowCells(tx); // But do NOT remove transaction from commit table
-                        } else { // Probably another Tx in a new TSO Server invalidated this transaction
-                            LOG.warn("{}: Invalidated commit TS found in Commit Table. Rolling-back...", tx);
-                            rollback(tx);
-                            throw new RollbackException(tx + " invalidated by other Tx started", e.getCause());
-                        }
-                    } else {
-                        LOG.warn("{}: Trying to invalidate Tx proactively in Commit Table...", tx);
-                        boolean invalidated = commitTableClient.tryInvalidateTransaction(tx.getStartTimestamp()).get();
-                        if (invalidated) {
-                            LOG.warn("{}: Invalidated proactively in Commit Table. Rolling-back Tx...", tx);
-                            invalidatedTxsCounter.inc();
-                            rollback(tx); // Rollback proactively cause it's likely that a new TSOServer is now master
-                            throw new RollbackException(tx + " rolled-back precautionary", e.getCause());
-                        } else {
-                            LOG.warn("{}: Invalidation could NOT be completed. Re-checking Commit Table...", tx);
-                            // TODO: Decide what we should we do if we can not contact the commit table
-                            commitTimestamp = commitTableClient.getCommitTimestamp(tx.getStartTimestamp()).get();
-                            if (commitTimestamp.isPresent() && commitTimestamp.get().isValid()) {
-                                LOG.warn("{}: Valid commit TS found in Commit Table. Committing Tx...", tx);
-                                certifyCommitForTx(tx, commitTimestamp.get().getValue());
-                                postCommitter.updateShadowCells(tx); // But do NOT remove transaction from commit table
-                            } else {
-                                LOG.error("{}: Can't determine Transaction outcome", tx);
-                                throw new TransactionException(tx + ": cannot determine Tx outcome");
-                            }
-                        }
-                    }
+                    resolveOutcomeFromCommitTable(tx, e.getCause()).get();
                 } catch (ExecutionException e1) {
-                    throw new TransactionException(tx + ": problem reading commitTS from Commit Table", e1);
+                    if (e1.getCause() instanceof RollbackException) {
+                        throw (RollbackException) e1.getCause();
+                    }
+                    throw (TransactionException) e1.getCause(); // The only other failure of the outcome resolution
                 } catch (InterruptedException e1) {
                     Thread.currentThread().interrupt();
                     throw new TransactionException(tx + ": interrupted while reading commitTS from Commit Table", e1);
@@ -473,6 +710,191 @@ public abstract class AbstractTransactionManager implements TransactionManager {
 
     }
 
+    private ListenableFuture<Transaction> startTransactionAsync(final long startTimeInNs) {
+
+        ListenableFuture<Transaction> tx = Futures.transform(tsoClient.getNewStartTimestamp(),
+                                                             new AsyncFunction<Long, Transaction>() {
+            @Override
+            public ListenableFuture<Transaction> apply(Long startTimestamp) throws TransactionException {
+                long epoch = tsoClient.getEpoch();
+                if (epoch > startTimestamp) { // Connected to a new TSO Server. See begin()
+                    return startTransactionAsync(startTimeInNs);
+                }
+                startTimestampTimer.update(System.nanoTime() - startTimeInNs);
+                try {
+                    return Futures.<Transaction>immediateFuture(startTransaction(startTimestamp, epoch, false));
+                } catch (TransactionManagerException e) {
+                    throw new TransactionException("An error has occured during PreBegin/PostBegin", e);
+                }
+            }
+        }, asyncExecutor);
+        return Futures.withFallback(tx, new FutureFallback<Transaction>() {
+            @Override
+            public ListenableFuture<Transaction> create(Throwable t) {
+                if (t instanceof TransactionException) {
+                    return Futures.immediateFailedFuture(t);
+                }
+                return Futures.immediateFailedFuture(new TransactionException("Could not get new timestamp", t));
+            }
+        });
+
+    }
+
+    // The cells only checked for conflicts are sent to the TSO when the transaction has any
+    private TSOFuture<Long> commitToTSO(AbstractTransaction<? extends CellId> tx) {
+
+        Set<? extends CellId> conflictCheckSet = tx.getConflictCheckSet();
+        if (conflictCheckSet.isEmpty()) {
+            return tsoClient.commit(tx.getStartTimestamp(), tx.getConflictWriteSet());
+        }
+        return tsoClient.commit(tx.getStartTimestamp(), tx.getConflictWriteSet(), conflictCheckSet);
+
+    }
+
+    private ListenableFuture<Void> commitRegularTransactionAsync(final AbstractTransaction<? extends CellId> tx) {
+
+        ListenableFuture<Void> commit = Futures.transform(commitToTSO(tx),
+                                                          new AsyncFunction<Long, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(final Long commitTs) {
+                if (tx.getEpoch() < tsoClient.getEpoch()) {
+                    // Started under a previous TSO and committed by its warm standby. Readers may have invalidated it
+                    // in the meantime, in which case the invalidation prevails
+                    return Futures.transform(commitTableClient.getCommitTimestamp(tx.getStartTimestamp()),
+                                             new AsyncFunction<Optional<CommitTimestamp>, Void>() {
+                        @Override
+                        public ListenableFuture<Void> apply(Optional<CommitTimestamp> commitTimestamp)
+                                throws RollbackException, TransactionException {
+                            if (commitTimestamp.isPresent() && !commitTimestamp.get().isValid()) {
+                                LOG.warn("{}: Invalidated by other Tx whilst the TSO was failing over. Rolling-back...",
+                                         tx);
+                                invalidatedTxsCounter.inc();
+                                rollback(tx);
+                                throw new RollbackException(tx + " invalidated by other Tx started");
+                            }
+                            return certifyCommitAndRunPostCommitActions(tx, commitTs);
+                        }
+                    }, asyncExecutor);
+                }
+                return certifyCommitAndRunPostCommitActions(tx, commitTs);
+            }
+        }, asyncExecutor);
+        return Futures.withFallback(commit, new FutureFallback<Void>() {
+            @Override
+            public ListenableFuture<Void> create(Throwable t) throws TransactionException {
+                if (t instanceof AbortException) { // TSO reports Tx conflicts as AbortExceptions in the future
+                    rollback(tx);
+                    rolledbackTxsCounter.inc();
+                    return Futures.immediateFailedFuture(new RollbackException("Conflicts detected in tx writeset", t));
+                }
+                if (t instanceof ServiceUnavailableException || t instanceof ConnectionException) {
+                    errorTxsCounter.inc();
+                    LOG.warn("Can't contact the TSO for receiving outcome for Tx {}. Checking Commit Table...", tx);
+                    return resolveOutcomeFromCommitTable(tx, t);
+                }
+                if (t instanceof RollbackException || t instanceof TransactionException) {
+                    return Futures.immediateFailedFuture(t);
+                }
+                return Futures.immediateFailedFuture(new TransactionException(tx + ": cannot determine Tx outcome", t));
+            }
+        }, asyncExecutor);
+
+    }
+
+    // The transaction is committed regardless of the outcome of the post-commit actions, so their errors are ignored
+    private ListenableFuture<Void> certifyCommitAndRunPostCommitActions(final AbstractTransaction<? extends CellId> tx,
+                                                                        long commitTs) {
+
+        certifyCommitForTx(tx, commitTs);
+        ListenableFuture<Void> postCommitActions = Futures.transform(postCommitter.updateShadowCells(tx),
+                                                                     new AsyncFunction<Void, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Void updateShadowCells) {
+                return postCommitter.removeCommitTableEntry(tx);
+            }
+        }, asyncExecutor);
+        return Futures.withFallback(postCommitActions, new FutureFallback<Void>() {
+            @Override
+            public ListenableFuture<Void> create(Throwable t) {
+                LOG.warn("{}: Error in the post-commit actions. Readers will complete them", tx, t);
+                return Futures.immediateFuture(null);
+            }
+        });
+
+    }
+
+    /**
+     * Checks the commit table to find if the target TSO woke up in the meantime and added the commit. Otherwise, tries
+     * to invalidate the transaction, as it's likely that a new TSO Server is now master.
+     * @return the outcome as a future. It fails with a {@link RollbackException} if the transaction was rolled-back or
+     *         with a {@link TransactionException} if the outcome can't be determined
+     */
+    private ListenableFuture<Void> resolveOutcomeFromCommitTable(final AbstractTransaction<? extends CellId> tx,
+                                                                 final Throwable cause) {
+
+        // TODO: Decide what we should we do if we can not contact the commit table
+        ListenableFuture<Void> outcome = Futures.transform(commitTableClient.getCommitTimestamp(tx.getStartTimestamp()),
+                                                           new AsyncFunction<Optional<CommitTimestamp>, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(Optional<CommitTimestamp> commitTimestamp)
+                    throws RollbackException, TransactionException {
+                if (commitTimestamp.isPresent()) {
+                    if (commitTimestamp.get().isValid()) {
+                        LOG.warn("{}: Valid commit TS found in Commit Table. Committing Tx...", tx);
+                        certifyCommitForTx(tx, commitTimestamp.get().getValue());
+                        postCommitter.updateShadowCells(tx); // But do NOT remove transaction from commit table
+                        return Futures.immediateFuture(null);
+                    } else { // Probably another Tx in a new TSO Server invalidated this transaction
+                        LOG.warn("{}: Invalidated commit TS found in Commit Table. Rolling-back...", tx);
+                        rollback(tx);
+                        throw new RollbackException(tx + " invalidated by other Tx started", cause);
+                    }
+                }
+                LOG.warn("{}: Trying to invalidate Tx proactively in Commit Table...", tx);
+                return Futures.transform(commitTableClient.tryInvalidateTransaction(tx.getStartTimestamp()),
+                                         new AsyncFunction<Boolean, Void>() {
+                    @Override
+                    public ListenableFuture<Void> apply(Boolean invalidated)
+                            throws RollbackException, TransactionException {
+                        if (invalidated) {
+                            LOG.warn("{}: Invalidated proactively in Commit Table. Rolling-back Tx...", tx);
+                            invalidatedTxsCounter.inc();
+                            rollback(tx); // Rollback proactively cause it's likely that a new TSOServer is now master
+                            throw new RollbackException(tx + " rolled-back precautionary", cause);
+                        }
+                        LOG.warn("{}: Invalidation could NOT be completed. Re-checking Commit Table...", tx);
+                        return Futures.transform(commitTableClient.getCommitTimestamp(tx.getStartTimestamp()),
+                                                 new AsyncFunction<Optional<CommitTimestamp>, Void>() {
+                            @Override
+                            public ListenableFuture<Void> apply(Optional<CommitTimestamp> commitTimestamp)
+                                    throws TransactionException {
+                                if (commitTimestamp.isPresent() && commitTimestamp.get().isValid()) {
+                                    LOG.warn("{}: Valid commit TS found in Commit Table. Committing Tx...", tx);
+                                    certifyCommitForTx(tx, commitTimestamp.get().getValue());
+                                    postCommitter.updateShadowCells(tx); // But do NOT remove tx from commit table
+                                    return Futures.immediateFuture(null);
+                                }
+                                LOG.error("{}: Can't determine Transaction outcome", tx);
+                                throw new TransactionException(tx + ": cannot determine Tx outcome");
+                            }
+                        }, asyncExecutor);
+                    }
+                }, asyncExecutor);
+            }
+        }, asyncExecutor);
+        return Futures.withFallback(outcome, new FutureFallback<Void>() {
+            @Override
+            public ListenableFuture<Void> create(Throwable t) {
+                if (t instanceof RollbackException || t instanceof TransactionException) {
+                    return Futures.immediateFailedFuture(t);
+                }
+                return Futures.immediateFailedFuture(
+                        new TransactionException(tx + ": problem reading commitTS from Commit Table", t));
+            }
+        });
+
+    }
+
     private void updateShadowCellsAndRemoveCommitTableEntry(final AbstractTransaction<? extends CellId> tx,
                                                             final PostCommitActions postCommitter) {
 
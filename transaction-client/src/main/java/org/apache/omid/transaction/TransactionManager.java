@@ -17,6 +17,8 @@
  */
 package org.apache.omid.transaction;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.io.Closeable;
 
 /**
@@ -35,6 +37,29 @@ public interface TransactionManager extends Closeable {
      */
     Transaction begin() throws TransactionException;
 
+    /**
+     * Starts a new read-only transaction without contacting the TSO.
+     *
+     * The snapshot is the safe read timestamp last published by the TSO, so it may not include the latest commits,
+     * even the ones of this client. When it's not known yet, a new timestamp is requested to the TSO. Writing in the
+     * returned transaction throws an {@link IllegalStateException}.
+     *
+     * @return transaction representation of the created transaction
+     * @throws TransactionException in case of any issues
+     */
+    Transaction beginReadOnly() throws TransactionException;
+
+    /**
+     * Starts a new read-only transaction that reads the snapshot at the timestamp passed (e.g. for reading historical
+     * data). The data in the snapshot may have been removed by compactions if it's older than the low watermark of
+     * the TSO. Writing in the returned transaction throws an {@link IllegalStateException}.
+     *
+     * @param timestamp the snapshot to read. It can't be newer than the last timestamp handed out by the TSO
+     * @return transaction representation of the created transaction
+     * @throws TransactionException in case of any issues
+     */
+    Transaction beginAt(long timestamp) throws TransactionException;
+
     /**
      * Commits a transaction.
      *
@@ -58,4 +83,30 @@ public interface TransactionManager extends Closeable {
      */
     void rollback(Transaction tx) throws TransactionException;
 
+    /**
+     * Starts a new transaction without blocking the caller. Same as {@link #begin()}.
+     *
+     * @return the created transaction as a future. It fails with a {@link TransactionException} in case of any issues
+     */
+    ListenableFuture<Transaction> beginAsync();
+
+    /**
+     * Commits a transaction without blocking the caller. Same as {@link #commit(Transaction)}, but the future is done
+     * once the post-commit actions (e.g. updating the shadow cells) are done too.
+     *
+     * @param tx transaction to be committed.
+     * @return the outcome as a future. It fails with a {@link RollbackException} when the transaction has conflicts
+     *         with another transaction or was marked for rollback, or with a {@link TransactionException} in case of
+     *         any issues
+     */
+    ListenableFuture<Void> commitAsync(Transaction tx);
+
+    /**
+     * Aborts a transaction without blocking the caller. Same as {@link #rollback(Transaction)}.
+     *
+     * @param tx transaction to be rolled-back
+     * @return the outcome as a future. It fails with a {@link TransactionException} in case of any issues
+     */
+    ListenableFuture<Void> rollbackAsync(Transaction tx);
+
 }
@@ -17,10 +17,12 @@
  */
 package org.apache.omid.tso.client;
 
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.SettableFuture;
 import org.apache.omid.committable.CommitTable;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -47,6 +49,11 @@ class MockTSOClient implements TSOProtocol {
 
     @Override
     public TSOFuture<Long> commit(long transactionId, Set<? extends CellId> cells) {
+        return commit(transactionId, cells, Collections.<CellId>emptySet());
+    }
+
+    @Override
+    public TSOFuture<Long> commit(long transactionId, Set<? extends CellId> cells, Set<? extends CellId> checkedCells) {
         synchronized (conflictMap) {
             SettableFuture<Long> f = SettableFuture.create();
             if (transactionId < lwm.get()) {
@@ -55,7 +62,7 @@ class MockTSOClient implements TSOProtocol {
             }
 
             boolean canCommit = true;
-            for (CellId c : cells) {
+            for (CellId c : Iterables.concat(cells, checkedCells)) {
                 int index = Math.abs((int) (c.getCellId() % CONFLICT_MAP_SIZE));
                 if (conflictMap[index] >= transactionId) {
                     canCommit = false;
@@ -45,12 +45,17 @@ public class OmidClientConfiguration {
     private int requestMaxRetries;
     private int requestTimeoutInMs;
     private int reconnectionDelayInSecs;
+    private int reconnectionBaseDelayInMs;
     private int retryDelayInMs;
     private int executorThreads;
+    private int commitChunkSize;
 
     // Transaction Manager related params
 
     private PostCommitMode postCommitMode = PostCommitMode.SYNC;
+    private int asyncThreads;
+    private int postCommitThreads;
+    private int postCommitQueueSize;
 
     // ----------------------------------------------------------------------------------------------------------------
     // Instantiation
@@ -124,6 +129,16 @@ public class OmidClientConfiguration {
         this.reconnectionDelayInSecs = reconnectionDelayInSecs;
     }
 
+    public int getReconnectionBaseDelayInMs() {
+        return reconnectionBaseDelayInMs;
+    }
+
+    @Inject(optional = true)
+    @Named("omid.client.reconnectionBaseDelayInMs")
+    public void setReconnectionBaseDelayInMs(int reconnectionBaseDelayInMs) {
+        this.reconnectionBaseDelayInMs = reconnectionBaseDelayInMs;
+    }
+
     public int getRetryDelayInMs() {
         return retryDelayInMs;
     }
@@ -144,6 +159,16 @@ public class OmidClientConfiguration {
         this.executorThreads = executorThreads;
     }
 
+    public int getCommitChunkSize() {
+        return commitChunkSize;
+    }
+
+    @Inject(optional = true)
+    @Named("omid.client.commitChunkSize")
+    public void setCommitChunkSize(int commitChunkSize) {
+        this.commitChunkSize = commitChunkSize;
+    }
+
     public String getZkCurrentTsoPath() {
         return zkCurrentTsoPath;
     }
@@ -174,4 +199,34 @@ public class OmidClientConfiguration {
         this.postCommitMode = postCommitMode;
     }
 
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    @Inject(optional = true)
+    @Named("omid.tm.asyncThreads")
+    public void setAsyncThreads(int asyncThreads) {
+        this.asyncThreads = asyncThreads;
+    }
+
+    public int getPostCommitThreads() {
+        return postCommitThreads;
+    }
+
+    @Inject(optional = true)
+    @Named("omid.tm.postCommitThreads")
+    public void setPostCommitThreads(int postCommitThreads) {
+        this.postCommitThreads = postCommitThreads;
+    }
+
+    public int getPostCommitQueueSize() {
+        return postCommitQueueSize;
+    }
+
+    @Inject(optional = true)
+    @Named("omid.tm.postCommitQueueSize")
+    public void setPostCommitQueueSize(int postCommitQueueSize) {
+        this.postCommitQueueSize = postCommitQueueSize;
+    }
+
 }
@@ -19,8 +19,10 @@ package org.apache.omid.tso.client;
 
 import com.google.common.base.Charsets;
 import com.google.common.net.HostAndPort;
+import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.omid.PackedCellIds;
 import org.apache.omid.proto.TSOProto;
 import org.apache.omid.zk.ZKUtils;
 import org.apache.statemachine.StateMachine;
@@ -53,14 +55,19 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -76,6 +83,9 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
     private static final long DEFAULT_EPOCH = -1L;
     private volatile long epoch = DEFAULT_EPOCH;
 
+    public static final long NO_SAFE_READ_TIMESTAMP = -1L;
+    private volatile long safeReadTimestamp = NO_SAFE_READ_TIMESTAMP; // Only updated from the FSM thread
+
     // Attributes
     private CuratorFramework zkClient;
     private NodeCache currentTSOZNode;
@@ -85,10 +95,15 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
     private Channel currentChannel;
     private final ScheduledExecutorService fsmExecutor;
     StateMachine.Fsm fsm;
+    // Shared by all the states for request, handshake and reconnection timeouts
+    private final HashedWheelTimer timeoutExecutor;
 
     private final int requestTimeoutInMs;
     private final int requestMaxRetries;
+    private final int commitChunkSize;
     private final int tsoReconnectionDelayInSecs;
+    private final int tsoReconnectionBaseDelayInMs;
+    private int failedConnectionAttempts = 0; // Only accessed from the FSM thread
     private InetSocketAddress tsoAddr;
     private String zkCurrentTsoPath;
 
@@ -116,7 +131,9 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
 
         requestTimeoutInMs = omidConf.getRequestTimeoutInMs();
         requestMaxRetries = omidConf.getRequestMaxRetries();
+        commitChunkSize = omidConf.getCommitChunkSize();
         tsoReconnectionDelayInSecs = omidConf.getReconnectionDelayInSecs();
+        tsoReconnectionBaseDelayInMs = omidConf.getReconnectionBaseDelayInMs();
 
         LOG.info("Connecting to TSO...");
         HostAndPort hp;
@@ -143,6 +160,7 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
                 break;
         }
 
+        timeoutExecutor = new HashedWheelTimer(new ThreadFactoryBuilder().setNameFormat("tso-client-timeout").build());
         fsmExecutor = Executors.newSingleThreadScheduledExecutor(
                 new ThreadFactoryBuilder().setNameFormat("tsofsm-%d").build());
         fsm = new StateMachine.FsmImpl(fsmExecutor);
@@ -183,18 +201,71 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
      */
     @Override
     public TSOFuture<Long> commit(long transactionId, Set<? extends CellId> cells) {
+        return commit(transactionId, cells, Collections.<CellId>emptySet());
+    }
+
+    /**
+     * @see TSOProtocol#commit(long, Set, Set)
+     */
+    @Override
+    public TSOFuture<Long> commit(long transactionId, Set<? extends CellId> cells, Set<? extends CellId> checkedCells) {
         TSOProto.Request.Builder builder = TSOProto.Request.newBuilder();
         TSOProto.CommitRequest.Builder commitbuilder = TSOProto.CommitRequest.newBuilder();
         commitbuilder.setStartTimestamp(transactionId);
-        for (CellId cell : cells) {
-            commitbuilder.addCellId(cell.getCellId());
+        // Packed by default. They are unpacked when sending the request to servers without the capability
+        long[] cellIds = distinctCellIds(cells);
+        // The cell ids that don't fit in the request are sent ahead in chunks
+        List<TSOProto.Request> chunks = new ArrayList<>();
+        int numChunkedCellIds = 0;
+        while (commitChunkSize > 0 && cellIds.length - numChunkedCellIds > commitChunkSize) {
+            long[] chunkCellIds = Arrays.copyOfRange(cellIds, numChunkedCellIds, numChunkedCellIds + commitChunkSize);
+            TSOProto.CommitRequest.Builder chunkBuilder = TSOProto.CommitRequest.newBuilder()
+                    .setStartTimestamp(transactionId)
+                    .setIsChunk(true)
+                    .setNumChunkedCellIds(numChunkedCellIds)
+                    .setPackedCellIds(PackedCellIds.encode(chunkCellIds))
+                    .setNumPackedCellIds(chunkCellIds.length);
+            chunks.add(TSOProto.Request.newBuilder().setCommitRequest(chunkBuilder).build());
+            numChunkedCellIds += chunkCellIds.length;
+        }
+        if (numChunkedCellIds > 0) {
+            cellIds = Arrays.copyOfRange(cellIds, numChunkedCellIds, cellIds.length);
+            commitbuilder.setNumChunkedCellIds(numChunkedCellIds);
+        }
+        commitbuilder.setPackedCellIds(PackedCellIds.encode(cellIds)).setNumPackedCellIds(cellIds.length);
+        if (!checkedCells.isEmpty()) {
+            long[] checkedCellIds = distinctCellIds(checkedCells);
+            commitbuilder.setPackedCheckedCellIds(PackedCellIds.encode(checkedCellIds))
+                    .setNumPackedCheckedCellIds(checkedCellIds.length);
         }
         builder.setCommitRequest(commitbuilder.build());
-        RequestEvent request = new RequestEvent(builder.build(), requestMaxRetries);
+        RequestEvent request = new RequestEvent(builder.build(), chunks, requestMaxRetries);
         fsm.sendEvent(request);
         return new ForwardingTSOFuture<>(request);
     }
 
+    /**
+     * @return the ids of the cells passed, sorted and without duplicates. Cells whose conflicts are detected per row or
+     *         per family share their id, which is then sent once
+     */
+    private static long[] distinctCellIds(Set<? extends CellId> cells) {
+
+        long[] cellIds = new long[cells.size()];
+        int i = 0;
+        for (CellId cell : cells) {
+            cellIds[i++] = cell.getCellId();
+        }
+        Arrays.sort(cellIds);
+        int numDistinct = 0;
+        for (long cellId : cellIds) {
+            if (numDistinct == 0 || cellIds[numDistinct - 1] != cellId) {
+                cellIds[numDistinct++] = cellId;
+            }
+        }
+        return numDistinct == cellIds.length ? cellIds : Arrays.copyOf(cellIds, numDistinct);
+
+    }
+
     /**
      * @see TSOProtocol#close()
      */
@@ -213,6 +284,7 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
                 } catch (ExecutionException e) {
                     e.printStackTrace();
                 } finally {
+                    timeoutExecutor.stop();
                     fsmExecutor.shutdown();
                     if (currentTSOZNode != null) {
                         try {
@@ -243,6 +315,26 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
         return epoch;
     }
 
+    // ----------------------------------------------------------------------------------------------------------------
+    // Read-only transactions related interface
+    // ----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the highest timestamp known to have all the commits below it durable, either pushed by the TSO or
+     * received as a start timestamp. Read-only transactions can use it as snapshot without contacting the TSO. It may
+     * not include the latest commits, even the ones of this client.
+     * @return the safe read timestamp or NO_SAFE_READ_TIMESTAMP if none was received from the current TSO yet
+     */
+    public long getSafeReadTimestamp() {
+        return safeReadTimestamp;
+    }
+
+    private void updateSafeReadTimestamp(long timestamp) {
+        if (timestamp > safeReadTimestamp) {
+            safeReadTimestamp = timestamp;
+        }
+    }
+
     // ----------------------------------------------------------------------------------------------------------------
     // NodeCacheListener interface
     // ----------------------------------------------------------------------------------------------------------------
@@ -261,6 +353,10 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
             LOG.info("\tClosing channel with previous TSO {}", currentChannel);
             currentChannel.close();
         }
+        // Don't wait for the reconnection backoff to connect to the new TSO
+        if (fsm != null) {
+            fsm.sendEvent(new CurrentTSOChangedEvent());
+        }
 
     }
 
@@ -325,6 +421,10 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
 
     }
 
+    private static class CurrentTSOChangedEvent implements StateMachine.Event {
+
+    }
+
     private static class HandshakeTimeoutEvent implements StateMachine.Event {
 
     }
@@ -349,10 +449,17 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
     private static class RequestEvent extends UserEvent<Long> {
 
         TSOProto.Request req;
+        // Chunks of the cell ids of a commit request, sent before it
+        List<TSOProto.Request> chunks;
         int retriesLeft;
 
         RequestEvent(TSOProto.Request req, int retriesLeft) {
+            this(req, Collections.<TSOProto.Request>emptyList(), retriesLeft);
+        }
+
+        RequestEvent(TSOProto.Request req, List<TSOProto.Request> chunks, int retriesLeft) {
             this.req = req;
+            this.chunks = chunks;
             this.retriesLeft = retriesLeft;
         }
 
@@ -364,6 +471,14 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
             this.req = request;
         }
 
+        List<TSOProto.Request> getChunks() {
+            return chunks;
+        }
+
+        void setChunks(List<TSOProto.Request> chunks) {
+            this.chunks = chunks;
+        }
+
         int getRetriesLeft() {
             return retriesLeft;
         }
@@ -395,6 +510,16 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
             LOG.error("Unhandled event {} while in state {}", e, this.getClass().getName());
             return this;
         }
+
+        public StateMachine.State handleEvent(CurrentTSOChangedEvent e) {
+            // Ignored. The next connection attempt goes to the new TSO
+            return this;
+        }
+
+        public StateMachine.State handleEvent(ReconnectEvent e) {
+            // Ignored. Backoff timeout that fired after leaving the ConnectionFailedState
+            return this;
+        }
     }
 
     class DisconnectedState extends BaseState {
@@ -431,15 +556,18 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
                     }
                 }
             });
-            return new ConnectingState(fsm);
+            return new ConnectingState(fsm, tsoAddress);
         }
     }
 
     private class ConnectingState extends BaseState {
 
-        ConnectingState(StateMachine.Fsm fsm) {
+        final InetSocketAddress tsoAddress;
+
+        ConnectingState(StateMachine.Fsm fsm, InetSocketAddress tsoAddress) {
             super(fsm);
             LOG.debug("NEW STATE: CONNECTING");
+            this.tsoAddress = tsoAddress;
         }
 
         public StateMachine.State handleEvent(UserEvent e) {
@@ -452,11 +580,17 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
         }
 
         public StateMachine.State handleEvent(ChannelClosedEvent e) {
-            return new ConnectionFailedState(fsm, e.getParam());
+            return newConnectionFailedState(e.getParam());
         }
 
         public StateMachine.State handleEvent(ErrorEvent e) {
-            return new ConnectionFailedState(fsm, e.getParam());
+            return newConnectionFailedState(e.getParam());
+        }
+
+        private StateMachine.State newConnectionFailedState(Throwable exception) {
+            // The current TSO might have changed whilst connecting to the previous one
+            boolean currentTSOChanged = !tsoAddress.equals(getAddress());
+            return new ConnectionFailedState(fsm, exception, currentTSOChanged);
         }
 
     }
@@ -496,8 +630,6 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
 
         final Channel channel;
 
-        final HashedWheelTimer timeoutExecutor = new HashedWheelTimer(
-                new ThreadFactoryBuilder().setNameFormat("tso-client-timeout").build());
         final Timeout timeout;
 
         HandshakingState(StateMachine.Fsm fsm, Channel channel) {
@@ -506,7 +638,11 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
             this.channel = channel;
             TSOProto.HandshakeRequest.Builder handshake = TSOProto.HandshakeRequest.newBuilder();
             // Add the required handshake capabilities when necessary
-            handshake.setClientCapabilities(TSOProto.Capabilities.newBuilder().build());
+            handshake.setClientCapabilities(TSOProto.Capabilities.newBuilder()
+                                                    .setSafeReadTimestamps(true)
+                                                    .setPackedCellIds(true)
+                                                    .setChunkedCommits(true)
+                                                    .setCheckedCellIds(true).build());
             channel.write(TSOProto.Request.newBuilder().setHandshakeRequest(handshake.build()).build());
             timeout = newTimeout();
         }
@@ -534,7 +670,14 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
                 if (timeout != null) {
                     timeout.cancel();
                 }
-                return new ConnectedState(fsm, channel, timeoutExecutor);
+                TSOProto.HandshakeResponse handshakeResponse = e.getParam().getHandshakeResponse();
+                boolean packedCellIds = handshakeResponse.hasServerCapabilities()
+                        && handshakeResponse.getServerCapabilities().getPackedCellIds();
+                boolean chunkedCommits = handshakeResponse.hasServerCapabilities()
+                        && handshakeResponse.getServerCapabilities().getChunkedCommits();
+                boolean checkedCellIds = handshakeResponse.hasServerCapabilities()
+                        && handshakeResponse.getServerCapabilities().getCheckedCellIds();
+                return new ConnectedState(fsm, channel, packedCellIds, chunkedCommits, checkedCellIds);
             } else {
                 cleanupState();
                 LOG.error("Client incompatible with server");
@@ -555,7 +698,6 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
         }
 
         private void cleanupState() {
-            timeoutExecutor.stop();
             channel.close();
             if (timeout != null) {
                 timeout.cancel();
@@ -566,21 +708,21 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
 
     class ConnectionFailedState extends BaseState {
 
-        final HashedWheelTimer reconnectionTimeoutExecutor = new HashedWheelTimer(
-                new ThreadFactoryBuilder().setNameFormat("tso-client-backoff-timeout").build());
+        final Timeout reconnectionTimeout;
 
         Throwable exception;
 
-        ConnectionFailedState(final StateMachine.Fsm fsm, final Throwable exception) {
+        ConnectionFailedState(final StateMachine.Fsm fsm, final Throwable exception, boolean currentTSOChanged) {
             super(fsm);
             LOG.debug("NEW STATE: CONNECTION FAILED [RE-CONNECTION BACKOFF]");
             this.exception = exception;
-            reconnectionTimeoutExecutor.newTimeout(new TimerTask() {
+            long delayInMs = currentTSOChanged ? 0 : nextReconnectionDelayInMs();
+            reconnectionTimeout = timeoutExecutor.newTimeout(new TimerTask() {
                 @Override
                 public void run(Timeout timeout) {
                     fsm.sendEvent(new ReconnectEvent());
                 }
-            }, tsoReconnectionDelayInSecs, TimeUnit.SECONDS);
+            }, delayInMs, TimeUnit.MILLISECONDS);
         }
 
         public StateMachine.State handleEvent(UserEvent e) {
@@ -593,19 +735,27 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
         }
 
         public StateMachine.State handleEvent(ChannelClosedEvent e) {
+            reconnectionTimeout.cancel();
             return new DisconnectedState(fsm);
         }
 
+        @Override
         public StateMachine.State handleEvent(ReconnectEvent e) {
             return new DisconnectedState(fsm);
         }
 
+        @Override
+        public StateMachine.State handleEvent(CurrentTSOChangedEvent e) {
+            reconnectionTimeout.cancel();
+            return new DisconnectedState(fsm);
+        }
+
     }
 
     private class HandshakeFailedState extends ConnectionFailedState {
 
         HandshakeFailedState(StateMachine.Fsm fsm, Throwable exception) {
-            super(fsm, exception);
+            super(fsm, exception, false);
             LOG.debug("STATE: HANDSHAKING FAILED");
         }
 
@@ -616,14 +766,23 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
         final Queue<RequestAndTimeout> timestampRequests;
         final Map<Long, RequestAndTimeout> commitRequests;
         final Channel channel;
-
-        final HashedWheelTimer timeoutExecutor;
-
-        ConnectedState(StateMachine.Fsm fsm, Channel channel, HashedWheelTimer timeoutExecutor) {
+        // Whether the server takes the cell ids of the commit requests packed
+        final boolean packedCellIds;
+        // Whether the server takes the cell ids of big commits in chunks
+        final boolean chunkedCommits;
+        // Whether the server takes cell ids only checked for conflicts
+        final boolean checkedCellIds;
+
+        ConnectedState(StateMachine.Fsm fsm, Channel channel, boolean packedCellIds, boolean chunkedCommits,
+                       boolean checkedCellIds) {
             super(fsm);
             LOG.debug("NEW STATE: CONNECTED");
             this.channel = channel;
-            this.timeoutExecutor = timeoutExecutor;
+            this.packedCellIds = packedCellIds;
+            this.chunkedCommits = chunkedCommits;
+            this.checkedCellIds = checkedCellIds;
+            failedConnectionAttempts = 0;
+            safeReadTimestamp = NO_SAFE_READ_TIMESTAMP; // It might be connected to a new TSO
             timestampRequests = new ArrayDeque<>();
             commitRequests = new HashMap<>();
         }
@@ -648,12 +807,37 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
                 timestampRequests.add(new RequestAndTimeout(request, newTimeout(new TimestampRequestTimeoutEvent())));
             } else if (req.hasCommitRequest()) {
                 TSOProto.CommitRequest commitReq = req.getCommitRequest();
+                try {
+                    if (!checkedCellIds && req.getCommitRequest().hasPackedCheckedCellIds()) {
+                        req = mergeCheckedCellIds(req);
+                        request.setRequest(req);
+                    }
+                    if (!chunkedCommits && !request.getChunks().isEmpty()) {
+                        req = mergeChunks(req, request.getChunks());
+                        request.setRequest(req);
+                        request.setChunks(Collections.<TSOProto.Request>emptyList());
+                    }
+                    if (!packedCellIds && req.getCommitRequest().hasPackedCellIds()) {
+                        req = unpackCellIds(req);
+                        request.setRequest(req);
+                    }
+                } catch (IOException e) {
+                    request.error(e);
+                    return;
+                }
                 commitRequests.put(commitReq.getStartTimestamp(), new RequestAndTimeout(
                         request, newTimeout(new CommitRequestTimeoutEvent(commitReq.getStartTimestamp()))));
+                for (TSOProto.Request chunk : request.getChunks()) {
+                    write(fsm, chunk);
+                }
             } else {
                 request.error(new IllegalArgumentException("Unknown request type"));
                 return;
             }
+            write(fsm, req);
+        }
+
+        private void write(final StateMachine.Fsm fsm, TSOProto.Request req) {
             ChannelFuture f = channel.write(req);
 
             f.addListener(new ChannelFutureListener() {
@@ -666,6 +850,52 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
             });
         }
 
+        // For the servers without the checkedCellIds capability, the cell ids only checked go with the rest. They then
+        // conflict with other transactions checking them too, but no conflict is missed
+        private TSOProto.Request mergeCheckedCellIds(TSOProto.Request req) throws IOException {
+            TSOProto.CommitRequest commitReq = req.getCommitRequest();
+            long[] cellIds = PackedCellIds.decode(commitReq.getPackedCellIds(), commitReq.getNumPackedCellIds());
+            long[] checkedCellIds =
+                    PackedCellIds.decode(commitReq.getPackedCheckedCellIds(), commitReq.getNumPackedCheckedCellIds());
+            long[] allCellIds = Longs.concat(cellIds, checkedCellIds);
+            TSOProto.CommitRequest.Builder commitBuilder = TSOProto.CommitRequest.newBuilder(commitReq)
+                    .clearPackedCheckedCellIds()
+                    .clearNumPackedCheckedCellIds()
+                    .setPackedCellIds(PackedCellIds.encode(allCellIds))
+                    .setNumPackedCellIds(allCellIds.length);
+            return TSOProto.Request.newBuilder(req).setCommitRequest(commitBuilder).build();
+        }
+
+        // For the servers without the chunkedCommits capability, the cell ids of the chunks go in the commit request
+        private TSOProto.Request mergeChunks(TSOProto.Request req, List<TSOProto.Request> chunks) throws IOException {
+            TSOProto.CommitRequest commitReq = req.getCommitRequest();
+            long[] cellIds = new long[commitReq.getNumChunkedCellIds() + commitReq.getNumPackedCellIds()];
+            int numCellIds = 0;
+            for (TSOProto.Request chunk : chunks) {
+                TSOProto.CommitRequest chunkReq = chunk.getCommitRequest();
+                long[] chunkCellIds = PackedCellIds.decode(chunkReq.getPackedCellIds(), chunkReq.getNumPackedCellIds());
+                System.arraycopy(chunkCellIds, 0, cellIds, numCellIds, chunkCellIds.length);
+                numCellIds += chunkCellIds.length;
+            }
+            long[] lastCellIds = PackedCellIds.decode(commitReq.getPackedCellIds(), commitReq.getNumPackedCellIds());
+            System.arraycopy(lastCellIds, 0, cellIds, numCellIds, lastCellIds.length);
+            TSOProto.CommitRequest.Builder commitBuilder = TSOProto.CommitRequest.newBuilder(commitReq)
+                    .clearNumChunkedCellIds()
+                    .setPackedCellIds(PackedCellIds.encode(cellIds))
+                    .setNumPackedCellIds(cellIds.length);
+            return TSOProto.Request.newBuilder(req).setCommitRequest(commitBuilder).build();
+        }
+
+        private TSOProto.Request unpackCellIds(TSOProto.Request req) throws IOException {
+            TSOProto.CommitRequest commitReq = req.getCommitRequest();
+            long[] cellIds = PackedCellIds.decode(commitReq.getPackedCellIds(), commitReq.getNumPackedCellIds());
+            TSOProto.CommitRequest.Builder commitBuilder = TSOProto.CommitRequest.newBuilder(commitReq)
+                    .clearPackedCellIds()
+                    .clearNumPackedCellIds()
+                    .addAllCellId(Longs.asList(cellIds));
+            return TSOProto.Request.newBuilder(req).setCommitRequest(commitBuilder).build();
+        }
+
         private void handleResponse(ResponseEvent response) {
             TSOProto.Response resp = response.getParam();
             if (resp.hasTimestampResponse()) {
@@ -674,6 +904,7 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
                     return;
                 }
                 RequestAndTimeout e = timestampRequests.remove();
+                updateSafeReadTimestamp(resp.getTimestampResponse().getStartTimestamp());
                 e.getRequest().success(resp.getTimestampResponse().getStartTimestamp());
                 if (e.getTimeout() != null) {
                     e.getTimeout().cancel();
@@ -693,6 +924,8 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
                 } else {
                     e.getRequest().success(resp.getCommitResponse().getCommitTimestamp());
                 }
+            } else if (resp.hasSafeReadTimestamp()) {
+                updateSafeReadTimestamp(resp.getSafeReadTimestamp());
             }
         }
 
@@ -721,7 +954,6 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
 
         public StateMachine.State handleEvent(CloseEvent e) {
             LOG.debug("CONNECTED STATE: CloseEvent");
-            timeoutExecutor.stop();
             closeChannelAndErrorRequests();
             fsm.deferEvent(e);
             return new ClosingState(fsm);
@@ -739,7 +971,6 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
 
         public StateMachine.State handleEvent(ErrorEvent e) {
             LOG.debug("CONNECTED STATE: ErrorEvent");
-            timeoutExecutor.stop();
             handleError(fsm);
             return new ClosingState(fsm);
         }
@@ -892,6 +1123,18 @@ public class TSOClient implements TSOProtocol, NodeCacheListener {
         }
     }
 
+    /**
+     * Exponential backoff with jitter, from the base delay up to the configured reconnection delay, so clients don't
+     * hammer a TSO that is restarting but reconnect fast to the one that just took over
+     */
+    private long nextReconnectionDelayInMs() {
+        long maxDelayInMs = TimeUnit.SECONDS.toMillis(tsoReconnectionDelayInSecs);
+        long delayInMs = Math.min(maxDelayInMs,
+                                  (long) tsoReconnectionBaseDelayInMs << Math.min(failedConnectionAttempts, 20));
+        failedConnectionAttempts++;
+        return delayInMs / 2 + ThreadLocalRandom.current().nextLong(delayInMs / 2 + 1);
+    }
+
     private synchronized void setTSOAddress(String host, int port) {
         tsoAddr = new InetSocketAddress(host, port);
     }
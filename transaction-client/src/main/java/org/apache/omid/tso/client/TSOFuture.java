@@ -17,9 +17,7 @@
  */
 package org.apache.omid.tso.client;
 
-import java.util.concurrent.Executor;
-import java.util.concurrent.Future;
+import com.google.common.util.concurrent.ListenableFuture;
 
-public interface TSOFuture<T> extends Future<T> {
-    void addListener(Runnable listener, Executor executor);
+public interface TSOFuture<T> extends ListenableFuture<T> {
 }
@@ -47,6 +47,20 @@ public interface TSOProtocol {
      */
     TSOFuture<Long> commit(long transactionId, Set<? extends CellId> writeSet);
 
+    /**
+     * As {@link #commit(long, Set)}, but also checking the conflicts of cells not added to the conflict map. The
+     * transaction aborts when they were written after it started, but the commits of other transactions checking them
+     * don't conflict with it
+     * @param transactionId
+     *          the transaction to check for conflicts
+     * @param writeSet
+     *          the writeSet of the transaction, which includes all the modified cells
+     * @param checkedSet
+     *          the cells only checked for conflicts
+     * @return the commit timestamp as a future, as {@link #commit(long, Set)}
+     */
+    TSOFuture<Long> commit(long transactionId, Set<? extends CellId> writeSet, Set<? extends CellId> checkedSet);
+
     /**
      * Closes the communication with the TSO server
      * @return nothing. If an error was detected, the future will contain a corresponding protocol exception
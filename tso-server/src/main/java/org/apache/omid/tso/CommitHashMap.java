@@ -20,6 +20,9 @@ package org.apache.omid.tso;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
 /**
  * Stores the mapping between a particular cell id and the commit timestamp
  * of the last transaction that changed it.
@@ -34,8 +37,11 @@ import org.slf4j.LoggerFactory;
  *
  * TODO: improve garbage collection, right now an entry is picked at random
  * (by hash) which could cause the eviction of a very recent timestamp
+ *
+ * There's a single instance per TSO. A standby fills it with the updates replicated from the master, so it can
+ * resolve conflicts right away when it takes over.
  */
-
+@Singleton
 class CommitHashMap {
 
     private static final Logger LOG = LoggerFactory.getLogger(CommitHashMap.class);
@@ -49,6 +55,11 @@ class CommitHashMap {
         this(1000);
     }
 
+    @Inject
+    CommitHashMap(TSOServerConfig config) {
+        this(config.getConflictMapSize());
+    }
+
     /**
      * Constructs a new, empty hashtable with the specified size
      *
@@ -73,4 +84,9 @@ class CommitHashMap {
     public long putLatestWriteForCell(long hash, long commitTimestamp) {
         return cellIdToCommitMap.set(hash, commitTimestamp);
     }
+
+    public void clear() {
+        cellIdToCommitMap.clear();
+    }
+
 }
@@ -0,0 +1,551 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.omid.committable.CommitTable;
+import org.apache.omid.committable.CommitTable.CommitTimestamp;
+import org.apache.omid.committable.ConcurrentLongLongMap;
+import org.apache.omid.metrics.MetricsRegistry;
+import org.apache.omid.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.omid.committable.CommitTable.CommitTimestamp.Location.COMMIT_TABLE;
+import static org.apache.omid.committable.ConcurrentLongLongMap.NO_VALUE;
+import static org.apache.omid.metrics.MetricsUtils.name;
+import static org.apache.omid.tso.PersistEvent.Type.COMMIT;
+
+/**
+ * Optional durability tier in front of the commit table. When enabled, the persistence handlers append the commits
+ * of each batch to a local journal and reply as soon as the journal has been synced to disk. Concurrent appends are
+ * group committed, so a single sync covers all the batches written while the previous one was in progress.
+ *
+ * Journaled commits are then propagated to the commit table in batch sequence order by a background thread. Until
+ * then they are kept in memory, so clients wrapped with {@link #wrap(CommitTable.Client)} can still find them. The
+ * persistence handlers must wait with {@link #awaitPropagation(long)} before replying batches with timestamp
+ * requests, so transactions never start before the commits they must see can be read from the commit table.
+ *
+ * The journal is local to the TSO host. Commits acknowledged but not yet propagated are recovered when the TSO
+ * restarts on the same host, but they are not available to a replica taking over from a different one. So the
+ * journal is rejected at startup in HA mode or with a warm standby.
+ */
+@Singleton
+class CommitJournal implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommitJournal.class);
+
+    static final String SEGMENT_PREFIX = "commit-journal-";
+    private static final long MAX_SEGMENT_SIZE_IN_BYTES = 64 * 1024 * 1024;
+    private static final int ENTRY_SIZE_IN_BYTES = 2 * (Long.SIZE / Byte.SIZE); // Start and commit timestamps
+
+    private final boolean enabled;
+    private File journalDir;
+    private CommitTable.Writer propagationWriter;
+    private Panicker panicker;
+    private SafeReadTimestampPublisher safeReadTimestampPublisher;
+
+    // Commits journaled but not yet propagated to the commit table
+    private final ConcurrentLongLongMap pendingCommits = new ConcurrentLongLongMap();
+
+    // Appends are serialized with appendLock. Syncs and segment rolls are serialized with syncLock, which is
+    // always acquired before appendLock
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    private Segment currentSegment; // @GuardedBy("appendLock")
+    private long writtenBytes = 0; // @GuardedBy("appendLock")
+    private volatile long syncedBytes = 0;
+
+    // Batches journaled, waiting to be propagated in sequence order
+    private final Object propagationLock = new Object();
+    private final PriorityQueue<JournaledBatch> batchesToPropagate; // @GuardedBy("propagationLock")
+    private long propagatedSequence = -1; // @GuardedBy("propagationLock")
+    private boolean closed = false; // @GuardedBy("propagationLock")
+    private ExecutorService propagatorExecutor;
+
+    // Metrics
+    private Timer syncTimer;
+    private Timer propagationTimer;
+
+    @Inject
+    CommitJournal(TSOServerConfig config,
+                  CommitTable commitTable,
+                  SafeReadTimestampPublisher safeReadTimestampPublisher,
+                  MetricsRegistry metrics,
+                  Panicker panicker)
+            throws IOException {
+
+        this.enabled = !Strings.isNullOrEmpty(config.getCommitJournalDir());
+        this.batchesToPropagate = new PriorityQueue<>(16, new Comparator<JournaledBatch>() {
+            @Override
+            public int compare(JournaledBatch batch1, JournaledBatch batch2) {
+                return Long.compare(batch1.sequence, batch2.sequence);
+            }
+        });
+        if (!enabled) {
+            LOG.info("Commit journal disabled");
+            return;
+        }
+
+        this.journalDir = new File(config.getCommitJournalDir());
+        if (!journalDir.isDirectory() && !journalDir.mkdirs()) {
+            throw new IOException("Can't create commit journal directory " + journalDir);
+        }
+        this.propagationWriter = commitTable.getWriter();
+        this.panicker = panicker;
+        this.safeReadTimestampPublisher = safeReadTimestampPublisher;
+
+        this.syncTimer = metrics.timer(name("tso", "journal", "sync", "latency"));
+        this.propagationTimer = metrics.timer(name("tso", "journal", "propagation", "latency"));
+
+        long lastSegmentId = recover();
+        this.currentSegment = new Segment(journalDir, lastSegmentId + 1);
+
+        this.propagatorExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("journal-propagator-%d").build());
+        this.propagatorExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                propagate();
+            }
+        });
+
+        LOG.info("Commit journal enabled in {}", journalDir);
+
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the commits of the batch to the journal and returns once they are durable. Every batch sequence must
+     * be appended, even when the batch has no commits, as batches are propagated in sequence order.
+     */
+    void append(long batchSequence, Batch batch) throws IOException {
+
+        int numCommits = 0;
+        for (int i = 0; i < batch.getNumEvents(); i++) {
+            if (batch.get(i).getType() == COMMIT) {
+                numCommits++;
+            }
+        }
+
+        JournaledBatch journaledBatch = new JournaledBatch(batchSequence, numCommits);
+        ByteBuffer records = ByteBuffer.allocate(numCommits * ENTRY_SIZE_IN_BYTES);
+        for (int i = 0; i < batch.getNumEvents(); i++) {
+            PersistEvent event = batch.get(i);
+            if (event.getType() == COMMIT) {
+                journaledBatch.add(event.getStartTimestamp(), event.getCommitTimestamp());
+                records.putLong(event.getStartTimestamp());
+                records.putLong(event.getCommitTimestamp());
+                pendingCommits.putIfAbsent(event.getStartTimestamp(), event.getCommitTimestamp());
+            }
+        }
+        records.flip();
+
+        if (numCommits > 0) {
+            long bytesToSync;
+            synchronized (appendLock) {
+                while (records.hasRemaining()) {
+                    currentSegment.channel.write(records);
+                }
+                writtenBytes += numCommits * ENTRY_SIZE_IN_BYTES;
+                bytesToSync = writtenBytes;
+                journaledBatch.segment = currentSegment;
+                currentSegment.addBatch();
+            }
+            sync(bytesToSync);
+        }
+
+        synchronized (propagationLock) {
+            batchesToPropagate.add(journaledBatch);
+            propagationLock.notifyAll();
+        }
+
+    }
+
+    /**
+     * Waits until all the batches up to the one passed (included) have been propagated to the commit table
+     */
+    void awaitPropagation(long batchSequence) throws InterruptedException {
+        synchronized (propagationLock) {
+            while (propagatedSequence < batchSequence && !closed) {
+                propagationLock.wait();
+            }
+        }
+    }
+
+    /**
+     * @return a client that finds the commits that have not been propagated yet before reading the commit table
+     */
+    CommitTable.Client wrap(CommitTable.Client commitTableClient) {
+        if (!enabled) {
+            return commitTableClient;
+        }
+        return new JournalAwareClient(commitTableClient);
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (!enabled) {
+            return;
+        }
+        synchronized (propagationLock) {
+            closed = true;
+            propagationLock.notifyAll();
+        }
+        propagatorExecutor.shutdownNow();
+        try {
+            propagatorExecutor.awaitTermination(3, SECONDS);
+        } catch (InterruptedException e) {
+            LOG.error("Interrupted whilst finishing commit journal propagator");
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            currentSegment.channel.close();
+        }
+        propagationWriter.close();
+        LOG.info("Commit journal closed. Non-propagated commits will be recovered on restart");
+
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+    // Helper methods & classes
+    // ----------------------------------------------------------------------------------------------------------------
+
+    // Group commit: the first thread forces everything written so far, the ones waiting behind it return straight
+    // away if that sync already covered their writes
+    private void sync(long bytesToSync) throws IOException {
+
+        synchronized (syncLock) {
+            if (syncedBytes >= bytesToSync) {
+                return;
+            }
+            long startSyncTimeInNs = System.nanoTime();
+            FileChannel channel;
+            long bytesWritten;
+            synchronized (appendLock) {
+                channel = currentSegment.channel;
+                bytesWritten = writtenBytes;
+            }
+            channel.force(false);
+            syncedBytes = bytesWritten;
+            syncTimer.update(System.nanoTime() - startSyncTimeInNs);
+
+            if (channel.size() >= MAX_SEGMENT_SIZE_IN_BYTES) {
+                rollSegment();
+            }
+        }
+
+    }
+
+    // Called with syncLock held, so no other thread can be forcing the segment being closed
+    private void rollSegment() throws IOException {
+
+        Segment rolledSegment;
+        synchronized (appendLock) {
+            rolledSegment = currentSegment;
+            rolledSegment.channel.force(false);
+            rolledSegment.channel.close();
+            currentSegment = new Segment(journalDir, rolledSegment.id + 1);
+            syncedBytes = writtenBytes;
+        }
+        rolledSegment.markRolled();
+
+    }
+
+    private void propagate() {
+
+        List<JournaledBatch> batches = new ArrayList<>();
+        try {
+            while (true) {
+                synchronized (propagationLock) {
+                    while (!closed && !isNextBatchReady()) {
+                        propagationLock.wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    while (isNextBatchReady()) {
+                        batches.add(batchesToPropagate.poll());
+                    }
+                }
+
+                long startPropagationTimeInNs = System.nanoTime();
+                int numCommits = 0;
+                long maxCommitTimestamp = -1L;
+                for (JournaledBatch batch : batches) {
+                    for (int i = 0; i < batch.size; i++) {
+                        propagationWriter.addCommittedTransaction(batch.startTimestamps[i], batch.commitTimestamps[i]);
+                        maxCommitTimestamp = Math.max(maxCommitTimestamp, batch.commitTimestamps[i]);
+                    }
+                    numCommits += batch.size;
+                }
+                if (numCommits > 0) {
+                    propagationWriter.flush();
+                }
+                propagationTimer.update(System.nanoTime() - startPropagationTimeInNs);
+
+                // Only remove them once they can be read from the commit table
+                for (JournaledBatch batch : batches) {
+                    for (int i = 0; i < batch.size; i++) {
+                        pendingCommits.remove(batch.startTimestamps[i]);
+                    }
+                    if (batch.segment != null) {
+                        batch.segment.batchPropagated();
+                    }
+                }
+
+                if (numCommits > 0) {
+                    // Batches are propagated in sequence order, so no commit below it is missing from the commit table
+                    safeReadTimestampPublisher.commitsPersisted(maxCommitTimestamp);
+                }
+
+                synchronized (propagationLock) {
+                    propagatedSequence = batches.get(batches.size() - 1).sequence;
+                    propagationLock.notifyAll();
+                }
+                batches.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            synchronized (propagationLock) {
+                if (closed) { // Interrupted by close(). Non-propagated commits will be recovered on restart
+                    return;
+                }
+            }
+            panicker.panic("Error propagating the commit journal to the commit table", e);
+        }
+
+    }
+
+    // Called with propagationLock held
+    private boolean isNextBatchReady() {
+        JournaledBatch nextBatch = batchesToPropagate.peek();
+        return nextBatch != null && nextBatch.sequence == propagatedSequence + 1;
+    }
+
+    // Replays the segments left by a previous instance into the commit table and removes them
+    private long recover() throws IOException {
+
+        File[] segmentFiles = journalDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX);
+            }
+        });
+        long[] segmentIds = new long[segmentFiles.length];
+        for (int i = 0; i < segmentFiles.length; i++) {
+            segmentIds[i] = Long.parseLong(segmentFiles[i].getName().substring(SEGMENT_PREFIX.length()));
+        }
+        Arrays.sort(segmentIds);
+
+        long lastSegmentId = -1;
+        int recoveredCommits = 0;
+        for (long segmentId : segmentIds) {
+            File segmentFile = Segment.fileFor(journalDir, segmentId);
+            try (RandomAccessFile file = new RandomAccessFile(segmentFile, "r")) {
+                // A torn entry at the end of the segment was never acknowledged, so it is skipped
+                long numEntries = file.length() / ENTRY_SIZE_IN_BYTES;
+                for (long i = 0; i < numEntries; i++) {
+                    long startTimestamp = file.readLong();
+                    long commitTimestamp = file.readLong();
+                    propagationWriter.addCommittedTransaction(startTimestamp, commitTimestamp);
+                    recoveredCommits++;
+                }
+            }
+            propagationWriter.flush();
+            if (!segmentFile.delete()) {
+                throw new IOException("Can't delete recovered commit journal segment " + segmentFile);
+            }
+            lastSegmentId = segmentId;
+        }
+        if (recoveredCommits > 0) {
+            LOG.info("Recovered {} commits from the commit journal", recoveredCommits);
+        }
+        return lastSegmentId;
+
+    }
+
+    private static final class Segment {
+
+        final long id;
+        final File file;
+        final FileChannel channel;
+
+        private int unpropagatedBatches = 0; // @GuardedBy("this")
+        private boolean rolled = false; // @GuardedBy("this")
+
+        Segment(File journalDir, long id) throws IOException {
+            this.id = id;
+            this.file = fileFor(journalDir, id);
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        static File fileFor(File journalDir, long id) {
+            return new File(journalDir, SEGMENT_PREFIX + id);
+        }
+
+        synchronized void addBatch() {
+            unpropagatedBatches++;
+        }
+
+        synchronized void batchPropagated() {
+            unpropagatedBatches--;
+            deleteIfObsolete();
+        }
+
+        synchronized void markRolled() {
+            rolled = true;
+            deleteIfObsolete();
+        }
+
+        private void deleteIfObsolete() {
+            if (rolled && unpropagatedBatches == 0 && !file.delete()) {
+                LOG.warn("Can't delete propagated commit journal segment {}", file);
+            }
+        }
+
+    }
+
+    private static final class JournaledBatch {
+
+        final long sequence;
+        final long[] startTimestamps;
+        final long[] commitTimestamps;
+        int size = 0;
+        Segment segment = null;
+
+        JournaledBatch(long sequence, int capacity) {
+            this.sequence = sequence;
+            this.startTimestamps = new long[capacity];
+            this.commitTimestamps = new long[capacity];
+        }
+
+        void add(long startTimestamp, long commitTimestamp) {
+            startTimestamps[size] = startTimestamp;
+            commitTimestamps[size] = commitTimestamp;
+            size++;
+        }
+
+    }
+
+    private final class JournalAwareClient implements CommitTable.Client {
+
+        private final CommitTable.Client commitTableClient;
+
+        JournalAwareClient(CommitTable.Client commitTableClient) {
+            this.commitTableClient = commitTableClient;
+        }
+
+        @Override
+        public ListenableFuture<Optional<CommitTimestamp>> getCommitTimestamp(long startTimestamp) {
+            long commitTimestamp = pendingCommits.get(startTimestamp);
+            if (commitTimestamp == NO_VALUE) {
+                return commitTableClient.getCommitTimestamp(startTimestamp);
+            }
+            SettableFuture<Optional<CommitTimestamp>> f = SettableFuture.create();
+            f.set(Optional.of(new CommitTimestamp(COMMIT_TABLE, commitTimestamp, true)));
+            return f;
+        }
+
+        @Override
+        public ListenableFuture<Map<Long, CommitTimestamp>> getCommitTimestamps(Collection<Long> startTimestamps) {
+            final Map<Long, CommitTimestamp> journaledCommitTimestamps = new HashMap<>();
+            List<Long> notJournaled = new ArrayList<>(startTimestamps.size());
+            for (long startTimestamp : startTimestamps) {
+                long commitTimestamp = pendingCommits.get(startTimestamp);
+                if (commitTimestamp == NO_VALUE) {
+                    notJournaled.add(startTimestamp);
+                } else {
+                    journaledCommitTimestamps.put(startTimestamp,
+                                                  new CommitTimestamp(COMMIT_TABLE, commitTimestamp, true));
+                }
+            }
+            if (notJournaled.isEmpty()) {
+                return Futures.immediateFuture(journaledCommitTimestamps);
+            }
+            return Futures.transform(commitTableClient.getCommitTimestamps(notJournaled),
+                                     new Function<Map<Long, CommitTimestamp>, Map<Long, CommitTimestamp>>() {
+                @Override
+                public Map<Long, CommitTimestamp> apply(Map<Long, CommitTimestamp> commitTimestamps) {
+                    Map<Long, CommitTimestamp> allCommitTimestamps = new HashMap<>(commitTimestamps);
+                    allCommitTimestamps.putAll(journaledCommitTimestamps);
+                    return allCommitTimestamps;
+                }
+            });
+        }
+
+        @Override
+        public ListenableFuture<Long> readLowWatermark() {
+            return commitTableClient.readLowWatermark();
+        }
+
+        @Override
+        public ListenableFuture<Void> completeTransaction(long startTimestamp) {
+            return commitTableClient.completeTransaction(startTimestamp);
+        }
+
+        @Override
+        public ListenableFuture<Boolean> tryInvalidateTransaction(long startTimestamp) {
+            if (pendingCommits.get(startTimestamp) != NO_VALUE) { // Committed, just not propagated yet
+                SettableFuture<Boolean> f = SettableFuture.create();
+                f.set(false);
+                return f;
+            }
+            return commitTableClient.tryInvalidateTransaction(startTimestamp);
+        }
+
+        @Override
+        public void close() throws IOException {
+            commitTableClient.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.omid.committable.CommitTable;
+import org.apache.omid.proto.TSOProto;
+import org.apache.omid.tso.ConflictMapReplicator.ReplicationPipelineFactory;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+
+/**
+ * Standby side of the warm standby. Applies the conflict map updates streamed by the master to the conflict map of
+ * this TSO, so when it takes over it can resolve the commits of the transactions started by the previous master
+ * instead of aborting them all.
+ *
+ * The replica can only be trusted if it holds every commit of the previous master. The master guarantees it for the
+ * commits it persisted as long as the standby replica ZK node still contains the epoch of the stream.
+ */
+@Singleton
+class ConflictMapReplica extends SimpleChannelHandler implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConflictMapReplica.class);
+
+    private static final long NO_EPOCH = -1L;
+
+    private final int port;
+    private final String standbyReplicaPath;
+    private final CommitHashMap conflictMap;
+    private final CommitTable commitTable;
+    private CuratorFramework zkClient;
+
+    private ChannelFactory factory;
+    private ChannelGroup channelGroup;
+
+    // Replica state
+    private long replicaEpoch = NO_EPOCH; // @GuardedBy("this")
+    private long replicaLowWatermark = -1L; // @GuardedBy("this")
+    private boolean takenOver = false; // @GuardedBy("this")
+
+    @Inject
+    ConflictMapReplica(TSOServerConfig config, CommitHashMap conflictMap, CommitTable commitTable) {
+
+        this.port = config.getStandbyReplicationPort();
+        this.standbyReplicaPath = config.getStandbyReplicaPath();
+        this.conflictMap = conflictMap;
+        this.commitTable = commitTable;
+
+        if (port > 0) {
+            this.factory = new NioServerSocketChannelFactory(
+                    Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("replica-boss-%d").build()),
+                    Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("replica-worker-%d").build()),
+                    1);
+            ServerBootstrap bootstrap = new ServerBootstrap(factory);
+            bootstrap.setOption("child.tcpNoDelay", true);
+            bootstrap.setPipelineFactory(new ReplicationPipelineFactory(this,
+                                                                        TSOProto.ReplicationRequest.getDefaultInstance()));
+            this.channelGroup = new DefaultChannelGroup(ConflictMapReplica.class.getName());
+            channelGroup.add(bootstrap.bind(new InetSocketAddress(port)));
+            LOG.info("Listening for conflict map updates in port {}", port);
+        }
+
+    }
+
+    @com.google.inject.Inject(optional = true)
+    void setZKClient(CuratorFramework zkClient) {
+        this.zkClient = zkClient;
+    }
+
+    /**
+     * Stops receiving updates when this TSO becomes the master
+     * @param epoch the epoch of the new master
+     * @return the low watermark the new master can start with. It's the epoch when there's no complete replica
+     */
+    long takeOver(long epoch) throws Exception {
+
+        synchronized (this) {
+            takenOver = true; // From now on, updates still in flight are discarded
+        }
+        if (channelGroup != null) {
+            channelGroup.close().awaitUninterruptibly();
+        }
+        return lowWatermarkAfterTakeOver(epoch);
+
+    }
+
+    private synchronized long lowWatermarkAfterTakeOver(long epoch) throws Exception {
+
+        if (replicaEpoch == NO_EPOCH || zkClient == null) {
+            return epoch;
+        }
+
+        byte[] data = zkClient.getData().forPath(standbyReplicaPath);
+        String validEpoch = data == null ? "" : new String(data, Charsets.UTF_8);
+        if (!validEpoch.equals(Long.toString(replicaEpoch))) {
+            LOG.warn("Replica of Epoch {} was discarded by the master. Starting with an empty conflict map",
+                     replicaEpoch);
+            conflictMap.clear();
+            return epoch;
+        }
+
+        // The previous master might have persisted a higher low watermark before replicating it
+        long persistedLowWatermark;
+        try (CommitTable.Client commitTableClient = commitTable.getClient()) {
+            persistedLowWatermark = commitTableClient.readLowWatermark().get();
+        }
+        long lowWatermark = Math.min(epoch, Math.max(replicaLowWatermark, persistedLowWatermark));
+        LOG.info("Taking over with the replica of Epoch {}. Low watermark {} instead of {}",
+                 replicaEpoch, lowWatermark, epoch);
+        return lowWatermark;
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channelGroup != null) {
+            channelGroup.close().awaitUninterruptibly();
+        }
+        if (factory != null) {
+            factory.releaseExternalResources();
+        }
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+    // Netty SimpleChannelHandler implementation
+    // ----------------------------------------------------------------------------------------------------------------
+
+    @Override
+    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+        channelGroup.add(ctx.getChannel());
+        LOG.info("Master connected to replicate its conflict map: {}", ctx.getChannel());
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+
+        TSOProto.ReplicationRequest request = (TSOProto.ReplicationRequest) e.getMessage();
+        long replicatedCommitTimestamp = apply(request);
+        if (replicatedCommitTimestamp == -1L) {
+            LOG.warn("Unexpected replication request. Closing channel {}", ctx.getChannel());
+            ctx.getChannel().close();
+            return;
+        }
+        ctx.getChannel().write(TSOProto.ReplicationResponse.newBuilder()
+                                       .setReplicatedCommitTimestamp(replicatedCommitTimestamp).build());
+
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+        LOG.warn("Error in replication channel {}. Closing it", ctx.getChannel(), e.getCause());
+        ctx.getChannel().close();
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+    // Helper methods
+    // ----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the highest commit timestamp applied or -1 if the request can't be applied
+     */
+    synchronized long apply(TSOProto.ReplicationRequest request) {
+
+        if (takenOver) {
+            return -1L;
+        }
+        if (request.hasEpoch()) { // Start of a new stream
+            LOG.info("Replicating the conflict map of the master with Epoch {}", request.getEpoch());
+            conflictMap.clear();
+            replicaEpoch = request.getEpoch();
+            // The master may hold entries from before its own epoch, or from before the standby was attached again,
+            // that are not streamed
+            replicaLowWatermark = Math.max(request.getEpoch(), request.getLowWatermark());
+            return 0L;
+        }
+        if (replicaEpoch == NO_EPOCH) {
+            return -1L;
+        }
+
+        long lastCommitTimestamp = 0L;
+        int cellIdx = 0;
+        for (int i = 0; i < request.getCommitTimestampCount(); i++) {
+            lastCommitTimestamp = request.getCommitTimestamp(i);
+            for (int j = 0; j < request.getNumCells(i); j++) {
+                long removed = conflictMap.putLatestWriteForCell(request.getCellId(cellIdx++), lastCommitTimestamp);
+                replicaLowWatermark = Math.max(removed, replicaLowWatermark);
+            }
+        }
+        if (request.hasLowWatermark()) {
+            replicaLowWatermark = Math.max(request.getLowWatermark(), replicaLowWatermark);
+        }
+        return lastCommitTimestamp;
+
+    }
+
+}
@@ -0,0 +1,468 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.MessageLite;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.omid.metrics.MetricsRegistry;
+import org.apache.omid.metrics.Timer;
+import org.apache.omid.proto.TSOProto;
+import org.apache.omid.tso.TSOStateManager.TSOState;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.jboss.netty.handler.codec.protobuf.ProtobufDecoder;
+import org.jboss.netty.handler.codec.protobuf.ProtobufEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.omid.metrics.MetricsUtils.name;
+
+/**
+ * Master side of the warm standby. Streams the conflict map updates decided by the request processor to the standby
+ * replica configured in standbyReplicationPeer.
+ *
+ * Replication is synchronous with persistence: the persistence handlers call {@link #awaitReplication(long)} before
+ * persisting a batch, so every commit that can be found in the commit table has also been applied by the standby.
+ * If the standby does not answer in time, the master drops it and goes on alone. Before doing so it clears the
+ * standby replica ZK node, so the standby knows its replica is no longer complete if it ever takes over.
+ *
+ * A standby dropped, or not reachable when this TSO became the master, is attached again every
+ * standbyReattachIntervalInMs. As the commits decided whilst it was detached are not streamed, the new stream resets
+ * its replica with a low watermark above them, so the transactions they could conflict with abort if it takes over.
+ *
+ * Replication requires the HA mode, as both the lease and the replica ZK node are kept in ZooKeeper.
+ */
+@Singleton
+class ConflictMapReplicator implements TSOStateManager.StateObserver, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConflictMapReplicator.class);
+
+    static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    private final String peer;
+    private final boolean standbyConfigured;
+    private final String standbyReplicaPath;
+    private final long timeoutInMs;
+    private final long reattachIntervalInMs;
+    private final Panicker panicker;
+    private CuratorFramework zkClient;
+
+    private long epoch;
+    private ChannelFactory factory;
+    private ClientBootstrap bootstrap;
+    private volatile Channel channel;
+    private ScheduledExecutorService reattachScheduler;
+
+    // Set whilst a standby is applying our updates synchronously
+    private volatile boolean replicating = false;
+    // Set whilst the updates are buffered for a standby, since it starts being attached until it's dropped
+    private volatile boolean buffering = false;
+    // Highest commit decided, whether streamed or not. Written by the request processor
+    private volatile long lastCommitTimestamp = -1L;
+
+    // Updates not sent yet. Written by the request processor and sent by the persistence handlers
+    private final Object pendingLock = new Object();
+    private long[] pendingCommitTimestamps = new long[1024]; // @GuardedBy("pendingLock")
+    private int[] pendingNumCells = new int[1024]; // @GuardedBy("pendingLock")
+    private long[] pendingCellIds = new long[4096]; // @GuardedBy("pendingLock")
+    private int numPendingCommits = 0; // @GuardedBy("pendingLock")
+    private int numPendingCells = 0; // @GuardedBy("pendingLock")
+    private long pendingLowWatermark = -1L; // @GuardedBy("pendingLock")
+    private long lastPendingCommitTimestamp = -1L; // @GuardedBy("pendingLock")
+
+    // Acknowledgements from the standby
+    private final Object ackLock = new Object();
+    private long replicatedCommitTimestamp = -1L; // @GuardedBy("ackLock")
+
+    // Metrics
+    private final Timer replicationTimer;
+
+    @Inject
+    ConflictMapReplicator(TSOServerConfig config, MetricsRegistry metrics, Panicker panicker) {
+        this.peer = config.getStandbyReplicationPeer();
+        this.standbyConfigured = !Strings.isNullOrEmpty(peer);
+        this.standbyReplicaPath = config.getStandbyReplicaPath();
+        this.timeoutInMs = config.getStandbyReplicationTimeoutInMs();
+        this.reattachIntervalInMs = config.getStandbyReattachIntervalInMs();
+        this.panicker = panicker;
+        this.replicationTimer = metrics.timer(name("tso", "replication", "latency"));
+    }
+
+    @com.google.inject.Inject(optional = true)
+    void setZKClient(CuratorFramework zkClient) {
+        this.zkClient = zkClient;
+    }
+
+    /**
+     * Starts streaming to the standby when this TSO becomes the master, and attaching it again whenever it's dropped
+     */
+    @Override
+    public void update(TSOState state) throws Exception {
+
+        if (!standbyConfigured) {
+            return;
+        }
+        if (zkClient == null) {
+            LOG.warn("Warm standby replication requires the HA mode. Not replicating to {}", peer);
+            return;
+        }
+
+        // Whatever replica the standby holds, it does not include what this master is going to commit
+        epoch = state.getEpoch();
+        writeStandbyReplicaEpoch("");
+
+        factory = new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("replication-boss-%d").build()),
+                Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("replication-worker-%d").build()),
+                1);
+        bootstrap = new ClientBootstrap(factory);
+        bootstrap.setOption("tcpNoDelay", true);
+        bootstrap.setOption("connectTimeoutMillis", timeoutInMs);
+        bootstrap.setPipelineFactory(new ReplicationPipelineFactory(new AckHandler(),
+                                                                    TSOProto.ReplicationResponse.getDefaultInstance()));
+        attachStandby();
+
+        reattachScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("replication-reattach-%d").setDaemon(true).build());
+        reattachScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!replicating) {
+                        attachStandby();
+                    }
+                } catch (Throwable t) {
+                    LOG.error("Error attaching standby {}", peer, t);
+                }
+            }
+        }, reattachIntervalInMs, reattachIntervalInMs, MILLISECONDS);
+
+    }
+
+    /**
+     * Called by the request processor for every commit with a non-empty write set, in commit timestamp order
+     */
+    void replicateCommit(long commitTimestamp, Iterable<Long> writeSet) {
+
+        if (!standbyConfigured) {
+            return;
+        }
+        // Written before checking whether to buffer it, so once attachStandby() starts buffering, it reads a last
+        // commit timestamp at least as high as the ones of the commits not buffered
+        lastCommitTimestamp = commitTimestamp;
+        if (!buffering) {
+            return;
+        }
+        synchronized (pendingLock) {
+            if (numPendingCommits == pendingCommitTimestamps.length) {
+                pendingCommitTimestamps = Arrays.copyOf(pendingCommitTimestamps, 2 * numPendingCommits);
+                pendingNumCells = Arrays.copyOf(pendingNumCells, 2 * numPendingCommits);
+            }
+            int numCells = 0;
+            for (long cellId : writeSet) {
+                if (numPendingCells == pendingCellIds.length) {
+                    pendingCellIds = Arrays.copyOf(pendingCellIds, 2 * numPendingCells);
+                }
+                pendingCellIds[numPendingCells++] = cellId;
+                numCells++;
+            }
+            pendingCommitTimestamps[numPendingCommits] = commitTimestamp;
+            pendingNumCells[numPendingCommits] = numCells;
+            numPendingCommits++;
+            lastPendingCommitTimestamp = commitTimestamp;
+        }
+
+    }
+
+    void replicateLowWatermark(long lowWatermark) {
+
+        if (!buffering) {
+            return;
+        }
+        synchronized (pendingLock) {
+            pendingLowWatermark = lowWatermark;
+        }
+
+    }
+
+    /**
+     * Sends the pending updates and waits until the standby has applied all the commits up to the one passed.
+     * Returns straight away if there's no standby. The standby is dropped if it does not answer in time.
+     */
+    void awaitReplication(long commitTimestamp) {
+
+        if (!replicating) {
+            return;
+        }
+        long startReplicationTimeInNs = System.nanoTime();
+        sendPendingUpdates();
+        if (!waitForAck(commitTimestamp)) {
+            dropStandby("Standby " + peer + " did not apply commit " + commitTimestamp + " in time");
+        }
+        replicationTimer.update(System.nanoTime() - startReplicationTimeInNs);
+
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (reattachScheduler != null) {
+            reattachScheduler.shutdownNow();
+            try {
+                reattachScheduler.awaitTermination(timeoutInMs, MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        replicating = false;
+        buffering = false;
+        if (channel != null) {
+            channel.close().awaitUninterruptibly();
+        }
+        if (factory != null) {
+            factory.releaseExternalResources();
+        }
+
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+    // Helper methods & classes
+    // ----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Connects to the standby and starts a new stream. Called when this TSO becomes the master, and afterwards from
+     * the reattach scheduler whenever the standby is not replicating, so never concurrently
+     */
+    private void attachStandby() throws Exception {
+
+        HostAndPort hostAndPort = HostAndPort.fromString(peer);
+        ChannelFuture connection =
+                bootstrap.connect(new InetSocketAddress(hostAndPort.getHostText(), hostAndPort.getPort()));
+        if (!connection.awaitUninterruptibly(timeoutInMs) || !connection.isSuccess()) {
+            LOG.warn("Can't connect to standby {}. Going on without warm standby", peer, connection.getCause());
+            connection.cancel();
+            return;
+        }
+        channel = connection.getChannel();
+        synchronized (ackLock) {
+            replicatedCommitTimestamp = -1L;
+        }
+
+        // From now on the commits are buffered. The ones decided before, whilst there was no standby, are not
+        // streamed, so the standby has to abort the transactions started before the last of them if it takes over
+        synchronized (pendingLock) {
+            numPendingCommits = 0;
+            numPendingCells = 0;
+            pendingLowWatermark = -1L;
+            lastPendingCommitTimestamp = -1L;
+            buffering = true;
+        }
+        long streamLowWatermark = lastCommitTimestamp;
+
+        // The standby acknowledges the start of the stream once it has reset its replica
+        channel.write(TSOProto.ReplicationRequest.newBuilder()
+                              .setEpoch(epoch)
+                              .setLowWatermark(streamLowWatermark)
+                              .build());
+        if (!waitForAck(0)) {
+            LOG.warn("Standby {} did not acknowledge the replication stream. Going on without warm standby", peer);
+            buffering = false;
+            channel.close();
+            return;
+        }
+        replicating = true;
+
+        // The commits buffered until now may have been persisted without waiting for the standby, so they have to be
+        // applied before its replica is declared complete
+        sendPendingUpdates();
+        long lastBufferedCommitTimestamp;
+        synchronized (pendingLock) {
+            lastBufferedCommitTimestamp = lastPendingCommitTimestamp;
+        }
+        if (!waitForAck(lastBufferedCommitTimestamp)) {
+            dropStandby("Standby " + peer + " did not apply the commits decided whilst attaching it in time");
+            return;
+        }
+        synchronized (this) {
+            if (!replicating) { // Dropped in the meantime
+                return;
+            }
+            writeStandbyReplicaEpoch(Long.toString(epoch));
+        }
+        LOG.info("Replicating conflict map to standby {} (Epoch {}, low watermark {})",
+                 peer, epoch, streamLowWatermark);
+
+    }
+
+    private void sendPendingUpdates() {
+
+        synchronized (pendingLock) {
+            if (numPendingCommits == 0 && pendingLowWatermark == -1L) {
+                return;
+            }
+            TSOProto.ReplicationRequest.Builder request = TSOProto.ReplicationRequest.newBuilder();
+            for (int i = 0; i < numPendingCommits; i++) {
+                request.addCommitTimestamp(pendingCommitTimestamps[i]);
+                request.addNumCells(pendingNumCells[i]);
+            }
+            for (int i = 0; i < numPendingCells; i++) {
+                request.addCellId(pendingCellIds[i]);
+            }
+            if (pendingLowWatermark != -1L) {
+                request.setLowWatermark(pendingLowWatermark);
+            }
+            numPendingCommits = 0;
+            numPendingCells = 0;
+            pendingLowWatermark = -1L;
+            // Written under the lock, so requests reach the standby in commit timestamp order
+            channel.write(request.build());
+        }
+
+    }
+
+    private boolean waitForAck(long commitTimestamp) {
+
+        long deadlineInMs = System.currentTimeMillis() + timeoutInMs;
+        synchronized (ackLock) {
+            while (replicatedCommitTimestamp < commitTimestamp) {
+                long remainingInMs = deadlineInMs - System.currentTimeMillis();
+                if (remainingInMs <= 0 || !channel.isConnected()) {
+                    return false;
+                }
+                try {
+                    ackLock.wait(remainingInMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private synchronized void dropStandby(String reason) {
+
+        if (!replicating) {
+            return;
+        }
+        LOG.warn("{}. Going on without warm standby", reason);
+        // The replica must be discarded before we persist anything the standby has not applied
+        try {
+            writeStandbyReplicaEpoch("");
+        } catch (Exception e) {
+            panicker.panic("Can't discard the replica of standby " + peer, e);
+        }
+        replicating = false;
+        buffering = false;
+        channel.close();
+
+    }
+
+    private void writeStandbyReplicaEpoch(String epoch) throws Exception {
+        byte[] data = epoch.getBytes(Charsets.UTF_8);
+        if (zkClient.checkExists().forPath(standbyReplicaPath) == null) {
+            zkClient.create().creatingParentsIfNeeded().forPath(standbyReplicaPath, data);
+        } else {
+            zkClient.setData().forPath(standbyReplicaPath, data);
+        }
+    }
+
+    private class AckHandler extends SimpleChannelHandler {
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            if (ctx.getChannel() != channel) { // Late answer of a standby dropped
+                return;
+            }
+            TSOProto.ReplicationResponse response = (TSOProto.ReplicationResponse) e.getMessage();
+            synchronized (ackLock) {
+                replicatedCommitTimestamp = Math.max(replicatedCommitTimestamp, response.getReplicatedCommitTimestamp());
+                ackLock.notifyAll();
+            }
+        }
+
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) {
+            synchronized (ackLock) {
+                ackLock.notifyAll();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            LOG.warn("Error in replication channel {}. Closing it", ctx.getChannel(), e.getCause());
+            ctx.getChannel().close();
+        }
+
+    }
+
+    /**
+     * Netty pipeline of the replication channels, shared by both sides
+     */
+    static class ReplicationPipelineFactory implements ChannelPipelineFactory {
+
+        private final SimpleChannelHandler handler;
+        private final MessageLite prototype;
+
+        ReplicationPipelineFactory(SimpleChannelHandler handler, MessageLite prototype) {
+            this.handler = handler;
+            this.prototype = prototype;
+        }
+
+        @Override
+        public ChannelPipeline getPipeline() throws Exception {
+            ChannelPipeline pipeline = Channels.pipeline();
+            pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
+            pipeline.addLast("lengthprepender", new LengthFieldPrepender(4));
+            pipeline.addLast("protobufdecoder", new ProtobufDecoder(prototype));
+            pipeline.addLast("protobufencoder", new ProtobufEncoder());
+            pipeline.addLast("handler", handler);
+            return pipeline;
+        }
+
+    }
+
+}
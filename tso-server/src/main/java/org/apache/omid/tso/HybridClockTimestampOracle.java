@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.omid.metrics.Gauge;
+import org.apache.omid.metrics.MetricsRegistry;
+import org.apache.omid.timestamp.storage.TimestampStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.omid.metrics.MetricsUtils.name;
+
+/**
+ * Timestamp Oracle that gives hybrid logical clock timestamps. The high bits of the timestamps hold the physical time
+ * in ms and the low bits a logical counter, so timestamps can be mapped to wall-clock time without any lookup.
+ *
+ * Timestamps are strictly monotonic. When the clock doesn't advance, or goes backwards, the logical counter is
+ * increased instead. Like in {@link TimestampOracleImpl}, an upper bound of the timestamps handed out is persisted in
+ * the {@link TimestampStorage} ahead of time, so a new master never goes back in time after a failover. The physical
+ * part of the timestamps is never more than maxClockSkewInMs ahead of the local clock. When it would be, the oracle
+ * waits for the clock to catch up.
+ */
+@Singleton
+public class HybridClockTimestampOracle implements TimestampOracle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HybridClockTimestampOracle.class);
+
+    static final int LOGICAL_BITS = 20; // ~1 million timestamps per ms. 43 bits of physical time last till year 2248
+    static final long ALLOCATION_WINDOW_IN_MS = 1000;
+
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private class AllocateTimestampWindowTask implements Runnable {
+        long previousMaxTimestamp;
+
+        AllocateTimestampWindowTask(long previousMaxTimestamp) {
+            this.previousMaxTimestamp = previousMaxTimestamp;
+        }
+
+        @Override
+        public void run() {
+            long windowStart = Math.max(previousMaxTimestamp, toTimestamp(clock.currentTimeMillis()));
+            long newMaxTimestamp = windowStart + toTimestamp(ALLOCATION_WINDOW_IN_MS);
+            try {
+                storage.updateMaxTimestamp(previousMaxTimestamp, newMaxTimestamp);
+                previousMaxTimestamp = newMaxTimestamp;
+                maxAllocatedTimestamp = newMaxTimestamp;
+            } catch (Throwable e) {
+                panicker.panic("Can't store the new max timestamp", e);
+            } finally {
+                allocationPending = false;
+            }
+        }
+
+    }
+
+    private final TimestampStorage storage;
+    private final Panicker panicker;
+    private final Clock clock;
+    private final long maxClockSkewInMs;
+
+    private long lastTimestamp;
+
+    private long maxTimestamp;
+    private long nextAllocationThreshold;
+    private volatile long maxAllocatedTimestamp;
+    private volatile boolean allocationPending;
+
+    private final Executor executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ts-persist-%d").build());
+
+    private Runnable allocateTimestampWindowTask;
+
+    @Inject
+    public HybridClockTimestampOracle(MetricsRegistry metrics,
+                                      TimestampStorage tsStorage,
+                                      Panicker panicker,
+                                      TSOServerConfig config) throws IOException {
+        this(metrics, tsStorage, panicker, config.getMaxClockSkewInMs(), SYSTEM_CLOCK);
+    }
+
+    @VisibleForTesting
+    HybridClockTimestampOracle(MetricsRegistry metrics,
+                               TimestampStorage tsStorage,
+                               Panicker panicker,
+                               long maxClockSkewInMs,
+                               Clock clock) {
+
+        this.storage = tsStorage;
+        this.panicker = panicker;
+        this.maxClockSkewInMs = maxClockSkewInMs;
+        this.clock = clock;
+
+        metrics.gauge(name("tso", "maxTimestamp"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return maxTimestamp;
+            }
+        });
+
+    }
+
+    @Override
+    public void initialize() throws IOException {
+
+        this.lastTimestamp = this.maxTimestamp = this.maxAllocatedTimestamp = storage.getMaxTimestamp();
+        this.nextAllocationThreshold = maxTimestamp;
+
+        this.allocateTimestampWindowTask = new AllocateTimestampWindowTask(lastTimestamp);
+
+        // Trigger first allocation of timestamps
+        allocationPending = true;
+        executor.execute(allocateTimestampWindowTask);
+
+        LOG.info("Initializing hybrid clock timestamp oracle with timestamp {} (Physical time {}ms)",
+                 lastTimestamp, toPhysicalTimeInMs(lastTimestamp));
+
+    }
+
+    /**
+     * Returns the next timestamp if available. Otherwise waits till the ts-persist thread allocates new timestamps
+     * or, if the timestamps are too far ahead of the local clock, till the clock catches up.
+     */
+    @SuppressWarnings("StatementWithEmptyBody")
+    @Override
+    public long next() {
+
+        long nowInMs = clock.currentTimeMillis();
+        if (toPhysicalTimeInMs(lastTimestamp + 1) - nowInMs > maxClockSkewInMs) {
+            LOG.warn("Timestamps are more than {}ms ahead of the clock. Waiting for the clock to catch up",
+                     maxClockSkewInMs);
+            while (toPhysicalTimeInMs(lastTimestamp + 1) - nowInMs > maxClockSkewInMs) {
+                Uninterruptibles.sleepUninterruptibly(1, MILLISECONDS);
+                nowInMs = clock.currentTimeMillis();
+            }
+        }
+        lastTimestamp = Math.max(lastTimestamp + 1, toTimestamp(nowInMs));
+
+        if (lastTimestamp >= nextAllocationThreshold) {
+            allocateTimestampWindow();
+        }
+
+        if (lastTimestamp >= maxTimestamp) {
+            while (maxAllocatedTimestamp <= lastTimestamp) {
+                // spin. The clock might have jumped beyond the window being allocated
+                allocateTimestampWindow();
+            }
+            maxTimestamp = maxAllocatedTimestamp;
+            nextAllocationThreshold = maxTimestamp - toTimestamp(ALLOCATION_WINDOW_IN_MS / 2);
+        }
+
+        return lastTimestamp;
+
+    }
+
+    @Override
+    public long getLast() {
+        return lastTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HybridClockTimestampOracle -> LastTimestamp: %d, MaxTimestamp: %d",
+                             lastTimestamp, maxTimestamp);
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+    // Helper methods
+    // ----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the physical time in ms encoded in the timestamp passed
+     */
+    public static long toPhysicalTimeInMs(long timestamp) {
+        return timestamp >>> LOGICAL_BITS;
+    }
+
+    /**
+     * @return the lowest timestamp with the physical time in ms passed. All the timestamps given before that time
+     *         are lower
+     */
+    public static long toTimestamp(long physicalTimeInMs) {
+        return physicalTimeInMs << LOGICAL_BITS;
+    }
+
+    private void allocateTimestampWindow() {
+        if (!allocationPending) {
+            allocationPending = true;
+            executor.execute(allocateTimestampWindowTask);
+        }
+    }
+
+}
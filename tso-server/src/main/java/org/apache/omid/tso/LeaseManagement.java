@@ -49,4 +49,10 @@ public interface LeaseManagement {
      */
     boolean stillInLeasePeriod();
 
+    /**
+     * Allows to give up the lease before it expires, so other instance can become the master straight away. The
+     * service is stopped, so the instance will not try to get the lease again.
+     */
+    void releaseLease() throws LeaseManagementException;
+
 }
@@ -42,11 +42,17 @@ import java.util.concurrent.atomic.AtomicLong;
  * It delegates the initialization of the TSO state and the publication of
  * the instance information when getting the lease to an asynchronous task to
  * continue managing the leases without interruptions.
+ *
+ * The master can also release the lease on purpose, leaving the lease node empty. Non-master instances check the
+ * lease node periodically, so they can take over as soon as they find it released instead of waiting for the
+ * whole lease period to expire.
  */
 class LeaseManager extends AbstractScheduledService implements LeaseManagement {
 
     private static final Logger LOG = LoggerFactory.getLogger(LeaseManager.class);
 
+    private static final byte[] RELEASED_LEASE = new byte[0];
+
     private final CuratorFramework zkClient;
 
     private final Panicker panicker;
@@ -69,6 +75,8 @@ class LeaseManager extends AbstractScheduledService implements LeaseManagement {
     private final long leasePeriodInMs;
     private final TSOChannelHandler tsoChannelHandler;
     private int leaseNodeVersion;
+    private long leaseNodeVersionSeenInMs = -1L;
+    private boolean leaseReleased = false;
     private final AtomicLong endLeaseInMs = new AtomicLong(0L);
     private final AtomicLong baseTimeInMs = new AtomicLong(0L);
 
@@ -117,6 +125,23 @@ class LeaseManager extends AbstractScheduledService implements LeaseManagement {
         return System.currentTimeMillis() <= getEndLeaseInMs();
     }
 
+    @Override
+    public void releaseLease() throws LeaseManagementException {
+
+        // Stop renewing the lease. This also closes the client connections
+        stopAndWait();
+        endLeaseInMs.set(0L);
+        try {
+            zkClient.setData().withVersion(leaseNodeVersion).forPath(leasePath, RELEASED_LEASE);
+            LOG.info("{} released the lease (Ver. {})", tsoHostAndPort, leaseNodeVersion);
+        } catch (KeeperException.BadVersionException e) {
+            LOG.warn("{} lease was already lost (Ver. {})", tsoHostAndPort, leaseNodeVersion);
+        } catch (Exception e) {
+            throw new LeaseManagementException("Error releasing the lease", e);
+        }
+
+    }
+
     // ----------------------------------------------------------------------------------------------------------------
     // End LeaseManagement implementation
     // ----------------------------------------------------------------------------------------------------------------
@@ -186,6 +211,7 @@ class LeaseManager extends AbstractScheduledService implements LeaseManagement {
             Stat stat = zkClient.setData().withVersion(previousLeaseNodeVersion)
                     .forPath(leasePath, instanceInfo);
             leaseNodeVersion = stat.getVersion();
+            leaseNodeVersionSeenInMs = -1L;
             LOG.trace("{} got new lease version {}", tsoHostAndPort, leaseNodeVersion);
         } catch (KeeperException.BadVersionException e) {
             return false;
@@ -215,7 +241,10 @@ class LeaseManager extends AbstractScheduledService implements LeaseManagement {
     protected void runOneIteration() throws Exception {
 
         if (!haveLease()) {
-            tryToGetInitialLeasePeriod();
+            // Only when the lease of the previous holder has expired or has been released
+            if (leaseReleased || System.currentTimeMillis() >= leaseNodeVersionSeenInMs + leasePeriodInMs) {
+                tryToGetInitialLeasePeriod();
+            }
         } else {
             tryToRenewLeasePeriod();
         }
@@ -233,12 +262,21 @@ class LeaseManager extends AbstractScheduledService implements LeaseManagement {
             protected Schedule getNextSchedule() throws Exception {
                 if (!haveLease()) {
                     // Get the current node version...
-                    Stat stat = zkClient.checkExists().forPath(leasePath);
-                    leaseNodeVersion = stat.getVersion();
+                    Stat stat = new Stat();
+                    byte[] leaseHolder = zkClient.getData().storingStatIn(stat).forPath(leasePath);
+                    long nowInMs = System.currentTimeMillis();
+                    if (leaseNodeVersionSeenInMs < 0 || stat.getVersion() != leaseNodeVersion) {
+                        leaseNodeVersion = stat.getVersion();
+                        leaseNodeVersionSeenInMs = nowInMs;
+                    }
+                    leaseReleased = leaseHolder == null || leaseHolder.length == 0;
+                    // ...and wait the lease period, checking from time to time if the lease has been released
+                    long waitTimeInMs = leaseReleased
+                            ? 0
+                            : Math.min(guardLeasePeriodInMs, leaseNodeVersionSeenInMs + leasePeriodInMs - nowInMs);
                     LOG.trace("{} will try to get lease (with Ver. {}) in {}ms", tsoHostAndPort, leaseNodeVersion,
-                              leasePeriodInMs);
-                    // ...and wait the lease period
-                    return new Schedule(leasePeriodInMs, TimeUnit.MILLISECONDS);
+                              waitTimeInMs);
+                    return new Schedule(Math.max(0, waitTimeInMs), TimeUnit.MILLISECONDS);
                 } else {
                     long waitTimeInMs = getEndLeaseInMs() - System.currentTimeMillis() - guardLeasePeriodInMs;
                     LOG.trace("{} will try to renew lease (with Ver. {}) in {}ms", tsoHostAndPort,
@@ -17,6 +17,8 @@
  */
 package org.apache.omid.tso;
 
+import java.util.Arrays;
+
 public class LongCache {
 
     private final long[] cache;
@@ -61,6 +63,10 @@ public class LongCache {
         return 0;
     }
 
+    public void clear() {
+        Arrays.fill(cache, 0L);
+    }
+
     private int index(long hash) {
         return (int) (Math.abs(hash) % size);
     }
@@ -36,4 +36,10 @@ interface PersistenceProcessor extends Closeable {
     void triggerCurrentBatchFlush() throws Exception;
 
     Future<Void> persistLowWatermark(long lowWatermark);
+
+    /**
+     * Waits until the batches triggered so far have been persisted and handed to the reply processor
+     */
+    void drain() throws InterruptedException;
+
 }
@@ -42,6 +42,8 @@ public class PersistenceProcessorHandler implements WorkHandler<PersistenceProce
     private final ReplyProcessor replyProcessor;
     private final RetryProcessor retryProcessor;
     private final CommitTable.Writer writer;
+    private final CommitJournal journal;
+    private final ConflictMapReplicator replicator;
     final Panicker panicker;
 
     private final Timer flushTimer;
@@ -55,6 +57,8 @@ public class PersistenceProcessorHandler implements WorkHandler<PersistenceProce
                                 CommitTable commitTable,
                                 ReplyProcessor replyProcessor,
                                 RetryProcessor retryProcessor,
+                                CommitJournal journal,
+                                ConflictMapReplicator replicator,
                                 Panicker panicker)
     throws InterruptedException, ExecutionException, IOException {
 
@@ -63,6 +67,8 @@ public class PersistenceProcessorHandler implements WorkHandler<PersistenceProce
         this.writer = commitTable.getWriter();
         this.replyProcessor = replyProcessor;
         this.retryProcessor = retryProcessor;
+        this.journal = journal;
+        this.replicator = replicator;
         this.panicker = panicker;
 
         // Metrics in this component
@@ -76,6 +82,9 @@ public class PersistenceProcessorHandler implements WorkHandler<PersistenceProce
     public void onEvent(PersistenceProcessorImpl.PersistBatchEvent batchEvent) throws Exception {
 
         int commitEventsToFlush = 0;
+        boolean hasTimestampRequests = false;
+        long lastCommitTimestamp = 0L;
+        boolean journalEnabled = journal.isEnabled();
         Batch batch = batchEvent.getBatch();
         int numOfBatchedEvents = batch.getNumEvents();
         batchSizeHistogram.update(numOfBatchedEvents);
@@ -84,10 +93,14 @@ public class PersistenceProcessorHandler implements WorkHandler<PersistenceProce
             switch (event.getType()) {
                 case TIMESTAMP:
                     event.getMonCtx().timerStop("persistence.processor.timestamp.latency");
+                    hasTimestampRequests = true;
                     break;
                 case COMMIT:
-                    writer.addCommittedTransaction(event.getStartTimestamp(), event.getCommitTimestamp());
+                    if (!journalEnabled) {
+                        writer.addCommittedTransaction(event.getStartTimestamp(), event.getCommitTimestamp());
+                    }
                     commitEventsToFlush++;
+                    lastCommitTimestamp = Math.max(event.getCommitTimestamp(), lastCommitTimestamp);
                     break;
                 case COMMIT_RETRY:
                     event.getMonCtx().timerStop("persistence.processor.commit-retry.latency");
@@ -101,8 +114,16 @@ public class PersistenceProcessorHandler implements WorkHandler<PersistenceProce
         }
 
         // Flush and send the responses back to the client. WARNING: Before sending the responses, first we need
-        // to filter commit retries in the batch to disambiguate them.
-        flush(commitEventsToFlush);
+        // to filter commit retries in the batch to disambiguate them. A warm standby must have the commits before they
+        // are persisted.
+        if (lastCommitTimestamp > 0) {
+            replicator.awaitReplication(lastCommitTimestamp);
+        }
+        if (journalEnabled) {
+            journal(batchEvent.getBatchSequence(), batch, commitEventsToFlush, hasTimestampRequests);
+        } else {
+            flush(commitEventsToFlush);
+        }
         filterAndDissambiguateClientRetries(batch);
         for (int i=0; i < batch.getNumEvents(); i++) { // Just for statistics
             PersistEvent event = batch.get(i);
@@ -144,6 +165,27 @@ public class PersistenceProcessorHandler implements WorkHandler<PersistenceProce
 
     }
 
+    // Commits are acknowledged once journaled. Timestamps are not handed out until all the previous commits have
+    // been propagated to the commit table, otherwise readers in other processes wouldn't find them
+    void journal(long batchSequence, Batch batch, int commitEvents, boolean hasTimestampRequests)
+            throws InterruptedException {
+
+        commitSuicideIfNotMaster();
+        try {
+            long startFlushTimeInNs = System.nanoTime();
+            journal.append(batchSequence, batch);
+            flushTimer.update(System.nanoTime() - startFlushTimeInNs);
+            flushedCommitEventsHistogram.update(commitEvents);
+        } catch (IOException e) {
+            panicker.panic("Error journaling commit batch", e);
+        }
+        commitSuicideIfNotMaster();
+        if (hasTimestampRequests) {
+            journal.awaitPropagation(batchSequence);
+        }
+
+    }
+
     private void commitSuicideIfNotMaster() {
         if (!leaseManager.stillInLeasePeriod()) {
             panicker.panic("Replica " + tsoHostAndPort + " lost mastership whilst flushing data. Committing suicide");
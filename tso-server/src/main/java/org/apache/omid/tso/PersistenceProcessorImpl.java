@@ -52,6 +52,8 @@ class PersistenceProcessorImpl implements PersistenceProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(PersistenceProcessorImpl.class);
 
+    private static final long DRAIN_CHECK_INTERVAL_IN_MS = 1;
+
     // Disruptor-related attributes
     private final ExecutorService disruptorExec;
     private final Disruptor<PersistBatchEvent> disruptor;
@@ -185,6 +187,14 @@ class PersistenceProcessorImpl implements PersistenceProcessor {
 
     }
 
+    @Override
+    public void drain() throws InterruptedException {
+        while (persistRing.getMinimumGatingSequence() < persistRing.getCursor()) {
+            Thread.sleep(DRAIN_CHECK_INTERVAL_IN_MS);
+        }
+        LOG.info("Persistence Processor drained");
+    }
+
     @Override
     public void close() throws IOException {
 
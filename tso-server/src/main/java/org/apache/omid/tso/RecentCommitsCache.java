@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import com.google.common.base.Preconditions;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, direct-mapped ring with the outcome of the most recent transactions replied by the TSO. It allows
+ * the retry processor to disambiguate most client retries without reading the commit table.
+ *
+ * Entries are only added once the decision has been persisted, so they can be trusted as long as they are found.
+ * There must be a single writer (the reply processor) but there may be any number of concurrent readers. Each slot
+ * is protected by a sequence number, so a reader that overlaps a write sees a miss instead of a torn entry.
+ * A size of 0 disables the cache, so all the retries are disambiguated with the commit table.
+ */
+@Singleton
+class RecentCommitsCache {
+
+    static final long NOT_FOUND = 0L;
+    static final long ABORTED = -1L;
+
+    private static final int ENTRY_SIZE = 3; // sequence, start timestamp, outcome
+
+    private final AtomicLongArray entries;
+    private final int mask;
+
+    @Inject
+    RecentCommitsCache(TSOServerConfig config) {
+        this(config.getRecentCommitsCacheSize());
+    }
+
+    RecentCommitsCache(int size) {
+        Preconditions.checkArgument(size >= 0, "Recent commits cache size can not be negative");
+        int capacity = Integer.highestOneBit(size);
+        capacity = capacity < size ? capacity << 1 : capacity;
+        this.entries = new AtomicLongArray(ENTRY_SIZE * capacity);
+        this.mask = capacity - 1;
+    }
+
+    void addCommit(long startTimestamp, long commitTimestamp) {
+        add(startTimestamp, commitTimestamp);
+    }
+
+    void addAbort(long startTimestamp) {
+        add(startTimestamp, ABORTED);
+    }
+
+    /**
+     * @return the commit timestamp of the transaction, ABORTED if it was aborted or NOT_FOUND if its outcome
+     *         is not cached
+     */
+    long get(long startTimestamp) {
+        if (isDisabled()) {
+            return NOT_FOUND;
+        }
+        int base = slotFor(startTimestamp);
+        long sequence = entries.get(base);
+        if ((sequence & 1) != 0) { // Being written
+            return NOT_FOUND;
+        }
+        long cachedStartTimestamp = entries.get(base + 1);
+        long outcome = entries.get(base + 2);
+        if (entries.get(base) != sequence || cachedStartTimestamp != startTimestamp) {
+            return NOT_FOUND;
+        }
+        return outcome;
+    }
+
+    private void add(long startTimestamp, long outcome) {
+        if (isDisabled()) {
+            return;
+        }
+        int base = slotFor(startTimestamp);
+        long sequence = entries.get(base);
+        entries.set(base, sequence + 1);
+        entries.set(base + 1, startTimestamp);
+        entries.set(base + 2, outcome);
+        entries.set(base, sequence + 2);
+    }
+
+    private boolean isDisabled() {
+        return entries.length() == 0;
+    }
+
+    private int slotFor(long startTimestamp) {
+        return ENTRY_SIZE * (int) (startTimestamp & mask);
+    }
+
+}
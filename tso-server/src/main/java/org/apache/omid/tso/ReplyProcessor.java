@@ -67,5 +67,10 @@ interface ReplyProcessor extends Closeable {
 
     void sendTimestampResponse(long startTimestamp, Channel channel);
 
+    /**
+     * Waits until the replies of the batches received so far have been sent back to the clients
+     */
+    void drain() throws InterruptedException;
+
 }
 
@@ -50,6 +50,8 @@ class ReplyProcessorImpl implements EventHandler<ReplyProcessorImpl.ReplyBatchEv
 
     private static final Logger LOG = LoggerFactory.getLogger(ReplyProcessorImpl.class);
 
+    private static final long DRAIN_CHECK_INTERVAL_IN_MS = 1;
+
     // Disruptor-related attributes
     private final ExecutorService disruptorExec;
     private final Disruptor<ReplyBatchEvent> disruptor;
@@ -57,6 +59,9 @@ class ReplyProcessorImpl implements EventHandler<ReplyProcessorImpl.ReplyBatchEv
 
     private final ObjectPool<Batch> batchPool;
 
+    private final RecentCommitsCache recentCommits;
+    private final SafeReadTimestampPublisher safeReadTimestampPublisher;
+
     @VisibleForTesting
     AtomicLong nextIDToHandle = new AtomicLong();
 
@@ -70,7 +75,8 @@ class ReplyProcessorImpl implements EventHandler<ReplyProcessorImpl.ReplyBatchEv
 
     @Inject
     ReplyProcessorImpl(@Named("ReplyStrategy") WaitStrategy strategy,
-            MetricsRegistry metrics, Panicker panicker, ObjectPool<Batch> batchPool) {
+            MetricsRegistry metrics, Panicker panicker, ObjectPool<Batch> batchPool,
+            RecentCommitsCache recentCommits, SafeReadTimestampPublisher safeReadTimestampPublisher) {
 
         // ------------------------------------------------------------------------------------------------------------
         // Disruptor initialization
@@ -89,6 +95,8 @@ class ReplyProcessorImpl implements EventHandler<ReplyProcessorImpl.ReplyBatchEv
         // ------------------------------------------------------------------------------------------------------------
 
         this.batchPool = batchPool;
+        this.recentCommits = recentCommits;
+        this.safeReadTimestampPublisher = safeReadTimestampPublisher;
         this.nextIDToHandle.set(0);
         this.futureEvents = new PriorityQueue<>(10, new Comparator<ReplyBatchEvent>() {
             public int compare(ReplyBatchEvent replyBatchEvent1, ReplyBatchEvent replyBatchEvent2) {
@@ -114,16 +122,21 @@ class ReplyProcessorImpl implements EventHandler<ReplyProcessorImpl.ReplyBatchEv
 
             switch (event.getType()) {
                 case COMMIT:
+                    // Batches reach this point once persisted, so the outcome can be used to answer client retries
+                    recentCommits.addCommit(event.getStartTimestamp(), event.getCommitTimestamp());
+                    safeReadTimestampPublisher.commitReplied(event.getCommitTimestamp());
                     sendCommitResponse(event.getStartTimestamp(), event.getCommitTimestamp(), event.getChannel());
                     event.getMonCtx().timerStop("reply.processor.commit.latency");
                     commitMeter.mark();
                     break;
                 case ABORT:
+                    recentCommits.addAbort(event.getStartTimestamp());
                     sendAbortResponse(event.getStartTimestamp(), event.getChannel());
                     event.getMonCtx().timerStop("reply.processor.abort.latency");
                     abortMeter.mark();
                     break;
                 case TIMESTAMP:
+                    safeReadTimestampPublisher.timestampReplied(event.getStartTimestamp());
                     sendTimestampResponse(event.getStartTimestamp(), event.getChannel());
                     event.getMonCtx().timerStop("reply.processor.timestamp.latency");
                     timestampMeter.mark();
@@ -217,6 +230,14 @@ class ReplyProcessorImpl implements EventHandler<ReplyProcessorImpl.ReplyBatchEv
 
     }
 
+    @Override
+    public void drain() throws InterruptedException {
+        while (replyRing.getMinimumGatingSequence() < replyRing.getCursor()) {
+            Thread.sleep(DRAIN_CHECK_INTERVAL_IN_MS);
+        }
+        LOG.info("Reply Processor drained");
+    }
+
     @Override
     public void close() {
 
@@ -21,6 +21,7 @@ import org.jboss.netty.channel.Channel;
 
 import java.io.Closeable;
 import java.util.Collection;
+import java.util.concurrent.Future;
 
 // NOTE: public is required explicitly in the interface definition for Guice injection
 public interface RequestProcessor extends TSOStateManager.StateObserver, Closeable {
@@ -29,4 +30,41 @@ public interface RequestProcessor extends TSOStateManager.StateObserver, Closeab
 
     void commitRequest(long startTimestamp, Collection<Long> writeSet, boolean isRetry, Channel c, MonitoringContext monCtx);
 
+    /**
+     * Receives a chunk of the cell ids of a commit whose write set doesn't fit in a single request. Its conflicts are
+     * checked straight away, so commits doomed to abort are found early, but the commit is decided atomically by the
+     * commit request that follows the chunks
+     *
+     * @param startTimestamp     start timestamp of the transaction
+     * @param cellIds            cell ids of the chunk
+     * @param numChunkedCellIds  number of cell ids sent in the previous chunks of the commit
+     */
+    void commitChunk(long startTimestamp, Collection<Long> cellIds, int numChunkedCellIds);
+
+    /**
+     * Commit request following the chunks of the commit
+     *
+     * @param numChunkedCellIds number of cell ids sent in the chunks. The commit aborts when they were not all received
+     */
+    void commitRequest(long startTimestamp, Collection<Long> writeSet, int numChunkedCellIds, boolean isRetry,
+                       Channel c, MonitoringContext monCtx);
+
+    /**
+     * Commit request with cell ids only checked for conflicts. The commit aborts when they were written after the
+     * transaction started, but they are not added to the conflict map, so they don't conflict among themselves
+     *
+     * @param checkedSet        cell ids only checked for conflicts
+     * @param numChunkedCellIds number of cell ids of the write set sent in the chunks, if any
+     */
+    void commitRequest(long startTimestamp, Collection<Long> writeSet, Collection<Long> checkedSet,
+                       int numChunkedCellIds, boolean isRetry, Channel c, MonitoringContext monCtx);
+
+    /**
+     * Stops processing requests. The requests received before are sent to the persistence processor and the current
+     * low watermark is persisted. The requests received afterwards are discarded
+     *
+     * @return a future that completes once the requests have been drained
+     */
+    Future<Void> drain();
+
 }
@@ -17,6 +17,9 @@
  */
 package org.apache.omid.tso;
 
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.lmax.disruptor.EventFactory;
 import com.lmax.disruptor.EventHandler;
@@ -32,11 +35,17 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 
 import static com.lmax.disruptor.dsl.ProducerType.MULTI;
@@ -48,6 +57,8 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
 
     private static final Logger LOG = LoggerFactory.getLogger(RequestProcessorImpl.class);
 
+    private static final Collection<Long> NO_CELL_IDS = Collections.emptyList();
+
     // Disruptor-related attributes
     private final ExecutorService disruptorExec;
     private final Disruptor<RequestEvent> disruptor;
@@ -57,15 +68,21 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
     private final CommitHashMap hashmap;
     private final MetricsRegistry metrics;
     private final PersistenceProcessor persistProc;
+    private final ConflictMapReplicator replicator;
 
     private long lowWatermark = -1L;
+    private boolean drained = false;
+    // Cell ids received so far of the commits streamed in chunks, by start timestamp
+    private final Map<Long, ChunkedCommit> chunkedCommits = new HashMap<>();
 
     @Inject
     RequestProcessorImpl(MetricsRegistry metrics,
                          TimestampOracle timestampOracle,
                          PersistenceProcessor persistProc,
                          Panicker panicker,
-                         TSOServerConfig config)
+                         TSOServerConfig config,
+                         CommitHashMap hashmap,
+                         ConflictMapReplicator replicator)
             throws IOException {
 
         // ------------------------------------------------------------------------------------------------------------
@@ -89,7 +106,8 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
         this.metrics = metrics;
         this.persistProc = persistProc;
         this.timestampOracle = timestampOracle;
-        this.hashmap = new CommitHashMap(config.getConflictMapSize());
+        this.hashmap = hashmap;
+        this.replicator = replicator;
 
         LOG.info("RequestProcessor initialized");
 
@@ -102,6 +120,8 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
     public void update(TSOState state) throws Exception {
         LOG.info("Initializing RequestProcessor state...");
         this.lowWatermark = state.getLowWatermark();
+        this.drained = false;
+        chunkedCommits.clear();
         persistProc.persistLowWatermark(lowWatermark).get(); // Sync persist
         LOG.info("RequestProcessor state initialized with LWMs {} and Epoch {}", lowWatermark, state.getEpoch());
     }
@@ -109,6 +129,12 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
     @Override
     public void onEvent(RequestEvent event, long sequence, boolean endOfBatch) throws Exception {
 
+        if (drained && event.getType() != RequestEvent.Type.DRAIN) {
+            // The mastership is being handed off. Clients will retry the request with the next master
+            LOG.trace("Discarding request {} received after draining", event.getType());
+            return;
+        }
+
         switch (event.getType()) {
             case TIMESTAMP:
                 handleTimestamp(event);
@@ -116,6 +142,12 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
             case COMMIT:
                 handleCommit(event);
                 break;
+            case CHUNK:
+                handleChunk(event);
+                break;
+            case DRAIN:
+                handleDrain(event);
+                break;
             default:
                 throw new IllegalStateException("Event not allowed in Request Processor: " + event);
         }
@@ -153,11 +185,57 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
         monCtx.timerStart("request.processor.commit.latency");
         long seq = requestRing.next();
         RequestEvent e = requestRing.get(seq);
-        RequestEvent.makeCommitRequest(e, startTimestamp, monCtx, writeSet, isRetry, c);
+        RequestEvent.makeCommitRequest(e, startTimestamp, monCtx, writeSet, NO_CELL_IDS, 0, isRetry, c);
+        requestRing.publish(seq);
+
+    }
+
+    @Override
+    public void commitChunk(long startTimestamp, Collection<Long> cellIds, int numChunkedCellIds) {
+
+        long seq = requestRing.next();
+        RequestEvent e = requestRing.get(seq);
+        RequestEvent.makeCommitChunk(e, startTimestamp, cellIds, numChunkedCellIds);
+        requestRing.publish(seq);
+
+    }
+
+    @Override
+    public void commitRequest(long startTimestamp, Collection<Long> writeSet, int numChunkedCellIds, boolean isRetry,
+                              Channel c, MonitoringContext monCtx) {
+
+        monCtx.timerStart("request.processor.commit.latency");
+        long seq = requestRing.next();
+        RequestEvent e = requestRing.get(seq);
+        RequestEvent.makeCommitRequest(e, startTimestamp, monCtx, writeSet, NO_CELL_IDS, numChunkedCellIds, isRetry, c);
         requestRing.publish(seq);
 
     }
 
+    @Override
+    public void commitRequest(long startTimestamp, Collection<Long> writeSet, Collection<Long> checkedSet,
+                              int numChunkedCellIds, boolean isRetry, Channel c, MonitoringContext monCtx) {
+
+        monCtx.timerStart("request.processor.commit.latency");
+        long seq = requestRing.next();
+        RequestEvent e = requestRing.get(seq);
+        RequestEvent.makeCommitRequest(e, startTimestamp, monCtx, writeSet, checkedSet, numChunkedCellIds, isRetry, c);
+        requestRing.publish(seq);
+
+    }
+
+    @Override
+    public Future<Void> drain() {
+
+        SettableFuture<Void> drainFuture = SettableFuture.create();
+        long seq = requestRing.next();
+        RequestEvent e = requestRing.get(seq);
+        RequestEvent.makeDrainRequest(e, drainFuture);
+        requestRing.publish(seq);
+        return drainFuture;
+
+    }
+
     private void handleTimestamp(RequestEvent requestEvent) throws Exception {
 
         long timestamp = timestampOracle.next();
@@ -166,6 +244,31 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
 
     }
 
+    private void handleChunk(RequestEvent event) {
+
+        long startTimestamp = event.getStartTimestamp();
+        ChunkedCommit chunkedCommit = chunkedCommits.get(startTimestamp);
+        if (chunkedCommit == null || event.getNumChunkedCellIds() == 0) { // First chunk. Retries start over
+            chunkedCommit = new ChunkedCommit();
+            chunkedCommits.put(startTimestamp, chunkedCommit);
+        }
+        if (chunkedCommit.numCellIds != event.getNumChunkedCellIds() || startTimestamp <= lowWatermark) {
+            chunkedCommit.abort(); // A previous chunk was lost
+        }
+        if (chunkedCommit.aborted) {
+            return;
+        }
+        for (long cellId : event.writeSet()) {
+            long value = hashmap.getLatestWriteForCell(cellId);
+            if (value != 0 && value >= startTimestamp) {
+                chunkedCommit.abort();
+                return;
+            }
+            chunkedCommit.add(cellId);
+        }
+
+    }
+
     private void handleCommit(RequestEvent event) throws Exception {
 
         long startTimestamp = event.getStartTimestamp();
@@ -174,13 +277,24 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
         Channel c = event.getChannel();
 
         boolean txCanCommit;
+        boolean chunksReceived = true;
+        if (event.getNumChunkedCellIds() > 0) {
+            ChunkedCommit chunkedCommit = chunkedCommits.remove(startTimestamp);
+            if (chunkedCommit == null || chunkedCommit.aborted
+                    || chunkedCommit.numCellIds != event.getNumChunkedCellIds()) {
+                chunksReceived = false;
+            } else {
+                writeSet = Iterables.concat(chunkedCommit.cellIds(), writeSet);
+            }
+        }
 
         int numCellsInWriteset = 0;
         // 0. check if it should abort
-        if (startTimestamp <= lowWatermark) {
+        if (startTimestamp <= lowWatermark || !chunksReceived) {
             txCanCommit = false;
         } else {
-            // 1. check the write-write conflicts
+            // 1. check the write-write conflicts. Those of the chunks are checked again, as other transactions may have
+            // committed since, so the commit is decided atomically
             txCanCommit = true;
             for (long cellId : writeSet) {
                 long value = hashmap.getLatestWriteForCell(cellId);
@@ -190,6 +304,16 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
                 }
                 numCellsInWriteset++;
             }
+            // 1b. the cells only checked are just looked up
+            if (txCanCommit) {
+                for (long cellId : event.getCheckedSet()) {
+                    long value = hashmap.getLatestWriteForCell(cellId);
+                    if (value != 0 && value >= startTimestamp) {
+                        txCanCommit = false;
+                        break;
+                    }
+                }
+            }
         }
 
         if (txCanCommit) {
@@ -208,8 +332,12 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
                 if (newLowWatermark != lowWatermark) {
                     LOG.trace("Setting new low Watermark to {}", newLowWatermark);
                     lowWatermark = newLowWatermark;
+                    discardChunkedCommitsBelowLowWatermark();
                     persistProc.persistLowWatermark(newLowWatermark); // Async persist
+                    replicator.replicateLowWatermark(newLowWatermark);
                 }
+                // Must be queued before the commit reaches the persistence handlers
+                replicator.replicateCommit(commitTimestamp, writeSet);
             }
             event.getMonCtx().timerStop("request.processor.commit.latency");
             persistProc.addCommitToBatch(startTimestamp, commitTimestamp, c, event.getMonCtx());
@@ -227,6 +355,33 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
 
     }
 
+    // The chunked commits of transactions below the low watermark are going to abort, if their commit request ever comes
+    private void discardChunkedCommitsBelowLowWatermark() {
+
+        Iterator<Long> startTimestamps = chunkedCommits.keySet().iterator();
+        while (startTimestamps.hasNext()) {
+            if (startTimestamps.next() <= lowWatermark) {
+                startTimestamps.remove();
+            }
+        }
+
+    }
+
+    private void handleDrain(RequestEvent event) throws Exception {
+
+        drained = true;
+        try {
+            persistProc.triggerCurrentBatchFlush();
+            persistProc.persistLowWatermark(lowWatermark).get(); // Sync persist, so the next master starts from it
+        } catch (Exception e) {
+            event.getDrainFuture().setException(e);
+            throw e;
+        }
+        LOG.info("Request Processor drained. Last timestamp {}/LWM {}", timestampOracle.getLast(), lowWatermark);
+        event.getDrainFuture().set(null);
+
+    }
+
     @Override
     public void close() throws IOException {
 
@@ -246,10 +401,38 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
 
     }
 
+    /**
+     * Cell ids of a commit streamed in chunks, received so far
+     */
+    private static final class ChunkedCommit {
+
+        private long[] cellIds = new long[1024];
+        private int numCellIds = 0;
+        // Found conflicting, or with chunks lost. Its cell ids are not kept anymore
+        private boolean aborted = false;
+
+        void add(long cellId) {
+            if (numCellIds == cellIds.length) {
+                cellIds = Arrays.copyOf(cellIds, 2 * numCellIds);
+            }
+            cellIds[numCellIds++] = cellId;
+        }
+
+        void abort() {
+            aborted = true;
+            cellIds = null;
+        }
+
+        List<Long> cellIds() {
+            return Longs.asList(cellIds).subList(0, numCellIds);
+        }
+
+    }
+
     final static class RequestEvent implements Iterable<Long> {
 
         enum Type {
-            TIMESTAMP, COMMIT
+            TIMESTAMP, COMMIT, CHUNK, DRAIN
         }
 
         private Type type = null;
@@ -259,10 +442,15 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
         private long startTimestamp = 0;
         private MonitoringContext monCtx;
         private long numCells = 0;
+        private int numChunkedCellIds = 0;
 
         private static final int MAX_INLINE = 40;
         private Long writeSet[] = new Long[MAX_INLINE];
         private Collection<Long> writeSetAsCollection = null; // for the case where there's more than MAX_INLINE
+        // Cell ids only checked for conflicts
+        private Collection<Long> checkedSet = NO_CELL_IDS;
+
+        private SettableFuture<Void> drainFuture = null;
 
         static void makeTimestampRequest(RequestEvent e, Channel c, MonitoringContext monCtx) {
             e.type = Type.TIMESTAMP;
@@ -270,17 +458,46 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
             e.monCtx = monCtx;
         }
 
+        static void makeDrainRequest(RequestEvent e, SettableFuture<Void> drainFuture) {
+            e.type = Type.DRAIN;
+            e.channel = null;
+            e.monCtx = null;
+            e.drainFuture = drainFuture;
+        }
+
         static void makeCommitRequest(RequestEvent e,
                                       long startTimestamp,
                                       MonitoringContext monCtx,
                                       Collection<Long> writeSet,
+                                      Collection<Long> checkedSet,
+                                      int numChunkedCellIds,
                                       boolean isRetry,
                                       Channel c) {
             e.monCtx = monCtx;
             e.type = Type.COMMIT;
             e.channel = c;
             e.startTimestamp = startTimestamp;
+            e.numChunkedCellIds = numChunkedCellIds;
             e.isCommitRetry = isRetry;
+            setWriteSet(e, writeSet);
+            e.checkedSet = checkedSet;
+        }
+
+        static void makeCommitChunk(RequestEvent e,
+                                    long startTimestamp,
+                                    Collection<Long> cellIds,
+                                    int numChunkedCellIds) {
+            e.monCtx = null;
+            e.type = Type.CHUNK;
+            e.channel = null;
+            e.startTimestamp = startTimestamp;
+            e.numChunkedCellIds = numChunkedCellIds;
+            e.isCommitRetry = false;
+            setWriteSet(e, cellIds);
+            e.checkedSet = NO_CELL_IDS;
+        }
+
+        private static void setWriteSet(RequestEvent e, Collection<Long> writeSet) {
             if (writeSet.size() > MAX_INLINE) {
                 e.numCells = writeSet.size();
                 e.writeSetAsCollection = writeSet;
@@ -308,10 +525,18 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
             return startTimestamp;
         }
 
+        int getNumChunkedCellIds() {
+            return numChunkedCellIds;
+        }
+
         Channel getChannel() {
             return channel;
         }
 
+        SettableFuture<Void> getDrainFuture() {
+            return drainFuture;
+        }
+
         @Override
         public Iterator<Long> iterator() {
 
@@ -353,6 +578,10 @@ class RequestProcessorImpl implements EventHandler<RequestProcessorImpl.RequestE
             return isCommitRetry;
         }
 
+        Collection<Long> getCheckedSet() {
+            return checkedSet;
+        }
+
         final static EventFactory<RequestEvent> EVENT_FACTORY = new EventFactory<RequestEvent>() {
             @Override
             public RequestEvent newInstance() {
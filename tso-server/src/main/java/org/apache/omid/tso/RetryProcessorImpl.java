@@ -38,19 +38,26 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static com.lmax.disruptor.dsl.ProducerType.SINGLE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.omid.tso.RetryProcessorImpl.RetryEvent.EVENT_FACTORY;
 
 /**
  * Manages the disambiguation of the retry requests that clients send when they did not received a response in the
  * specified timeout. It replies directly to the client with the outcome identified.
+ *
+ * Most retries are resolved with the outcomes of recent transactions kept in memory. The rest are resolved reading
+ * the commit table from a pool of readers, so many reads can be in flight at the same time. When all the readers are
+ * busy and their queue is full, the retry thread reads the commit table itself, which throttles the retry ring.
  */
 class RetryProcessorImpl implements EventHandler<RetryProcessorImpl.RetryEvent>, RetryProcessor {
 
@@ -66,10 +73,15 @@ class RetryProcessorImpl implements EventHandler<RetryProcessorImpl.RetryEvent>,
     final CommitTable.Client commitTableClient;
     final ObjectPool<Batch> batchPool;
 
+    private final RecentCommitsCache recentCommits;
+    private final ExecutorService commitTableReaderExec;
+
     // Metrics
     private final Meter txAlreadyCommittedMeter;
     private final Meter invalidTxMeter;
     private final Meter noCTFoundMeter;
+    private final Meter recentCommitsHitMeter;
+    private final Meter recentCommitsMissMeter;
 
     @Inject
     RetryProcessorImpl(@Named("RetryStrategy") WaitStrategy strategy,
@@ -77,7 +89,10 @@ class RetryProcessorImpl implements EventHandler<RetryProcessorImpl.RetryEvent>,
                        CommitTable commitTable,
                        ReplyProcessor replyProc,
                        Panicker panicker,
-                       ObjectPool<Batch> batchPool)
+                       ObjectPool<Batch> batchPool,
+                       RecentCommitsCache recentCommits,
+                       CommitJournal journal,
+                       TSOServerConfig config)
             throws InterruptedException, ExecutionException, IOException {
 
         // ------------------------------------------------------------------------------------------------------------
@@ -96,14 +111,22 @@ class RetryProcessorImpl implements EventHandler<RetryProcessorImpl.RetryEvent>,
         // Attribute initialization
         // ------------------------------------------------------------------------------------------------------------
 
-        this.commitTableClient = commitTable.getClient();
+        this.commitTableClient = journal.wrap(commitTable.getClient());
         this.replyProc = replyProc;
         this.batchPool = batchPool;
+        this.recentCommits = recentCommits;
+        int numReaders = config.getNumConcurrentRetryCTReaders();
+        this.commitTableReaderExec = new ThreadPoolExecutor(numReaders, numReaders, 0L, MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(numReaders),
+                new ThreadFactoryBuilder().setNameFormat("retry-ct-reader-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
 
         // Metrics configuration
         this.txAlreadyCommittedMeter = metrics.meter(name("tso", "retries", "commits", "tx-already-committed"));
         this.invalidTxMeter = metrics.meter(name("tso", "retries", "aborts", "tx-invalid"));
         this.noCTFoundMeter = metrics.meter(name("tso", "retries", "aborts", "tx-without-commit-timestamp"));
+        this.recentCommitsHitMeter = metrics.meter(name("tso", "retries", "recent-commits", "hits"));
+        this.recentCommitsMissMeter = metrics.meter(name("tso", "retries", "recent-commits", "misses"));
 
         LOG.info("RetryProcessor initialized");
 
@@ -115,34 +138,65 @@ class RetryProcessorImpl implements EventHandler<RetryProcessorImpl.RetryEvent>,
         switch (event.getType()) {
             case COMMIT:
                 handleCommitRetry(event);
-                event.getMonCtx().timerStop("retry.processor.commit-retry.latency");
                 break;
             default:
                 assert (false);
                 break;
         }
-        event.getMonCtx().publish();
 
     }
 
     private void handleCommitRetry(RetryEvent event) {
 
-        long startTimestamp = event.getStartTimestamp();
+        // The event is reused by the ring once we return, so take what is needed from it
+        final long startTimestamp = event.getStartTimestamp();
+        final Channel channel = event.getChannel();
+        final MonitoringContext monCtx = event.getMonCtx();
+
+        long outcome = recentCommits.get(startTimestamp);
+        if (outcome != RecentCommitsCache.NOT_FOUND) {
+            if (outcome == RecentCommitsCache.ABORTED) {
+                LOG.trace("Tx {}: Found as aborted in recent commits. Sending Abort to client.", startTimestamp);
+                replyProc.sendAbortResponse(startTimestamp, channel);
+            } else {
+                LOG.trace("Tx {}: Found as committed in recent commits. Sending Commit to client.", startTimestamp);
+                replyProc.sendCommitResponse(startTimestamp, outcome, channel);
+            }
+            monCtx.timerStop("retry.processor.commit-retry.latency");
+            monCtx.publish();
+            recentCommitsHitMeter.mark();
+            return;
+        }
+
+        commitTableReaderExec.execute(new Runnable() {
+            @Override
+            public void run() {
+                disambiguateWithCommitTable(startTimestamp, channel);
+                monCtx.timerStop("retry.processor.commit-retry.latency");
+                monCtx.publish();
+            }
+        });
+        recentCommitsMissMeter.mark();
+
+    }
+
+    private void disambiguateWithCommitTable(long startTimestamp, Channel channel) {
+
         try {
             Optional<CommitTimestamp> commitTimestamp = commitTableClient.getCommitTimestamp(startTimestamp).get();
             if (commitTimestamp.isPresent()) {
                 if (commitTimestamp.get().isValid()) {
                     LOG.trace("Tx {}: Valid commit TS found in Commit Table. Sending Commit to client.", startTimestamp);
-                    replyProc.sendCommitResponse(startTimestamp, commitTimestamp.get().getValue(), event.getChannel());
+                    replyProc.sendCommitResponse(startTimestamp, commitTimestamp.get().getValue(), channel);
                     txAlreadyCommittedMeter.mark();
                 } else {
                     LOG.trace("Tx {}: Invalid tx marker found. Sending Abort to client.", startTimestamp);
-                    replyProc.sendAbortResponse(startTimestamp, event.getChannel());
+                    replyProc.sendAbortResponse(startTimestamp, channel);
                     invalidTxMeter.mark();
                 }
             } else {
                 LOG.trace("Tx {}: No Commit TS found in Commit Table. Sending Abort to client.", startTimestamp);
-                replyProc.sendAbortResponse(startTimestamp, event.getChannel());
+                replyProc.sendAbortResponse(startTimestamp, channel);
                 noCTFoundMeter.mark();
             }
         } catch (InterruptedException e) {
@@ -178,6 +232,14 @@ class RetryProcessorImpl implements EventHandler<RetryProcessorImpl.RetryEvent>,
             LOG.error("Interrupted whilst finishing Retry Processor Disruptor executor");
             Thread.currentThread().interrupt();
         }
+        commitTableReaderExec.shutdownNow();
+        try {
+            commitTableReaderExec.awaitTermination(3, SECONDS);
+            LOG.info("\tRetry Processor Commit Table readers shutdown");
+        } catch (InterruptedException e) {
+            LOG.error("Interrupted whilst finishing Retry Processor Commit Table readers");
+            Thread.currentThread().interrupt();
+        }
         LOG.info("Retry Processor terminated");
 
     }
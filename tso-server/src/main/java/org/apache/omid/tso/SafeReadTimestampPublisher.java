@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.omid.metrics.Gauge;
+import org.apache.omid.metrics.MetricsRegistry;
+import org.apache.omid.proto.TSOProto;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.omid.metrics.MetricsUtils.name;
+
+/**
+ * Pushes periodically the safe read timestamp to the clients that asked for it in the handshake. Clients start
+ * read-only transactions on it without requesting a timestamp from the TSO.
+ *
+ * The safe read timestamp is the highest start timestamp replied, or the one right after the highest commit timestamp
+ * replied, whatever is higher. The reply processor replies in order, so all the commits below it are durable, exactly
+ * as for any other start timestamp. Taking the commits into account keeps it up with them even when no start
+ * timestamps are requested, without allocating any.
+ *
+ * With the {@link CommitJournal} enabled, commits are replied before they reach the commit table, where readers look
+ * for them. Their replies are ignored then, and the journal reports them once propagated instead.
+ */
+@Singleton
+class SafeReadTimestampPublisher implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SafeReadTimestampPublisher.class);
+
+    static final long NO_TIMESTAMP = -1L;
+
+    private final int intervalInMs;
+    private final boolean commitsRepliedBeforePersisted;
+
+    private final ChannelGroup subscribers = new DefaultChannelGroup(SafeReadTimestampPublisher.class.getName());
+    private final ScheduledExecutorService scheduler;
+
+    private volatile long safeReadTimestamp = NO_TIMESTAMP;
+    private long lastPublishedTimestamp = NO_TIMESTAMP; // Only accessed from the scheduler thread
+
+    @Inject
+    SafeReadTimestampPublisher(TSOServerConfig config, MetricsRegistry metrics) {
+
+        this.intervalInMs = config.getSafeReadTimestampIntervalInMs();
+        this.commitsRepliedBeforePersisted = !Strings.isNullOrEmpty(config.getCommitJournalDir());
+
+        metrics.gauge(name("tso", "safeReadTimestamp"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return safeReadTimestamp;
+            }
+        });
+
+        if (isEnabled()) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("safe-read-ts-%d").setDaemon(true).build());
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        publish();
+                    } catch (Throwable t) {
+                        LOG.error("Error publishing the safe read timestamp", t);
+                    }
+                }
+            }, intervalInMs, intervalInMs, MILLISECONDS);
+            LOG.info("Publishing the safe read timestamp every {}ms", intervalInMs);
+        } else {
+            this.scheduler = null;
+        }
+
+    }
+
+    boolean isEnabled() {
+        return intervalInMs > 0;
+    }
+
+    /**
+     * Adds a client channel to receive the safe read timestamp. The channel is removed when closed
+     */
+    void subscribe(Channel channel) {
+        subscribers.add(channel);
+    }
+
+    // Called from the reply processor thread, in reply order
+
+    void timestampReplied(long startTimestamp) {
+        advanceTo(startTimestamp);
+    }
+
+    void commitReplied(long commitTimestamp) {
+        if (!commitsRepliedBeforePersisted) {
+            // Commits are visible to the snapshots starting after them
+            advanceTo(commitTimestamp + 1);
+        }
+    }
+
+    /**
+     * Called from the commit journal propagator once all the commits up to the one passed (included) can be read
+     * from the commit table
+     */
+    void commitsPersisted(long commitTimestamp) {
+        advanceTo(commitTimestamp + 1);
+    }
+
+    long getSafeReadTimestamp() {
+        return safeReadTimestamp;
+    }
+
+    // The reply processor and the journal propagator may both advance it
+    private synchronized void advanceTo(long timestamp) {
+        if (timestamp > safeReadTimestamp) {
+            safeReadTimestamp = timestamp;
+        }
+    }
+
+    @VisibleForTesting
+    void publish() {
+
+        long timestamp = safeReadTimestamp;
+        if (timestamp > lastPublishedTimestamp && !subscribers.isEmpty()) {
+            subscribers.write(TSOProto.Response.newBuilder().setSafeReadTimestamp(timestamp).build());
+            lastPublishedTimestamp = timestamp;
+        }
+
+    }
+
+    @Override
+    public void close() {
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                scheduler.awaitTermination(3, SECONDS);
+            } catch (InterruptedException e) {
+                LOG.error("Interrupted whilst finishing the safe read timestamp publisher");
+                Thread.currentThread().interrupt();
+            }
+        }
+        subscribers.clear(); // Client channels are closed by the channel handler
+
+    }
+
+}
@@ -18,7 +18,9 @@
 package org.apache.omid.tso;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.omid.PackedCellIds;
 import org.apache.omid.metrics.MetricsRegistry;
 import org.apache.omid.proto.TSOProto;
 import org.jboss.netty.bootstrap.ServerBootstrap;
@@ -48,6 +50,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.ClosedChannelException;
+import java.util.Collection;
 import java.util.concurrent.Executors;
 
 /**
@@ -74,12 +77,18 @@ public class TSOChannelHandler extends SimpleChannelHandler implements Closeable
 
     private MetricsRegistry metrics;
 
+    private SafeReadTimestampPublisher safeReadTimestampPublisher;
+
     @Inject
-    public TSOChannelHandler(TSOServerConfig config, RequestProcessor requestProcessor, MetricsRegistry metrics) {
+    public TSOChannelHandler(TSOServerConfig config,
+                             RequestProcessor requestProcessor,
+                             SafeReadTimestampPublisher safeReadTimestampPublisher,
+                             MetricsRegistry metrics) {
 
         this.config = config;
         this.metrics = metrics;
         this.requestProcessor = requestProcessor;
+        this.safeReadTimestampPublisher = safeReadTimestampPublisher;
         // Setup netty listener
         this.factory = new NioServerSocketChannelFactory(
                 Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("boss-%d").build()),
@@ -168,11 +177,53 @@ public class TSOChannelHandler extends SimpleChannelHandler implements Closeable
                 requestProcessor.timestampRequest(ctx.getChannel(), new MonitoringContext(metrics));
             } else if (request.hasCommitRequest()) {
                 TSOProto.CommitRequest cr = request.getCommitRequest();
-                requestProcessor.commitRequest(cr.getStartTimestamp(),
-                                               cr.getCellIdList(),
-                                               cr.getIsRetry(),
-                                               ctx.getChannel(),
-                                               new MonitoringContext(metrics));
+                Collection<Long> writeSet;
+                if (cr.hasPackedCellIds()) {
+                    try {
+                        writeSet = Longs.asList(PackedCellIds.decode(cr.getPackedCellIds(), cr.getNumPackedCellIds()));
+                    } catch (IOException ioe) {
+                        LOG.error("Malformed cell ids in commit request {}. Closing channel {}",
+                                  cr.getStartTimestamp(), ctx.getChannel(), ioe);
+                        ctx.getChannel().close();
+                        return;
+                    }
+                } else {
+                    writeSet = cr.getCellIdList();
+                }
+                if (cr.getIsChunk()) {
+                    requestProcessor.commitChunk(cr.getStartTimestamp(), writeSet, cr.getNumChunkedCellIds());
+                } else if (cr.hasPackedCheckedCellIds()) {
+                    Collection<Long> checkedSet;
+                    try {
+                        checkedSet = Longs.asList(PackedCellIds.decode(cr.getPackedCheckedCellIds(),
+                                                                       cr.getNumPackedCheckedCellIds()));
+                    } catch (IOException ioe) {
+                        LOG.error("Malformed checked cell ids in commit request {}. Closing channel {}",
+                                  cr.getStartTimestamp(), ctx.getChannel(), ioe);
+                        ctx.getChannel().close();
+                        return;
+                    }
+                    requestProcessor.commitRequest(cr.getStartTimestamp(),
+                                                   writeSet,
+                                                   checkedSet,
+                                                   cr.getNumChunkedCellIds(),
+                                                   cr.getIsRetry(),
+                                                   ctx.getChannel(),
+                                                   new MonitoringContext(metrics));
+                } else if (cr.getNumChunkedCellIds() > 0) {
+                    requestProcessor.commitRequest(cr.getStartTimestamp(),
+                                                   writeSet,
+                                                   cr.getNumChunkedCellIds(),
+                                                   cr.getIsRetry(),
+                                                   ctx.getChannel(),
+                                                   new MonitoringContext(metrics));
+                } else {
+                    requestProcessor.commitRequest(cr.getStartTimestamp(),
+                                                   writeSet,
+                                                   cr.getIsRetry(),
+                                                   ctx.getChannel(),
+                                                   new MonitoringContext(metrics));
+                }
             } else {
                 LOG.error("Invalid request {}. Closing channel {}", request, ctx.getChannel());
                 ctx.getChannel().close();
@@ -230,10 +281,17 @@ public class TSOChannelHandler extends SimpleChannelHandler implements Closeable
     private void checkHandshake(final ChannelHandlerContext ctx, TSOProto.HandshakeRequest request) {
 
         TSOProto.HandshakeResponse.Builder response = TSOProto.HandshakeResponse.newBuilder();
+        boolean pushSafeReadTimestamp = false;
         if (request.hasClientCapabilities()) {
 
+            pushSafeReadTimestamp = safeReadTimestampPublisher.isEnabled()
+                    && request.getClientCapabilities().getSafeReadTimestamps();
             response.setClientCompatible(true)
-                    .setServerCapabilities(TSOProto.Capabilities.newBuilder().build());
+                    .setServerCapabilities(TSOProto.Capabilities.newBuilder()
+                                                   .setSafeReadTimestamps(pushSafeReadTimestamp)
+                                                   .setPackedCellIds(true)
+                                                   .setChunkedCommits(true)
+                                                   .setCheckedCellIds(true).build());
             TSOChannelContext tsoCtx = new TSOChannelContext();
             tsoCtx.setHandshakeComplete();
             ctx.setAttachment(tsoCtx);
@@ -241,6 +299,9 @@ public class TSOChannelHandler extends SimpleChannelHandler implements Closeable
             response.setClientCompatible(false);
         }
         ctx.getChannel().write(TSOProto.Response.newBuilder().setHandshakeResponse(response.build()).build());
+        if (pushSafeReadTimestamp) { // Pushes must not reach the client before the handshake response
+            safeReadTimestampPublisher.subscribe(ctx.getChannel());
+        }
 
     }
 
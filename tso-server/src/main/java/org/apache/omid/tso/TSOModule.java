@@ -18,6 +18,7 @@
 package org.apache.omid.tso;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provider;
 import com.google.inject.Provides;
@@ -35,15 +36,34 @@ class TSOModule extends AbstractModule {
 
     TSOModule(TSOServerConfig config) {
         Preconditions.checkArgument(config.getNumConcurrentCTWriters() >= 2, "# of Commit Table writers must be >= 2");
+        // The commits acknowledged but not propagated yet are only in the local journal, so a replica taking over
+        // from other host would miss them
+        Preconditions.checkArgument(Strings.isNullOrEmpty(config.getCommitJournalDir()) || !isReplicated(config),
+                                    "The commit journal (commitJournalDir) can't be used in HA mode nor with a warm "
+                                    + "standby (standbyReplicationPort/standbyReplicationPeer)");
         this.config = config;
     }
 
+    private static boolean isReplicated(TSOServerConfig config) {
+        return config.getLeaseModule() instanceof HALeaseManagementModule
+                || config.getStandbyReplicationPort() != 0
+                || !Strings.isNullOrEmpty(config.getStandbyReplicationPeer());
+    }
+
     @Override
     protected void configure() {
 
         bind(TSOChannelHandler.class).in(Singleton.class);
         bind(TSOStateManager.class).to(TSOStateManagerImpl.class).in(Singleton.class);
-        bind(TimestampOracle.class).to(TimestampOracleImpl.class).in(Singleton.class);
+        switch (config.getTimestampTypeEnum()) {
+            case HYBRID_CLOCK:
+                bind(TimestampOracle.class).to(HybridClockTimestampOracle.class).in(Singleton.class);
+                break;
+            case COUNTER:
+            default:
+                bind(TimestampOracle.class).to(TimestampOracleImpl.class).in(Singleton.class);
+                break;
+        }
         bind(Panicker.class).to(SystemExitPanicker.class).in(Singleton.class);
 
         install(new BatchPoolModule(config));
@@ -42,6 +42,8 @@ public class TSOServer extends AbstractIdleService {
 
     public static final String TSO_HOST_AND_PORT_KEY = "tso.hostandport";
 
+    @Inject
+    private TSOServerConfig config;
     @Inject
     private TSOStateManager tsoStateManager;
     @Inject
@@ -52,6 +54,14 @@ public class TSOServer extends AbstractIdleService {
     private RetryProcessor retryProcessor;
     @Inject
     private ReplyProcessor replyProcessor;
+    @Inject
+    private CommitJournal commitJournal;
+    @Inject
+    private ConflictMapReplicator conflictMapReplicator;
+    @Inject
+    private ConflictMapReplica conflictMapReplica;
+    @Inject
+    private SafeReadTimestampPublisher safeReadTimestampPublisher;
 
     // ----------------------------------------------------------------------------------------------------------------
     // High availability related variables
@@ -97,6 +107,7 @@ public class TSOServer extends AbstractIdleService {
         LOG.info("Starting TSO Server");
         LOG.info("{}", DASH_SEPARATOR_80_CHARS);
         tsoStateManager.register(requestProcessor);
+        tsoStateManager.register(conflictMapReplicator);
         leaseManagement.startService();
         LOG.info("{}", DASH_SEPARATOR_80_CHARS);
         if (leaseManagement instanceof VoidLeaseManager) {
@@ -114,12 +125,25 @@ public class TSOServer extends AbstractIdleService {
         LOG.info("{}", DASH_SEPARATOR_80_CHARS);
         LOG.info("Shutting Down TSO Server");
         LOG.info("{}", DASH_SEPARATOR_80_CHARS);
+        if (config.isHandOffOnShutdown()
+                && leaseManagement instanceof LeaseManager && leaseManagement.stillInLeasePeriod()) {
+            try {
+                handOff();
+            } catch (Exception e) {
+                LOG.error("Error handing off mastership. Other replica will take over when the lease expires", e);
+            }
+        }
         leaseManagement.stopService();
+        safeReadTimestampPublisher.close();
         tsoStateManager.unregister(requestProcessor);
+        tsoStateManager.unregister(conflictMapReplicator);
         requestProcessor.close();
         persistenceProcessor.close();
         retryProcessor.close();
         replyProcessor.close();
+        commitJournal.close();
+        conflictMapReplicator.close();
+        conflictMapReplica.close();
         LOG.info("{}", DASH_SEPARATOR_80_CHARS);
         LOG.info("TSO Server stopped");
         LOG.info("{}", DASH_SEPARATOR_80_CHARS);
@@ -127,6 +151,26 @@ public class TSOServer extends AbstractIdleService {
 
     // ----------------------------------------------------------------------------------------------------------------
 
+    /**
+     * Allows to move the mastership to other TSO replica without failing the requests in flight (e.g. for rolling
+     * upgrades). The requests already received are persisted and replied, the ones received afterwards are
+     * discarded and the lease is released, so other replica can take over straight away. Clients follow the new
+     * master through the current TSO ZK node. This instance won't try to become the master again.
+     */
+    public void handOff() throws Exception {
+
+        if (!(leaseManagement instanceof LeaseManager)) {
+            throw new IllegalStateException("Mastership can only be handed off when running on HA mode");
+        }
+        LOG.info("Handing off mastership...");
+        requestProcessor.drain().get();
+        persistenceProcessor.drain();
+        replyProcessor.drain();
+        leaseManagement.releaseLease();
+        LOG.info("Mastership handed off");
+
+    }
+
     private void attachShutDownHook() {
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
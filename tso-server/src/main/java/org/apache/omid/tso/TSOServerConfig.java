@@ -44,6 +44,11 @@ public class TSOServerConfig extends SecureHBaseConfig {
         LOW_CPU
     };
 
+    public static enum TIMESTAMP_TYPE {
+        COUNTER,
+        HYBRID_CLOCK
+    };
+
     // ----------------------------------------------------------------------------------------------------------------
     // Instantiation
     // ----------------------------------------------------------------------------------------------------------------
@@ -78,6 +83,30 @@ public class TSOServerConfig extends SecureHBaseConfig {
 
     private int batchPersistTimeoutInMs;
 
+    private int recentCommitsCacheSize;
+
+    private int numConcurrentRetryCTReaders;
+
+    private String commitJournalDir;
+
+    private int standbyReplicationPort;
+
+    private String standbyReplicationPeer;
+
+    private int standbyReplicationTimeoutInMs;
+
+    private int standbyReattachIntervalInMs;
+
+    private String standbyReplicaPath;
+
+    private boolean handOffOnShutdown;
+
+    private int safeReadTimestampIntervalInMs;
+
+    private String timestampType;
+
+    private long maxClockSkewInMs;
+
     private String waitStrategy;
 
     private String networkIfaceName = NetworkUtils.getDefaultNetworkInterface();
@@ -122,6 +151,86 @@ public class TSOServerConfig extends SecureHBaseConfig {
         this.batchPersistTimeoutInMs = value;
     }
 
+    public int getRecentCommitsCacheSize() {
+        return recentCommitsCacheSize;
+    }
+
+    public void setRecentCommitsCacheSize(int recentCommitsCacheSize) {
+        this.recentCommitsCacheSize = recentCommitsCacheSize;
+    }
+
+    public int getNumConcurrentRetryCTReaders() {
+        return numConcurrentRetryCTReaders;
+    }
+
+    public void setNumConcurrentRetryCTReaders(int numConcurrentRetryCTReaders) {
+        this.numConcurrentRetryCTReaders = numConcurrentRetryCTReaders;
+    }
+
+    public String getCommitJournalDir() {
+        return commitJournalDir;
+    }
+
+    public void setCommitJournalDir(String commitJournalDir) {
+        this.commitJournalDir = commitJournalDir;
+    }
+
+    public int getStandbyReplicationPort() {
+        return standbyReplicationPort;
+    }
+
+    public void setStandbyReplicationPort(int standbyReplicationPort) {
+        this.standbyReplicationPort = standbyReplicationPort;
+    }
+
+    public String getStandbyReplicationPeer() {
+        return standbyReplicationPeer;
+    }
+
+    public void setStandbyReplicationPeer(String standbyReplicationPeer) {
+        this.standbyReplicationPeer = standbyReplicationPeer;
+    }
+
+    public int getStandbyReplicationTimeoutInMs() {
+        return standbyReplicationTimeoutInMs;
+    }
+
+    public void setStandbyReplicationTimeoutInMs(int standbyReplicationTimeoutInMs) {
+        this.standbyReplicationTimeoutInMs = standbyReplicationTimeoutInMs;
+    }
+
+    public int getStandbyReattachIntervalInMs() {
+        return standbyReattachIntervalInMs;
+    }
+
+    public void setStandbyReattachIntervalInMs(int standbyReattachIntervalInMs) {
+        this.standbyReattachIntervalInMs = standbyReattachIntervalInMs;
+    }
+
+    public String getStandbyReplicaPath() {
+        return standbyReplicaPath;
+    }
+
+    public void setStandbyReplicaPath(String standbyReplicaPath) {
+        this.standbyReplicaPath = standbyReplicaPath;
+    }
+
+    public boolean isHandOffOnShutdown() {
+        return handOffOnShutdown;
+    }
+
+    public void setHandOffOnShutdown(boolean handOffOnShutdown) {
+        this.handOffOnShutdown = handOffOnShutdown;
+    }
+
+    public int getSafeReadTimestampIntervalInMs() {
+        return safeReadTimestampIntervalInMs;
+    }
+
+    public void setSafeReadTimestampIntervalInMs(int safeReadTimestampIntervalInMs) {
+        this.safeReadTimestampIntervalInMs = safeReadTimestampIntervalInMs;
+    }
+
     public String getNetworkIfaceName() {
         return networkIfaceName;
     }
@@ -162,6 +271,26 @@ public class TSOServerConfig extends SecureHBaseConfig {
         this.metrics = metrics;
     }
 
+    public String getTimestampType() {
+        return timestampType;
+    }
+
+    public TIMESTAMP_TYPE getTimestampTypeEnum() {
+        return TSOServerConfig.TIMESTAMP_TYPE.valueOf(timestampType);
+    }
+
+    public void setTimestampType(String timestampType) {
+        this.timestampType = timestampType;
+    }
+
+    public long getMaxClockSkewInMs() {
+        return maxClockSkewInMs;
+    }
+
+    public void setMaxClockSkewInMs(long maxClockSkewInMs) {
+        this.maxClockSkewInMs = maxClockSkewInMs;
+    }
+
     public String getWaitStrategy() {
         return waitStrategy;
     }
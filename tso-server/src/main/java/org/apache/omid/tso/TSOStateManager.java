@@ -32,9 +32,11 @@ public interface TSOStateManager {
 
         // TSO state variables
         private final long lowWatermark;
+        private final long epoch;
 
         public TSOState(long lowWatermark, long epoch) {
             this.lowWatermark = lowWatermark;
+            this.epoch = epoch;
         }
 
         public long getLowWatermark() {
@@ -42,8 +44,7 @@ public interface TSOStateManager {
         }
 
         public long getEpoch() {
-            // In this implementation the epoch == low watermark
-            return lowWatermark;
+            return epoch;
         }
 
         @Override
@@ -38,9 +38,12 @@ public class TSOStateManagerImpl implements TSOStateManager {
 
     private TimestampOracle timestampOracle;
 
+    private ConflictMapReplica conflictMapReplica;
+
     @Inject
-    public TSOStateManagerImpl(TimestampOracle timestampOracle) {
+    public TSOStateManagerImpl(TimestampOracle timestampOracle, ConflictMapReplica conflictMapReplica) {
         this.timestampOracle = timestampOracle;
+        this.conflictMapReplica = conflictMapReplica;
     }
 
     @Override
@@ -62,9 +65,10 @@ public class TSOStateManagerImpl implements TSOStateManager {
         LOG.info("Initializing TSO Server state...");
         // The timestamp oracle dictates the new state
         timestampOracle.initialize();
-        long lowWatermark = timestampOracle.getLast();
-        // In this implementation the epoch == low watermark
-        long epoch = lowWatermark;
+        long epoch = timestampOracle.getLast();
+        // The epoch is also the low watermark, unless the conflict map replicated from the previous master allows
+        // to go on with the transactions it started
+        long lowWatermark = conflictMapReplica.takeOver(epoch);
         state = new TSOState(lowWatermark, epoch);
 
         // Then, notify registered observers about the new state
@@ -50,4 +50,9 @@ public class VoidLeaseManager implements LeaseManagement {
         return true;
     }
 
+    @Override
+    public void releaseLease() throws LeaseManagementException {
+        throw new LeaseManagementException("There's no lease to release when not running in HA mode");
+    }
+
 }
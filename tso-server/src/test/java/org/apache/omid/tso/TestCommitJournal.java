@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import com.google.common.base.Optional;
+import com.google.common.io.Files;
+import org.apache.omid.committable.CommitTable;
+import org.apache.omid.committable.CommitTable.CommitTimestamp;
+import org.apache.omid.committable.InMemoryCommitTable;
+import org.apache.omid.metrics.MetricsRegistry;
+import org.apache.omid.metrics.NullMetricsProvider;
+import org.jboss.netty.channel.Channel;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestCommitJournal {
+
+    private static final long ST_TX_1 = 1L;
+    private static final long CT_TX_1 = 2L;
+    private static final long ST_TX_2 = 3L;
+    private static final long CT_TX_2 = 4L;
+
+    private final MetricsRegistry metrics = new NullMetricsProvider();
+
+    private File journalDir;
+    private TSOServerConfig config;
+    private InMemoryCommitTable commitTable;
+    private CountDownLatch propagationAllowed;
+    private SafeReadTimestampPublisher publisher;
+
+    @BeforeMethod
+    public void setUp() {
+        journalDir = Files.createTempDir();
+        config = new TSOServerConfig();
+        config.setCommitJournalDir(journalDir.getAbsolutePath());
+        config.setSafeReadTimestampIntervalInMs(0); // Not published, only tracked
+        commitTable = new InMemoryCommitTable();
+        propagationAllowed = new CountDownLatch(1);
+        publisher = new SafeReadTimestampPublisher(config, metrics);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        for (File segment : journalDir.listFiles()) {
+            segment.delete();
+        }
+        journalDir.delete();
+    }
+
+    @Test(timeOut = 10_000)
+    public void testCommitJournalIsAcceptedWithoutReplicas() throws Exception {
+        new TSOModule(config);
+    }
+
+    @Test(timeOut = 10_000, expectedExceptions = IllegalArgumentException.class)
+    public void testCommitJournalIsRejectedInHAMode() throws Exception {
+        config.setLeaseModule(new HALeaseManagementModule(1000, "/tso-lease", "/current-tso", "localhost:2181", "omid"));
+        new TSOModule(config);
+    }
+
+    @Test(timeOut = 10_000, expectedExceptions = IllegalArgumentException.class)
+    public void testCommitJournalIsRejectedWithAWarmStandby() throws Exception {
+        config.setStandbyReplicationPeer("localhost:4321");
+        new TSOModule(config);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testJournaledCommitsAreFoundUntilPropagated() throws Exception {
+
+        CommitJournal journal = newJournal(new GatedCommitTable());
+        CommitTable.Client client = journal.wrap(commitTable.getClient());
+
+        journal.append(0, batchWithCommit(ST_TX_1, CT_TX_1));
+        journal.append(1, batchWithCommit(ST_TX_2, CT_TX_2));
+
+        // Not in the commit table yet, but found through the journal
+        assertFalse(commitTable.getClient().getCommitTimestamp(ST_TX_1).get().isPresent());
+        Optional<CommitTimestamp> commitTimestamp = client.getCommitTimestamp(ST_TX_1).get();
+        assertTrue(commitTimestamp.isPresent());
+        assertEquals(commitTimestamp.get().getValue(), CT_TX_1);
+        assertFalse(client.tryInvalidateTransaction(ST_TX_2).get(), "Journaled commits can't be invalidated");
+
+        propagationAllowed.countDown();
+        journal.awaitPropagation(1);
+
+        assertEquals(commitTable.getClient().getCommitTimestamp(ST_TX_1).get().get().getValue(), CT_TX_1);
+        assertEquals(commitTable.getClient().getCommitTimestamp(ST_TX_2).get().get().getValue(), CT_TX_2);
+        journal.close();
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testBatchesArePropagatedInSequenceOrder() throws Exception {
+
+        propagationAllowed.countDown();
+        CommitJournal journal = newJournal(commitTable);
+
+        // Batch 1 can't be propagated before batch 0 is journaled
+        journal.append(1, batchWithCommit(ST_TX_2, CT_TX_2));
+        Thread.sleep(100);
+        assertFalse(commitTable.getClient().getCommitTimestamp(ST_TX_2).get().isPresent());
+
+        journal.append(0, batchWithCommit(ST_TX_1, CT_TX_1));
+        journal.awaitPropagation(1);
+        assertTrue(commitTable.getClient().getCommitTimestamp(ST_TX_1).get().isPresent());
+        assertTrue(commitTable.getClient().getCommitTimestamp(ST_TX_2).get().isPresent());
+        journal.close();
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testNonPropagatedCommitsAreRecoveredOnRestart() throws Exception {
+
+        CommitJournal journal = newJournal(new GatedCommitTable());
+        journal.append(0, batchWithCommit(ST_TX_1, CT_TX_1));
+        journal.close();
+        assertFalse(commitTable.getClient().getCommitTimestamp(ST_TX_1).get().isPresent());
+
+        // The new instance replays the journal before accepting new appends
+        newJournal(commitTable).close();
+        assertEquals(commitTable.getClient().getCommitTimestamp(ST_TX_1).get().get().getValue(), CT_TX_1);
+        assertEquals(journalDir.listFiles().length, 1, "Only the new segment should be left");
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testSafeReadTimestampOnlyCoversPropagatedCommits() throws Exception {
+
+        CommitJournal journal = newJournal(new GatedCommitTable());
+        journal.append(0, batchWithCommit(ST_TX_1, CT_TX_1));
+
+        // Replied as soon as journaled, but a snapshot including it would not find it in the commit table yet
+        publisher.commitReplied(CT_TX_1);
+        assertEquals(publisher.getSafeReadTimestamp(), SafeReadTimestampPublisher.NO_TIMESTAMP);
+
+        propagationAllowed.countDown();
+        journal.awaitPropagation(0);
+        assertTrue(commitTable.getClient().getCommitTimestamp(ST_TX_1).get().isPresent());
+        assertEquals(publisher.getSafeReadTimestamp(), CT_TX_1 + 1);
+        journal.close();
+
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------------------------------------------------------
+
+    private CommitJournal newJournal(CommitTable table) throws IOException {
+        return new CommitJournal(config, table, publisher, metrics, mock(Panicker.class));
+    }
+
+    private Batch batchWithCommit(long startTimestamp, long commitTimestamp) {
+        Batch batch = new Batch(0, 1);
+        batch.addCommit(startTimestamp, commitTimestamp, mock(Channel.class), new MonitoringContext(metrics));
+        return batch;
+    }
+
+    // Commit table whose writer does not flush until propagation is allowed by the test
+    private class GatedCommitTable implements CommitTable {
+
+        @Override
+        public Writer getWriter() throws IOException {
+            final Writer writer = commitTable.getWriter();
+            final List<long[]> buffer = new ArrayList<>();
+            return new Writer() {
+                @Override
+                public void addCommittedTransaction(long startTimestamp, long commitTimestamp) throws IOException {
+                    buffer.add(new long[] { startTimestamp, commitTimestamp });
+                }
+
+                @Override
+                public void updateLowWatermark(long lowWatermark) throws IOException {
+                    writer.updateLowWatermark(lowWatermark);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    try {
+                        propagationAllowed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted whilst waiting to flush", e);
+                    }
+                    for (long[] commit : buffer) {
+                        writer.addCommittedTransaction(commit[0], commit[1]);
+                    }
+                    buffer.clear();
+                    writer.flush();
+                }
+
+                @Override
+                public void clearWriteBuffer() {
+                    buffer.clear();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
+        }
+
+        @Override
+        public Client getClient() {
+            return commitTable.getClient();
+        }
+
+    }
+
+}
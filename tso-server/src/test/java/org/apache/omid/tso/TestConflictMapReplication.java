@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import com.google.common.base.Charsets;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.omid.TestUtils;
+import org.apache.omid.committable.InMemoryCommitTable;
+import org.apache.omid.metrics.NullMetricsProvider;
+import org.apache.omid.tso.TSOStateManager.TSOState;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+
+public class TestConflictMapReplication {
+
+    private static final long MASTER_EPOCH = 100L;
+    private static final long STANDBY_EPOCH = 200L;
+    private static final String STANDBY_REPLICA_PATH = "/test-standby-replica";
+
+    private TestingServer zkServer;
+    private CuratorFramework zkClient;
+
+    private TSOServerConfig config;
+    private CommitHashMap replicaConflictMap;
+    private ConflictMapReplica replica;
+    private ConflictMapReplicator replicator;
+
+    @BeforeClass
+    public void beforeClass() throws Exception {
+        int zkPort = TestUtils.getFreeLocalPort();
+        zkServer = TestUtils.provideTestingZKServer(zkPort);
+        zkClient = TestUtils.provideConnectedZKClient("localhost:" + zkPort);
+    }
+
+    @AfterClass
+    public void afterClass() throws Exception {
+        zkClient.close();
+        CloseableUtils.closeQuietly(zkServer);
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+
+        int replicationPort = TestUtils.getFreeLocalPort();
+        config = new TSOServerConfig();
+        config.setStandbyReplicationPort(replicationPort);
+        config.setStandbyReplicationPeer("localhost:" + replicationPort);
+        config.setStandbyReplicationTimeoutInMs(1000);
+        config.setStandbyReattachIntervalInMs(100);
+        config.setStandbyReplicaPath(STANDBY_REPLICA_PATH);
+
+        replicaConflictMap = new CommitHashMap(1000);
+        replica = new ConflictMapReplica(config, replicaConflictMap, new InMemoryCommitTable());
+        replica.setZKClient(zkClient);
+
+        replicator = new ConflictMapReplicator(config, new NullMetricsProvider(), mock(Panicker.class));
+        replicator.setZKClient(zkClient);
+        replicator.update(new TSOState(MASTER_EPOCH, MASTER_EPOCH));
+
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        replicator.close();
+        replica.close();
+    }
+
+    @Test(timeOut = 10_000)
+    public void testStandbyTakesOverWithTheReplicatedConflictMap() throws Exception {
+
+        replicator.replicateCommit(MASTER_EPOCH + 2, Arrays.asList(1L, 2L));
+        replicator.replicateCommit(MASTER_EPOCH + 4, Collections.singletonList(3L));
+        replicator.awaitReplication(MASTER_EPOCH + 4);
+
+        assertEquals(replicaConflictMap.getLatestWriteForCell(1L), MASTER_EPOCH + 2);
+        assertEquals(replicaConflictMap.getLatestWriteForCell(3L), MASTER_EPOCH + 4);
+
+        // Transactions started by the previous master can still commit
+        assertEquals(replica.takeOver(STANDBY_EPOCH), MASTER_EPOCH);
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testStandbyDroppedByTheMasterTakesOverWithoutReplica() throws Exception {
+
+        replicator.replicateCommit(MASTER_EPOCH + 2, Arrays.asList(1L, 2L));
+        replicator.awaitReplication(MASTER_EPOCH + 2);
+
+        // The standby stops answering, so the master discards its replica before going on
+        replica.close();
+        replicator.replicateCommit(MASTER_EPOCH + 4, Collections.singletonList(3L));
+        replicator.awaitReplication(MASTER_EPOCH + 4);
+
+        assertEquals(replica.takeOver(STANDBY_EPOCH), STANDBY_EPOCH);
+        assertEquals(replicaConflictMap.getLatestWriteForCell(1L), 0L);
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testStandbyDroppedByTheMasterIsAttachedAgain() throws Exception {
+
+        replicator.replicateCommit(MASTER_EPOCH + 2, Arrays.asList(1L, 2L));
+        replicator.awaitReplication(MASTER_EPOCH + 2);
+
+        // The standby is dropped and the commits decided until it's back are not streamed
+        replica.close();
+        replicator.replicateCommit(MASTER_EPOCH + 4, Collections.singletonList(3L));
+        replicator.awaitReplication(MASTER_EPOCH + 4);
+        replicator.replicateCommit(MASTER_EPOCH + 6, Collections.singletonList(4L));
+        replicator.awaitReplication(MASTER_EPOCH + 6);
+        assertEquals(readStandbyReplicaEpoch(), "");
+
+        // Once the standby is back, the master attaches it again with a fresh replica
+        replicaConflictMap = new CommitHashMap(1000);
+        replica = new ConflictMapReplica(config, replicaConflictMap, new InMemoryCommitTable());
+        replica.setZKClient(zkClient);
+        while (!readStandbyReplicaEpoch().equals(Long.toString(MASTER_EPOCH))) {
+            Thread.sleep(10);
+        }
+        replicator.replicateCommit(MASTER_EPOCH + 8, Collections.singletonList(5L));
+        replicator.awaitReplication(MASTER_EPOCH + 8);
+
+        assertEquals(replicaConflictMap.getLatestWriteForCell(1L), 0L);
+        assertEquals(replicaConflictMap.getLatestWriteForCell(4L), 0L);
+        assertEquals(replicaConflictMap.getLatestWriteForCell(5L), MASTER_EPOCH + 8);
+
+        // Only the transactions started after the commits not streamed can still commit
+        assertEquals(replica.takeOver(STANDBY_EPOCH), MASTER_EPOCH + 6);
+
+    }
+
+    private String readStandbyReplicaEpoch() throws Exception {
+        return new String(zkClient.getData().forPath(STANDBY_REPLICA_PATH), Charsets.UTF_8);
+    }
+
+}
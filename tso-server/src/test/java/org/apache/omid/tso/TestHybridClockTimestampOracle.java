@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import org.apache.omid.metrics.NullMetricsProvider;
+import org.apache.omid.tso.HybridClockTimestampOracle.Clock;
+import org.apache.omid.tso.TimestampOracleImpl.InMemoryTimestampStorage;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.omid.tso.HybridClockTimestampOracle.toPhysicalTimeInMs;
+import static org.apache.omid.tso.HybridClockTimestampOracle.toTimestamp;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestHybridClockTimestampOracle {
+
+    private static final long START_TIME_IN_MS = 1_000_000L;
+
+    private static class ManualClock implements Clock {
+
+        final AtomicLong timeInMs = new AtomicLong(START_TIME_IN_MS);
+        volatile long tickInMs = 0; // Time advanced on each read
+
+        @Override
+        public long currentTimeMillis() {
+            return timeInMs.getAndAdd(tickInMs);
+        }
+
+    }
+
+    private ManualClock clock;
+    private InMemoryTimestampStorage timestampStorage;
+
+    @BeforeMethod
+    public void setUp() {
+        clock = new ManualClock();
+        timestampStorage = new InMemoryTimestampStorage();
+    }
+
+    private HybridClockTimestampOracle newTimestampOracle(long maxClockSkewInMs) throws Exception {
+        HybridClockTimestampOracle timestampOracle = new HybridClockTimestampOracle(
+                new NullMetricsProvider(), timestampStorage, mock(Panicker.class), maxClockSkewInMs, clock);
+        timestampOracle.initialize();
+        return timestampOracle;
+    }
+
+    @Test(timeOut = 10_000)
+    public void testMonotonicTimestampGrowthWhenTheClockDoesNotAdvance() throws Exception {
+
+        HybridClockTimestampOracle timestampOracle = newTimestampOracle(10_000);
+
+        long last = timestampOracle.next();
+        assertEquals(last, toTimestamp(START_TIME_IN_MS));
+        for (int i = 0; i < 100_000; i++) {
+            long current = timestampOracle.next();
+            assertEquals(current, last + 1, "Not monotonic growth");
+            last = current;
+        }
+        assertEquals(timestampOracle.getLast(), last);
+        assertEquals(toPhysicalTimeInMs(last), START_TIME_IN_MS);
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testTimestampsFollowTheClock() throws Exception {
+
+        HybridClockTimestampOracle timestampOracle = newTimestampOracle(10_000);
+
+        timestampOracle.next();
+        timestampOracle.next();
+        clock.timeInMs.addAndGet(5_000);
+        long ts = timestampOracle.next();
+        assertEquals(ts, toTimestamp(START_TIME_IN_MS + 5_000));
+
+        // The clock goes backwards. The logical part keeps timestamps monotonic
+        clock.timeInMs.addAndGet(-2_000);
+        assertEquals(timestampOracle.next(), ts + 1);
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testTimestampsAreNotFartherAheadOfTheClockThanTheMaxSkew() throws Exception {
+
+        // A previous master with a clock 5 seconds ahead persisted the max timestamp
+        timestampStorage.updateMaxTimestamp(0, toTimestamp(START_TIME_IN_MS + 5_000));
+        clock.tickInMs = 10;
+
+        HybridClockTimestampOracle timestampOracle = newTimestampOracle(100);
+        long ts = timestampOracle.next();
+        assertTrue(ts > toTimestamp(START_TIME_IN_MS + 5_000));
+        assertTrue(toPhysicalTimeInMs(ts) - clock.timeInMs.get() <= 100, "Timestamp too far ahead of the clock");
+
+    }
+
+    @Test(timeOut = 10_000)
+    public void testTimestampsGrowAcrossRestartsEvenIfTheClockGoesBackwards() throws Exception {
+
+        HybridClockTimestampOracle timestampOracle = newTimestampOracle(120_000);
+        long last = 0;
+        for (int i = 0; i < 1000; i++) {
+            last = timestampOracle.next();
+        }
+
+        // The new master has a clock one minute behind
+        clock.timeInMs.addAndGet(-60_000);
+        HybridClockTimestampOracle newTimestampOracle = newTimestampOracle(120_000);
+        assertTrue(newTimestampOracle.next() > last, "Timestamps went back in time after a restart");
+
+    }
+
+}
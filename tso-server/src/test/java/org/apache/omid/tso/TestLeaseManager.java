@@ -384,6 +384,58 @@ public class TestLeaseManager {
         assertTrue(trowableLME.getValue().getMessage().contains("Another TSO replica was found"));
     }
 
+    @Test(timeOut = 80_000)
+    public void testLeaseHolderChangesStraightAwayWhenTheLeaseIsReleased() throws Exception {
+
+        final String TEST_TSO_LEASE_PATH = "/test_release_tsolease";
+        final String TEST_CURRENT_TSO_PATH = "/test_release_currenttso";
+
+        // Launch the master instance...
+        TSOStateManager stateManager1 = mock(TSOStateManager.class);
+        when(stateManager1.initialize()).thenReturn(new TSOState(DUMMY_LOW_WATERMARK_1, DUMMY_EPOCH_1));
+        leaseManager1 = new PausableLeaseManager(LEASE_MGR_ID_1,
+                                                 mock(TSOChannelHandler.class),
+                                                 stateManager1,
+                                                 TEST_LEASE_PERIOD_IN_MS,
+                                                 TEST_TSO_LEASE_PATH,
+                                                 TEST_CURRENT_TSO_PATH,
+                                                 zkClient,
+                                                 panicker);
+        leaseManager1.startService();
+
+        // ...let the test run for some time...
+        Thread.sleep(TEST_LEASE_PERIOD_IN_MS);
+        checkLeaseHolder(TEST_TSO_LEASE_PATH, LEASE_MGR_ID_1);
+        checkInstanceId(TEST_CURRENT_TSO_PATH, INSTANCE_ID_1 + "1");
+
+        // Then launch another instance...
+        TSOStateManager stateManager2 = mock(TSOStateManager.class);
+        when(stateManager2.initialize()).thenReturn(new TSOState(DUMMY_LOW_WATERMARK_2, DUMMY_EPOCH_2));
+        leaseManager2 = new PausableLeaseManager(LEASE_MGR_ID_2,
+                                                 mock(TSOChannelHandler.class),
+                                                 stateManager2,
+                                                 TEST_LEASE_PERIOD_IN_MS,
+                                                 TEST_TSO_LEASE_PATH,
+                                                 TEST_CURRENT_TSO_PATH,
+                                                 zkClient,
+                                                 panicker);
+        leaseManager2.startService();
+        Thread.sleep(TEST_LEASE_PERIOD_IN_MS / 2);
+
+        // ... and release the lease of the master
+        leaseManager1.releaseLease();
+        assertFalse(leaseManager1.stillInLeasePeriod());
+
+        // The second instance must take over before the lease of the first one would have expired
+        Thread.sleep(TEST_LEASE_PERIOD_IN_MS / 2);
+        checkLeaseHolder(TEST_TSO_LEASE_PATH, LEASE_MGR_ID_2);
+        checkInstanceId(TEST_CURRENT_TSO_PATH, INSTANCE_ID_2 + "2");
+        assertTrue(leaseManager2.stillInLeasePeriod());
+
+        leaseManager2.stopService();
+
+    }
+
     @Test(timeOut = 1000)
     public void testNonHALeaseManager() throws Exception {
 
@@ -126,6 +126,8 @@ public class TestPanicker {
                                                           commitTable,
                                                           mock(ReplyProcessor.class),
                                                           mock(RetryProcessor.class),
+                                                          mock(CommitJournal.class),
+                                                          mock(ConflictMapReplicator.class),
                                                           panicker);
         }
 
@@ -139,7 +141,8 @@ public class TestPanicker {
 
         proc.addCommitToBatch(1, 2, null, new MonitoringContext(metrics));
 
-        new RequestProcessorImpl(metrics, mock(TimestampOracle.class), proc, panicker, mock(TSOServerConfig.class));
+        new RequestProcessorImpl(metrics, mock(TimestampOracle.class), proc, panicker, mock(TSOServerConfig.class),
+                                 new CommitHashMap(), mock(ConflictMapReplicator.class));
 
         verify(panicker, timeout(1000).atLeastOnce()).panic(anyString(), any(Throwable.class));
 
@@ -179,6 +182,8 @@ public class TestPanicker {
                                                           commitTable,
                                                           mock(ReplyProcessor.class),
                                                           mock(RetryProcessor.class),
+                                                          mock(CommitJournal.class),
+                                                          mock(ConflictMapReplicator.class),
                                                           panicker);
         }
 
@@ -191,7 +196,8 @@ public class TestPanicker {
                                                                  metrics);
         proc.addCommitToBatch(1, 2, null, new MonitoringContext(metrics));
 
-        new RequestProcessorImpl(metrics, mock(TimestampOracle.class), proc, panicker, mock(TSOServerConfig.class));
+        new RequestProcessorImpl(metrics, mock(TimestampOracle.class), proc, panicker, mock(TSOServerConfig.class),
+                                 new CommitHashMap(), mock(ConflictMapReplicator.class));
 
         verify(panicker, timeout(1000).atLeastOnce()).panic(anyString(), any(Throwable.class));
 
@@ -110,6 +110,8 @@ public class TestPersistenceProcessor {
                                                           commitTable,
                                                           mock(ReplyProcessor.class),
                                                           retryProcessor,
+                                                          mock(CommitJournal.class),
+                                                          mock(ConflictMapReplicator.class),
                                                           panicker);
         }
 
@@ -148,7 +150,8 @@ public class TestPersistenceProcessor {
 
         ObjectPool<Batch> batchPool = spy(new BatchPoolModule(tsoConfig).getBatchPool());
 
-        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool);
+        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool,
+                                                               mock(RecentCommitsCache.class), mock(SafeReadTimestampPublisher.class));
 
         PersistenceProcessorHandler[] handlers = new PersistenceProcessorHandler[tsoConfig.getNumConcurrentCTWriters()];
         for (int i = 0; i < tsoConfig.getNumConcurrentCTWriters(); i++) {
@@ -157,6 +160,8 @@ public class TestPersistenceProcessor {
                                                           commitTable,
                                                           replyProcessor,
                                                           retryProcessor,
+                                                          mock(CommitJournal.class),
+                                                          mock(ConflictMapReplicator.class),
                                                           panicker);
         }
 
@@ -191,7 +196,8 @@ public class TestPersistenceProcessor {
 
         ObjectPool<Batch> batchPool = spy(new BatchPoolModule(tsoConfig).getBatchPool());
 
-        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool);
+        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool,
+                                                               mock(RecentCommitsCache.class), mock(SafeReadTimestampPublisher.class));
 
         PersistenceProcessorHandler[] handlers = new PersistenceProcessorHandler[tsoConfig.getNumConcurrentCTWriters()];
         for (int i = 0; i < tsoConfig.getNumConcurrentCTWriters(); i++) {
@@ -201,6 +207,8 @@ public class TestPersistenceProcessor {
                                                           commitTable,
                                                           replyProcessor,
                                                           retryProcessor,
+                                                          mock(CommitJournal.class),
+                                                          mock(ConflictMapReplicator.class),
                                                           panicker);
         }
 
@@ -258,7 +266,8 @@ public class TestPersistenceProcessor {
 
         ObjectPool<Batch> batchPool = spy(new BatchPoolModule(tsoConfig).getBatchPool());
 
-        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool);
+        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool,
+                                                               mock(RecentCommitsCache.class), mock(SafeReadTimestampPublisher.class));
 
         // Init a non-HA lease manager
         VoidLeaseManager leaseManager = spy(new VoidLeaseManager(mock(TSOChannelHandler.class),
@@ -272,6 +281,8 @@ public class TestPersistenceProcessor {
                                                           commitTable,
                                                           replyProcessor,
                                                           retryProcessor,
+                                                          mock(CommitJournal.class),
+                                                          mock(ConflictMapReplicator.class),
                                                           panicker);
         }
 
@@ -419,8 +430,11 @@ public class TestPersistenceProcessor {
                                                           "localhost:1234",
                                                           leaseManager,
                                                           commitTable,
-                                                          new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool),
+                                                          new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool,
+                                                                                 mock(RecentCommitsCache.class), mock(SafeReadTimestampPublisher.class)),
                                                           retryProcessor,
+                                                          mock(CommitJournal.class),
+                                                          mock(ConflictMapReplicator.class),
                                                           new RuntimeExceptionPanicker());
         }
         return handlers;
@@ -436,7 +450,8 @@ public class TestPersistenceProcessor {
 
         ObjectPool<Batch> batchPool = spy(new BatchPoolModule(config).getBatchPool());
 
-        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool);
+        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool,
+                                                               mock(RecentCommitsCache.class), mock(SafeReadTimestampPublisher.class));
 
         PersistenceProcessorHandler[] handlers = new PersistenceProcessorHandler[config.getNumConcurrentCTWriters()];
         for (int i = 0; i < config.getNumConcurrentCTWriters(); i++) {
@@ -446,6 +461,8 @@ public class TestPersistenceProcessor {
                                                           commitTable,
                                                           replyProcessor,
                                                           mock(RetryProcessor.class),
+                                                          mock(CommitJournal.class),
+                                                          mock(ConflictMapReplicator.class),
                                                           panicker);
         }
 
@@ -474,7 +491,8 @@ public class TestPersistenceProcessor {
 
         ObjectPool<Batch> batchPool = new BatchPoolModule(config).getBatchPool();
 
-        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool);
+        ReplyProcessor replyProcessor = new ReplyProcessorImpl(new BlockingWaitStrategy(), metrics, panicker, batchPool,
+                                                               mock(RecentCommitsCache.class), mock(SafeReadTimestampPublisher.class));
 
         PersistenceProcessorHandler[] handlers = new PersistenceProcessorHandler[config.getNumConcurrentCTWriters()];
         for (int i = 0; i < config.getNumConcurrentCTWriters(); i++) {
@@ -484,6 +502,8 @@ public class TestPersistenceProcessor {
                                                           commitTable,
                                                           replyProcessor,
                                                           retryProcessor,
+                                                          mock(CommitJournal.class),
+                                                          mock(ConflictMapReplicator.class),
                                                           panicker);
         }
 
@@ -117,6 +117,8 @@ public class TestPersistenceProcessorHandler {
                                                                  commitTable,
                                                                  replyProcessor,
                                                                  retryProcessor,
+                                                                 mock(CommitJournal.class),
+                                                                 mock(ConflictMapReplicator.class),
                                                                  panicker));
 
     }
@@ -374,6 +376,8 @@ public class TestPersistenceProcessorHandler {
                                                                  commitTable,
                                                                  replyProcessor,
                                                                  retryProcessor,
+                                                                 mock(CommitJournal.class),
+                                                                 mock(ConflictMapReplicator.class),
                                                                  panicker));
 
         // Prepare test batch
@@ -416,6 +420,8 @@ public class TestPersistenceProcessorHandler {
                                                                  commitTable,
                                                                  replyProcessor,
                                                                  retryProcessor,
+                                                                 mock(CommitJournal.class),
+                                                                 mock(ConflictMapReplicator.class),
                                                                  panicker));
 
         // Prepare test batch
@@ -451,6 +457,8 @@ public class TestPersistenceProcessorHandler {
                                                                  commitTable,
                                                                  replyProcessor,
                                                                  retryProcessor,
+                                                                 mock(CommitJournal.class),
+                                                                 mock(ConflictMapReplicator.class),
                                                                  panicker));
 
         // Prepare test batch
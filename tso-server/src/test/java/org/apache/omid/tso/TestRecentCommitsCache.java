@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.omid.tso;
+
+import org.testng.annotations.Test;
+
+import static org.apache.omid.tso.RecentCommitsCache.ABORTED;
+import static org.apache.omid.tso.RecentCommitsCache.NOT_FOUND;
+import static org.testng.Assert.assertEquals;
+
+public class TestRecentCommitsCache {
+
+    private static final int CACHE_SIZE = 1000; // Rounded up to 1024
+
+    @Test(timeOut = 10_000)
+    public void testOutcomesAreFoundUntilOverwritten() {
+
+        RecentCommitsCache cache = new RecentCommitsCache(CACHE_SIZE);
+
+        // Initially nothing is found
+        assertEquals(cache.get(0), NOT_FOUND);
+        assertEquals(cache.get(1), NOT_FOUND);
+
+        cache.addCommit(1, 2);
+        cache.addAbort(3);
+        assertEquals(cache.get(1), 2);
+        assertEquals(cache.get(3), ABORTED);
+        assertEquals(cache.get(5), NOT_FOUND);
+
+        // A transaction mapped to the same slot evicts the previous outcome
+        cache.addCommit(1 + 1024, 1 + 1025);
+        assertEquals(cache.get(1), NOT_FOUND);
+        assertEquals(cache.get(1 + 1024), 1 + 1025);
+        assertEquals(cache.get(3), ABORTED);
+
+    }
+
+}
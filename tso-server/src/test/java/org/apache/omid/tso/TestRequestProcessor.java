@@ -19,6 +19,7 @@ package org.apache.omid.tso;
 
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.SettableFuture;
+import org.apache.omid.committable.CommitTable;
 import org.apache.omid.metrics.MetricsRegistry;
 import org.apache.omid.metrics.NullMetricsProvider;
 import org.jboss.netty.channel.Channel;
@@ -34,9 +35,12 @@ import java.util.List;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertTrue;
 
@@ -65,7 +69,9 @@ public class TestRequestProcessor {
         TimestampOracleImpl timestampOracle =
                 new TimestampOracleImpl(metrics, new TimestampOracleImpl.InMemoryTimestampStorage(), new MockPanicker());
 
-        stateManager = new TSOStateManagerImpl(timestampOracle);
+        ConflictMapReplica conflictMapReplica =
+                new ConflictMapReplica(new TSOServerConfig(), new CommitHashMap(), mock(CommitTable.class));
+        stateManager = new TSOStateManagerImpl(timestampOracle, conflictMapReplica);
 
         persist = mock(PersistenceProcessor.class);
         SettableFuture<Void> f = SettableFuture.create();
@@ -75,7 +81,8 @@ public class TestRequestProcessor {
         TSOServerConfig config = new TSOServerConfig();
         config.setConflictMapSize(CONFLICT_MAP_SIZE);
 
-        requestProc = new RequestProcessorImpl(metrics, timestampOracle, persist, new MockPanicker(), config);
+        requestProc = new RequestProcessorImpl(metrics, timestampOracle, persist, new MockPanicker(), config,
+                                               new CommitHashMap(config), mock(ConflictMapReplicator.class));
 
         // Initialize the state for the experiment
         stateManager.register(requestProc);
@@ -100,6 +107,25 @@ public class TestRequestProcessor {
 
     }
 
+    @Test(timeOut = 30_000)
+    public void testRequestsAreDiscardedAfterDraining() throws Exception {
+
+        requestProc.timestampRequest(null, new MonitoringContext(metrics));
+        requestProc.drain().get();
+
+        // The requests received before are flushed...
+        verify(persist, times(1)).addTimestampToBatch(anyLong(), any(Channel.class), any(MonitoringContext.class));
+        verify(persist, atLeastOnce()).triggerCurrentBatchFlush();
+
+        // ...and the ones received afterwards, discarded
+        requestProc.timestampRequest(null, new MonitoringContext(metrics));
+        requestProc.commitRequest(1L, Collections.singletonList(1L), false, null, new MonitoringContext(metrics));
+        requestProc.drain().get();
+        verify(persist, times(1)).addTimestampToBatch(anyLong(), any(Channel.class), any(MonitoringContext.class));
+        verify(persist, never()).addAbortToBatch(anyLong(), any(Channel.class), any(MonitoringContext.class));
+
+    }
+
     @Test(timeOut = 30_000)
     public void testCommit() throws Exception {
 
@@ -139,6 +165,71 @@ public class TestRequestProcessor {
 
     }
 
+    @Test(timeOut = 30_000)
+    public void testChunkedCommit() throws Exception {
+
+        long firstTS = nextStartTimestamp(1);
+        long secondTS = nextStartTimestamp(2);
+
+        // The chunks of the commit of the second transaction are put together by its commit request...
+        requestProc.commitChunk(secondTS, Lists.newArrayList(1L, 2L), 0);
+        requestProc.commitChunk(secondTS, Lists.newArrayList(3L, 4L), 2);
+        requestProc.commitRequest(secondTS, Lists.newArrayList(5L), 4, false, null, new MonitoringContext(metrics));
+        verify(persist, timeout(100).times(1))
+                .addCommitToBatch(eq(secondTS), anyLong(), any(Channel.class), any(MonitoringContext.class));
+
+        // ...so the conflicts with any of them are detected, when found in a chunk...
+        requestProc.commitChunk(firstTS, Lists.newArrayList(3L), 0);
+        requestProc.commitRequest(firstTS, Lists.newArrayList(100L), 1, false, null, new MonitoringContext(metrics));
+        verify(persist, timeout(100).times(1)).addAbortToBatch(eq(firstTS), any(Channel.class), any(MonitoringContext.class));
+
+        // ...or when other transaction committed after the chunk was received
+        long thirdTS = nextStartTimestamp(3);
+        long fourthTS = nextStartTimestamp(4);
+        requestProc.commitChunk(thirdTS, Lists.newArrayList(200L), 0);
+        requestProc.commitRequest(fourthTS, Lists.newArrayList(200L), false, null, new MonitoringContext(metrics));
+        requestProc.commitRequest(thirdTS, Lists.newArrayList(201L), 1, false, null, new MonitoringContext(metrics));
+        verify(persist, timeout(100).times(1))
+                .addCommitToBatch(eq(fourthTS), anyLong(), any(Channel.class), any(MonitoringContext.class));
+        verify(persist, timeout(100).times(1)).addAbortToBatch(eq(thirdTS), any(Channel.class), any(MonitoringContext.class));
+
+        // Commits with chunks lost abort
+        long fifthTS = nextStartTimestamp(5);
+        requestProc.commitChunk(fifthTS, Lists.newArrayList(300L), 1);
+        requestProc.commitRequest(fifthTS, Lists.newArrayList(301L), 2, false, null, new MonitoringContext(metrics));
+        verify(persist, timeout(100).times(1)).addAbortToBatch(eq(fifthTS), any(Channel.class), any(MonitoringContext.class));
+
+    }
+
+    @Test(timeOut = 30_000)
+    public void testCheckedCellsAreOnlyLookedUp() throws Exception {
+
+        long firstTS = nextStartTimestamp(1);
+        long secondTS = nextStartTimestamp(2);
+        long thirdTS = nextStartTimestamp(3);
+
+        // The cells only checked don't conflict with each other...
+        List<Long> noCells = Collections.emptyList();
+        requestProc.commitRequest(secondTS, noCells, Lists.newArrayList(1L), 0, false, null,
+                                  new MonitoringContext(metrics));
+        requestProc.commitRequest(firstTS, noCells, Lists.newArrayList(1L), 0, false, null,
+                                  new MonitoringContext(metrics));
+        verify(persist, timeout(100).times(1))
+                .addCommitToBatch(eq(secondTS), anyLong(), any(Channel.class), any(MonitoringContext.class));
+        verify(persist, timeout(100).times(1))
+                .addCommitToBatch(eq(firstTS), anyLong(), any(Channel.class), any(MonitoringContext.class));
+
+        // ...but they do with the cells written after the transaction started
+        long fourthTS = nextStartTimestamp(4);
+        requestProc.commitRequest(fourthTS, Lists.newArrayList(1L), false, null, new MonitoringContext(metrics));
+        requestProc.commitRequest(thirdTS, Lists.newArrayList(2L), Lists.newArrayList(1L), 0, false, null,
+                                  new MonitoringContext(metrics));
+        verify(persist, timeout(100).times(1))
+                .addCommitToBatch(eq(fourthTS), anyLong(), any(Channel.class), any(MonitoringContext.class));
+        verify(persist, timeout(100).times(1)).addAbortToBatch(eq(thirdTS), any(Channel.class), any(MonitoringContext.class));
+
+    }
+
     @Test(timeOut = 30_000)
     public void testCommitRequestAbortsWhenResettingRequestProcessorState() throws Exception {
 
@@ -187,4 +278,15 @@ public class TestRequestProcessor {
 
     }
 
-}
\ No newline at end of file
+    private long nextStartTimestamp(int numTimestampRequests) throws Exception {
+
+        requestProc.timestampRequest(null, new MonitoringContext(metrics));
+        ArgumentCaptor<Long> capturedTS = ArgumentCaptor.forClass(Long.class);
+        verify(persist, timeout(100).times(numTimestampRequests)).addTimestampToBatch(capturedTS.capture(),
+                                                                                     any(Channel.class),
+                                                                                     any(MonitoringContext.class));
+        return capturedTS.getValue();
+
+    }
+
+}
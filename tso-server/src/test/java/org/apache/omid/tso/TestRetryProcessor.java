@@ -37,6 +37,11 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertEquals;
@@ -59,12 +64,17 @@ public class TestRetryProcessor {
     private MetricsRegistry metrics;
 
     private CommitTable commitTable;
+    private RecentCommitsCache recentCommits;
+    private CommitJournal journal;
 
     @BeforeMethod(alwaysRun = true, timeOut = 30_000)
-    public void initMocksAndComponents() {
+    public void initMocksAndComponents() throws Exception {
         MockitoAnnotations.initMocks(this);
         // Init components
         commitTable = new InMemoryCommitTable();
+        recentCommits = new RecentCommitsCache(1024);
+        journal = new CommitJournal(new TSOServerConfig(), commitTable, mock(SafeReadTimestampPublisher.class), metrics,
+                                    panicker); // Disabled
     }
 
     @Test(timeOut = 10_000)
@@ -72,7 +82,8 @@ public class TestRetryProcessor {
         ObjectPool<Batch> batchPool = new BatchPoolModule(new TSOServerConfig()).getBatchPool();
 
         // The element to test
-        RetryProcessor retryProc = new RetryProcessorImpl(new YieldingWaitStrategy(), metrics, commitTable, replyProc, panicker, batchPool);
+        RetryProcessor retryProc = new RetryProcessorImpl(new YieldingWaitStrategy(), metrics, commitTable, replyProc, panicker, batchPool,
+                                                          recentCommits, journal, new TSOServerConfig());
 
         // Test we'll reply with an abort for a retry request when the start timestamp IS NOT in the commit table
         retryProc.disambiguateRetryRequestHeuristically(NON_EXISTING_ST_TX, channel, new MonitoringContext(metrics));
@@ -88,7 +99,8 @@ public class TestRetryProcessor {
         ObjectPool<Batch> batchPool = new BatchPoolModule(new TSOServerConfig()).getBatchPool();
 
         // The element to test
-        RetryProcessor retryProc = new RetryProcessorImpl(new YieldingWaitStrategy(), metrics, commitTable, replyProc, panicker, batchPool);
+        RetryProcessor retryProc = new RetryProcessorImpl(new YieldingWaitStrategy(), metrics, commitTable, replyProc, panicker, batchPool,
+                                                          recentCommits, journal, new TSOServerConfig());
 
         // Test we'll reply with a commit for a retry request when the start timestamp IS in the commit table
         commitTable.getWriter().addCommittedTransaction(ST_TX_1, CT_TX_1);
@@ -122,7 +134,8 @@ public class TestRetryProcessor {
         ObjectPool<Batch> batchPool = new BatchPoolModule(new TSOServerConfig()).getBatchPool();
 
         // The element to test
-        RetryProcessor retryProc = new RetryProcessorImpl(new YieldingWaitStrategy(), metrics, commitTable, replyProc, panicker, batchPool);
+        RetryProcessor retryProc = new RetryProcessorImpl(new YieldingWaitStrategy(), metrics, commitTable, replyProc, panicker, batchPool,
+                                                          recentCommits, journal, new TSOServerConfig());
 
         // Test we return an Abort to a retry request when the transaction id IS in the commit table BUT invalidated
         retryProc.disambiguateRetryRequestHeuristically(ST_TX_1, channel, new MonitoringContext(metrics));
@@ -133,5 +146,30 @@ public class TestRetryProcessor {
 
     }
 
-}
+    @Test(timeOut = 10_000)
+    public void testRetriedRequestsForRecentTxsAreAnsweredWithoutReadingTheCommitTable() throws Exception {
+        ObjectPool<Batch> batchPool = new BatchPoolModule(new TSOServerConfig()).getBatchPool();
+
+        CommitTable.Client commitTableClient = mock(CommitTable.Client.class);
+        CommitTable mockedCommitTable = mock(CommitTable.class);
+        doReturn(commitTableClient).when(mockedCommitTable).getClient();
 
+        // The element to test
+        RetryProcessor retryProc = new RetryProcessorImpl(new YieldingWaitStrategy(), metrics, mockedCommitTable, replyProc,
+                                                          panicker, batchPool, recentCommits, journal, new TSOServerConfig());
+
+        // Outcomes are added by the reply processor once they have been persisted
+        recentCommits.addCommit(ST_TX_1, CT_TX_1);
+        recentCommits.addAbort(NON_EXISTING_ST_TX);
+
+        retryProc.disambiguateRetryRequestHeuristically(ST_TX_1, channel, new MonitoringContext(metrics));
+        verify(replyProc, timeout(100).times(1)).sendCommitResponse(eq(ST_TX_1), eq(CT_TX_1), any(Channel.class));
+
+        retryProc.disambiguateRetryRequestHeuristically(NON_EXISTING_ST_TX, channel, new MonitoringContext(metrics));
+        verify(replyProc, timeout(100).times(1)).sendAbortResponse(eq(NON_EXISTING_ST_TX), any(Channel.class));
+
+        verify(commitTableClient, never()).getCommitTimestamp(anyLong());
+
+    }
+
+}
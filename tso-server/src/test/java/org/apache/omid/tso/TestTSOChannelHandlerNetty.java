@@ -18,6 +18,7 @@
 package org.apache.omid.tso;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.omid.PackedCellIds;
 import org.apache.omid.metrics.NullMetricsProvider;
 import org.apache.omid.proto.TSOProto;
 import org.jboss.netty.bootstrap.ClientBootstrap;
@@ -45,6 +46,7 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -53,6 +55,7 @@ import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
@@ -78,7 +81,8 @@ public class TestTSOChannelHandlerNetty {
         MockitoAnnotations.initMocks(this);
         TSOServerConfig config = new TSOServerConfig();
         config.setPort(1434);
-        channelHandler = new TSOChannelHandler(config, requestProcessor, new NullMetricsProvider());
+        channelHandler = new TSOChannelHandler(config, requestProcessor, mock(SafeReadTimestampPublisher.class),
+                                               new NullMetricsProvider());
     }
 
     @AfterMethod
@@ -248,6 +252,8 @@ public class TestTSOChannelHandlerNetty {
         testWritingTimestampRequest(channel);
 
         testWritingCommitRequest(channel);
+
+        testWritingPackedCommitRequest(channel);
     }
 
     private void testWritingTimestampRequest(Channel channel) throws InterruptedException {
@@ -280,6 +286,20 @@ public class TestTSOChannelHandlerNetty {
                 .commitRequest(eq(666L), anyCollectionOf(Long.class), eq(false), any(Channel.class), any(MonitoringContext.class));
     }
 
+    private void testWritingPackedCommitRequest(Channel channel) throws InterruptedException {
+        // Reset mock
+        reset(requestProcessor);
+        TSOProto.CommitRequest.Builder commitRequestBuilder = TSOProto.CommitRequest.newBuilder();
+        commitRequestBuilder.setStartTimestamp(667);
+        commitRequestBuilder.setPackedCellIds(PackedCellIds.encode(new long[]{668L, -669L, 667L}));
+        commitRequestBuilder.setNumPackedCellIds(3);
+        // Write into the channel
+        channel.write(TSOProto.Request.newBuilder().setCommitRequest(commitRequestBuilder.build()).build()).await();
+        verify(requestProcessor, timeout(100).times(1))
+                .commitRequest(eq(667L), eq(Arrays.asList(-669L, 667L, 668L)), eq(false), any(Channel.class),
+                               any(MonitoringContext.class));
+    }
+
     // ----------------------------------------------------------------------------------------------------------------
     // Helper methods
     // ----------------------------------------------------------------------------------------------------------------
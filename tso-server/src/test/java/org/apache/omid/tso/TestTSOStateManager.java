@@ -17,6 +17,7 @@
  */
 package org.apache.omid.tso;
 
+import org.apache.omid.committable.CommitTable;
 import org.apache.omid.tso.TSOStateManager.StateObserver;
 import org.apache.omid.tso.TSOStateManager.TSOState;
 import org.testng.annotations.BeforeMethod;
@@ -41,8 +42,11 @@ public class TestTSOStateManager {
     // Mocks
     private TimestampOracle timestampOracle = mock(TimestampOracle.class);
 
+    private ConflictMapReplica conflictMapReplica = // Disabled, so there's no replica to take over with
+            new ConflictMapReplica(new TSOServerConfig(), new CommitHashMap(), mock(CommitTable.class));
+
     // Component under test
-    private TSOStateManager stateManager = new TSOStateManagerImpl(timestampOracle);
+    private TSOStateManager stateManager = new TSOStateManagerImpl(timestampOracle, conflictMapReplica);
 
     @BeforeMethod
     public void beforeMethod() {
@@ -262,6 +262,62 @@ public class TestTSOClientConnectionToTSO {
         LOG.info("Restarted TSO Server Stopped");
     }
 
+    @Test(timeOut = 30_000)
+    public void testTSOClientReconnectsStraightAwayWhenTheCurrentTSOChanges() throws Exception {
+
+        // Start a TSO with HA...
+        TSOServerConfig config = new TSOServerConfig();
+        config.setConflictMapSize(1000);
+        config.setPort(tsoPortForTest);
+        config.setLeaseModule(new HALeaseManagementModule(1000, TSO_LEASE_PATH, CURRENT_TSO_PATH, zkClusterForTest, "omid"));
+        injector = Guice.createInjector(new TSOMockModule(config));
+        tsoServer = injector.getInstance(TSOServer.class);
+        tsoServer.startAndWait();
+        TestUtils.waitForSocketListening(TSO_HOST, tsoPortForTest, 100);
+        waitTillTsoRegisters(injector.getInstance(CuratorFramework.class));
+
+        // ...and a client with a reconnection backoff longer than the test timeout
+        OmidClientConfiguration tsoClientConf = new OmidClientConfiguration();
+        tsoClientConf.setConnectionType(OmidClientConfiguration.ConnType.HA);
+        tsoClientConf.setConnectionString(zkClusterForTest);
+        tsoClientConf.setZkCurrentTsoPath(CURRENT_TSO_PATH);
+        tsoClientConf.setReconnectionBaseDelayInMs(60_000);
+        tsoClientConf.setReconnectionDelayInSecs(60);
+        TSOClient tsoClient = TSOClient.newInstance(tsoClientConf);
+        assertEquals(tsoClient.getNewStartTimestamp().get().longValue(), 1);
+
+        // Then stop the server, so the client starts backing off...
+        tsoServer.stopAndWait();
+        TestUtils.waitForSocketNotListening(TSO_HOST, tsoPortForTest, 1000);
+        Thread.sleep(1500);
+        try {
+            tsoClient.getNewStartTimestamp().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(e.getCause().getClass(), ConnectionException.class);
+        }
+
+        // ...and launch a new TSO. The client must not wait for the backoff to connect to it
+        Injector newInjector = Guice.createInjector(new TSOMockModule(config));
+        tsoServer = newInjector.getInstance(TSOServer.class);
+        tsoServer.startAndWait();
+        TestUtils.waitForSocketListening(TSO_HOST, tsoPortForTest, 100);
+        Long startTS = null;
+        while (startTS == null) {
+            try {
+                startTS = tsoClient.getNewStartTimestamp().get();
+            } catch (ExecutionException e) {
+                Thread.sleep(100);
+            }
+        }
+        assertNotNull(startTS);
+
+        tsoClient.close().get();
+        tsoServer.stopAndWait();
+        TestUtils.waitForSocketNotListening(TSO_HOST, tsoPortForTest, 1000);
+
+    }
+
     private void waitTillTsoRegisters(CuratorFramework zkClient) throws Exception {
         while (true) {
             try {
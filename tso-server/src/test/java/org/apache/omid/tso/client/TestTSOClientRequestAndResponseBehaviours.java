@@ -37,6 +37,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -74,6 +75,8 @@ public class TestTSOClientRequestAndResponseBehaviours {
         tsoConfig.setConflictMapSize(1000);
         tsoConfig.setPort(TSO_SERVER_PORT);
         tsoConfig.setNumConcurrentCTWriters(2);
+        // Retries must be disambiguated with the commit table, which some tests manipulate directly
+        tsoConfig.setRecentCommitsCacheSize(0);
         Module tsoServerMockModule = new TSOMockModule(tsoConfig);
         Injector injector = Guice.createInjector(tsoServerMockModule);
 
@@ -260,6 +263,43 @@ public class TestTSOClientRequestAndResponseBehaviours {
                      "Commit timestamp should be the same");
     }
 
+    @Test(timeOut = 30_000)
+    public void testChunkedCommit() throws Exception {
+
+        OmidClientConfiguration testTSOClientConf = new OmidClientConfiguration();
+        testTSOClientConf.setConnectionString(TSO_SERVER_HOST + ":" + TSO_SERVER_PORT);
+        testTSOClientConf.setCommitChunkSize(2);
+        TSOClient client = TSOClient.newInstance(testTSOClientConf);
+
+        Set<CellId> bigWriteSet = new HashSet<>();
+        for (long i = 1; i <= 5; i++) {
+            bigWriteSet.add(new DummyCellIdImpl(i));
+        }
+
+        long ts1 = client.getNewStartTimestamp().get();
+        long ts2 = client.getNewStartTimestamp().get();
+        long ts3 = client.getNewStartTimestamp().get();
+        assertTrue(client.commit(ts2, bigWriteSet).get() > ts2, "Chunked commit should commit");
+
+        // The cell of the first chunk conflicts
+        try {
+            client.commit(ts1, Sets.<CellId>newHashSet(new DummyCellIdImpl(1L), c1, c2)).get();
+            fail("Commit conflicting with a chunk should abort");
+        } catch (ExecutionException ee) {
+            assertEquals(ee.getCause().getClass(), AbortException.class, "Should have aborted");
+        }
+        // The cell sent after the chunks conflicts
+        Set<CellId> conflictingWriteSet =
+                Sets.<CellId>newHashSet(new DummyCellIdImpl(-2L), new DummyCellIdImpl(-1L), new DummyCellIdImpl(5L));
+        try {
+            client.commit(ts3, conflictingWriteSet).get();
+            fail("Chunked commit conflicting should abort");
+        } catch (ExecutionException ee) {
+            assertEquals(ee.getCause().getClass(), AbortException.class, "Should have aborted");
+        }
+
+    }
+
     // ----------------------------------------------------------------------------------------------------------------
     // Test TSOClient retry behaviour
     // ----------------------------------------------------------------------------------------------------------------